@@ -55,6 +55,10 @@ COMPILE_TIME = 0
 
 RUNTIME = 1
 
+# The --define which selects the ide info file format. With "binary", each target's ide info is
+# written as a single length-delimited binary TargetIdeInfo record, instead of a text proto.
+IDE_INFO_FORMAT_DEFINE = "intellij_ide_info_format"
+
 # PythonVersion enum; must match PyIdeInfo.PythonVersion
 PY2 = 1
 
@@ -1071,8 +1075,11 @@ def intellij_info_aspect_impl(target, ctx, semantics):
     if aspect_ids:
         aspect_hash = hash(".".join(aspect_ids))
         file_name = file_name + "-" + str(aspect_hash)
-    file_name = file_name + ".intellij-info.txt"
-    ide_info_file = ctx.actions.declare_file(file_name)
+    binary_ide_info = ctx.var.get(IDE_INFO_FORMAT_DEFINE) == "binary"
+    if binary_ide_info:
+        ide_info_file = ctx.actions.declare_file(file_name + ".intellij-info.pb")
+    else:
+        ide_info_file = ctx.actions.declare_file(file_name + ".intellij-info.txt")
 
     target_key = make_target_key(target.label, aspect_ids)
     ide_info = dict(
@@ -1107,7 +1114,20 @@ def intellij_info_aspect_impl(target, ctx, semantics):
 
     # Output the ide information file.
     info = struct_omit_none(**ide_info)
-    ctx.actions.write(ide_info_file, info.to_proto())
+    if binary_ide_info:
+        # Starlark can only write text protos, so encode the text proto in a separate action
+        text_ide_info_file = ctx.actions.declare_file(file_name + ".intellij-info.textproto")
+        ctx.actions.write(text_ide_info_file, info.to_proto())
+        ctx.actions.run(
+            inputs = [text_ide_info_file],
+            outputs = [ide_info_file],
+            executable = ctx.executable._ide_info_encoder,
+            arguments = ["--input", text_ide_info_file.path, "--output", ide_info_file.path],
+            mnemonic = "IntellijIdeInfoEncoder",
+            progress_message = "Encoding ide info for " + str(target.label),
+        )
+    else:
+        ctx.actions.write(ide_info_file, info.to_proto())
 
     # Return providers.
     return struct_omit_none(
@@ -1152,6 +1172,12 @@ def make_intellij_info_aspect(aspect_impl, semantics):
         "_flag_hack": attr.label(
             default = flag_hack_label,
         ),
+        "_ide_info_encoder": attr.label(
+            default = tool_label("IdeInfoEncoder"),
+            cfg = "host",
+            executable = True,
+            allow_files = True,
+        ),
         "_create_aar": attr.label(
             default = tool_label("CreateAar"),
             cfg = "host",
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.aspect;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.devtools.intellij.ideinfo.IntellijIdeInfo.TargetIdeInfo;
+import com.google.repackaged.bazel.protobuf.TextFormat;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Encodes a text-format ide info file written by the aspect as a single length-delimited binary
+ * {@link TargetIdeInfo} record, which the IDE can read without text-format parsing.
+ */
+public final class IdeInfoEncoder {
+
+  /** The options for an {@link IdeInfoEncoder} action. */
+  @VisibleForTesting
+  static final class IdeInfoEncoderOptions {
+    Path input;
+    Path output;
+  }
+
+  @VisibleForTesting
+  static IdeInfoEncoderOptions parseArgs(String[] args) {
+    IdeInfoEncoderOptions options = new IdeInfoEncoderOptions();
+    options.input =
+        OptionParser.parseSingleOption(
+            args, "input", string -> FileSystems.getDefault().getPath(string));
+    options.output =
+        OptionParser.parseSingleOption(
+            args, "output", string -> FileSystems.getDefault().getPath(string));
+    return options;
+  }
+
+  private static final Logger logger = Logger.getLogger(IdeInfoEncoder.class.getName());
+
+  private static final TextFormat.Parser parser =
+      TextFormat.Parser.newBuilder().setAllowUnknownFields(true).build();
+
+  public static void main(String[] args) throws Exception {
+    IdeInfoEncoderOptions options = parseArgs(args);
+    Preconditions.checkNotNull(options.input);
+    Preconditions.checkNotNull(options.output);
+
+    try {
+      encode(options.input, options.output);
+    } catch (Throwable e) {
+      logger.log(Level.SEVERE, "Error encoding ide info file " + options.input, e);
+      System.exit(1);
+    }
+    System.exit(0);
+  }
+
+  @VisibleForTesting
+  static void encode(Path input, Path output) throws IOException {
+    TargetIdeInfo.Builder builder = TargetIdeInfo.newBuilder();
+    try (Reader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+      parser.merge(reader, builder);
+    }
+    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(output))) {
+      builder.build().writeDelimitedTo(out);
+    }
+  }
+
+  private IdeInfoEncoder() {}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.aspect;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.devtools.intellij.ideinfo.IntellijIdeInfo.TargetIdeInfo;
+import com.google.devtools.intellij.ideinfo.IntellijIdeInfo.TargetKey;
+import com.google.repackaged.bazel.protobuf.TextFormat;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link IdeInfoEncoder} */
+@RunWith(JUnit4.class)
+public class IdeInfoEncoderTest {
+
+  private static final TargetIdeInfo TARGET =
+      TargetIdeInfo.newBuilder()
+          .setKindString("java_library")
+          .setKey(TargetKey.newBuilder().setLabel("//foo:foo"))
+          .addTags("manual")
+          .build();
+
+  @Rule public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  @Test
+  public void testParseArgs() {
+    IdeInfoEncoder.IdeInfoEncoderOptions options =
+        IdeInfoEncoder.parseArgs(
+            new String[] {
+              "--input", "foo/foo-123.intellij-info.txt", "--output", "foo/foo-123.intellij-info.pb"
+            });
+
+    assertThat(options.input.toString()).isEqualTo("foo/foo-123.intellij-info.txt");
+    assertThat(options.output.toString()).isEqualTo("foo/foo-123.intellij-info.pb");
+  }
+
+  @Test
+  public void testEncodeWritesSingleDelimitedRecord() throws IOException {
+    Path input = tmpFolder.newFile("foo-123.intellij-info.txt").toPath();
+    Path output = tmpFolder.getRoot().toPath().resolve("foo-123.intellij-info.pb");
+    Files.write(input, TextFormat.printToString(TARGET).getBytes(UTF_8));
+
+    IdeInfoEncoder.encode(input, output);
+
+    try (InputStream in = Files.newInputStream(output)) {
+      assertThat(TargetIdeInfo.parseDelimitedFrom(in)).isEqualTo(TARGET);
+      assertThat(in.read()).isEqualTo(-1);
+    }
+  }
+
+  @Test
+  public void testEncodeIgnoresUnknownFields() throws IOException {
+    Path input = tmpFolder.newFile("foo-123.intellij-info.txt").toPath();
+    Path output = tmpFolder.getRoot().toPath().resolve("foo-123.intellij-info.pb");
+    String text = TextFormat.printToString(TARGET) + "unknown_field: \"value\"\n";
+    Files.write(input, text.getBytes(UTF_8));
+
+    IdeInfoEncoder.encode(input, output);
+
+    try (InputStream in = Files.newInputStream(output)) {
+      assertThat(TargetIdeInfo.parseDelimitedFrom(in)).isEqualTo(TARGET);
+    }
+  }
+}
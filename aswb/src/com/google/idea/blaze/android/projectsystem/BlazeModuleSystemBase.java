@@ -49,7 +49,6 @@ import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
 import com.google.idea.blaze.base.settings.Blaze;
 import com.google.idea.blaze.base.sync.data.BlazeDataStorage;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
-import com.google.idea.blaze.base.targetmaps.ReverseDependencyMap;
 import com.google.idea.blaze.base.targetmaps.TransitiveDependencyMap;
 import com.google.idea.common.experiments.BoolExperiment;
 import com.intellij.openapi.application.ApplicationManager;
@@ -351,7 +350,7 @@ abstract class BlazeModuleSystemBase implements AndroidModuleSystem {
       return ImmutableList.of();
     }
 
-    return ReverseDependencyMap.get(module.getProject()).get(resourceModuleKey).stream()
+    return projectData.getTargetMap().graph().getReverseDependencies(resourceModuleKey).stream()
         .map(projectData.getTargetMap()::get)
         .filter(Objects::nonNull)
         .map(TargetIdeInfo::getKey)
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.android.projectsystem;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.android.SdkConstants;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.idea.blaze.base.async.executor.BlazeExecutor;
+import com.google.idea.blaze.base.build.BlazeBuildListener;
+import com.google.idea.blaze.base.command.buildresult.OutputArtifactResolver;
+import com.google.idea.blaze.base.filecache.FilesDiff;
+import com.google.idea.blaze.base.ideinfo.LibraryArtifact;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.projectview.ProjectViewSet;
+import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.settings.BlazeImportSettings;
+import com.google.idea.blaze.base.sync.SyncListener;
+import com.google.idea.blaze.base.sync.SyncMode;
+import com.google.idea.blaze.base.sync.SyncResult;
+import com.google.idea.blaze.base.sync.aspects.BuildResult;
+import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
+import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
+import com.google.idea.common.experiments.BoolExperiment;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
+
+/**
+ * Maps binary class names to the class jars containing them, across all java targets in the
+ * project.
+ *
+ * <p>The index is rebuilt in the background after each sync and build. Only the central directories
+ * of jars which changed since the previous refresh are read again.
+ */
+public class ClassJarIndex {
+  static final BoolExperiment enabled = new BoolExperiment("aswb.class.jar.index", false);
+
+  private static final Logger logger = Logger.getInstance(ClassJarIndex.class);
+
+  /** Refreshes are serialized, so that each one can reuse the results of the previous one. */
+  private static final ListeningExecutorService refreshExecutor =
+      MoreExecutors.listeningDecorator(
+          AppExecutorUtil.createBoundedApplicationPoolExecutor("ClassJarIndex", 1));
+
+  /** A class jar, and the target it belongs to. */
+  static final class ClassJar {
+    private final TargetKey owner;
+    private final File file;
+
+    ClassJar(TargetKey owner, File file) {
+      this.owner = owner;
+      this.file = file;
+    }
+
+    TargetKey getOwner() {
+      return owner;
+    }
+
+    File getFile() {
+      return file;
+    }
+  }
+
+  private final Project project;
+  private final AtomicBoolean refreshPending = new AtomicBoolean(false);
+  // incremented on each sync or build; the index is only used while it reflects the latest one
+  private final AtomicLong requestedGeneration = new AtomicLong();
+  @Nullable private volatile Snapshot snapshot;
+
+  // only accessed from refreshExecutor
+  @Nullable private ImmutableMap<File, Long> jarFileState;
+  private ImmutableMap<File, ImmutableList<String>> jarContents = ImmutableMap.of();
+
+  public static ClassJarIndex getInstance(Project project) {
+    return ServiceManager.getService(project, ClassJarIndex.class);
+  }
+
+  public ClassJarIndex(Project project) {
+    this.project = project;
+  }
+
+  /**
+   * Returns the class jars containing the given binary class name, or null if the index is
+   * disabled, hasn't been built yet, or doesn't yet reflect the latest sync or build. Callers
+   * should fall back to searching the jars directly in that case, since newly built classes would
+   * otherwise not be found.
+   */
+  @Nullable
+  ImmutableList<ClassJar> getClassJars(String className) {
+    if (!enabled.getValue()) {
+      return null;
+    }
+    Snapshot snapshot = this.snapshot;
+    if (snapshot == null || snapshot.generation != requestedGeneration.get()) {
+      return null;
+    }
+    return snapshot.get(className);
+  }
+
+  /** Schedules a refresh of the index. Requests made while a refresh is queued are coalesced. */
+  void refreshInBackground() {
+    // mark the index as stale even when disabled, so a snapshot built before the experiment was
+    // turned off isn't used once it's turned back on
+    requestedGeneration.incrementAndGet();
+    if (!enabled.getValue() || refreshPending.getAndSet(true)) {
+      return;
+    }
+    refreshExecutor.execute(
+        () -> {
+          refreshPending.set(false);
+          if (project.isDisposed()) {
+            return;
+          }
+          try {
+            refresh(requestedGeneration.get());
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } catch (ExecutionException e) {
+            logger.warn("Failed to index class jars", e);
+          }
+        });
+  }
+
+  private void refresh(long generation) throws InterruptedException, ExecutionException {
+    BlazeProjectData projectData =
+        BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
+    if (projectData == null) {
+      return;
+    }
+    long start = System.nanoTime();
+    ImmutableList<ClassJar> classJars = collectClassJars(project, projectData);
+    ImmutableSet<File> files =
+        classJars.stream().map(ClassJar::getFile).collect(ImmutableSet.toImmutableSet());
+
+    FilesDiff<File, File> diff = FilesDiff.diffFileTimestamps(jarFileState, files);
+    Set<File> updated = ImmutableSet.copyOf(diff.getUpdatedFiles());
+    Map<File, ImmutableList<String>> contents = new HashMap<>();
+    for (File file : diff.getNewFileState().keySet()) {
+      ImmutableList<String> previous = jarContents.get(file);
+      if (previous != null && !updated.contains(file)) {
+        contents.put(file, previous);
+      }
+    }
+    BlazeExecutor executor = BlazeExecutor.getInstance();
+    List<ImmutableList<String>> scanned =
+        Futures.allAsList(
+                updated.stream()
+                    .map(f -> executor.submit(() -> readClassNames(f)))
+                    .collect(Collectors.toList()))
+            .get();
+    int i = 0;
+    for (File file : updated) {
+      contents.put(file, scanned.get(i++));
+    }
+
+    jarFileState = diff.getNewFileState();
+    jarContents = ImmutableMap.copyOf(contents);
+    Snapshot snapshot = Snapshot.build(generation, classJars, jarContents);
+    this.snapshot = snapshot;
+    logger.info(
+        String.format(
+            "Indexed %d classes in %d jars (%d read) in %d ms",
+            snapshot.size(),
+            contents.size(),
+            updated.size(),
+            (System.nanoTime() - start) / 1_000_000));
+  }
+
+  private static ImmutableList<ClassJar> collectClassJars(
+      Project project, BlazeProjectData projectData) {
+    ArtifactLocationDecoder decoder = projectData.getArtifactLocationDecoder();
+    ImmutableList.Builder<ClassJar> classJars = ImmutableList.builder();
+    for (TargetIdeInfo target : projectData.getTargetMap().targets()) {
+      if (target.getJavaIdeInfo() == null) {
+        continue;
+      }
+      TransitiveClosureClassFileFinder.getNonResourceJars(target)
+          .map(LibraryArtifact::getClassJar)
+          .filter(jar -> jar != null && !jar.isSource())
+          .map(jar -> OutputArtifactResolver.resolve(project, decoder, jar))
+          .filter(Objects::nonNull)
+          .forEach(file -> classJars.add(new ClassJar(target.getKey(), file)));
+    }
+    return classJars.build();
+  }
+
+  /** Reads the binary names of the classes in a jar from its central directory. */
+  private static ImmutableList<String> readClassNames(File jar) {
+    try (ZipFile zipFile = new ZipFile(jar)) {
+      return zipFile.stream()
+          .map(ZipEntry::getName)
+          .filter(name -> name.endsWith(SdkConstants.DOT_CLASS) && !name.startsWith("META-INF/"))
+          .map(
+              name ->
+                  name.substring(0, name.length() - SdkConstants.DOT_CLASS.length())
+                      .replace('/', '.'))
+          .collect(toImmutableList());
+    } catch (IOException e) {
+      logger.warn("Error reading jar file: " + jar, e);
+      return ImmutableList.of();
+    }
+  }
+
+  /** An immutable view of the index. */
+  static final class Snapshot {
+    /** The refresh request this snapshot was built for. */
+    private final long generation;
+
+    private final ImmutableList<ClassJar> classJars;
+    /** Maps each class to the position in {@link #classJars} of the first jar containing it. */
+    private final ImmutableMap<String, Integer> classToJar;
+    /** The positions of any other jars containing a class. Usually empty. */
+    private final ImmutableListMultimap<String, Integer> duplicates;
+
+    private Snapshot(
+        long generation,
+        ImmutableList<ClassJar> classJars,
+        ImmutableMap<String, Integer> classToJar,
+        ImmutableListMultimap<String, Integer> duplicates) {
+      this.generation = generation;
+      this.classJars = classJars;
+      this.classToJar = classToJar;
+      this.duplicates = duplicates;
+    }
+
+    static Snapshot build(
+        long generation,
+        ImmutableList<ClassJar> classJars,
+        Map<File, ImmutableList<String>> jarContents) {
+      Map<String, Integer> classToJar = new HashMap<>();
+      ImmutableListMultimap.Builder<String, Integer> duplicates = ImmutableListMultimap.builder();
+      for (int i = 0; i < classJars.size(); i++) {
+        // share one boxed position between all the classes in a jar
+        Integer position = i;
+        for (String className :
+            jarContents.getOrDefault(classJars.get(i).getFile(), ImmutableList.of())) {
+          if (classToJar.putIfAbsent(className, position) != null) {
+            duplicates.put(className, position);
+          }
+        }
+      }
+      return new Snapshot(
+          generation, classJars, ImmutableMap.copyOf(classToJar), duplicates.build());
+    }
+
+    int size() {
+      return classToJar.size();
+    }
+
+    ImmutableList<ClassJar> get(String className) {
+      Integer position = classToJar.get(className);
+      if (position == null) {
+        return ImmutableList.of();
+      }
+      ImmutableList<Integer> others = duplicates.get(className);
+      if (others.isEmpty()) {
+        return ImmutableList.of(classJars.get(position));
+      }
+      ImmutableList.Builder<ClassJar> result = ImmutableList.builder();
+      result.add(classJars.get(position));
+      others.forEach(i -> result.add(classJars.get(i)));
+      return result.build();
+    }
+  }
+
+  /** Refreshes the index after each sync and build. */
+  public static class Updater implements SyncListener, BlazeBuildListener {
+    @Override
+    public void onSyncComplete(
+        Project project,
+        BlazeContext context,
+        BlazeImportSettings importSettings,
+        ProjectViewSet projectViewSet,
+        ImmutableSet<Integer> buildIds,
+        BlazeProjectData blazeProjectData,
+        SyncMode syncMode,
+        SyncResult syncResult) {
+      getInstance(project).refreshInBackground();
+    }
+
+    @Override
+    public void buildCompleted(Project project, BuildResult buildResult) {
+      getInstance(project).refreshInBackground();
+    }
+  }
+}
@@ -18,12 +18,14 @@ package com.google.idea.blaze.android.projectsystem;
 import com.android.SdkConstants;
 import com.android.tools.idea.project.ModuleBasedClassFileFinder;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.idea.blaze.android.sync.model.AndroidResourceModuleRegistry;
 import com.google.idea.blaze.base.command.buildresult.OutputArtifactResolver;
 import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.google.idea.blaze.base.ideinfo.LibraryArtifact;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
 import com.google.idea.blaze.base.ideinfo.TargetMap;
 import com.google.idea.blaze.base.io.VirtualFileSystemProvider;
 import com.google.idea.blaze.base.model.BlazeProjectData;
@@ -33,6 +35,7 @@ import com.google.idea.blaze.base.targetmaps.TransitiveDependencyMap;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.JarFileSystem;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -103,6 +106,14 @@ public class TransitiveClosureClassFileFinder extends ModuleBasedClassFileFinder
 
     String classNamePath = className.replace('.', File.separatorChar) + SdkConstants.DOT_CLASS;
 
+    // While the index is up to date, only the jars known to contain the class are searched.
+    ImmutableList<ClassJarIndex.ClassJar> indexedJars =
+        ClassJarIndex.getInstance(module.getProject()).getClassJars(className);
+    if (indexedJars != null) {
+      return findClassInIndexedJars(
+          module.getProject(), target.getKey(), indexedJars, classNamePath);
+    }
+
     List<LibraryArtifact> jarsToSearch = Lists.newArrayList(target.getJavaIdeInfo().getJars());
     jarsToSearch.addAll(
         TransitiveDependencyMap.getInstance(module.getProject())
@@ -125,20 +136,48 @@ public class TransitiveClosureClassFileFinder extends ModuleBasedClassFileFinder
               OutputArtifactResolver.resolve(module.getProject(), decoder, classJar),
               "Fail to find file %s",
               classJar.getRelativePath());
-      VirtualFile classJarVF =
-          VirtualFileSystemProvider.getInstance().getSystem().findFileByIoFile(classJarFile);
-      if (classJarVF == null) {
-        if (classJarFile.exists()) {
-          missingClassJars.add(classJarFile);
+      classFile = findClassInJar(classJarFile, classNamePath, missingClassJars);
+      if (classFile != null) {
+        return classFile;
+      }
+    }
+
+    maybeRefreshJars(missingClassJars, pendingJarsRefresh);
+    return null;
+  }
+
+  /**
+   * Searches the jars which {@link ClassJarIndex} lists for a class, limited to those belonging to
+   * the given target or its transitive dependencies. The target's own jars are searched first.
+   */
+  @Nullable
+  private VirtualFile findClassInIndexedJars(
+      Project project,
+      TargetKey targetKey,
+      ImmutableList<ClassJarIndex.ClassJar> indexedJars,
+      String classNamePath) {
+    if (indexedJars.isEmpty()) {
+      return null;
+    }
+    TransitiveDependencyMap transitiveDependencyMap = TransitiveDependencyMap.getInstance(project);
+    List<File> missingClassJars = Lists.newArrayList();
+    List<File> dependencyJars = Lists.newArrayList();
+    for (ClassJarIndex.ClassJar jar : indexedJars) {
+      if (jar.getOwner().equals(targetKey)) {
+        VirtualFile classFile = findClassInJar(jar.getFile(), classNamePath, missingClassJars);
+        if (classFile != null) {
+          return classFile;
         }
-        continue;
+      } else if (transitiveDependencyMap.hasTransitiveDependency(targetKey, jar.getOwner())) {
+        dependencyJars.add(jar.getFile());
       }
-      classFile = findClassInJar(classJarVF, classNamePath);
+    }
+    for (File jar : dependencyJars) {
+      VirtualFile classFile = findClassInJar(jar, classNamePath, missingClassJars);
       if (classFile != null) {
         return classFile;
       }
     }
-
     maybeRefreshJars(missingClassJars, pendingJarsRefresh);
     return null;
   }
@@ -154,6 +193,24 @@ public class TransitiveClosureClassFileFinder extends ModuleBasedClassFileFinder
     return jars;
   }
 
+  /**
+   * Looks up a class in a jar through the VFS. If the jar exists on disk but not yet in the VFS, it
+   * is added to {@code missingClassJars}.
+   */
+  @Nullable
+  private static VirtualFile findClassInJar(
+      File classJarFile, String classNamePath, List<File> missingClassJars) {
+    VirtualFile classJarVF =
+        VirtualFileSystemProvider.getInstance().getSystem().findFileByIoFile(classJarFile);
+    if (classJarVF == null) {
+      if (classJarFile.exists()) {
+        missingClassJars.add(classJarFile);
+      }
+      return null;
+    }
+    return findClassInJar(classJarVF, classNamePath);
+  }
+
   @Nullable
   private static VirtualFile findClassInJar(final VirtualFile classJar, String classNamePath) {
     VirtualFile jarRoot = getJarRootForLocalFile(classJar);
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.android.projectsystem;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.idea.blaze.android.projectsystem.ClassJarIndex.ClassJar;
+import com.google.idea.blaze.android.projectsystem.ClassJarIndex.Snapshot;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.model.primitives.Label;
+import java.io.File;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link ClassJarIndex}. */
+@RunWith(JUnit4.class)
+public class ClassJarIndexTest {
+
+  private static final File LIB_JAR = new File("/out/libfoo.jar");
+  private static final File OTHER_JAR = new File("/out/libbar.jar");
+
+  private static final ClassJar LIB =
+      new ClassJar(TargetKey.forPlainTarget(Label.create("//foo:foo")), LIB_JAR);
+  private static final ClassJar OTHER =
+      new ClassJar(TargetKey.forPlainTarget(Label.create("//bar:bar")), OTHER_JAR);
+
+  @Test
+  public void testClassesMapToTheirJars() {
+    Snapshot snapshot =
+        Snapshot.build(
+            /* generation= */ 0,
+            ImmutableList.of(LIB, OTHER),
+            ImmutableMap.of(
+                LIB_JAR, ImmutableList.of("com.foo.Foo", "com.foo.Foo$Inner"),
+                OTHER_JAR, ImmutableList.of("com.bar.Bar")));
+
+    assertThat(snapshot.size()).isEqualTo(3);
+    assertThat(snapshot.get("com.foo.Foo$Inner")).containsExactly(LIB);
+    assertThat(snapshot.get("com.bar.Bar")).containsExactly(OTHER);
+    assertThat(snapshot.get("com.baz.Baz")).isEmpty();
+  }
+
+  @Test
+  public void testDuplicateClassesListEveryJar() {
+    Snapshot snapshot =
+        Snapshot.build(
+            /* generation= */ 0,
+            ImmutableList.of(LIB, OTHER),
+            ImmutableMap.of(
+                LIB_JAR, ImmutableList.of("com.shared.Util"),
+                OTHER_JAR, ImmutableList.of("com.shared.Util")));
+
+    assertThat(snapshot.get("com.shared.Util")).containsExactly(LIB, OTHER).inOrder();
+  }
+
+  @Test
+  public void testJarsWhichCouldNotBeReadAreSkipped() {
+    Snapshot snapshot =
+        Snapshot.build(
+            /* generation= */ 0,
+            ImmutableList.of(LIB, OTHER),
+            ImmutableMap.of(LIB_JAR, ImmutableList.of("com.foo.Foo")));
+
+    assertThat(snapshot.get("com.foo.Foo")).containsExactly(LIB);
+    assertThat(snapshot.size()).isEqualTo(1);
+  }
+}
@@ -17,8 +17,9 @@ package com.google.idea.blaze.base.command.buildresult;
 
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 
-import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos;
 import com.google.idea.blaze.base.model.primitives.Kind;
 import com.google.idea.blaze.base.model.primitives.Label;
@@ -31,7 +32,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.Predicate;
@@ -48,53 +51,93 @@ public final class BuildEventProtocolOutputReader {
    * @throws IOException if the BEP {@link InputStream} is incorrectly formatted
    */
   public static BlazeTestResults parseTestResults(InputStream inputStream) throws IOException {
-    Map<String, String> configIdToMnemonic = new HashMap<>();
-    Map<String, Kind> labelToKind = new HashMap<>();
-    Map<String, String> labelToMnemonic = new HashMap<>();
-    long startTimeMillis = 0L;
-    ImmutableList.Builder<BlazeTestResult> results = ImmutableList.builder();
+    TestResultsParser parser = new TestResultsParser();
     BuildEventStreamProtos.BuildEvent event;
     while ((event = BuildEventStreamProtos.BuildEvent.parseDelimitedFrom(inputStream)) != null) {
+      parser.processEvent(event);
+    }
+    return parser.getAllResults();
+  }
+
+  /**
+   * Collects test results from a stream of build events, one event at a time.
+   *
+   * <p>A target's results are considered finished once its test summary has been seen, i.e. once
+   * all its runs, shards and attempts are complete.
+   */
+  public static final class TestResultsParser {
+    private final Map<String, String> configIdToMnemonic = new HashMap<>();
+    private final Map<String, Kind> labelToKind = new HashMap<>();
+    private final Map<String, String> labelToMnemonic = new HashMap<>();
+    private final List<BlazeTestResult> allResults = new ArrayList<>();
+    private final ListMultimap<String, BlazeTestResult> unfinishedResults =
+        ArrayListMultimap.create();
+    private long startTimeMillis = 0L;
+
+    /** Processes the next build event, returning the results of any target it finishes. */
+    public BlazeTestResults processEvent(BuildEventStreamProtos.BuildEvent event) {
+      String label;
+      Kind kind;
       switch (event.getId().getIdCase()) {
         case STARTED:
           startTimeMillis = event.getStarted().getStartTimeMillis();
-          continue;
+          break;
         case CONFIGURATION:
           configIdToMnemonic.put(
               event.getId().getConfiguration().getId(), event.getConfiguration().getMnemonic());
-          continue;
+          break;
         case TARGET_COMPLETED:
-          String label = event.getId().getTargetCompleted().getLabel();
+          label = event.getId().getTargetCompleted().getLabel();
           labelToMnemonic.put(
               label,
               configIdToMnemonic.get(
                   event.getId().getTargetCompleted().getConfiguration().getId()));
-          Kind kind = parseTargetKind(event.getCompleted().getTargetKind());
+          kind = parseTargetKind(event.getCompleted().getTargetKind());
           if (kind != null) {
             labelToKind.put(label, kind);
           }
-          continue;
+          break;
         case TARGET_CONFIGURED:
           label = event.getId().getTargetConfigured().getLabel();
           kind = parseTargetKind(event.getConfigured().getTargetKind());
           if (kind != null) {
             labelToKind.put(label, kind);
           }
-          continue;
+          break;
         case TEST_RESULT:
           label = event.getId().getTestResult().getLabel();
-          results.add(
+          BlazeTestResult result =
               parseTestResult(
                   label,
                   labelToKind.get(label),
                   labelToMnemonic.get(label),
                   event.getTestResult(),
-                  startTimeMillis));
-          continue;
+                  startTimeMillis);
+          allResults.add(result);
+          unfinishedResults.put(label, result);
+          break;
+        case TEST_SUMMARY:
+          return BlazeTestResults.fromFlatList(
+              unfinishedResults.removeAll(event.getId().getTestSummary().getLabel()));
         default: // continue
       }
+      return BlazeTestResults.NO_RESULTS;
+    }
+
+    /**
+     * Returns the results of targets without a test summary so far, and considers them finished.
+     * Summaries can be missing if the build was interrupted.
+     */
+    public BlazeTestResults finishAll() {
+      BlazeTestResults results = BlazeTestResults.fromFlatList(unfinishedResults.values());
+      unfinishedResults.clear();
+      return results;
+    }
+
+    /** Returns all the test results seen so far. */
+    public BlazeTestResults getAllResults() {
+      return BlazeTestResults.fromFlatList(allResults);
     }
-    return BlazeTestResults.fromFlatList(results.build());
   }
 
   /** Convert BEP 'target_kind' to our internal format */
@@ -33,12 +33,23 @@ public class LocalFileOutputArtifact implements OutputArtifact, LocalFileArtifac
   private final File file;
   private final String blazeOutRelativePath;
   private final String configurationMnemonic;
+  // the content digest reported by blaze, if any
+  @Nullable private final String digest;
 
   public LocalFileOutputArtifact(
       File file, String blazeOutRelativePath, String configurationMnemonic) {
+    this(file, blazeOutRelativePath, configurationMnemonic, /* digest= */ null);
+  }
+
+  public LocalFileOutputArtifact(
+      File file,
+      String blazeOutRelativePath,
+      String configurationMnemonic,
+      @Nullable String digest) {
     this.file = file;
     this.blazeOutRelativePath = blazeOutRelativePath;
     this.configurationMnemonic = configurationMnemonic;
+    this.digest = digest;
   }
 
   private long getLastModifiedTime() {
@@ -49,7 +60,13 @@ public class LocalFileOutputArtifact implements OutputArtifact, LocalFileArtifac
   @Nullable
   public ArtifactState toArtifactState() {
     long lastModifiedTime = getLastModifiedTime();
-    return lastModifiedTime == 0 ? null : new LocalFileState(getKey(), lastModifiedTime);
+    return lastModifiedTime == 0 ? null : new LocalFileState(getKey(), lastModifiedTime, digest);
+  }
+
+  /** The content digest reported by blaze for this artifact, if known. */
+  @Nullable
+  public String getDigest() {
+    return digest;
   }
 
   @Override
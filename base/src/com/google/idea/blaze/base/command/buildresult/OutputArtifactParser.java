@@ -16,6 +16,7 @@
 package com.google.idea.blaze.base.command.buildresult;
 
 import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos;
 import com.intellij.openapi.extensions.ExtensionPointName;
 import com.intellij.util.io.URLUtil;
@@ -66,7 +67,10 @@ public interface OutputArtifactParser {
       try {
         File f = new File(new URI(uri));
         return new LocalFileOutputArtifact(
-            f, getBlazeOutRelativePath(file, configurationMnemonic), configurationMnemonic);
+            f,
+            getBlazeOutRelativePath(file, configurationMnemonic),
+            configurationMnemonic,
+            Strings.emptyToNull(file.getDigest()));
       } catch (URISyntaxException | IllegalArgumentException e) {
         return null;
       }
@@ -27,6 +27,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.Queues;
 import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildEventId.NamedSetOfFilesId;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.NamedSetOfFiles;
@@ -57,9 +58,7 @@ public final class ParsedBepOutput {
   public static ParsedBepOutput parseBepArtifacts(BuildEventStreamProvider stream)
       throws BuildEventStreamException {
     BuildEventStreamProtos.BuildEvent event;
-    Map<String, String> configIdToMnemonic = new HashMap<>();
-    Set<String> topLevelFileSets = new HashSet<>();
-    Map<String, FileSet.Builder> fileSets = new LinkedHashMap<>();
+    FileSetResolver fileSets = new FileSetResolver();
     ImmutableSetMultimap.Builder<String, String> targetToFileSets = ImmutableSetMultimap.builder();
     String localExecRoot = null;
     String buildId = null;
@@ -74,15 +73,11 @@ public final class ParsedBepOutput {
           localExecRoot = event.getWorkspaceInfo().getLocalExecRoot();
           continue;
         case CONFIGURATION:
-          configIdToMnemonic.put(
+          fileSets.addConfiguration(
               event.getId().getConfiguration().getId(), event.getConfiguration().getMnemonic());
           continue;
         case NAMED_SET:
-          NamedSetOfFiles namedSet = event.getNamedSetOfFiles();
-          fileSets.compute(
-              event.getId().getNamedSet().getId(),
-              (k, v) ->
-                  v != null ? v.setNamedSet(namedSet) : FileSet.builder().setNamedSet(namedSet));
+          fileSets.addNamedSet(event.getId().getNamedSet().getId(), event.getNamedSetOfFiles());
           continue;
         case TARGET_COMPLETED:
           String label = event.getId().getTargetCompleted().getLabel();
@@ -95,23 +90,15 @@ public final class ParsedBepOutput {
                   o -> {
                     List<String> sets = getFileSets(o);
                     targetToFileSets.putAll(label, sets);
-                    topLevelFileSets.addAll(sets);
                     for (String id : sets) {
-                      fileSets.compute(
-                          id,
-                          (k, v) -> {
-                            FileSet.Builder builder = (v != null) ? v : FileSet.builder();
-                            return builder
-                                .setConfigId(configId)
-                                .addOutputGroups(ImmutableSet.of(o.getName()))
-                                .addTargets(ImmutableSet.of(label));
-                          });
+                      fileSets.addTopLevelFileSet(id, configId, o.getName(), label);
                     }
                   });
           continue;
         case STARTED:
           buildId = Strings.emptyToNull(event.getStarted().getUuid());
           startTimeMillis = event.getStarted().getStartTimeMillis();
+          fileSets.startTimeMillis = startTimeMillis;
           continue;
         case BUILD_FINISHED:
           buildResult = BuildResult.fromExitCode(event.getFinished().getExitCode().getCode());
@@ -124,11 +111,13 @@ public final class ParsedBepOutput {
     if (emptyBuildEventStream) {
       throw new BuildEventStreamException("No build events found");
     }
-    ImmutableMap<String, FileSet> filesMap =
-        fillInTransitiveFileSetData(
-            fileSets, topLevelFileSets, configIdToMnemonic, startTimeMillis);
     return new ParsedBepOutput(
-        buildId, localExecRoot, filesMap, targetToFileSets.build(), startTimeMillis, buildResult);
+        buildId,
+        localExecRoot,
+        fileSets.build(),
+        targetToFileSets.build(),
+        startTimeMillis,
+        buildResult);
   }
 
   private static List<String> getFileSets(BuildEventStreamProtos.OutputGroup group) {
@@ -139,36 +128,119 @@ public final class ParsedBepOutput {
 
   /**
    * Only top-level targets have configuration mnemonic, producing target, and output group data
-   * explicitly provided in BEP. This method fills in that data for the transitive closure.
+   * explicitly provided in BEP. This class fills in that data for the transitive closure as build
+   * events arrive.
+   *
+   * <p>Whenever a file set gains output groups or targets, only the newly added data is passed on
+   * to the file sets reachable from it, so every file set ends up with the union of the data of all
+   * top-level file sets reaching it, whatever order the events arrive in.
+   *
+   * <p>Each file set is parsed as soon as both its artifacts and its configuration are known, and
+   * its raw {@link NamedSetOfFiles} proto released, so only parsed artifacts are retained while
+   * reading the stream. A file set takes the configuration of the top-level target reporting it,
+   * or else that of the first top-level file set reaching it. Blaze reports a target after the
+   * targets it depends on, so a file set shared with a dependency normally already has its own
+   * configuration by the time it's reached from a dependent.
    */
-  private static ImmutableMap<String, FileSet> fillInTransitiveFileSetData(
-      Map<String, FileSet.Builder> fileSets,
-      Set<String> topLevelFileSets,
-      Map<String, String> configIdToMnemonic,
-      long startTimeMillis) {
-    Queue<String> toVisit = Queues.newArrayDeque(topLevelFileSets);
-    Set<String> visited = new HashSet<>(topLevelFileSets);
-    while (!toVisit.isEmpty()) {
-      String setId = toVisit.remove();
-      FileSet.Builder fileSet = fileSets.get(setId);
-      if (fileSet.namedSet == null) {
-        continue;
+  private static class FileSetResolver {
+    private final Map<String, String> configIdToMnemonic = new HashMap<>();
+    private final Map<String, FileSet.Builder> fileSets = new LinkedHashMap<>();
+    long startTimeMillis = 0L;
+
+    void addConfiguration(String configId, String mnemonic) {
+      configIdToMnemonic.put(configId, mnemonic);
+      // configurations are normally reported before any file sets, so this is rarely needed
+      for (FileSet.Builder fileSet : fileSets.values()) {
+        if (configId.equals(fileSet.configId)) {
+          parse(fileSet);
+        }
+      }
+    }
+
+    void addNamedSet(String id, NamedSetOfFiles namedSet) {
+      FileSet.Builder fileSet = getBuilder(id).setNamedSet(namedSet);
+      // pass on any data received before the named set itself
+      if (!fileSet.outputGroups.isEmpty() || !fileSet.targets.isEmpty()) {
+        ImmutableSet<String> outputGroups = ImmutableSet.copyOf(fileSet.outputGroups);
+        ImmutableSet<String> targets = ImmutableSet.copyOf(fileSet.targets);
+        for (String child : fileSet.children) {
+          propagate(child, fileSet.configId, outputGroups, targets);
+        }
+      }
+      parse(fileSet);
+    }
+
+    void addTopLevelFileSet(String id, String configId, String outputGroup, String label) {
+      getBuilder(id).setConfigId(configId);
+      propagate(id, configId, ImmutableSet.of(outputGroup), ImmutableSet.of(label));
+    }
+
+    private FileSet.Builder getBuilder(String id) {
+      return fileSets.computeIfAbsent(id, k -> FileSet.builder());
+    }
+
+    /**
+     * Adds the given output groups and targets to a file set and all file sets reachable from it,
+     * only descending into file sets which didn't already have them. Reached file sets without a
+     * configuration of their own inherit the given one, and are parsed if possible.
+     */
+    private void propagate(
+        String id, String configId, Set<String> outputGroups, Set<String> targets) {
+      Queue<Update> toVisit = Queues.newArrayDeque();
+      toVisit.add(new Update(id, outputGroups, targets));
+      while (!toVisit.isEmpty()) {
+        Update update = toVisit.remove();
+        FileSet.Builder fileSet = getBuilder(update.setId).inheritConfigId(configId);
+        parse(fileSet);
+        ImmutableSet<String> newOutputGroups =
+            Sets.difference(update.outputGroups, fileSet.outputGroups).immutableCopy();
+        ImmutableSet<String> newTargets =
+            Sets.difference(update.targets, fileSet.targets).immutableCopy();
+        if (newOutputGroups.isEmpty() && newTargets.isEmpty()) {
+          continue;
+        }
+        fileSet.addOutputGroups(newOutputGroups).addTargets(newTargets);
+        // file sets not yet reported pass their data on once they arrive
+        for (String child : fileSet.children) {
+          toVisit.add(new Update(child, newOutputGroups, newTargets));
+        }
+      }
+    }
+
+    /**
+     * Parses the artifacts of a file set and releases its raw proto, if not already parsed and both
+     * its artifacts and configuration are known.
+     */
+    private void parse(FileSet.Builder fileSet) {
+      if (fileSet.parsedOutputs != null || fileSet.namedSet == null || fileSet.configId == null) {
+        return;
+      }
+      String mnemonic = configIdToMnemonic.get(fileSet.configId);
+      if (mnemonic != null) {
+        fileSet.setParsedOutputs(parseFiles(fileSet.namedSet, mnemonic, startTimeMillis));
+      }
+    }
+
+    /** Returns a map from file set ID to file set, with the same ordering as the BEP stream. */
+    ImmutableMap<String, FileSet> build() {
+      // file sets never reported, or without a known configuration, are dropped
+      return fileSets.entrySet().stream()
+          .filter(e -> e.getValue().parsedOutputs != null)
+          .collect(toImmutableMap(Map.Entry::getKey, e -> e.getValue().build()));
+    }
+
+    /** Output groups and targets to be added to a file set. */
+    private static class Update {
+      final String setId;
+      final Set<String> outputGroups;
+      final Set<String> targets;
+
+      Update(String setId, Set<String> outputGroups, Set<String> targets) {
+        this.setId = setId;
+        this.outputGroups = outputGroups;
+        this.targets = targets;
       }
-      fileSet.namedSet.getFileSetsList().stream()
-          .map(NamedSetOfFilesId::getId)
-          .filter(s -> !visited.contains(s))
-          .forEach(
-              child -> {
-                fileSets.get(child).updateFromParent(fileSet);
-                toVisit.add(child);
-                visited.add(child);
-              });
     }
-    return fileSets.entrySet().stream()
-        .filter(e -> e.getValue().isValid(configIdToMnemonic))
-        .collect(
-            toImmutableMap(
-                Map.Entry::getKey, e -> e.getValue().build(configIdToMnemonic, startTimeMillis)));
   }
 
   @Nullable public final String buildId;
@@ -267,12 +339,10 @@ public final class ParsedBepOutput {
     private final ImmutableSet<String> targets;
 
     FileSet(
-        NamedSetOfFiles namedSet,
-        String configuration,
-        long startTimeMillis,
+        ImmutableList<OutputArtifact> parsedOutputs,
         Set<String> outputGroups,
         Set<String> targets) {
-      this.parsedOutputs = parseFiles(namedSet, configuration, startTimeMillis);
+      this.parsedOutputs = parsedOutputs;
       this.outputGroups = ImmutableSet.copyOf(outputGroups);
       this.targets = ImmutableSet.copyOf(targets);
     }
@@ -286,25 +356,42 @@ public final class ParsedBepOutput {
     }
 
     private static class Builder {
+      // the raw named set, retained only until its artifacts are parsed
       @Nullable NamedSetOfFiles namedSet;
+      ImmutableList<String> children = ImmutableList.of();
+      @Nullable ImmutableList<OutputArtifact> parsedOutputs;
       @Nullable String configId;
       final Set<String> outputGroups = new HashSet<>();
       final Set<String> targets = new HashSet<>();
 
-      Builder updateFromParent(Builder parent) {
-        configId = parent.configId;
-        outputGroups.addAll(parent.outputGroups);
-        targets.addAll(parent.targets);
+      /** Takes the configuration of a parent file set, unless already known. */
+      Builder inheritConfigId(@Nullable String configId) {
+        if (this.configId == null) {
+          this.configId = configId;
+        }
         return this;
       }
 
       Builder setNamedSet(NamedSetOfFiles namedSet) {
         this.namedSet = namedSet;
+        this.children =
+            namedSet.getFileSetsList().stream()
+                .map(NamedSetOfFilesId::getId)
+                .collect(toImmutableList());
         return this;
       }
 
+      Builder setParsedOutputs(ImmutableList<OutputArtifact> parsedOutputs) {
+        this.parsedOutputs = parsedOutputs;
+        this.namedSet = null;
+        return this;
+      }
+
+      /** Sets the file set's own configuration. Has no effect once the file set is parsed. */
       Builder setConfigId(String configId) {
-        this.configId = configId;
+        if (parsedOutputs == null) {
+          this.configId = configId;
+        }
         return this;
       }
 
@@ -318,13 +405,8 @@ public final class ParsedBepOutput {
         return this;
       }
 
-      boolean isValid(Map<String, String> configIdToMnemonic) {
-        return namedSet != null && configId != null && configIdToMnemonic.get(configId) != null;
-      }
-
-      FileSet build(Map<String, String> configIdToMnemonic, long startTimeMillis) {
-        return new FileSet(
-            namedSet, configIdToMnemonic.get(configId), startTimeMillis, outputGroups, targets);
+      FileSet build() {
+        return new FileSet(parsedOutputs, outputGroups, targets);
       }
     }
   }
@@ -15,10 +15,12 @@
  */
 package com.google.idea.blaze.base.filecache;
 
+import com.google.common.base.Strings;
 import com.google.devtools.intellij.model.ProjectData.LocalFile;
 import com.google.devtools.intellij.model.ProjectData.LocalFileOrOutputArtifact;
 import com.google.idea.blaze.base.command.buildresult.BlazeArtifact;
 import java.io.File;
+import javax.annotation.Nullable;
 
 /** Used to diff blaze {@link BlazeArtifact}s from different builds. */
 public interface ArtifactState {
@@ -64,6 +66,8 @@ public interface ArtifactState {
   class LocalFileState implements ArtifactState {
     private final String blazeOutPath;
     private final long timestamp;
+    // a digest of the file contents, either provided by blaze or computed locally
+    @Nullable private final String digest;
 
     public LocalFileState(LocalFile localFile) {
       this.blazeOutPath =
@@ -71,11 +75,17 @@ public interface ArtifactState {
               ? localFile.getRelativePath()
               : migrateOldKeyFormat(localFile.getPath());
       this.timestamp = localFile.getTimestamp();
+      this.digest = Strings.emptyToNull(localFile.getDigest());
     }
 
     public LocalFileState(String blazeOutPath, long timestamp) {
+      this(blazeOutPath, timestamp, /* digest= */ null);
+    }
+
+    public LocalFileState(String blazeOutPath, long timestamp, @Nullable String digest) {
       this.blazeOutPath = blazeOutPath;
       this.timestamp = timestamp;
+      this.digest = digest;
     }
 
     @Override
@@ -83,16 +93,44 @@ public interface ArtifactState {
       return blazeOutPath;
     }
 
+    @Nullable
+    public String getDigest() {
+      return digest;
+    }
+
+    public long getTimestamp() {
+      return timestamp;
+    }
+
+    /** Returns a copy of this state with the given content digest. */
+    public LocalFileState withDigest(String digest) {
+      return new LocalFileState(blazeOutPath, timestamp, digest);
+    }
+
+    /**
+     * If both states have a content digest, the output is more recent only if its contents
+     * differ. Otherwise falls back to comparing timestamps.
+     */
     @Override
     public boolean isMoreRecent(ArtifactState output) {
-      return !(output instanceof LocalFileState) || timestamp < ((LocalFileState) output).timestamp;
+      if (!(output instanceof LocalFileState)) {
+        return true;
+      }
+      LocalFileState other = (LocalFileState) output;
+      if (digest != null && other.digest != null) {
+        return !digest.equals(other.digest);
+      }
+      return timestamp < other.timestamp;
     }
 
     @Override
     public LocalFileOrOutputArtifact serializeToProto() {
-      return LocalFileOrOutputArtifact.newBuilder()
-          .setLocalFile(LocalFile.newBuilder().setPath(blazeOutPath).setTimestamp(timestamp))
-          .build();
+      LocalFile.Builder builder =
+          LocalFile.newBuilder().setPath(blazeOutPath).setTimestamp(timestamp);
+      if (digest != null) {
+        builder.setDigest(digest);
+      }
+      return LocalFileOrOutputArtifact.newBuilder().setLocalFile(builder).build();
     }
 
     @Override
@@ -15,19 +15,26 @@
  */
 package com.google.idea.blaze.base.filecache;
 
-import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableMap.toImmutableMap;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
 import com.google.idea.blaze.base.command.buildresult.BlazeArtifact.LocalFileArtifact;
 import com.google.idea.blaze.base.command.buildresult.OutputArtifact;
+import com.google.idea.blaze.base.filecache.ArtifactState.LocalFileState;
 import com.google.idea.blaze.base.io.FileAttributeScanner;
 import com.google.idea.blaze.base.prefetch.FetchExecutor;
+import com.google.idea.common.experiments.BoolExperiment;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
@@ -37,17 +44,35 @@ import javax.annotation.Nullable;
  * A data class representing the diff between two sets of output artifacts.
  *
  * <p>We serialize the last modified time for local files to avoid recomputing it when calculating
- * the diff.
+ * the diff. When a content digest is available for both versions of a local file (either reported
+ * by blaze, or computed locally), files are compared by digest instead, so files whose timestamp
+ * changed without their contents changing aren't considered updated.
  */
 @AutoValue
 public abstract class ArtifactsDiff {
 
+  /**
+   * Whether to compute and cache content digests for local files which blaze didn't provide a
+   * digest for.
+   */
+  private static final BoolExperiment computeLocalDigests =
+      new BoolExperiment("blaze.artifact.diff.local.digests", false);
+
   public abstract ImmutableMap<String, ArtifactState> getNewState();
 
   public abstract ImmutableList<OutputArtifact> getUpdatedOutputs();
 
   public abstract ImmutableSet<ArtifactState> getRemovedOutputs();
 
+  /** The total size of the updated outputs, in bytes. */
+  public abstract long getUpdatedBytes();
+
+  /**
+   * The total size of outputs which were rebuilt, but skipped because their contents are
+   * unchanged, in bytes.
+   */
+  public abstract long getSkippedBytes();
+
   public static ArtifactsDiff diffArtifacts(
       @Nullable ImmutableMap<String, ArtifactState> oldState,
       Collection<OutputArtifact> newArtifacts)
@@ -60,25 +85,88 @@ public abstract class ArtifactsDiff {
       @Nullable ImmutableMap<String, ArtifactState> oldState,
       ImmutableMap<String, OutputArtifact> newArtifacts)
       throws InterruptedException, ExecutionException {
-    ImmutableMap<String, ArtifactState> newState = computeState(newArtifacts.values());
-    // Find new/updated
     final ImmutableMap<String, ArtifactState> previous =
         oldState != null ? oldState : ImmutableMap.of();
-    ImmutableList<OutputArtifact> updated =
-        newState.entrySet().stream()
-            .filter(
-                e -> {
-                  ArtifactState old = previous.get(e.getKey());
-                  return old == null || old.isMoreRecent(e.getValue());
-                })
-            .map(e -> newArtifacts.get(e.getKey()))
-            .collect(toImmutableList());
+    ImmutableMap<String, ArtifactState> newState = computeState(newArtifacts.values());
+    if (computeLocalDigests.getValue()) {
+      newState = addLocalDigests(previous, newState, newArtifacts);
+    }
+
+    // Find new/updated
+    ImmutableList.Builder<OutputArtifact> updated = ImmutableList.builder();
+    long updatedBytes = 0;
+    long skippedBytes = 0;
+    for (Map.Entry<String, ArtifactState> e : newState.entrySet()) {
+      ArtifactState old = previous.get(e.getKey());
+      OutputArtifact artifact = newArtifacts.get(e.getKey());
+      if (old == null || old.isMoreRecent(e.getValue())) {
+        updated.add(artifact);
+        updatedBytes += artifact.getLength();
+      } else if (isUnchangedContent(old, e.getValue())) {
+        skippedBytes += artifact.getLength();
+      }
+    }
 
     // Find removed
     Set<ArtifactState> removed = new HashSet<>(previous.values());
     newState.forEach((k, v) -> removed.remove(v));
 
-    return new AutoValue_ArtifactsDiff(newState, updated, ImmutableSet.copyOf(removed));
+    return new AutoValue_ArtifactsDiff(
+        newState, updated.build(), ImmutableSet.copyOf(removed), updatedBytes, skippedBytes);
+  }
+
+  /** True if the file was rewritten, but its content digest is unchanged. */
+  private static boolean isUnchangedContent(ArtifactState old, ArtifactState current) {
+    if (!(old instanceof LocalFileState) || !(current instanceof LocalFileState)) {
+      return false;
+    }
+    LocalFileState oldFile = (LocalFileState) old;
+    LocalFileState currentFile = (LocalFileState) current;
+    return oldFile.getTimestamp() != currentFile.getTimestamp()
+        && oldFile.getDigest() != null
+        && oldFile.getDigest().equals(currentFile.getDigest());
+  }
+
+  /**
+   * Fills in content digests for local files which blaze didn't provide a digest for. Digests are
+   * carried over from the previous state for files with an unchanged timestamp, and only computed
+   * for files which would otherwise be considered updated.
+   */
+  private static ImmutableMap<String, ArtifactState> addLocalDigests(
+      ImmutableMap<String, ArtifactState> previous,
+      ImmutableMap<String, ArtifactState> newState,
+      ImmutableMap<String, OutputArtifact> newArtifacts)
+      throws InterruptedException, ExecutionException {
+    Map<String, ArtifactState> result = new LinkedHashMap<>(newState);
+    List<OutputArtifact> toDigest = new ArrayList<>();
+    for (Map.Entry<String, ArtifactState> e : newState.entrySet()) {
+      if (!(e.getValue() instanceof LocalFileState)
+          || ((LocalFileState) e.getValue()).getDigest() != null
+          || !(newArtifacts.get(e.getKey()) instanceof LocalFileArtifact)) {
+        continue;
+      }
+      LocalFileState current = (LocalFileState) e.getValue();
+      ArtifactState old = previous.get(e.getKey());
+      if (old instanceof LocalFileState
+          && ((LocalFileState) old).getTimestamp() == current.getTimestamp()) {
+        String cachedDigest = ((LocalFileState) old).getDigest();
+        if (cachedDigest != null) {
+          result.put(e.getKey(), current.withDigest(cachedDigest));
+        }
+        continue;
+      }
+      toDigest.add(newArtifacts.get(e.getKey()));
+    }
+    if (toDigest.isEmpty()) {
+      return newState;
+    }
+    FileAttributeScanner.readAttributes(toDigest, TO_LOCAL_DIGEST, FetchExecutor.EXECUTOR)
+        .forEach(
+            (artifact, digest) ->
+                result.put(
+                    artifact.getKey(),
+                    ((LocalFileState) result.get(artifact.getKey())).withDigest(digest)));
+    return ImmutableMap.copyOf(result);
   }
 
   private static ImmutableMap<String, ArtifactState> computeState(
@@ -94,6 +182,27 @@ public abstract class ArtifactsDiff {
         .collect(toImmutableMap(e -> e.getKey().getKey(), Map.Entry::getValue));
   }
 
+  private static final FileAttributeScanner.AttributeReader<OutputArtifact, String>
+      TO_LOCAL_DIGEST =
+          new FileAttributeScanner.AttributeReader<OutputArtifact, String>() {
+            @Nullable
+            @Override
+            public String getAttribute(OutputArtifact artifact) {
+              try {
+                return Files.asByteSource(((LocalFileArtifact) artifact).getFile())
+                    .hash(Hashing.sha256())
+                    .toString();
+              } catch (IOException e) {
+                return null;
+              }
+            }
+
+            @Override
+            public boolean isValid(String digest) {
+              return true;
+            }
+          };
+
   private static FileAttributeScanner.AttributeReader<OutputArtifact, ArtifactState>
       TO_ARTIFACT_STATE =
           new FileAttributeScanner.AttributeReader<OutputArtifact, ArtifactState>() {
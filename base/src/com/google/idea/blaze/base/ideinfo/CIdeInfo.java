@@ -18,6 +18,7 @@ package com.google.idea.blaze.base.ideinfo;
 import com.google.common.collect.ImmutableList;
 import com.google.devtools.intellij.ideinfo.IntellijIdeInfo;
 import com.google.idea.blaze.base.model.primitives.ExecutionRootPath;
+import java.util.List;
 import java.util.Objects;
 
 /** Ide info specific to cc rules. */
@@ -54,17 +55,20 @@ public final class CIdeInfo implements ProtoWrapper<IntellijIdeInfo.CIdeInfo> {
   }
 
   static CIdeInfo fromProto(IntellijIdeInfo.CIdeInfo proto) {
+    // the compilation context lists are largely shared between targets, so intern them as a whole
     return new CIdeInfo(
         ProtoWrapper.map(proto.getSourceList(), ArtifactLocation::fromProto),
         ProtoWrapper.map(proto.getHeaderList(), ArtifactLocation::fromProto),
         ProtoWrapper.map(proto.getTextualHeaderList(), ArtifactLocation::fromProto),
-        ProtoWrapper.internStrings(proto.getTargetCoptList()),
-        ProtoWrapper.map(proto.getTransitiveIncludeDirectoryList(), ExecutionRootPath::fromProto),
-        ProtoWrapper.map(
-            proto.getTransitiveQuoteIncludeDirectoryList(), ExecutionRootPath::fromProto),
-        ProtoWrapper.internStrings(proto.getTransitiveDefineList()),
-        ProtoWrapper.map(
-            proto.getTransitiveSystemIncludeDirectoryList(), ExecutionRootPath::fromProto));
+        ProjectDataInterner.internList(ProtoWrapper.internStrings(proto.getTargetCoptList())),
+        internPaths(proto.getTransitiveIncludeDirectoryList()),
+        internPaths(proto.getTransitiveQuoteIncludeDirectoryList()),
+        ProjectDataInterner.internList(ProtoWrapper.internStrings(proto.getTransitiveDefineList())),
+        internPaths(proto.getTransitiveSystemIncludeDirectoryList()));
+  }
+
+  private static ImmutableList<ExecutionRootPath> internPaths(List<String> paths) {
+    return ProjectDataInterner.internList(ProtoWrapper.map(paths, ExecutionRootPath::fromProto));
   }
 
   @Override
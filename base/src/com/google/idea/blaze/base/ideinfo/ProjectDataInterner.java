@@ -15,6 +15,7 @@
  */
 package com.google.idea.blaze.base.ideinfo;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Interner;
 import com.google.common.collect.Interners;
 import com.google.idea.blaze.base.model.primitives.ExecutionRootPath;
@@ -71,6 +72,15 @@ public final class ProjectDataInterner {
     return state.doIntern(executionRootPath);
   }
 
+  /**
+   * Interns a list of already-interned elements, so that identical lists (e.g. the transitive
+   * compilation context of many targets) share a single instance.
+   */
+  @SuppressWarnings("unchecked") // lists of different element types are never equal
+  static <T> ImmutableList<T> internList(ImmutableList<T> list) {
+    return (ImmutableList<T>) state.doIntern(list);
+  }
+
   private interface State {
     Label doIntern(Label label);
 
@@ -85,6 +95,8 @@ public final class ProjectDataInterner {
     AndroidResFolder doIntern(AndroidResFolder androidResFolder);
 
     ExecutionRootPath doIntern(ExecutionRootPath executionRootPath);
+
+    ImmutableList<?> doIntern(ImmutableList<?> list);
   }
 
   private static class NoOp implements State {
@@ -122,6 +134,11 @@ public final class ProjectDataInterner {
     public ExecutionRootPath doIntern(ExecutionRootPath executionRootPath) {
       return executionRootPath;
     }
+
+    @Override
+    public ImmutableList<?> doIntern(ImmutableList<?> list) {
+      return list;
+    }
   }
 
   private static class Impl implements State {
@@ -133,6 +150,7 @@ public final class ProjectDataInterner {
     private final Interner<AndroidResFolder> androidResFolderInterner = Interners.newWeakInterner();
     private final Interner<ExecutionRootPath> executionRootPathInterner =
         Interners.newWeakInterner();
+    private final Interner<ImmutableList<?>> listInterner = Interners.newWeakInterner();
 
     @Override
     public Label doIntern(Label label) {
@@ -168,6 +186,11 @@ public final class ProjectDataInterner {
     public ExecutionRootPath doIntern(ExecutionRootPath executionRootPath) {
       return executionRootPathInterner.intern(executionRootPath);
     }
+
+    @Override
+    public ImmutableList<?> doIntern(ImmutableList<?> list) {
+      return list.isEmpty() ? list : listInterner.intern(list);
+    }
   }
 
   static class Updater implements SyncListener {
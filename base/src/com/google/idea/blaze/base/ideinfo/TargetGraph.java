@@ -0,0 +1,184 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.ideinfo;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The dependency graph of a {@link TargetMap}, with each target assigned a dense integer id and
+ * dependency edges stored as primitive adjacency arrays in compressed sparse row layout, so graph
+ * queries don't need to hash {@link TargetKey}s or box ids.
+ *
+ * <p>Targets in the target map have ids {@code 0} to {@code getTargetCount() - 1}. Forward edges
+ * follow the plain target key of each dependency's label, and dependencies missing from the target
+ * map are assigned the remaining ids, as leaves with no dependencies of their own. Reverse edges
+ * are keyed by the exact dependency key, and only connect targets in the target map.
+ */
+public final class TargetGraph {
+
+  /** Returned by {@link #getId} for keys which aren't in the graph. */
+  public static final int NO_ID = -1;
+
+  private final ImmutableList<TargetKey> keys;
+  private final ImmutableMap<TargetKey, Integer> ids;
+  private final int targetCount;
+  private final int[] depOffsets;
+  private final int[] deps;
+  private final int[] rdepOffsets;
+  private final int[] rdeps;
+
+  private TargetGraph(
+      ImmutableList<TargetKey> keys,
+      ImmutableMap<TargetKey, Integer> ids,
+      int targetCount,
+      int[] depOffsets,
+      int[] deps,
+      int[] rdepOffsets,
+      int[] rdeps) {
+    this.keys = keys;
+    this.ids = ids;
+    this.targetCount = targetCount;
+    this.depOffsets = depOffsets;
+    this.deps = deps;
+    this.rdepOffsets = rdepOffsets;
+    this.rdeps = rdeps;
+  }
+
+  static TargetGraph create(ImmutableMap<TargetKey, TargetIdeInfo> targets) {
+    // assign ids to all targets, then to any dependencies missing from the target map
+    Map<TargetKey, Integer> idMap = new LinkedHashMap<>();
+    for (TargetKey key : targets.keySet()) {
+      idMap.put(key, idMap.size());
+    }
+    int targetCount = idMap.size();
+    List<int[]> edges = new ArrayList<>(targetCount);
+    int[] rdepCounts = new int[targetCount];
+    int edgeCount = 0;
+    int rdepCount = 0;
+    for (TargetIdeInfo target : targets.values()) {
+      ImmutableList<Dependency> dependencies = ImmutableList.copyOf(target.getDependencies());
+      int[] depIds = new int[dependencies.size()];
+      for (int i = 0; i < depIds.length; i++) {
+        TargetKey depKey = dependencies.get(i).getTargetKey();
+        TargetKey plainKey = TargetKey.forPlainTarget(depKey.getLabel());
+        Integer id = idMap.putIfAbsent(plainKey, idMap.size());
+        depIds[i] = id != null ? id : idMap.size() - 1;
+
+        Integer exactId = idMap.get(depKey);
+        if (exactId != null && exactId < targetCount) {
+          rdepCounts[exactId]++;
+          rdepCount++;
+        }
+      }
+      edges.add(depIds);
+      edgeCount += depIds.length;
+    }
+    int size = idMap.size();
+    ImmutableList<TargetKey> keys = ImmutableList.copyOf(idMap.keySet());
+
+    int[] depOffsets = new int[size + 1];
+    int[] deps = new int[edgeCount];
+    for (int i = 0; i < targetCount; i++) {
+      int[] depIds = edges.get(i);
+      System.arraycopy(depIds, 0, deps, depOffsets[i], depIds.length);
+      depOffsets[i + 1] = depOffsets[i] + depIds.length;
+    }
+    // missing dependencies are leaves
+    Arrays.fill(depOffsets, targetCount + 1, size + 1, edgeCount);
+
+    // reverse edges, in target order
+    int[] rdepOffsets = new int[targetCount + 1];
+    for (int i = 0; i < targetCount; i++) {
+      rdepOffsets[i + 1] = rdepOffsets[i] + rdepCounts[i];
+    }
+    int[] rdeps = new int[rdepCount];
+    int[] fill = new int[targetCount];
+    int i = 0;
+    for (TargetIdeInfo target : targets.values()) {
+      for (Dependency dep : target.getDependencies()) {
+        Integer id = idMap.get(dep.getTargetKey());
+        if (id != null && id < targetCount) {
+          rdeps[rdepOffsets[id] + fill[id]++] = i;
+        }
+      }
+      i++;
+    }
+    return new TargetGraph(
+        keys, ImmutableMap.copyOf(idMap), targetCount, depOffsets, deps, rdepOffsets, rdeps);
+  }
+
+  /** The number of ids in the graph, including dependencies missing from the target map. */
+  public int size() {
+    return keys.size();
+  }
+
+  /** The number of targets in the target map, which have ids {@code 0} to this count - 1. */
+  public int getTargetCount() {
+    return targetCount;
+  }
+
+  /** Returns the id of the given key, or {@link #NO_ID} if it isn't in the graph. */
+  public int getId(TargetKey key) {
+    Integer id = ids.get(key);
+    return id != null ? id : NO_ID;
+  }
+
+  public TargetKey getKey(int id) {
+    return keys.get(id);
+  }
+
+  /** Returns true if the given id is a target in the target map, rather than a missing leaf. */
+  public boolean isTarget(int id) {
+    return id >= 0 && id < targetCount;
+  }
+
+  public int getDependencyCount(int id) {
+    return depOffsets[id + 1] - depOffsets[id];
+  }
+
+  /** Returns the id of the {@code index}th direct dependency of the given id. */
+  public int getDependency(int id, int index) {
+    return deps[depOffsets[id] + index];
+  }
+
+  public int getReverseDependencyCount(int id) {
+    return isTarget(id) ? rdepOffsets[id + 1] - rdepOffsets[id] : 0;
+  }
+
+  /** Returns the id of the {@code index}th direct reverse dependency of the given target. */
+  public int getReverseDependency(int id, int index) {
+    return rdeps[rdepOffsets[id] + index];
+  }
+
+  /** Returns the targets which directly depend on the given target. */
+  public ImmutableList<TargetKey> getReverseDependencies(TargetKey key) {
+    int id = getId(key);
+    if (!isTarget(id)) {
+      return ImmutableList.of();
+    }
+    ImmutableList.Builder<TargetKey> builder = ImmutableList.builder();
+    for (int e = rdepOffsets[id]; e < rdepOffsets[id + 1]; e++) {
+      builder.add(keys.get(rdeps[e]));
+    }
+    return builder.build();
+  }
+}
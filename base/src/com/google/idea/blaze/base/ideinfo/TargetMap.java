@@ -18,16 +18,53 @@ package com.google.idea.blaze.base.ideinfo;
 import com.google.common.base.Functions;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.devtools.intellij.model.ProjectData;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.Nullable;
 
 /** Map of configured targets (and soon aspects). */
 public final class TargetMap implements ProtoWrapper<ProjectData.TargetMap> {
-  private final ImmutableMap<TargetKey, TargetIdeInfo> targetMap;
+
+  /**
+   * A source of serialized targets which can be decoded individually, allowing a {@link TargetMap}
+   * to be loaded without eagerly parsing every {@link TargetIdeInfo}.
+   */
+  public interface LazyTargetSource {
+    /** The keys of all targets available from this source. */
+    ImmutableSet<TargetKey> keys();
+
+    /** Decodes the target with the given key, or returns null if it can't be decoded. */
+    @Nullable
+    TargetIdeInfo load(TargetKey key);
+  }
+
+  @Nullable private volatile ImmutableMap<TargetKey, TargetIdeInfo> targetMap;
+  @Nullable private final LazyTargetSource lazySource;
+  // targets decoded individually before the full map was materialized
+  private final Map<TargetKey, TargetIdeInfo> decodedTargets;
+  @Nullable private volatile TargetGraph graph;
 
   public TargetMap(ImmutableMap<TargetKey, TargetIdeInfo> targetMap) {
     this.targetMap = targetMap;
+    this.lazySource = null;
+    this.decodedTargets = ImmutableMap.of();
+  }
+
+  private TargetMap(LazyTargetSource lazySource) {
+    this.targetMap = null;
+    this.lazySource = lazySource;
+    this.decodedTargets = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Returns a {@link TargetMap} which decodes targets from the given source on first access. The
+   * full map is only materialized when callers iterate over all targets.
+   */
+  public static TargetMap lazy(LazyTargetSource source) {
+    return new TargetMap(source);
   }
 
   public static TargetMap fromProto(ProjectData.TargetMap proto) {
@@ -41,25 +78,108 @@ public final class TargetMap implements ProtoWrapper<ProjectData.TargetMap> {
   @Override
   public ProjectData.TargetMap toProto() {
     ProjectData.TargetMap.Builder builder = ProjectData.TargetMap.newBuilder();
-    targetMap.values().stream().map(TargetIdeInfo::toProto).forEach(builder::addTargets);
+    map().values().stream().map(TargetIdeInfo::toProto).forEach(builder::addTargets);
     return builder.build();
   }
 
   @Nullable
   public TargetIdeInfo get(TargetKey key) {
-    return targetMap.get(key);
+    ImmutableMap<TargetKey, TargetIdeInfo> targetMap = this.targetMap;
+    if (targetMap != null) {
+      return targetMap.get(key);
+    }
+    return decode(key);
   }
 
   public boolean contains(TargetKey key) {
-    return targetMap.containsKey(key);
+    // targets which can't be decoded are treated as absent, consistent with get()
+    return get(key) != null;
   }
 
   public ImmutableCollection<TargetIdeInfo> targets() {
-    return targetMap.values();
+    return map().values();
   }
 
   public ImmutableMap<TargetKey, TargetIdeInfo> map() {
-    return targetMap;
+    ImmutableMap<TargetKey, TargetIdeInfo> targetMap = this.targetMap;
+    if (targetMap != null) {
+      return targetMap;
+    }
+    synchronized (this) {
+      if (this.targetMap == null) {
+        ImmutableMap.Builder<TargetKey, TargetIdeInfo> builder = ImmutableMap.builder();
+        for (TargetKey key : lazySource.keys()) {
+          TargetIdeInfo target = decode(key);
+          if (target != null) {
+            builder.put(key, target);
+          }
+        }
+        this.targetMap = builder.build();
+        decodedTargets.clear();
+      }
+      return this.targetMap;
+    }
+  }
+
+  /**
+   * Returns the dependency graph of these targets, with integer target ids and primitive adjacency
+   * arrays. It's built from the full map on first use, then shared by all callers.
+   */
+  public TargetGraph graph() {
+    TargetGraph graph = this.graph;
+    if (graph != null) {
+      return graph;
+    }
+    synchronized (this) {
+      if (this.graph == null) {
+        this.graph = TargetGraph.create(map());
+      }
+      return this.graph;
+    }
+  }
+
+  @Nullable
+  private TargetIdeInfo decode(TargetKey key) {
+    if (!lazySource.keys().contains(key)) {
+      return null;
+    }
+    TargetIdeInfo target = decodedTargets.get(key);
+    if (target == null) {
+      target = lazySource.load(key);
+      if (target != null) {
+        decodedTargets.putIfAbsent(key, target);
+      }
+    }
+    return target;
+  }
+
+  /**
+   * Looks up a target without caching it, so that comparisons don't hold on to every decoded
+   * target.
+   */
+  @Nullable
+  public TargetIdeInfo peek(TargetKey key) {
+    ImmutableMap<TargetKey, TargetIdeInfo> targetMap = this.targetMap;
+    if (targetMap != null) {
+      return targetMap.get(key);
+    }
+    TargetIdeInfo target = decodedTargets.get(key);
+    return target != null ? target : lazySource.load(key);
+  }
+
+  /**
+   * Returns the target if it's already been decoded, without decoding it. Lazily-loaded targets
+   * which haven't been accessed yet return null.
+   */
+  @Nullable
+  public TargetIdeInfo getIfDecoded(TargetKey key) {
+    ImmutableMap<TargetKey, TargetIdeInfo> targetMap = this.targetMap;
+    return targetMap != null ? targetMap.get(key) : decodedTargets.get(key);
+  }
+
+  /** The keys of all targets, including any lazily-loaded targets which can't be decoded. */
+  public ImmutableSet<TargetKey> declaredKeys() {
+    return lazySource != null ? lazySource.keys() : targetMap.keySet();
   }
 
   @Override
@@ -71,11 +191,24 @@ public final class TargetMap implements ProtoWrapper<ProjectData.TargetMap> {
       return false;
     }
     TargetMap other = (TargetMap) o;
-    return Objects.equals(targetMap, other.targetMap);
+    if (lazySource != null && lazySource == other.lazySource) {
+      return true;
+    }
+    // compares targets one at a time, rather than materializing lazily-loaded maps
+    ImmutableSet<TargetKey> keys = declaredKeys();
+    if (!keys.equals(other.declaredKeys())) {
+      return false;
+    }
+    for (TargetKey key : keys) {
+      if (!Objects.equals(peek(key), other.peek(key))) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(targetMap);
+    return declaredKeys().hashCode();
   }
 }
@@ -17,13 +17,22 @@ package com.google.idea.blaze.base.io;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.idea.blaze.base.prefetch.FetchExecutor;
+import com.google.idea.common.experiments.BoolExperiment;
 import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Collection;
 import java.util.concurrent.ExecutionException;
 
 /** Reads the last modified times from a list of files. */
 public class ModifiedTimeScanner {
 
+  /**
+   * Whether to group files by directory, reading the timestamps of each directory's files in one
+   * pass rather than submitting a task per file.
+   */
+  private static final BoolExperiment groupByDirectory =
+      new BoolExperiment("blaze.modified.time.scanner.group.by.directory", false);
+
   private static final class TimestampReader
       implements FileAttributeScanner.AttributeReader<File, Long> {
 
@@ -44,11 +53,29 @@ public class ModifiedTimeScanner {
     }
   }
 
+  private static final FileAttributeScanner.AttributeReader<BasicFileAttributes, Long>
+      ATTRIBUTES_TIMESTAMP_READER =
+          new FileAttributeScanner.AttributeReader<BasicFileAttributes, Long>() {
+            @Override
+            public Long getAttribute(BasicFileAttributes attributes) {
+              return attributes.lastModifiedTime().toMillis();
+            }
+
+            @Override
+            public boolean isValid(Long timestamp) {
+              return timestamp != 0;
+            }
+          };
+
   public static ImmutableMap<File, Long> readTimestamps(Collection<File> files)
       throws InterruptedException, ExecutionException {
     if (files.isEmpty()) {
       return ImmutableMap.of();
     }
+    if (groupByDirectory.getValue()) {
+      return FileAttributeScanner.readAttributesByDirectory(
+          files, ATTRIBUTES_TIMESTAMP_READER, FetchExecutor.EXECUTOR);
+    }
     final TimestampReader timestampReader =
         new TimestampReader(FileOperationProvider.getInstance());
     return FileAttributeScanner.readAttributes(files, timestampReader, FetchExecutor.EXECUTOR);
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.globbing;
+
+import com.google.common.base.Splitter;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * A glob pattern compiled into per-segment matchers, expanding "*" and "?" as wildcards within a
+ * path segment, and "**" as zero or more complete path segments.
+ *
+ * <p>Matching doesn't use regular expressions. The common segment forms ("*", "*.ext", "prefix*"
+ * and literals) are matched with simple string comparisons.
+ *
+ * <p>Compiled patterns are shared via a bounded cache; see {@link #forPattern}.
+ */
+public final class GlobMatcher {
+
+  private static final int MAX_CACHED_PATTERNS = 1000;
+
+  private static final LoadingCache<String, GlobMatcher> cache =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_CACHED_PATTERNS)
+          .build(CacheLoader.from(GlobMatcher::new));
+
+  private static final String RECURSIVE_WILDCARD = "**";
+
+  /** Returns the compiled form of the given glob pattern. */
+  public static GlobMatcher forPattern(String pattern) {
+    return cache.getUnchecked(pattern);
+  }
+
+  private final ImmutableList<String> segments;
+  private final ImmutableList<Predicate<String>> segmentMatchers;
+
+  private GlobMatcher(String pattern) {
+    segments = ImmutableList.copyOf(Splitter.on('/').split(pattern));
+    segmentMatchers =
+        segments.stream().map(GlobMatcher::compileSegment).collect(ImmutableList.toImmutableList());
+  }
+
+  /** Returns whether the given '/'-separated relative path matches this pattern. */
+  public boolean matches(String path) {
+    if (path.isEmpty() || segments.get(0).isEmpty()) {
+      return false;
+    }
+    int count = segments.size();
+    if (count == 1) {
+      return segmentMatchers.get(0).test(path)
+          && (isRecursive(0) || path.indexOf('/') < 0);
+    }
+    if (count == 2 && isRecursive(0) && !isRecursive(1)) {
+      // common case: **/<segment>
+      return segmentMatchers.get(1).test(path.substring(path.lastIndexOf('/') + 1));
+    }
+    return matchesSegments(Splitter.on('/').splitToList(path));
+  }
+
+  /**
+   * Matches path segments against the pattern segments, with "**" matching any number of path
+   * segments. Backtracks to the most recent "**" on a mismatch, in the same way as the single
+   * segment wildcard matching below.
+   */
+  private boolean matchesSegments(List<String> names) {
+    int p = 0;
+    int n = 0;
+    int recursiveP = -1;
+    int recursiveN = 0;
+    while (n < names.size()) {
+      if (p < segments.size() && isRecursive(p)) {
+        recursiveP = p++;
+        recursiveN = n;
+      } else if (p < segments.size() && segmentMatchers.get(p).test(names.get(n))) {
+        p++;
+        n++;
+      } else if (recursiveP >= 0) {
+        p = recursiveP + 1;
+        n = ++recursiveN;
+      } else {
+        return false;
+      }
+    }
+    while (p < segments.size() && isRecursive(p)) {
+      p++;
+    }
+    return p == segments.size();
+  }
+
+  int segmentCount() {
+    return segments.size();
+  }
+
+  String getSegment(int index) {
+    return segments.get(index);
+  }
+
+  /** Whether the given segment is "**", matching zero or more complete path segments. */
+  boolean isRecursive(int index) {
+    return segments.get(index).equals(RECURSIVE_WILDCARD);
+  }
+
+  /** Whether the given segment contains wildcards, or can only match one literal name. */
+  boolean hasWildcard(int index) {
+    String segment = segments.get(index);
+    return segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0;
+  }
+
+  /** Returns whether a single file name matches the given segment of this pattern. */
+  boolean matchesSegment(int index, String name) {
+    return segmentMatchers.get(index).test(name);
+  }
+
+  private static Predicate<String> compileSegment(String pattern) {
+    if (pattern.equals("*") || pattern.equals(RECURSIVE_WILDCARD)) {
+      return name -> !name.isEmpty();
+    }
+    int firstStar = pattern.indexOf('*');
+    int lastStar = pattern.lastIndexOf('*');
+    boolean hasQuestionMark = pattern.indexOf('?') >= 0;
+    if (firstStar < 0 && !hasQuestionMark) {
+      return pattern::equals;
+    }
+    Predicate<String> matcher;
+    if (!hasQuestionMark && firstStar == lastStar && firstStar == 0) {
+      // common case: *.xyz
+      String suffix = pattern.substring(1);
+      matcher = name -> name.endsWith(suffix);
+    } else if (!hasQuestionMark && firstStar == lastStar && firstStar == pattern.length() - 1) {
+      // common case: xyz*
+      String prefix = pattern.substring(0, firstStar);
+      matcher = name -> name.startsWith(prefix);
+    } else {
+      matcher = name -> matchesWildcard(pattern, name);
+    }
+    if (pattern.charAt(0) == '.') {
+      return matcher;
+    }
+    // If a file name starts with '.', this char must be matched explicitly.
+    return name -> !name.isEmpty() && name.charAt(0) != '.' && matcher.test(name);
+  }
+
+  /**
+   * Matches a single path segment against a pattern in which "*" and "?" are wildcards. On a
+   * mismatch, the most recent "*" is extended by one character and matching resumes from there.
+   */
+  private static boolean matchesWildcard(String pattern, String name) {
+    int p = 0;
+    int n = 0;
+    int starP = -1;
+    int starN = 0;
+    while (n < name.length()) {
+      char c = p < pattern.length() ? pattern.charAt(p) : 0;
+      if (c == '*') {
+        starP = p++;
+        starN = n;
+      } else if (p < pattern.length() && (c == '?' || c == name.charAt(n))) {
+        p++;
+        n++;
+      } else if (starP >= 0) {
+        p = starP + 1;
+        n = ++starN;
+      } else {
+        return false;
+      }
+    }
+    while (p < pattern.length() && pattern.charAt(p) == '*') {
+      p++;
+    }
+    return p == pattern.length();
+  }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.globbing;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.idea.blaze.base.io.FileOperationProvider;
+import com.google.idea.common.experiments.BoolExperiment;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
+
+/**
+ * Caches the results of BUILD file globs, so that they're only evaluated again once the contents
+ * of the globbed directory change.
+ *
+ * <p>Globs are evaluated on disk, and the directories they traverse needn't be loaded in the VFS,
+ * so VFS events alone can't be relied on to invalidate entries. Each entry therefore records the
+ * modification time of every directory the glob visited, and is only used while none of those
+ * have changed. Adding, removing or renaming an entry updates its directory's modification time,
+ * whereas changes to file contents don't affect glob results.
+ *
+ * <p>Entries are also dropped eagerly in response to VFS events which add, remove or rename files
+ * under the globbed directory.
+ */
+public class GlobResultCache {
+
+  private static final BoolExperiment enabled =
+      new BoolExperiment("build.file.glob.result.cache", false);
+
+  private static final int MAX_CACHED_GLOBS = 500;
+
+  /**
+   * Results are only cached if none of the visited directories were modified within this long
+   * before the glob was evaluated. Otherwise a later change could leave the coarse-grained
+   * modification time unchanged on some file systems.
+   */
+  private static final long MODIFIED_TIME_RESOLUTION_MS = 2000;
+
+  /** Evaluates a glob, only traversing directories accepted by the given filter. */
+  public interface Evaluator {
+    List<File> evaluate(Predicate<File> directoryFilter) throws Exception;
+  }
+
+  public static GlobResultCache getInstance(Project project) {
+    return ServiceManager.getService(project, GlobResultCache.class);
+  }
+
+  private final Cache<GlobKey, CachedGlob> cache =
+      CacheBuilder.newBuilder().maximumSize(MAX_CACHED_GLOBS).build();
+
+  /**
+   * Incremented on every invalidation. Results computed while an invalidation was in progress are
+   * not cached, as they may have missed the change.
+   */
+  private final AtomicLong modificationCount = new AtomicLong();
+
+  public GlobResultCache(Project project) {
+    project
+        .getMessageBus()
+        .connect()
+        .subscribe(
+            VirtualFileManager.VFS_CHANGES,
+            new BulkFileListener() {
+              @Override
+              public void after(List<? extends VFileEvent> events) {
+                invalidate(events);
+              }
+            });
+  }
+
+  /**
+   * Returns the cached result of the glob with the given base directory and arguments, or else
+   * evaluates it with {@code evaluator} and caches the result.
+   *
+   * <p>The evaluator must only traverse directories accepted by the filter it's passed, which
+   * delegates to {@code directoryFilter} and records the directories visited.
+   */
+  public List<File> glob(
+      File packageDirectory,
+      List<String> includes,
+      List<String> excludes,
+      boolean excludeDirectories,
+      Predicate<File> directoryFilter,
+      Evaluator evaluator)
+      throws Exception {
+    if (!enabled.getValue()) {
+      return evaluator.evaluate(directoryFilter);
+    }
+    GlobKey key =
+        GlobKey.create(
+            packageDirectory.getPath(),
+            ImmutableList.copyOf(includes),
+            ImmutableList.copyOf(excludes),
+            excludeDirectories);
+    FileOperationProvider files = FileOperationProvider.getInstance();
+    CachedGlob cached = cache.getIfPresent(key);
+    if (cached != null) {
+      if (cached.isUpToDate(files)) {
+        return cached.files;
+      }
+      cache.asMap().remove(key, cached);
+    }
+    long stamp = modificationCount.get();
+    long start = System.currentTimeMillis();
+    Map<File, Long> visitedDirectories = new ConcurrentHashMap<>();
+    // the glob doesn't visit a missing package directory, but its result changes once it's created
+    visitedDirectories.put(packageDirectory, files.getFileModifiedTime(packageDirectory));
+    ImmutableList<File> result =
+        ImmutableList.copyOf(
+            evaluator.evaluate(
+                dir -> {
+                  // recorded even when rejected: adding or removing a BUILD file changes whether
+                  // a subdirectory is traversed
+                  visitedDirectories.put(dir, files.getFileModifiedTime(dir));
+                  return directoryFilter.test(dir);
+                }));
+    boolean recentlyModified =
+        visitedDirectories.values().stream()
+            .anyMatch(time -> time >= start - MODIFIED_TIME_RESOLUTION_MS);
+    if (recentlyModified) {
+      return result;
+    }
+    CachedGlob entry = new CachedGlob(result, ImmutableMap.copyOf(visitedDirectories));
+    synchronized (this) {
+      if (stamp == modificationCount.get()) {
+        cache.put(key, entry);
+      }
+    }
+    return result;
+  }
+
+  private void invalidate(List<? extends VFileEvent> events) {
+    if (cache.size() == 0) {
+      return;
+    }
+    // directories containing an added, removed or renamed file
+    Set<String> changedDirectories = new HashSet<>();
+    // files or directories which were removed or renamed, along with everything under them
+    List<String> removedRoots = new ArrayList<>();
+    for (VFileEvent event : events) {
+      if (event instanceof VFileContentChangeEvent) {
+        continue;
+      }
+      if (event instanceof VFilePropertyChangeEvent) {
+        VFilePropertyChangeEvent propertyChange = (VFilePropertyChangeEvent) event;
+        if (!VirtualFile.PROP_NAME.equals(propertyChange.getPropertyName())) {
+          continue;
+        }
+        VirtualFile parent = propertyChange.getFile().getParent();
+        if (parent != null) {
+          removedRoots.add(parent.getPath() + "/" + propertyChange.getOldValue());
+        }
+      } else if (event instanceof VFileMoveEvent) {
+        String oldPath = ((VFileMoveEvent) event).getOldPath();
+        removedRoots.add(oldPath);
+        addParentDirectories(oldPath, changedDirectories);
+      } else if (event instanceof VFileDeleteEvent) {
+        removedRoots.add(event.getPath());
+      }
+      addParentDirectories(event.getPath(), changedDirectories);
+    }
+    if (changedDirectories.isEmpty()) {
+      return;
+    }
+    synchronized (this) {
+      modificationCount.incrementAndGet();
+      cache
+          .asMap()
+          .keySet()
+          .removeIf(
+              key ->
+                  changedDirectories.contains(key.packageDirectory())
+                      || isUnderAny(key.packageDirectory(), removedRoots));
+    }
+  }
+
+  private static void addParentDirectories(String path, Set<String> directories) {
+    // once a directory is already present, so are all its ancestors
+    String dir = parent(path);
+    while (dir != null && directories.add(dir)) {
+      dir = parent(dir);
+    }
+  }
+
+  @Nullable
+  private static String parent(String path) {
+    int index = path.lastIndexOf('/');
+    return index > 0 ? path.substring(0, index) : null;
+  }
+
+  private static boolean isUnderAny(String path, List<String> roots) {
+    for (String root : roots) {
+      if (path.equals(root) || path.startsWith(root + "/")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** A glob result, and the modification times of the directories visited to compute it. */
+  private static final class CachedGlob {
+    private final ImmutableList<File> files;
+    private final ImmutableMap<File, Long> directoryModifiedTimes;
+
+    CachedGlob(ImmutableList<File> files, ImmutableMap<File, Long> directoryModifiedTimes) {
+      this.files = files;
+      this.directoryModifiedTimes = directoryModifiedTimes;
+    }
+
+    boolean isUpToDate(FileOperationProvider fileOperationProvider) {
+      for (Map.Entry<File, Long> entry : directoryModifiedTimes.entrySet()) {
+        if (fileOperationProvider.getFileModifiedTime(entry.getKey()) != entry.getValue()) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /** The base directory and arguments of a glob. */
+  @AutoValue
+  abstract static class GlobKey {
+    abstract String packageDirectory();
+
+    abstract ImmutableList<String> includes();
+
+    abstract ImmutableList<String> excludes();
+
+    abstract boolean excludeDirectories();
+
+    static GlobKey create(
+        String packageDirectory,
+        ImmutableList<String> includes,
+        ImmutableList<String> excludes,
+        boolean excludeDirectories) {
+      return new AutoValue_GlobResultCache_GlobKey(
+          packageDirectory, includes, excludes, excludeDirectories);
+    }
+  }
+}
@@ -18,6 +18,7 @@ package com.google.idea.blaze.base.lang.buildfile.psi;
 import com.google.idea.blaze.base.lang.buildfile.language.BuildFileType;
 import com.google.idea.blaze.base.lang.buildfile.references.QuoteType;
 import com.google.idea.blaze.base.lang.buildfile.search.BlazePackage;
+import com.google.idea.blaze.base.lang.buildfile.search.BuildSymbolIndex;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.google.idea.blaze.base.sync.workspace.WorkspaceHelper;
 import com.intellij.extapi.psi.PsiFileBase;
@@ -131,6 +132,10 @@ public class BuildFile extends PsiFileBase implements BuildElement, DocStringOwn
   /** Finds a top-level rule with a "name" keyword argument with the given value. */
   @Nullable
   public FuncallExpression findRule(String name) {
+    // avoid parsing files which the index shows don't declare the rule
+    if (!isContentsLoaded() && !BuildSymbolIndex.mayDeclareRule(this, name)) {
+      return null;
+    }
     for (FuncallExpression expr : findChildrenByClass(FuncallExpression.class)) {
       String ruleName = expr.getNameArgumentValue();
       if (name.equals(ruleName)) {
@@ -142,6 +147,9 @@ public class BuildFile extends PsiFileBase implements BuildElement, DocStringOwn
 
   @Nullable
   public FunctionStatement findDeclaredFunction(String name) {
+    if (!isContentsLoaded() && !BuildSymbolIndex.mayDeclareFunction(this, name)) {
+      return null;
+    }
     for (FunctionStatement fn : getFunctionDeclarations()) {
       if (name.equals(fn.getName())) {
         return fn;
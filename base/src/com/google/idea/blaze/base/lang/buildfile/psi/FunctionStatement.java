@@ -15,10 +15,17 @@
  */
 package com.google.idea.blaze.base.lang.buildfile.psi;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.idea.blaze.base.lang.buildfile.psi.BuildFile.BlazeFileType;
 import com.google.idea.blaze.base.lang.buildfile.references.QuoteType;
+import com.google.idea.blaze.base.lang.buildfile.search.BuildSymbolIndex;
 import com.intellij.lang.ASTNode;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.SearchScope;
 import com.intellij.util.PlatformIcons;
+import java.util.Set;
 import javax.annotation.Nullable;
 import javax.swing.Icon;
 
@@ -41,6 +48,46 @@ public class FunctionStatement extends NamedBuildElement
     return PlatformIcons.FUNCTION_ICON;
   }
 
+  /**
+   * A top-level function in a Skylark extension can only be referenced from its own file, or from
+   * files which load it. Private functions can't be loaded, so are only used in their own file.
+   */
+  @Override
+  public SearchScope getUseScope() {
+    SearchScope scope = super.getUseScope();
+    String name = getName();
+    BuildFile file = getContainingFile();
+    VirtualFile vf = file != null ? file.getVirtualFile() : null;
+    if (name == null
+        || vf == null
+        || !(scope instanceof GlobalSearchScope)
+        || getParent() != file
+        || !isLoadableExtension(file)) {
+      return scope;
+    }
+    if (name.startsWith("_")) {
+      return GlobalSearchScope.fileScope(getProject(), vf);
+    }
+    Set<VirtualFile> loadingFiles =
+        BuildSymbolIndex.getFilesLoadingSymbol(getProject(), name, (GlobalSearchScope) scope);
+    if (loadingFiles == null) {
+      return scope;
+    }
+    return GlobalSearchScope.filesScope(
+        getProject(),
+        ImmutableSet.<VirtualFile>builder().add(vf).addAll(loadingFiles).build());
+  }
+
+  /**
+   * Whether functions in this file are only visible elsewhere via load statements. Functions in
+   * other Skylark files (e.g. the prelude) can be visible without one.
+   */
+  private static boolean isLoadableExtension(@Nullable BuildFile file) {
+    return file != null
+        && file.getBlazeFileType() == BlazeFileType.SkylarkExtension
+        && file.getName().endsWith(".bzl");
+  }
+
   @Nullable
   public ParameterList getParameterList() {
     return getPsiChild(BuildElementTypes.PARAMETER_LIST, ParameterList.class);
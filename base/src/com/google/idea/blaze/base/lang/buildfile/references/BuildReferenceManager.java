@@ -15,17 +15,18 @@
  */
 package com.google.idea.blaze.base.lang.buildfile.references;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
-import com.google.idea.blaze.base.bazel.BuildSystemProvider;
 import com.google.idea.blaze.base.io.FileOperationProvider;
 import com.google.idea.blaze.base.io.VirtualFileSystemProvider;
 import com.google.idea.blaze.base.lang.buildfile.completion.BuildLookupElement;
 import com.google.idea.blaze.base.lang.buildfile.psi.BuildFile;
 import com.google.idea.blaze.base.lang.buildfile.psi.FuncallExpression;
+import com.google.idea.blaze.base.lang.buildfile.references.FileLookupData.PathFormat;
+import com.google.idea.blaze.base.lang.buildfile.search.BuildPackageIndex;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.google.idea.blaze.base.model.primitives.TargetName;
 import com.google.idea.blaze.base.model.primitives.WorkspacePath;
-import com.google.idea.blaze.base.settings.Blaze;
 import com.google.idea.blaze.base.sync.workspace.WorkspaceHelper;
 import com.google.idea.blaze.base.sync.workspace.WorkspacePathResolver;
 import com.google.idea.blaze.base.sync.workspace.WorkspacePathResolverProvider;
@@ -42,6 +43,7 @@ import com.intellij.psi.PsiManager;
 import com.intellij.util.PathUtil;
 import java.io.File;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import javax.annotation.Nullable;
 
@@ -161,11 +163,11 @@ public class BuildReferenceManager {
     }
     BuildLookupElement[] uniqueLookup = new BuildLookupElement[1];
     while (true) {
-      VirtualFile[] children = vf.getChildren();
-      if (children == null || children.length == 0) {
+      Collection<VirtualFile> children = getLookupCandidates(vf, lookupData);
+      if (children.isEmpty()) {
         return uniqueLookup[0] != null ? uniqueLookup : BuildLookupElement.EMPTY_ARRAY;
       }
-      List<VirtualFile> validChildren = Lists.newArrayListWithCapacity(children.length);
+      List<VirtualFile> validChildren = Lists.newArrayListWithCapacity(children.size());
       for (VirtualFile child : children) {
         ProgressManager.checkCanceled();
         if (child.getName().startsWith(pathFragment) && lookupData.acceptFile(project, child)) {
@@ -179,7 +181,7 @@ public class BuildReferenceManager {
         return uniqueLookup[0] != null ? uniqueLookup : lookupsForFiles(validChildren, lookupData);
       }
       // if we've already traversed a directory and this is a BUILD package, stop here
-      if (uniqueLookup[0] != null && hasBuildFile(children)) {
+      if (uniqueLookup[0] != null && isBlazePackage(vf)) {
         return uniqueLookup;
       }
       // otherwise continue traversing while there's only one option
@@ -189,9 +191,25 @@ public class BuildReferenceManager {
     }
   }
 
-  private boolean hasBuildFile(VirtualFile[] children) {
-    BuildSystemProvider provider = Blaze.getBuildSystemProvider(project);
-    return Arrays.stream(children).anyMatch(f -> provider.isBuildFile(f.getName()));
+  /**
+   * Labels referencing other packages can only traverse directories which lead to a package, and
+   * the package index lists those without loading all the directory's children.
+   */
+  private Collection<VirtualFile> getLookupCandidates(
+      VirtualFile directory, FileLookupData lookupData) {
+    if (lookupData.pathFormat == PathFormat.NonLocal) {
+      Collection<VirtualFile> packagePaths =
+          BuildPackageIndex.getInstance(project).getPackagePathChildren(directory);
+      if (packagePaths != null) {
+        return packagePaths;
+      }
+    }
+    VirtualFile[] children = directory.getChildren();
+    return children != null ? Arrays.asList(children) : ImmutableList.of();
+  }
+
+  private boolean isBlazePackage(VirtualFile directory) {
+    return BuildPackageIndex.getInstance(project).findBuildFile(directory) != null;
   }
 
   private BuildLookupElement[] lookupsForFiles(List<VirtualFile> files, FileLookupData lookupData) {
@@ -231,7 +249,7 @@ public class BuildReferenceManager {
     if (vf == null) {
       return null;
     }
-    VirtualFile buildFile = Blaze.getBuildSystemProvider(project).findBuildFileInDirectory(vf);
+    VirtualFile buildFile = BuildPackageIndex.getInstance(project).findBuildFile(vf);
     if (buildFile == null) {
       return null;
     }
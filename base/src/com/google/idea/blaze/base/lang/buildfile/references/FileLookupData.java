@@ -19,9 +19,9 @@ import com.google.idea.blaze.base.lang.buildfile.completion.FilePathLookupElemen
 import com.google.idea.blaze.base.lang.buildfile.psi.BuildFile;
 import com.google.idea.blaze.base.lang.buildfile.psi.StringLiteral;
 import com.google.idea.blaze.base.lang.buildfile.search.BlazePackage;
+import com.google.idea.blaze.base.lang.buildfile.search.BuildPackageIndex;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.google.idea.blaze.base.model.primitives.WorkspacePath;
-import com.google.idea.blaze.base.settings.Blaze;
 import com.intellij.icons.AllIcons;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.NullableLazyValue;
@@ -152,8 +152,7 @@ public class FileLookupData {
     if (file.equals(containingFile.getOriginalFile().getVirtualFile())) {
       return false;
     }
-    boolean blazePackage =
-        Blaze.getBuildSystemProvider(project).findBuildFileInDirectory(file) != null;
+    boolean blazePackage = BuildPackageIndex.getInstance(project).findBuildFile(file) != null;
     return !blazePackage;
   }
 
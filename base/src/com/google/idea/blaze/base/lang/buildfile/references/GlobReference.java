@@ -18,6 +18,8 @@ package com.google.idea.blaze.base.lang.buildfile.references;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.idea.blaze.base.bazel.BuildSystemProvider;
+import com.google.idea.blaze.base.lang.buildfile.globbing.GlobMatcher;
+import com.google.idea.blaze.base.lang.buildfile.globbing.GlobResultCache;
 import com.google.idea.blaze.base.lang.buildfile.globbing.UnixGlob;
 import com.google.idea.blaze.base.lang.buildfile.psi.BuildFile;
 import com.google.idea.blaze.base.lang.buildfile.psi.Expression;
@@ -62,12 +64,12 @@ public class GlobReference extends PsiPolyVariantCachingReference {
       return false;
     }
     for (String exclude : resolveListContents(element.getExcludes())) {
-      if (UnixGlob.matches(exclude, packageRelativePath)) {
+      if (GlobMatcher.forPattern(exclude).matches(packageRelativePath)) {
         return false;
       }
     }
     for (String include : resolveListContents(element.getIncludes())) {
-      if (UnixGlob.matches(include, packageRelativePath)) {
+      if (GlobMatcher.forPattern(include).matches(packageRelativePath)) {
         return true;
       }
     }
@@ -83,12 +85,12 @@ public class GlobReference extends PsiPolyVariantCachingReference {
       return false;
     }
     for (String exclude : resolveListContents(element.getExcludes())) {
-      if (UnixGlob.matches(exclude, packageRelativePath)) {
+      if (GlobMatcher.forPattern(exclude).matches(packageRelativePath)) {
         return false;
       }
     }
     for (String include : resolveListContents(element.getIncludes())) {
-      if (!hasWildcard(include) && UnixGlob.matches(include, packageRelativePath)) {
+      if (!hasWildcard(include) && GlobMatcher.forPattern(include).matches(packageRelativePath)) {
         return true;
       }
     }
@@ -114,12 +116,20 @@ public class GlobReference extends PsiPolyVariantCachingReference {
     Project project = element.getProject();
     try {
       List<File> files =
-          UnixGlob.forPath(containingDirectory)
-              .addPatterns(includes)
-              .addExcludes(excludes)
-              .setExcludeDirectories(directoriesExcluded)
-              .setDirectoryFilter(directoryFilter(project, containingDirectory.getPath()))
-              .glob();
+          GlobResultCache.getInstance(project)
+              .glob(
+                  containingDirectory,
+                  includes,
+                  excludes,
+                  directoriesExcluded,
+                  directoryFilter(project, containingDirectory.getPath()),
+                  filter ->
+                      UnixGlob.forPath(containingDirectory)
+                          .addPatterns(includes)
+                          .addExcludes(excludes)
+                          .setExcludeDirectories(directoriesExcluded)
+                          .setDirectoryFilter(filter)
+                          .glob());
 
       List<ResolveResult> results = Lists.newArrayListWithCapacity(files.size());
       for (File file : files) {
@@ -69,8 +69,7 @@ public class BlazePackage {
   public static BlazePackage getContainingPackage(@Nullable PsiDirectory dir) {
     while (dir != null) {
       VirtualFile buildFile =
-          Blaze.getBuildSystemProvider(dir.getProject())
-              .findBuildFileInDirectory(dir.getVirtualFile());
+          BuildPackageIndex.getInstance(dir.getProject()).findBuildFile(dir.getVirtualFile());
       if (buildFile != null) {
         PsiFile psiFile = dir.getManager().findFile(buildFile);
         if (psiFile != null) {
@@ -163,8 +162,7 @@ public class BlazePackage {
   }
 
   public static boolean isBlazePackage(PsiDirectory dir) {
-    return Blaze.getBuildSystemProvider(dir.getProject())
-            .findBuildFileInDirectory(dir.getVirtualFile())
+    return BuildPackageIndex.getInstance(dir.getProject()).findBuildFile(dir.getVirtualFile())
         != null;
   }
 
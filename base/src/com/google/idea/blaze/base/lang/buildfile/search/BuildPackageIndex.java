@@ -0,0 +1,326 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.search;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.google.idea.blaze.base.bazel.BuildSystemProvider;
+import com.google.idea.blaze.base.io.VirtualFileSystemProvider;
+import com.google.idea.blaze.base.settings.Blaze;
+import com.google.idea.common.experiments.BoolExperiment;
+import com.intellij.ProjectTopics;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootEvent;
+import com.intellij.openapi.roots.ModuleRootListener;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import com.intellij.psi.search.FilenameIndex;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.PathUtil;
+import com.intellij.util.messages.MessageBusConnection;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * The blaze package directories in the project, mapped to their BUILD files, so that package
+ * lookups don't need to search directories for BUILD files or list their children.
+ *
+ * <p>The index is populated in the background from the persistent {@link FilenameIndex}, then kept
+ * up to date from VFS events. It only covers directories in the project content; lookups for any
+ * other directory (or before the index has been populated) fall back to searching the directory.
+ */
+public class BuildPackageIndex {
+
+  private static final BoolExperiment enabled =
+      new BoolExperiment("build.file.package.index", false);
+
+  private static final Logger logger = Logger.getInstance(BuildPackageIndex.class);
+
+  public static BuildPackageIndex getInstance(Project project) {
+    return ServiceManager.getService(project, BuildPackageIndex.class);
+  }
+
+  private final Project project;
+
+  /** Maps each package directory to its BUILD file. */
+  private final Map<VirtualFile, VirtualFile> buildFiles = new ConcurrentHashMap<>();
+
+  /**
+   * Maps directories to their children which are packages or contain packages, so package path
+   * completion doesn't need to list every child directory.
+   */
+  private final Map<VirtualFile, Set<VirtualFile>> packageChildren = new ConcurrentHashMap<>();
+
+  /** The number of packages at or under each directory. Guarded by {@code this}. */
+  private final Map<VirtualFile, Integer> packageCounts = new HashMap<>();
+
+  private volatile boolean populated = false;
+  private final AtomicBoolean populating = new AtomicBoolean(false);
+
+  /**
+   * Incremented whenever the set of packages may have changed. If this happens while the index is
+   * being populated, the results are discarded, and population is retried on the next lookup.
+   */
+  private final AtomicLong modificationCount = new AtomicLong();
+
+  public BuildPackageIndex(Project project) {
+    this.project = project;
+    MessageBusConnection connection = project.getMessageBus().connect();
+    connection.subscribe(
+        VirtualFileManager.VFS_CHANGES,
+        new BulkFileListener() {
+          @Override
+          public void after(List<? extends VFileEvent> events) {
+            processEvents(events);
+          }
+        });
+    connection.subscribe(
+        ProjectTopics.PROJECT_ROOTS,
+        new ModuleRootListener() {
+          @Override
+          public void rootsChanged(ModuleRootEvent event) {
+            // the project content has changed, so the index needs to be rebuilt from scratch
+            invalidate();
+          }
+        });
+  }
+
+  /** Returns the BUILD file in the given directory, or null if it isn't a blaze package. */
+  @Nullable
+  public VirtualFile findBuildFile(VirtualFile directory) {
+    if (isIndexed(directory)) {
+      VirtualFile buildFile = buildFiles.get(directory);
+      if (buildFile == null || buildFile.isValid()) {
+        return buildFile;
+      }
+    }
+    return Blaze.getBuildSystemProvider(project).findBuildFileInDirectory(directory);
+  }
+
+  /**
+   * Returns the children of the given directory which are blaze packages or contain blaze
+   * packages, or null if the directory isn't indexed.
+   */
+  @Nullable
+  public Collection<VirtualFile> getPackagePathChildren(VirtualFile directory) {
+    if (!isIndexed(directory)) {
+      return null;
+    }
+    Set<VirtualFile> children = packageChildren.get(directory);
+    return children != null ? ImmutableList.copyOf(children) : ImmutableList.of();
+  }
+
+  private boolean isIndexed(VirtualFile directory) {
+    if (!enabled.getValue() || DumbService.isDumb(project)) {
+      return false;
+    }
+    if (!populated) {
+      populateInBackground();
+      return false;
+    }
+    return ProjectFileIndex.getInstance(project).isInContent(directory);
+  }
+
+  private void invalidate() {
+    modificationCount.incrementAndGet();
+    populated = false;
+  }
+
+  /**
+   * Populates the index on a pooled thread once indexing is complete, rather than blocking the
+   * lookup which found it unpopulated.
+   */
+  private void populateInBackground() {
+    if (populating.getAndSet(true)) {
+      return;
+    }
+    ApplicationManager.getApplication()
+        .executeOnPooledThread(
+            () -> {
+              try {
+                if (!project.isDisposed()) {
+                  DumbService.getInstance(project).runReadActionInSmartMode(this::populate);
+                }
+              } finally {
+                populating.set(false);
+              }
+            });
+  }
+
+  /** Populates the index from the project's BUILD files. Must be called from a read action. */
+  @VisibleForTesting
+  boolean populate() {
+    long stamp = modificationCount.get();
+    long start = System.currentTimeMillis();
+    Map<VirtualFile, VirtualFile> found = new HashMap<>();
+    GlobalSearchScope scope = GlobalSearchScope.projectScope(project);
+    // earlier names take precedence, matching BuildSystemProvider#findBuildFileInDirectory
+    for (String name : Blaze.getBuildSystemProvider(project).possibleBuildFileNames()) {
+      for (VirtualFile buildFile : FilenameIndex.getVirtualFilesByName(project, name, scope)) {
+        VirtualFile parent = buildFile.getParent();
+        if (parent != null) {
+          found.putIfAbsent(parent, buildFile);
+        }
+      }
+    }
+    synchronized (this) {
+      if (stamp != modificationCount.get()) {
+        return false;
+      }
+      buildFiles.clear();
+      buildFiles.putAll(found);
+      rebuildPackageTree();
+      populated = true;
+    }
+    logger.info(
+        String.format(
+            "Indexed %d packages in %d ms", found.size(), System.currentTimeMillis() - start));
+    return true;
+  }
+
+  @VisibleForTesting
+  void processEvents(List<? extends VFileEvent> events) {
+    BuildSystemProvider provider = Blaze.getBuildSystemProvider(project);
+    boolean directoryRemoved = false;
+    for (VFileEvent event : events) {
+      if (event instanceof VFileContentChangeEvent) {
+        continue;
+      }
+      if (event instanceof VFileDeleteEvent) {
+        VirtualFile file = event.getFile();
+        if (file.isDirectory()) {
+          directoryRemoved = true;
+        } else if (provider.isBuildFile(file.getName())) {
+          // the deleted file is no longer valid, so look up its parent by path
+          update(
+              provider,
+              VirtualFileSystemProvider.getInstance()
+                  .getSystem()
+                  .findFileByPath(PathUtil.getParentPath(event.getPath())));
+        }
+      } else if (event instanceof VFileCreateEvent) {
+        VFileCreateEvent create = (VFileCreateEvent) event;
+        if (create.isDirectory()) {
+          // the VFS doesn't report the contents of new directories, which may include packages
+          invalidate();
+        } else if (provider.isBuildFile(create.getChildName())) {
+          update(provider, create.getParent());
+        }
+      } else if (event instanceof VFileCopyEvent) {
+        VFileCopyEvent copy = (VFileCopyEvent) event;
+        if (copy.getFile().isDirectory()) {
+          invalidate();
+        } else if (provider.isBuildFile(copy.getNewChildName())) {
+          update(provider, copy.getNewParent());
+        }
+      } else if (event instanceof VFileMoveEvent) {
+        VFileMoveEvent move = (VFileMoveEvent) event;
+        if (move.getFile().isDirectory()) {
+          // the moved directory may contain packages, whose ancestors have now changed
+          invalidate();
+        } else if (provider.isBuildFile(move.getFile().getName())) {
+          update(provider, move.getOldParent());
+          update(provider, move.getNewParent());
+        }
+      } else if (event instanceof VFilePropertyChangeEvent) {
+        // renamed directories keep their identity and parent, so only renamed BUILD files matter
+        VFilePropertyChangeEvent change = (VFilePropertyChangeEvent) event;
+        if (VirtualFile.PROP_NAME.equals(change.getPropertyName())
+            && (provider.isBuildFile((String) change.getOldValue())
+                || provider.isBuildFile((String) change.getNewValue()))) {
+          update(provider, change.getFile().getParent());
+        }
+      }
+    }
+    if (directoryRemoved) {
+      synchronized (this) {
+        modificationCount.incrementAndGet();
+        buildFiles.entrySet().removeIf(e -> !e.getKey().isValid() || !e.getValue().isValid());
+        rebuildPackageTree();
+      }
+    }
+  }
+
+  private synchronized void update(BuildSystemProvider provider, @Nullable VirtualFile directory) {
+    if (directory == null || !directory.isValid()) {
+      return;
+    }
+    modificationCount.incrementAndGet();
+    VirtualFile buildFile = provider.findBuildFileInDirectory(directory);
+    if (buildFile != null) {
+      if (buildFiles.put(directory, buildFile) == null) {
+        addPackage(directory);
+      }
+    } else if (buildFiles.remove(directory) != null) {
+      removePackage(directory);
+    }
+  }
+
+  private synchronized void rebuildPackageTree() {
+    packageCounts.clear();
+    packageChildren.clear();
+    buildFiles.keySet().forEach(this::addPackage);
+  }
+
+  private synchronized void addPackage(VirtualFile directory) {
+    for (VirtualFile dir = directory; dir != null; dir = dir.getParent()) {
+      int count = packageCounts.merge(dir, 1, Integer::sum);
+      VirtualFile parent = dir.getParent();
+      if (count == 1 && parent != null) {
+        packageChildren.computeIfAbsent(parent, p -> Sets.newConcurrentHashSet()).add(dir);
+      }
+    }
+  }
+
+  private synchronized void removePackage(VirtualFile directory) {
+    for (VirtualFile dir = directory; dir != null; dir = dir.getParent()) {
+      int count = packageCounts.merge(dir, -1, Integer::sum);
+      if (count > 0) {
+        continue;
+      }
+      packageCounts.remove(dir);
+      VirtualFile parent = dir.getParent();
+      Set<VirtualFile> siblings = parent != null ? packageChildren.get(parent) : null;
+      if (siblings != null) {
+        siblings.remove(dir);
+        if (siblings.isEmpty()) {
+          packageChildren.remove(parent);
+        }
+      }
+    }
+  }
+}
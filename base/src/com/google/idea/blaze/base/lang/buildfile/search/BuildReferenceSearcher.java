@@ -25,6 +25,7 @@ import com.google.idea.blaze.base.lang.buildfile.psi.util.PsiUtils;
 import com.google.idea.blaze.base.lang.buildfile.references.LabelUtils;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.intellij.openapi.application.QueryExecutorBase;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiDirectory;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
@@ -36,6 +37,7 @@ import com.intellij.psi.search.UsageSearchContext;
 import com.intellij.psi.search.searches.ReferencesSearch.SearchParameters;
 import com.intellij.util.Processor;
 import java.util.List;
+import java.util.Set;
 import javax.annotation.Nullable;
 
 /** String search for references in BUILD files */
@@ -51,7 +53,9 @@ public class BuildReferenceSearcher extends QueryExecutorBase<PsiReference, Sear
     if (element instanceof NamedBuildElement) {
       String fnName = ((NamedBuildElement) element).getName();
       if (fnName != null) {
-        searchForString(params, element, fnName);
+        // the effective scope includes the element's use scope, which for loadable functions only
+        // covers the files loading them
+        searchForString(params, params.getEffectiveSearchScope(), element, fnName);
       }
       return;
     }
@@ -75,9 +79,15 @@ public class BuildReferenceSearcher extends QueryExecutorBase<PsiReference, Sear
       return;
     }
     List<String> stringsToSearch = LabelUtils.getAllValidLabelStrings(label, true);
+    SearchScope labelScope = limitScopeToLabelReferences(params, localFile, label);
     for (String string : stringsToSearch) {
       if (LabelUtils.isAbsolute(string)) {
-        searchForString(params, element, string);
+        // a bare external workspace name isn't a label, so isn't covered by the label scope
+        searchForString(
+            params,
+            string.contains("//") ? labelScope : params.getScopeDeterminedByUser(),
+            element,
+            string);
       } else {
         // only a valid reference from local package -- restrict the search scope accordingly
         SearchScope scope = limitScopeToFile(params.getScopeDeterminedByUser(), localFile);
@@ -143,6 +153,26 @@ public class BuildReferenceSearcher extends QueryExecutorBase<PsiReference, Sear
     }
   }
 
+  /**
+   * Limits the search scope to the files which reference the given label, if the symbol index is
+   * available. Every absolute form of the label is indexed under the same key, so the limited
+   * scope covers all absolute references.
+   */
+  private static SearchScope limitScopeToLabelReferences(
+      SearchParameters params, PsiFile localFile, Label label) {
+    SearchScope scope = params.getScopeDeterminedByUser();
+    if (!(scope instanceof GlobalSearchScope)) {
+      return scope;
+    }
+    Set<VirtualFile> files =
+        BuildSymbolIndex.getFilesReferencingLabel(
+            localFile.getProject(), label.toString(), (GlobalSearchScope) scope);
+    if (files == null) {
+      return scope;
+    }
+    return GlobalSearchScope.filesScope(localFile.getProject(), files);
+  }
+
   /**
    * Search for package-local references.<br>
    * Returns null if the resulting scope is empty
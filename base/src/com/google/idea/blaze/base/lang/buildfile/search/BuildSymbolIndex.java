@@ -0,0 +1,214 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.search;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.idea.blaze.base.lang.buildfile.language.BuildFileType;
+import com.google.idea.blaze.base.lang.buildfile.psi.BuildFile;
+import com.google.idea.blaze.base.lang.buildfile.psi.FuncallExpression;
+import com.google.idea.blaze.base.lang.buildfile.psi.FunctionStatement;
+import com.google.idea.blaze.base.lang.buildfile.psi.LoadStatement;
+import com.google.idea.blaze.base.lang.buildfile.psi.StringLiteral;
+import com.google.idea.common.experiments.BoolExperiment;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.PathUtil;
+import com.intellij.util.indexing.DataIndexer;
+import com.intellij.util.indexing.DefaultFileTypeSpecificInputFilter;
+import com.intellij.util.indexing.FileBasedIndex;
+import com.intellij.util.indexing.FileContent;
+import com.intellij.util.indexing.ID;
+import com.intellij.util.indexing.ScalarIndexExtension;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.KeyDescriptor;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Indexes BUILD and Skylark files by the symbols they load, the top-level rules and functions they
+ * declare, and the absolute labels they reference, so that lookups and searches only need to look
+ * at the files which declare or use a symbol.
+ *
+ * <p>Loaded symbols are keyed by their name as declared in the loaded file, ignoring any local
+ * alias.
+ */
+public class BuildSymbolIndex extends ScalarIndexExtension<String> {
+
+  private static final BoolExperiment enabled =
+      new BoolExperiment("build.file.symbol.index", false);
+
+  private static final ID<String, Void> KEY = ID.create("BuildSymbolIndex");
+
+  private static final int VERSION = 1;
+
+  private static final String LOADED_SYMBOL = "load:";
+  private static final String RULE = "rule:";
+  private static final String FUNCTION = "def:";
+  private static final String LABEL = "label:";
+
+  /**
+   * Returns the files in the given scope which load a symbol with the given name, or null if the
+   * index can't currently be used.
+   */
+  @Nullable
+  public static Set<VirtualFile> getFilesLoadingSymbol(
+      Project project, String name, GlobalSearchScope scope) {
+    return getContainingFiles(project, LOADED_SYMBOL + name, scope);
+  }
+
+  /**
+   * Returns the files in the given scope which reference the given absolute label, or null if the
+   * index can't currently be used.
+   */
+  @Nullable
+  public static Set<VirtualFile> getFilesReferencingLabel(
+      Project project, String label, GlobalSearchScope scope) {
+    String normalized = normalizeAbsoluteLabel(label);
+    return normalized != null ? getContainingFiles(project, LABEL + normalized, scope) : null;
+  }
+
+  /**
+   * Returns false if the index shows that the given file doesn't declare a top-level rule with the
+   * given name, so its PSI needn't be searched. Returns true if it may declare one.
+   */
+  public static boolean mayDeclareRule(BuildFile file, String name) {
+    return mayContainKey(file, RULE + name);
+  }
+
+  /**
+   * Returns false if the index shows that the given file doesn't declare a top-level function with
+   * the given name, so its PSI needn't be searched. Returns true if it may declare one.
+   */
+  public static boolean mayDeclareFunction(BuildFile file, String name) {
+    return mayContainKey(file, FUNCTION + name);
+  }
+
+  /**
+   * Normalizes an absolute label string, adding the implicit target name if it's missing. Returns
+   * null if the string isn't an absolute label.
+   */
+  @Nullable
+  static String normalizeAbsoluteLabel(String label) {
+    if (label.startsWith("@//")) {
+      label = label.substring(1);
+    }
+    int packageStart = label.indexOf("//");
+    if (packageStart != 0 && !(packageStart > 0 && label.startsWith("@"))) {
+      return null;
+    }
+    if (label.indexOf(':', packageStart) >= 0) {
+      return label;
+    }
+    String targetName = PathUtil.getFileName(label.substring(packageStart + 2));
+    return targetName.isEmpty() ? null : label + ":" + targetName;
+  }
+
+  private static boolean isUsable(Project project) {
+    return enabled.getValue() && !DumbService.isDumb(project);
+  }
+
+  @Nullable
+  private static Set<VirtualFile> getContainingFiles(
+      Project project, String key, GlobalSearchScope scope) {
+    if (!isUsable(project)) {
+      return null;
+    }
+    return ImmutableSet.copyOf(FileBasedIndex.getInstance().getContainingFiles(KEY, key, scope));
+  }
+
+  private static boolean mayContainKey(BuildFile file, String key) {
+    Project project = file.getProject();
+    VirtualFile vf = file.getVirtualFile();
+    // files outside the project content aren't indexed
+    if (vf == null
+        || !isUsable(project)
+        || !ProjectFileIndex.getInstance(project).isInContent(vf)) {
+      return true;
+    }
+    return !FileBasedIndex.getInstance()
+        .getContainingFiles(KEY, key, GlobalSearchScope.fileScope(project, vf))
+        .isEmpty();
+  }
+
+  @Override
+  public ID<String, Void> getName() {
+    return KEY;
+  }
+
+  @Override
+  public DataIndexer<String, Void, FileContent> getIndexer() {
+    return BuildSymbolIndex::indexFile;
+  }
+
+  private static Map<String, Void> indexFile(FileContent content) {
+    PsiFile psiFile = content.getPsiFile();
+    if (!(psiFile instanceof BuildFile)) {
+      return Collections.emptyMap();
+    }
+    BuildFile file = (BuildFile) psiFile;
+    Map<String, Void> keys = new HashMap<>();
+    for (LoadStatement load : file.childrenOfClass(LoadStatement.class)) {
+      for (StringLiteral symbol : load.getLoadedSymbols()) {
+        addKey(keys, LOADED_SYMBOL, symbol.getStringContents());
+      }
+    }
+    for (FuncallExpression rule : file.childrenOfClass(FuncallExpression.class)) {
+      addKey(keys, RULE, rule.getNameArgumentValue());
+    }
+    for (FunctionStatement function : file.getFunctionDeclarations()) {
+      addKey(keys, FUNCTION, function.getName());
+    }
+    for (StringLiteral string : PsiTreeUtil.findChildrenOfType(file, StringLiteral.class)) {
+      String contents = string.getStringContents();
+      addKey(keys, LABEL, contents != null ? normalizeAbsoluteLabel(contents) : null);
+    }
+    return keys;
+  }
+
+  private static void addKey(Map<String, Void> keys, String prefix, @Nullable String name) {
+    if (name != null && !name.isEmpty()) {
+      keys.put(prefix + name, null);
+    }
+  }
+
+  @Override
+  public KeyDescriptor<String> getKeyDescriptor() {
+    return EnumeratorStringDescriptor.INSTANCE;
+  }
+
+  @Override
+  public FileBasedIndex.InputFilter getInputFilter() {
+    return new DefaultFileTypeSpecificInputFilter(BuildFileType.INSTANCE);
+  }
+
+  @Override
+  public boolean dependsOnFileContent() {
+    return true;
+  }
+
+  @Override
+  public int getVersion() {
+    return VERSION;
+  }
+}
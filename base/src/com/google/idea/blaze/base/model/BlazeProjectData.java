@@ -68,10 +68,18 @@ public final class BlazeProjectData implements ProtoWrapper<ProjectData.BlazePro
   @VisibleForTesting
   public static BlazeProjectData fromProto(
       BuildSystem buildSystem, ProjectData.BlazeProjectData proto) {
+    return fromProto(buildSystem, proto, parseTargetData(proto));
+  }
+
+  /**
+   * Parses everything except the target data from the given proto, using the provided {@link
+   * ProjectTargetData} instead.
+   */
+  public static BlazeProjectData fromProto(
+      BuildSystem buildSystem, ProjectData.BlazeProjectData proto, ProjectTargetData targetData) {
     BlazeInfo blazeInfo = BlazeInfo.fromProto(buildSystem, proto.getBlazeInfo());
     WorkspacePathResolver workspacePathResolver =
         WorkspacePathResolver.fromProto(proto.getWorkspacePathResolver());
-    ProjectTargetData targetData = parseTargetData(proto);
     return new BlazeProjectData(
         targetData,
         blazeInfo,
@@ -45,7 +45,14 @@ public final class ProjectTargetData implements ProtoWrapper<ProjectData.TargetD
   }
 
   public static ProjectTargetData fromProto(ProjectData.TargetData proto) {
-    TargetMap targetMap = TargetMap.fromProto(proto.getTargetMap());
+    return fromProto(proto, TargetMap.fromProto(proto.getTargetMap()));
+  }
+
+  /**
+   * Parses everything except the target map from the given proto, using the provided {@link
+   * TargetMap} instead.
+   */
+  public static ProjectTargetData fromProto(ProjectData.TargetData proto, TargetMap targetMap) {
     BlazeIdeInterfaceState ideInterfaceState =
         proto.hasIdeInterfaceState()
             ? BlazeIdeInterfaceState.fromProto(proto.getIdeInterfaceState())
@@ -15,13 +15,12 @@
  */
 package com.google.idea.blaze.base.run;
 
-import com.google.idea.blaze.base.bazel.BuildSystemProvider;
 import com.google.idea.blaze.base.dependencies.TargetInfo;
 import com.google.idea.blaze.base.dependencies.TestSize;
 import com.google.idea.blaze.base.io.VfsUtils;
+import com.google.idea.blaze.base.lang.buildfile.search.BuildPackageIndex;
 import com.google.idea.blaze.base.model.primitives.WorkspacePath;
 import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
-import com.google.idea.blaze.base.settings.Blaze;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
@@ -52,13 +51,13 @@ class BlazePackageHeuristic implements TestTargetHeuristic {
 
   @Nullable
   private static WorkspacePath findBlazePackage(Project project, @Nullable VirtualFile vf) {
-    BuildSystemProvider provider = Blaze.getBuildSystemProvider(project);
+    BuildPackageIndex packageIndex = BuildPackageIndex.getInstance(project);
     WorkspaceRoot root = WorkspaceRoot.fromProjectSafe(project);
     if (root == null) {
       return null;
     }
     while (vf != null) {
-      if (vf.isDirectory() && provider.findBuildFileInDirectory(vf) != null) {
+      if (vf.isDirectory() && packageIndex.findBuildFile(vf) != null) {
         return root.workspacePathForSafe(new File(vf.getPath()));
       }
       vf = vf.getParent();
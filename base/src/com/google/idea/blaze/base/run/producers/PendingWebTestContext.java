@@ -27,7 +27,6 @@ import com.google.idea.blaze.base.run.BlazeCommandRunConfiguration;
 import com.google.idea.blaze.base.run.ExecutorType;
 import com.google.idea.blaze.base.run.PendingRunConfigurationContext;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
-import com.google.idea.blaze.base.targetmaps.ReverseDependencyMap;
 import com.google.idea.common.experiments.BoolExperiment;
 import com.intellij.execution.runners.ExecutionEnvironment;
 import com.intellij.openapi.actionSystem.DataContext;
@@ -104,8 +103,9 @@ public class PendingWebTestContext extends TestContext implements PendingRunConf
       return ImmutableList.of();
     }
     TargetMap targetMap = projectData.getTargetMap();
-    return ReverseDependencyMap.get(project)
-        .get(TargetKey.forPlainTarget(wrappedTest.label))
+    return targetMap
+        .graph()
+        .getReverseDependencies(TargetKey.forPlainTarget(wrappedTest.label))
         .stream()
         .map(targetMap::get)
         .filter(Objects::nonNull)
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.run.smrunner;
+
+import com.google.common.primitives.Doubles;
+import com.google.common.primitives.Ints;
+import com.google.idea.blaze.base.run.smrunner.BlazeXmlSchema.ErrorOrFailureOrSkipped;
+import com.google.idea.blaze.base.run.smrunner.BlazeXmlSchema.TestCase;
+import com.google.idea.blaze.base.run.smrunner.BlazeXmlSchema.TestSuite;
+import com.google.idea.blaze.base.run.smrunner.BlazeXmlSchema.Values;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads test XML into {@link BlazeXmlSchema} objects in a single pass over a StAX stream.
+ *
+ * <p>Elements and attributes which aren't part of the schema are skipped without being read into
+ * memory. Captured output and error details longer than {@link #MAX_TEXT_LENGTH} are truncated as
+ * they are read; the full text is still available in the test log.
+ */
+final class BlazeXmlParser {
+
+  static final int MAX_TEXT_LENGTH = 1 << 20;
+
+  private static final XMLInputFactory factory = createFactory();
+
+  private static XMLInputFactory createFactory() {
+    XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    // text is delivered in chunks, so that truncated text is never held in memory in full
+    factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+    return factory;
+  }
+
+  private final XMLStreamReader reader;
+
+  private BlazeXmlParser(XMLStreamReader reader) {
+    this.reader = reader;
+  }
+
+  static TestSuite parse(InputStream input) throws XMLStreamException {
+    XMLStreamReader reader = factory.createXMLStreamReader(input);
+    try {
+      return new BlazeXmlParser(reader).parseDocument();
+    } finally {
+      reader.close();
+    }
+  }
+
+  private TestSuite parseDocument() throws XMLStreamException {
+    if (!nextChildElement()) {
+      throw new XMLStreamException("No root element", reader.getLocation());
+    }
+    switch (reader.getLocalName()) {
+      case "testsuite":
+        return parseTestSuite();
+      case "testsuites":
+        // optional wrapping XML element. Some test runners don't include it.
+        TestSuite outer = new TestSuite();
+        while (nextChildElement()) {
+          if (reader.getLocalName().equals("testsuite")) {
+            outer.testSuites.add(parseTestSuite());
+          } else {
+            skipElement();
+          }
+        }
+        return outer;
+      default:
+        throw new XMLStreamException(
+            "Unexpected root element: " + reader.getLocalName(), reader.getLocation());
+    }
+  }
+
+  private TestSuite parseTestSuite() throws XMLStreamException {
+    TestSuite suite = new TestSuite();
+    suite.name = attribute("name");
+    suite.classname = attribute("classname");
+    suite.tests = intAttribute("tests");
+    suite.failures = intAttribute("failures");
+    suite.errors = intAttribute("errors");
+    suite.skipped = intAttribute("skipped");
+    suite.disabled = intAttribute("disabled");
+    suite.time = doubleAttribute("time");
+    while (nextChildElement()) {
+      switch (reader.getLocalName()) {
+        case "testsuite":
+          suite.testSuites.add(parseTestSuite());
+          break;
+        case "testdecorator":
+          suite.testDecorators.add(parseTestSuite());
+          break;
+        case "testcase":
+          suite.testCases.add(parseTestCase());
+          break;
+        case "system-out":
+          suite.sysOut = readText(MAX_TEXT_LENGTH);
+          break;
+        case "system-err":
+          suite.sysErr = readText(MAX_TEXT_LENGTH);
+          break;
+        case "error":
+          suite.error = parseErrorOrFailureOrSkipped();
+          break;
+        case "failure":
+          suite.failure = parseErrorOrFailureOrSkipped();
+          break;
+        default:
+          skipElement();
+      }
+    }
+    return suite;
+  }
+
+  private TestCase parseTestCase() throws XMLStreamException {
+    TestCase test = new TestCase();
+    test.name = attribute("name");
+    test.classname = attribute("classname");
+    test.status = attribute("status");
+    test.result = attribute("result");
+    test.time = attribute("time");
+    while (nextChildElement()) {
+      switch (reader.getLocalName()) {
+        case "system-out":
+          test.sysOut = readText(MAX_TEXT_LENGTH);
+          break;
+        case "system-err":
+          test.sysErr = readText(MAX_TEXT_LENGTH);
+          break;
+        case "error":
+          test.errors.add(parseErrorOrFailureOrSkipped());
+          break;
+        case "failure":
+          test.failures.add(parseErrorOrFailureOrSkipped());
+          break;
+        case "skipped":
+          test.skipped = parseErrorOrFailureOrSkipped();
+          break;
+        default:
+          skipElement();
+      }
+    }
+    return test;
+  }
+
+  private ErrorOrFailureOrSkipped parseErrorOrFailureOrSkipped() throws XMLStreamException {
+    ErrorOrFailureOrSkipped err = new ErrorOrFailureOrSkipped();
+    err.message = attribute("message");
+    err.type = attribute("type");
+    List<String> content = new ArrayList<>();
+    TextBuilder text = new TextBuilder(MAX_TEXT_LENGTH);
+    while (true) {
+      int event = reader.next();
+      if (isText(event)) {
+        text.append(reader);
+      } else if (event == XMLStreamConstants.START_ELEMENT) {
+        text.flushTo(content);
+        switch (reader.getLocalName()) {
+          case "expected":
+            err.expected = parseValues();
+            break;
+          case "actual":
+            err.actual = parseValues();
+            break;
+          default:
+            skipElement();
+        }
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        text.flushTo(content);
+        break;
+      }
+    }
+    err.content = content.isEmpty() ? null : content;
+    return err;
+  }
+
+  private Values parseValues() throws XMLStreamException {
+    Values values = new Values();
+    while (nextChildElement()) {
+      if (reader.getLocalName().equals("value")) {
+        // expected and actual values are compared in full, so they're never truncated
+        values.values.add(readText(Integer.MAX_VALUE));
+      } else {
+        skipElement();
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Advances to the next child element of the current element, returning false once the end of the
+   * current element is reached instead. Text between child elements is ignored.
+   */
+  private boolean nextChildElement() throws XMLStreamException {
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        return true;
+      }
+      if (event == XMLStreamConstants.END_ELEMENT) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /** Skips the current element, including all its children. */
+  private void skipElement() throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
+  /** Reads the text content of the current element, skipping any child elements. */
+  private String readText(int maxLength) throws XMLStreamException {
+    TextBuilder text = new TextBuilder(maxLength);
+    while (true) {
+      int event = reader.next();
+      if (isText(event)) {
+        text.append(reader);
+      } else if (event == XMLStreamConstants.START_ELEMENT) {
+        skipElement();
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        return text.build();
+      }
+    }
+  }
+
+  private static boolean isText(int event) {
+    return event == XMLStreamConstants.CHARACTERS
+        || event == XMLStreamConstants.CDATA
+        || event == XMLStreamConstants.SPACE;
+  }
+
+  @Nullable
+  private String attribute(String name) {
+    return reader.getAttributeValue(null, name);
+  }
+
+  private int intAttribute(String name) {
+    String value = attribute(name);
+    Integer parsed = value != null ? Ints.tryParse(value.trim()) : null;
+    return parsed != null ? parsed : 0;
+  }
+
+  private double doubleAttribute(String name) {
+    String value = attribute(name);
+    Double parsed = value != null ? Doubles.tryParse(value.trim()) : null;
+    return parsed != null ? parsed : 0;
+  }
+
+  /** Accumulates text up to a maximum length, counting the characters dropped beyond it. */
+  private static final class TextBuilder {
+    private final int maxLength;
+    private final StringBuilder text = new StringBuilder();
+    private long dropped = 0;
+    private boolean empty = true;
+
+    TextBuilder(int maxLength) {
+      this.maxLength = maxLength;
+    }
+
+    void append(XMLStreamReader reader) {
+      empty = false;
+      int length = reader.getTextLength();
+      int kept = Math.min(length, maxLength - text.length());
+      text.append(reader.getTextCharacters(), reader.getTextStart(), kept);
+      dropped += length - kept;
+    }
+
+    String build() {
+      if (dropped > 0) {
+        text.append(
+            String.format(
+                "\n... (%d more characters truncated, see the test log for the full output)",
+                dropped));
+      }
+      return text.toString();
+    }
+
+    /** Adds the text accumulated so far (if any) to {@code content}, then starts afresh. */
+    void flushTo(List<String> content) {
+      if (!empty) {
+        content.add(build());
+      }
+      text.setLength(0);
+      dropped = 0;
+      empty = true;
+    }
+  }
+}
@@ -20,97 +20,77 @@ import static java.util.stream.Collectors.joining;
 import com.google.common.collect.Lists;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import javax.annotation.Nullable;
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBException;
-import javax.xml.bind.annotation.XmlAnyElement;
-import javax.xml.bind.annotation.XmlAttribute;
-import javax.xml.bind.annotation.XmlElement;
-import javax.xml.bind.annotation.XmlMixed;
-import javax.xml.bind.annotation.XmlRootElement;
-
-/** Used to parse the test.xml generated by the blaze/bazel testing framework. */
-public class BlazeXmlSchema {
-
-  private static final JAXBContext CONTEXT;
+import javax.xml.stream.XMLStreamException;
 
-  static {
-    try {
-      CONTEXT = JAXBContext.newInstance(TestSuite.class, TestSuites.class);
-    } catch (JAXBException e) {
-      throw new RuntimeException(e);
-    }
-  }
+/**
+ * Used to parse the test.xml generated by the blaze/bazel testing framework.
+ *
+ * <p>Parsing is done by {@link BlazeXmlParser}, which streams through the XML without building an
+ * intermediate document.
+ */
+public class BlazeXmlSchema {
 
   public static TestSuite parse(InputStream input) {
     try {
-      Object parsed = CONTEXT.createUnmarshaller().unmarshal(input);
-      return parsed instanceof TestSuites
-          ? ((TestSuites) parsed).convertToTestSuite()
-          : (TestSuite) parsed;
-
-    } catch (JAXBException e) {
+      return BlazeXmlParser.parse(input);
+    } catch (XMLStreamException e) {
       throw new RuntimeException("Failed to parse test XML", e);
     }
   }
 
-  // optional wrapping XML element. Some test runners don't include it.
-  @XmlRootElement(name = "testsuites")
-  static class TestSuites {
-    @XmlElement(name = "testsuite")
-    List<TestSuite> testSuites = Lists.newArrayList();
-
-    TestSuite convertToTestSuite() {
-      TestSuite suite = new TestSuite();
-      suite.testSuites.addAll(testSuites);
-      return suite;
-    }
-  }
-
   /** XML output by blaze test runners. */
-  @XmlRootElement(name = "testsuite")
   public static class TestSuite {
-    @XmlAttribute public String name;
-    @XmlAttribute public String classname;
-    @XmlAttribute public int tests;
-    @XmlAttribute public int failures;
-    @XmlAttribute public int errors;
-    @XmlAttribute public int skipped;
-    @XmlAttribute public int disabled;
-    @XmlAttribute public double time;
-
-    @XmlElement(name = "system-out")
+    public String name;
+    public String classname;
+    public int tests;
+    public int failures;
+    public int errors;
+    public int skipped;
+    public int disabled;
+    public double time;
+
+    // 'system-out'
     public String sysOut;
 
-    @XmlElement(name = "system-err")
+    // 'system-err'
     public String sysErr;
 
-    @XmlElement(name = "error", type = ErrorOrFailureOrSkipped.class)
     ErrorOrFailureOrSkipped error;
 
-    @XmlElement(name = "failure", type = ErrorOrFailureOrSkipped.class)
     ErrorOrFailureOrSkipped failure;
 
-    @XmlElement(name = "testsuite")
+    // 'testsuite'
     public List<TestSuite> testSuites = Lists.newArrayList();
 
-    @XmlElement(name = "testdecorator")
+    // 'testdecorator'
     List<TestSuite> testDecorators = Lists.newArrayList();
 
-    @XmlElement(name = "testcase")
+    // 'testcase'
     public List<TestCase> testCases = Lists.newArrayList();
 
+    /** Index of {@link #testSuites} by name, built when merging shards. */
+    @Nullable private Map<String, TestSuite> testSuitesByName;
+
     /** Used to merge test suites from a single target, split across multiple shards */
     private void addSuite(TestSuite suite) {
-      for (TestSuite existing : testSuites) {
-        if (Objects.equals(existing.name, suite.name)) {
-          existing.mergeWithSuite(suite);
-          return;
+      if (testSuitesByName == null) {
+        testSuitesByName = new HashMap<>();
+        for (TestSuite existing : testSuites) {
+          testSuitesByName.putIfAbsent(existing.name, existing);
         }
       }
+      TestSuite existing = testSuitesByName.get(suite.name);
+      if (existing != null) {
+        existing.mergeWithSuite(suite);
+        return;
+      }
       testSuites.add(suite);
+      testSuitesByName.put(suite.name, suite);
     }
 
     private void mergeWithSuite(TestSuite suite) {
@@ -139,25 +119,24 @@ public class BlazeXmlSchema {
 
   /** Individual test case XML output by blaze test runners. */
   public static class TestCase {
-    @XmlAttribute public String name;
-    @XmlAttribute public String classname;
-    @XmlAttribute public String status;
-    @XmlAttribute public String result;
-    @XmlAttribute public String time;
+    public String name;
+    public String classname;
+    public String status;
+    public String result;
+    public String time;
 
-    @XmlElement(name = "system-out")
+    // 'system-out'
     String sysOut;
 
-    @XmlElement(name = "system-err")
+    // 'system-err'
     String sysErr;
 
-    @XmlElement(name = "error", type = ErrorOrFailureOrSkipped.class)
+    // 'error'
     public List<ErrorOrFailureOrSkipped> errors = Lists.newArrayList();
 
-    @XmlElement(name = "failure", type = ErrorOrFailureOrSkipped.class)
+    // 'failure'
     public List<ErrorOrFailureOrSkipped> failures = Lists.newArrayList();
 
-    @XmlElement(name = "skipped", type = ErrorOrFailureOrSkipped.class)
     public ErrorOrFailureOrSkipped skipped;
   }
 
@@ -168,30 +147,25 @@ public class BlazeXmlSchema {
     }
     return err.content.stream()
         .filter(Objects::nonNull)
-        .map(Object::toString)
         .map(String::trim)
         .filter(s -> !s.isEmpty())
         .collect(joining("\n"));
   }
 
   static class ErrorOrFailureOrSkipped {
-    // Can't use @XmlValue with @XmlElement
-    @XmlMixed
-    @XmlAnyElement(lax = true)
-    private List<Object> content;
+    // the text segments between any child elements, or null if there's no text at all
+    @Nullable List<String> content;
 
-    @XmlAttribute String message;
-    @XmlAttribute String type;
+    String message;
+    String type;
 
-    @XmlElement(name = "expected", type = Values.class)
     Values expected;
 
-    @XmlElement(name = "actual", type = Values.class)
     Values actual;
   }
 
   static class Values {
-    @XmlElement(name = "value", type = String.class)
+    // 'value'
     List<String> values = new ArrayList<>();
   }
 }
@@ -34,6 +34,7 @@ import com.google.idea.blaze.base.run.testlogs.BlazeTestResult;
 import com.google.idea.blaze.base.run.testlogs.BlazeTestResult.TestStatus;
 import com.google.idea.blaze.base.run.testlogs.BlazeTestResultFinderStrategy;
 import com.google.idea.blaze.base.run.testlogs.BlazeTestResults;
+import com.google.idea.blaze.base.run.testlogs.BlazeTestResultsStream;
 import com.google.idea.blaze.base.settings.Blaze;
 import com.google.idea.blaze.base.settings.BuildSystem;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
@@ -54,9 +55,11 @@ import com.intellij.openapi.project.ProjectManager;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.Nullable;
 import jetbrains.buildServer.messages.serviceMessages.TestSuiteStarted;
 
@@ -70,7 +73,18 @@ public class BlazeXmlToTestEventsConverter extends OutputToGeneralTestEventsConv
     NO_ERROR.message = "No message"; // cannot be null
   }
 
+  /**
+   * Report each target's results as soon as its tests finish, rather than once the 'blaze test'
+   * process completes.
+   */
+  private static final BoolExperiment streamTestResults =
+      new BoolExperiment("blaze.test.results.streaming", false);
+
   private final BlazeTestResultFinderStrategy testResultFinderStrategy;
+  private final AtomicBoolean testingStarted = new AtomicBoolean(false);
+  private final List<ListenableFuture<?>> pendingReports =
+      Collections.synchronizedList(new ArrayList<>());
+  @Nullable private volatile BlazeTestResultsStream resultsStream;
 
   public BlazeXmlToTestEventsConverter(
       String testFrameworkName,
@@ -80,10 +94,27 @@ public class BlazeXmlToTestEventsConverter extends OutputToGeneralTestEventsConv
     this.testResultFinderStrategy = testResultFinderStrategy;
   }
 
+  @Override
+  public void onStartTesting() {
+    super.onStartTesting();
+    if (!testingStarted.getAndSet(true) && streamTestResults.getValue()) {
+      resultsStream = testResultFinderStrategy.streamTestResults(this::processFinishedTargets);
+      if (resultsStream != null) {
+        getProcessor().onTestsReporterAttached();
+      }
+    }
+  }
+
   @Override
   public void flushBufferOnProcessTermination(int exitCode) {
     super.flushBufferOnProcessTermination(exitCode);
-    BlazeTestResults testResults = testResultFinderStrategy.findTestResults();
+    // don't start streaming results once the process has already terminated
+    testingStarted.set(true);
+    BlazeTestResultsStream resultsStream = this.resultsStream;
+    BlazeTestResults testResults =
+        resultsStream != null
+            ? finishStreaming(resultsStream)
+            : testResultFinderStrategy.findTestResults();
     if (testResults == null || testResults == BlazeTestResults.NO_RESULTS) {
       BlazeTestExitStatus exitStatus = BlazeTestExitStatus.forExitCode(exitCode);
       if (exitStatus == null) {
@@ -93,11 +124,36 @@ public class BlazeXmlToTestEventsConverter extends OutputToGeneralTestEventsConv
       } else {
         reportTestRuntimeError(exitStatus.title, exitStatus.message);
       }
-    } else {
+    } else if (resultsStream == null) {
       processAllTestResults(testResults);
     }
   }
 
+  /**
+   * Called from a background thread as test targets finish, while the 'blaze test' process is
+   * running. Each target's test XML is parsed and reported as soon as it is available.
+   */
+  private void processFinishedTargets(BlazeTestResults testResults) {
+    for (Label label : testResults.perTargetResults.keySet()) {
+      pendingReports.add(
+          FetchExecutor.EXECUTOR.submit(
+              () ->
+                  processParsedTestResults(
+                      parseTestXml(label, testResults.perTargetResults.get(label)))));
+    }
+  }
+
+  /** Waits for all streamed results to be reported, returning all results of the test run. */
+  private BlazeTestResults finishStreaming(BlazeTestResultsStream resultsStream) {
+    try {
+      BlazeTestResults testResults = resultsStream.finish();
+      FuturesUtil.getIgnoringErrors(Futures.successfulAsList(pendingReports));
+      return testResults;
+    } finally {
+      testResultFinderStrategy.deleteTemporaryOutputXmlFiles();
+    }
+  }
+
   private void processAllTestResults(BlazeTestResults testResults) {
     onStartTesting();
     getProcessor().onTestsReporterAttached();
@@ -154,8 +210,11 @@ public class BlazeXmlToTestEventsConverter extends OutputToGeneralTestEventsConv
     return new ParsedTargetResults(label, results, outputFiles, targetSuites);
   }
 
-  /** Process all parsed test XML files from a single test target. */
-  private void processParsedTestResults(ParsedTargetResults parsedResults) {
+  /**
+   * Process all parsed test XML files from a single test target. Synchronized, as streamed results
+   * are reported from multiple threads.
+   */
+  private synchronized void processParsedTestResults(ParsedTargetResults parsedResults) {
     if (noUsefulOutput(parsedResults.results, parsedResults.outputFiles)) {
       Optional<TestStatus> status =
           parsedResults.results.stream().map(BlazeTestResult::getTestStatus).findFirst();
@@ -15,6 +15,7 @@
  */
 package com.google.idea.blaze.base.run.testlogs;
 
+import java.util.function.Consumer;
 import javax.annotation.Nullable;
 
 /** A strategy for locating results from 'blaze test' invocation (e.g. output XML files). */
@@ -27,6 +28,19 @@ public interface BlazeTestResultFinderStrategy {
   @Nullable
   BlazeTestResults findTestResults();
 
+  /**
+   * Starts looking for test results while the 'blaze test' process is running. Each target's
+   * results are passed to {@code consumer} from a background thread, as soon as all its tests have
+   * finished.
+   *
+   * <p>Returns null if results can only be found once the process completes, in which case {@link
+   * #findTestResults} should be used instead.
+   */
+  @Nullable
+  default BlazeTestResultsStream streamTestResults(Consumer<BlazeTestResults> consumer) {
+    return null;
+  }
+
   /** Remove any temporary files used by this result finder. */
   void deleteTemporaryOutputXmlFiles();
 }
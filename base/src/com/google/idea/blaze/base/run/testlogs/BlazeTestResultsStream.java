@@ -0,0 +1,29 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.run.testlogs;
+
+/**
+ * Test results reported while a 'blaze test' invocation is still running. See {@link
+ * BlazeTestResultFinderStrategy#streamTestResults}.
+ */
+public interface BlazeTestResultsStream {
+
+  /**
+   * Called after the 'blaze test' process completes. Reports any remaining results, then returns
+   * all results of the invocation, including those already reported.
+   */
+  BlazeTestResults finish();
+}
@@ -15,13 +15,21 @@
  */
 package com.google.idea.blaze.base.run.testlogs;
 
+import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos;
 import com.google.idea.blaze.base.command.buildresult.BuildEventProtocolOutputReader;
+import com.google.idea.blaze.base.command.buildresult.BuildEventProtocolOutputReader.TestResultsParser;
 import com.google.idea.blaze.base.io.InputStreamProvider;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 /**
  * A strategy for locating results from a single 'blaze test' invocation (e.g. output XML files).
@@ -33,6 +41,9 @@ public final class BuildEventProtocolTestFinderStrategy implements BlazeTestResu
   private static final Logger logger =
       Logger.getInstance(BuildEventProtocolTestFinderStrategy.class);
 
+  /** How often to check for new build events while blaze is running. */
+  private static final long POLL_INTERVAL_MILLIS = 200;
+
   private final File outputFile;
 
   public BuildEventProtocolTestFinderStrategy(File bepOutputFile) {
@@ -48,12 +59,136 @@ public final class BuildEventProtocolTestFinderStrategy implements BlazeTestResu
       logger.warn(e);
       return BlazeTestResults.NO_RESULTS;
     } finally {
-      if (!outputFile.delete()) {
-        logger.warn("Could not delete BEP output file: " + outputFile);
-      }
+      deleteOutputFile();
     }
   }
 
+  @Override
+  public BlazeTestResultsStream streamTestResults(Consumer<BlazeTestResults> consumer) {
+    return new StreamingReader(consumer);
+  }
+
   @Override
   public void deleteTemporaryOutputXmlFiles() {}
+
+  private void deleteOutputFile() {
+    if (!outputFile.delete()) {
+      logger.warn("Could not delete BEP output file: " + outputFile);
+    }
+  }
+
+  /** Follows the BEP output file while blaze is writing it. */
+  private final class StreamingReader implements BlazeTestResultsStream {
+    private final Consumer<BlazeTestResults> consumer;
+    private final TestResultsParser parser = new TestResultsParser();
+    private final Future<?> readerFuture;
+    private volatile boolean processTerminated = false;
+
+    StreamingReader(Consumer<BlazeTestResults> consumer) {
+      this.consumer = consumer;
+      this.readerFuture = ApplicationManager.getApplication().executeOnPooledThread(this::read);
+    }
+
+    private void read() {
+      try {
+        if (!waitForOutputFile()) {
+          return;
+        }
+        try (InputStream inputStream =
+            new FollowingInputStream(
+                new BufferedInputStream(InputStreamProvider.getInstance().forFile(outputFile)))) {
+          BuildEventStreamProtos.BuildEvent event;
+          while ((event = BuildEventStreamProtos.BuildEvent.parseDelimitedFrom(inputStream))
+              != null) {
+            report(parser.processEvent(event));
+          }
+        }
+      } catch (InterruptedIOException e) {
+        Thread.currentThread().interrupt();
+      } catch (IOException e) {
+        logger.warn(e);
+      }
+      report(parser.finishAll());
+    }
+
+    /** Returns false if the process terminated without writing any build events. */
+    private boolean waitForOutputFile() throws InterruptedIOException {
+      while (true) {
+        boolean terminated = processTerminated;
+        if (outputFile.exists()) {
+          return true;
+        }
+        if (terminated) {
+          return false;
+        }
+        sleep();
+      }
+    }
+
+    private void report(BlazeTestResults results) {
+      if (results != BlazeTestResults.NO_RESULTS) {
+        consumer.accept(results);
+      }
+    }
+
+    @Override
+    public BlazeTestResults finish() {
+      processTerminated = true;
+      try {
+        readerFuture.get();
+        return parser.getAllResults();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        readerFuture.cancel(true);
+        return BlazeTestResults.NO_RESULTS;
+      } catch (ExecutionException e) {
+        logger.warn(e);
+        return BlazeTestResults.NO_RESULTS;
+      } finally {
+        deleteOutputFile();
+      }
+    }
+
+    /**
+     * Waits for more data at the end of the file, until the process terminates. Partially written
+     * events are read as they are completed.
+     */
+    private final class FollowingInputStream extends FilterInputStream {
+      FollowingInputStream(InputStream in) {
+        super(in);
+      }
+
+      @Override
+      public int read() throws IOException {
+        while (true) {
+          boolean terminated = processTerminated;
+          int b = super.read();
+          if (b != -1 || terminated) {
+            return b;
+          }
+          sleep();
+        }
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        while (true) {
+          boolean terminated = processTerminated;
+          int read = super.read(b, off, len);
+          if (read != -1 || terminated) {
+            return read;
+          }
+          sleep();
+        }
+      }
+    }
+  }
+
+  private static void sleep() throws InterruptedIOException {
+    try {
+      Thread.sleep(POLL_INTERVAL_MILLIS);
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException();
+    }
+  }
 }
@@ -16,6 +16,8 @@
 package com.google.idea.blaze.base.sync;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.idea.blaze.base.model.BlazeProjectData;
@@ -37,7 +39,10 @@ public class SyncCache {
   }
 
   private final Project project;
-  private final Map<Object, Object> cache = Maps.newHashMap();
+  // values are computed at most once per key; readers of already-computed values never block.
+  // Replaced rather than cleared after each sync, so values computed from the previous project
+  // data while the cache is being cleared are never inserted into the new map.
+  private volatile Map<Object, Supplier<Object>> cache = Maps.newConcurrentMap();
 
   public SyncCache(Project project) {
     this.project = project;
@@ -50,23 +55,27 @@ public class SyncCache {
   /** Computes a value derived from the sync project data and caches it until the next sync. */
   @Nullable
   @SuppressWarnings("unchecked")
-  public synchronized <T> T get(Object key, SyncCacheComputable<T> computable) {
-    if (cache.containsKey(key)) {
-      return (T) cache.get(key);
+  public <T> T get(Object key, SyncCacheComputable<T> computable) {
+    // read before the project data, so a concurrent clear() discards anything computed here
+    Map<Object, Supplier<Object>> cache = this.cache;
+    Supplier<Object> value = cache.get(key);
+    if (value != null) {
+      return (T) value.get();
     }
     BlazeProjectData blazeProjectData =
         BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
     if (blazeProjectData == null) {
       return null;
     }
-    T value = computable.compute(project, blazeProjectData);
-    cache.put(key, value);
-    return value;
+    // only threads requesting this key wait for it to be computed
+    Supplier<Object> computed =
+        Suppliers.memoize(() -> computable.compute(project, blazeProjectData));
+    return (T) cache.computeIfAbsent(key, k -> computed).get();
   }
 
   @VisibleForTesting
-  public synchronized void clear() {
-    cache.clear();
+  public void clear() {
+    cache = Maps.newConcurrentMap();
   }
 
   static class ClearSyncCache implements SyncListener {
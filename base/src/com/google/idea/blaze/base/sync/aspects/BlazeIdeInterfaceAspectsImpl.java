@@ -93,6 +93,7 @@ import com.google.idea.blaze.base.sync.projectview.WorkspaceLanguageSettings;
 import com.google.idea.blaze.base.sync.sharding.ShardedTargetList;
 import com.google.idea.blaze.base.toolwindow.Task;
 import com.google.idea.common.experiments.BoolExperiment;
+import com.google.idea.common.experiments.IntExperiment;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.project.Project;
@@ -124,6 +125,13 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
   private static final BoolExperiment disableValidationActionExperiment =
       new BoolExperiment("blaze.sync.disable.valication.action", true);
 
+  /**
+   * Number of aspect output files parsed per batch when updating the target map. Only one batch is
+   * read ahead of the one being merged, bounding the number of parsed protos held at once.
+   */
+  private static final IntExperiment aspectFileBatchSize =
+      new IntExperiment("blaze.sync.aspect.file.batch.size", 5000);
+
   @Override
   public BlazeBuildOutputs buildIdeArtifacts(
       Project project,
@@ -184,7 +192,7 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
 
   /** Returns the {@link OutputArtifact}s we want to track between syncs. */
   private static ImmutableSet<OutputArtifact> getTrackedOutputs(BlazeBuildOutputs buildOutput) {
-    // don't track intellij-info.txt outputs -- they're already tracked in
+    // don't track the aspect's ide info outputs -- they're already tracked in
     // BlazeIdeInterfaceState
     Predicate<String> pathFilter = AspectStrategy.ASPECT_OUTPUT_FILE_PREDICATE.negate();
     return buildOutput.getOutputGroupArtifacts(group -> true).stream()
@@ -238,8 +246,12 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
     context.output(
         PrintOutput.log(
             String.format(
-                "Total rules: %d, new/changed: %d, removed: %d",
-                targetCount, diff.getUpdatedOutputs().size(), removedCount)));
+                "Total rules: %d, new/changed: %d (%d KB), unchanged content: %d KB, removed: %d",
+                targetCount,
+                diff.getUpdatedOutputs().size(),
+                diff.getUpdatedBytes() / 1024,
+                diff.getSkippedBytes() / 1024,
+                removedCount)));
 
     ListenableFuture<?> downloadArtifactsFuture =
         RemoteArtifactPrefetcher.getInstance()
@@ -451,6 +463,58 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
     }
   }
 
+  /**
+   * Reads and converts a batch of aspect output files in parallel. The returned future completes
+   * once every file in the batch has been parsed.
+   */
+  private static ListenableFuture<List<TargetFilePair>> readTargetsAsync(
+      ListeningExecutorService executor,
+      AspectStrategy aspectStrategy,
+      List<OutputArtifact> files,
+      WorkspaceLanguageSettings languageSettings,
+      ImportRoots importRoots,
+      Set<LanguageClass> ignoredLanguages,
+      Instant syncTime,
+      AtomicLong totalSizeLoaded,
+      ReadTimer timer) {
+    List<ListenableFuture<TargetFilePair>> futures = new ArrayList<>(files.size());
+    for (OutputArtifact file : files) {
+      futures.add(
+          executor.submit(
+              () -> {
+                long start = System.nanoTime();
+                totalSizeLoaded.addAndGet(file.getLength());
+                IntellijIdeInfo.TargetIdeInfo message = aspectStrategy.readAspectFile(file);
+                TargetIdeInfo target =
+                    protoToTarget(
+                        languageSettings, importRoots, message, ignoredLanguages, syncTime);
+                timer.record(start, System.nanoTime());
+                return new TargetFilePair(file, target);
+              }));
+    }
+    return Futures.allAsList(futures);
+  }
+
+  /**
+   * Records the wall-clock time spent reading a batch of aspect files, from the start of the first
+   * read to the end of the last. This excludes any time the batch spent queued behind another.
+   */
+  private static class ReadTimer {
+    private final AtomicLong startNanos = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong endNanos = new AtomicLong(Long.MIN_VALUE);
+
+    void record(long start, long end) {
+      startNanos.accumulateAndGet(start, Math::min);
+      endNanos.accumulateAndGet(end, Math::max);
+    }
+
+    long elapsedMillis() {
+      long start = startNanos.get();
+      long end = endNanos.get();
+      return end > start ? (end - start) / 1_000_000 : 0;
+    }
+  }
+
   private static class TargetFilePair {
     private final OutputArtifact file;
     private final TargetIdeInfo target;
@@ -516,58 +580,99 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
 
               ListeningExecutorService executor = BlazeExecutor.getInstance().getExecutor();
 
-              // Read protos from any new files
-              List<ListenableFuture<TargetFilePair>> futures = Lists.newArrayList();
-              for (OutputArtifact file : fileState.getUpdatedOutputs()) {
-                futures.add(
-                    executor.submit(
-                        () -> {
-                          totalSizeLoaded.addAndGet(file.getLength());
-                          IntellijIdeInfo.TargetIdeInfo message =
-                              aspectStrategy.readAspectFile(file);
-                          TargetIdeInfo target =
-                              protoToTarget(
-                                  languageSettings,
-                                  importRoots,
-                                  message,
-                                  ignoredLanguages,
-                                  syncTime);
-                          return new TargetFilePair(file, target);
-                        }));
-              }
-
               Set<TargetKey> newTargets = new HashSet<>();
               Set<String> configurations = new LinkedHashSet<>();
               configurations.add(configHandler.defaultConfigurationPathComponent);
 
-              // Update state with result from proto files
+              // Read protos from any new files in bounded batches. At most one batch is parsed
+              // ahead of the one being merged, so peak memory doesn't scale with the target count.
+              List<List<OutputArtifact>> batches =
+                  Lists.partition(
+                      ImmutableList.copyOf(fileState.getUpdatedOutputs()),
+                      Math.max(1, aspectFileBatchSize.getValue()));
               int duplicateTargetLabels = 0;
+              ListenableFuture<List<TargetFilePair>> nextBatch = null;
               try {
-                for (TargetFilePair targetFilePair : Futures.allAsList(futures).get()) {
-                  if (targetFilePair.target != null) {
-                    OutputArtifact file = targetFilePair.file;
-                    String config = file.getConfigurationMnemonic();
-                    configurations.add(config);
-                    TargetKey key = targetFilePair.target.getKey();
-                    if (targetMap.putIfAbsent(key, targetFilePair.target) == null) {
-                      state.ideInfoToTargetKey.forcePut(file.getKey(), key);
-                    } else {
-                      if (!newTargets.add(key)) {
-                        duplicateTargetLabels++;
-                      }
-                      // prioritize the default configuration over build order
-                      if (Objects.equals(config, configHandler.defaultConfigurationPathComponent)) {
-                        targetMap.put(key, targetFilePair.target);
+                ReadTimer nextTimer = new ReadTimer();
+                if (!batches.isEmpty()) {
+                  nextBatch =
+                      readTargetsAsync(
+                          executor,
+                          aspectStrategy,
+                          batches.get(0),
+                          languageSettings,
+                          importRoots,
+                          ignoredLanguages,
+                          syncTime,
+                          totalSizeLoaded,
+                          nextTimer);
+                }
+                for (int i = 0; i < batches.size(); i++) {
+                  List<TargetFilePair> batch = nextBatch.get();
+                  ReadTimer timer = nextTimer;
+                  nextTimer = new ReadTimer();
+                  nextBatch =
+                      i + 1 < batches.size()
+                          ? readTargetsAsync(
+                              executor,
+                              aspectStrategy,
+                              batches.get(i + 1),
+                              languageSettings,
+                              importRoots,
+                              ignoredLanguages,
+                              syncTime,
+                              totalSizeLoaded,
+                              nextTimer)
+                          : null;
+
+                  long mergeStart = System.nanoTime();
+                  // Update state with result from proto files
+                  for (TargetFilePair targetFilePair : batch) {
+                    if (targetFilePair.target != null) {
+                      OutputArtifact file = targetFilePair.file;
+                      String config = file.getConfigurationMnemonic();
+                      configurations.add(config);
+                      TargetKey key = targetFilePair.target.getKey();
+                      if (targetMap.putIfAbsent(key, targetFilePair.target) == null) {
                         state.ideInfoToTargetKey.forcePut(file.getKey(), key);
+                      } else {
+                        if (!newTargets.add(key)) {
+                          duplicateTargetLabels++;
+                        }
+                        // prioritize the default configuration over build order
+                        if (Objects.equals(
+                            config, configHandler.defaultConfigurationPathComponent)) {
+                          targetMap.put(key, targetFilePair.target);
+                          state.ideInfoToTargetKey.forcePut(file.getKey(), key);
+                        }
                       }
                     }
                   }
+                  if (batches.size() > 1) {
+                    long readMillis = Math.max(1, timer.elapsedMillis());
+                    context.output(
+                        PrintOutput.log(
+                            String.format(
+                                "Aspect file batch %d of %d: %d files read in %dms (%d files/s),"
+                                    + " merged in %dms",
+                                i + 1,
+                                batches.size(),
+                                batch.size(),
+                                readMillis,
+                                batch.size() * 1000L / readMillis,
+                                (System.nanoTime() - mergeStart) / 1_000_000)));
+                  }
                 }
               } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 return Result.error(null);
               } catch (ExecutionException e) {
                 return Result.error(e);
+              } finally {
+                // don't leave the read-ahead batch running if an earlier batch failed
+                if (nextBatch != null) {
+                  nextBatch.cancel(true);
+                }
               }
 
               context.output(
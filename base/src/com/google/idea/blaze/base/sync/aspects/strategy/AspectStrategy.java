@@ -25,7 +25,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.devtools.intellij.ideinfo.IntellijIdeInfo;
 import com.google.idea.blaze.base.command.BlazeCommand;
-import com.google.idea.blaze.base.command.buildresult.BlazeArtifact;
+import com.google.idea.blaze.base.command.buildresult.OutputArtifact;
 import com.google.idea.blaze.base.model.BlazeVersionData;
 import com.google.idea.blaze.base.model.primitives.LanguageClass;
 import com.google.idea.common.experiments.BoolExperiment;
@@ -44,8 +44,28 @@ import javax.annotation.Nullable;
 /** Aspect strategy for Skylark. */
 public abstract class AspectStrategy {
 
+  private static final String TEXT_OUTPUT_FILE_SUFFIX = ".intellij-info.txt";
+  private static final String BINARY_OUTPUT_FILE_SUFFIX = ".intellij-info.pb";
+
   public static final Predicate<String> ASPECT_OUTPUT_FILE_PREDICATE =
-      str -> str.endsWith(".intellij-info.txt");
+      str -> str.endsWith(TEXT_OUTPUT_FILE_SUFFIX) || str.endsWith(BINARY_OUTPUT_FILE_SUFFIX);
+
+  /**
+   * Whether the aspect should write binary-encoded, length-delimited ide info files, which are
+   * cheaper to read than text protos but cost an extra encoding action per target.
+   *
+   * <p>The format is selected with a --define, which changes the build configuration, so sync
+   * builds no longer share an analysis cache with builds which don't pass it.
+   */
+  private static final BoolExperiment binaryOutputFiles =
+      new BoolExperiment("blaze.aspect.binary.ide.info", false);
+
+  @VisibleForTesting
+  static final String BINARY_OUTPUT_FILES_FLAG = "--define=intellij_ide_info_format=binary";
+
+  /** Parsers are immutable, so a single instance is shared between all reader threads. */
+  private static final TextFormat.Parser textParser =
+      TextFormat.Parser.newBuilder().setAllowUnknownFields(true).build();
 
   /** A Blaze output group created by the aspect. */
   public enum OutputGroup {
@@ -106,9 +126,11 @@ public abstract class AspectStrategy {
         outputGroups.stream()
             .flatMap(g -> getOutputGroups(g, activeLanguages, directDepsOnly).stream())
             .collect(toImmutableList());
-    builder
-        .addBlazeFlags(getAspectFlags())
-        .addBlazeFlags("--output_groups=" + Joiner.on(',').join(groups));
+    builder.addBlazeFlags(getAspectFlags());
+    if (binaryOutputFiles.getValue()) {
+      builder.addBlazeFlags(BINARY_OUTPUT_FILES_FLAG);
+    }
+    builder.addBlazeFlags("--output_groups=" + Joiner.on(',').join(groups));
   }
 
   /**
@@ -160,11 +182,23 @@ public abstract class AspectStrategy {
         .collect(ImmutableList.toImmutableList());
   }
 
-  public final IntellijIdeInfo.TargetIdeInfo readAspectFile(BlazeArtifact file) throws IOException {
+  /**
+   * Reads an ide info file written by the aspect, either a text proto or a single length-delimited
+   * binary record.
+   */
+  public final IntellijIdeInfo.TargetIdeInfo readAspectFile(OutputArtifact file)
+      throws IOException {
     try (InputStream inputStream = file.getInputStream()) {
+      if (file.getRelativePath().endsWith(BINARY_OUTPUT_FILE_SUFFIX)) {
+        IntellijIdeInfo.TargetIdeInfo target =
+            IntellijIdeInfo.TargetIdeInfo.parseDelimitedFrom(inputStream);
+        if (target == null) {
+          throw new IOException("Empty aspect output file: " + file.getRelativePath());
+        }
+        return target;
+      }
       IntellijIdeInfo.TargetIdeInfo.Builder builder = IntellijIdeInfo.TargetIdeInfo.newBuilder();
-      TextFormat.Parser parser = TextFormat.Parser.newBuilder().setAllowUnknownFields(true).build();
-      parser.merge(new InputStreamReader(inputStream, UTF_8), builder);
+      textParser.merge(new InputStreamReader(inputStream, UTF_8), builder);
       return builder.build();
     }
   }
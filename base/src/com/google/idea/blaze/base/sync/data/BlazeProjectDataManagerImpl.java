@@ -23,6 +23,8 @@ import com.google.idea.blaze.base.io.FileOperationProvider;
 import com.google.idea.blaze.base.logging.EventLoggingService;
 import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.settings.BlazeImportSettings;
+import com.google.idea.common.experiments.BoolExperiment;
+import com.google.idea.common.experiments.IntExperiment;
 import com.google.idea.common.util.ConcurrencyUtil;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
@@ -41,11 +43,27 @@ public class BlazeProjectDataManagerImpl implements BlazeProjectDataManager {
   private static final Logger logger =
       Logger.getInstance(BlazeProjectDataManagerImpl.class.getName());
 
+  /**
+   * Whether to persist project data in the segmented, memory-mapped format (see {@link
+   * SegmentedProjectDataFile}) rather than a single gzipped proto.
+   */
+  private static final BoolExperiment segmentedCacheFormat =
+      new BoolExperiment("blaze.project.data.segmented.cache", false);
+
+  /**
+   * When using the segmented format, changes are appended as deltas until their total size
+   * exceeds this percentage of the base file, at which point the file is compacted.
+   */
+  private static final IntExperiment deltaCompactionThresholdPercent =
+      new IntExperiment("blaze.project.data.delta.compaction.threshold.percent", 25);
+
   private final Project project;
   // a per-project single-threaded executor to write project data to disk
   private final ListeningExecutorService writeDataExecutor;
 
   @Nullable private volatile BlazeProjectData projectData;
+  // only accessed while holding this object's lock
+  @Nullable private ProjectDataCacheFiles cacheFiles;
 
   public static BlazeProjectDataManagerImpl getImpl(Project project) {
     return (BlazeProjectDataManagerImpl) BlazeProjectDataManager.getInstance(project);
@@ -81,8 +99,9 @@ public class BlazeProjectDataManagerImpl implements BlazeProjectDataManager {
   @Nullable
   private synchronized BlazeProjectData loadProject(BlazeImportSettings importSettings) {
     try {
-      File file = getCacheFile(project, importSettings);
-      projectData = BlazeProjectData.loadFromDisk(importSettings.getBuildSystem(), file);
+      projectData =
+          getCacheFiles(importSettings)
+              .read(importSettings.getBuildSystem(), segmentedCacheFormat.getValue());
       return projectData;
     } catch (Throwable e) {
       if (!(e instanceof FileNotFoundException)) {
@@ -103,9 +122,14 @@ public class BlazeProjectDataManagerImpl implements BlazeProjectDataManager {
         .submitTask(
             (ProgressIndicator indicator) -> {
               try {
-                File file = getCacheFile(project, importSettings);
+                File file;
                 synchronized (this) {
-                  projectData.saveToDisk(file);
+                  file =
+                      getCacheFiles(importSettings)
+                          .write(
+                              projectData,
+                              segmentedCacheFormat.getValue(),
+                              deltaCompactionThresholdPercent.getValue());
                 }
                 logFileSize(projectData, file);
 
@@ -115,6 +139,14 @@ public class BlazeProjectDataManagerImpl implements BlazeProjectDataManager {
             });
   }
 
+  private synchronized ProjectDataCacheFiles getCacheFiles(BlazeImportSettings importSettings) {
+    File cacheDir = BlazeDataStorage.getProjectCacheDir(project, importSettings);
+    if (cacheFiles == null || !cacheFiles.getCacheDir().equals(cacheDir)) {
+      cacheFiles = new ProjectDataCacheFiles(cacheDir);
+    }
+    return cacheFiles;
+  }
+
   private static void logFileSize(BlazeProjectData projectData, File cacheFile) {
     ImmutableMap.Builder<String, String> data = ImmutableMap.builder();
     data.put("size", Long.toString(FileOperationProvider.getInstance().getFileSize(cacheFile)));
@@ -133,8 +165,4 @@ public class BlazeProjectDataManagerImpl implements BlazeProjectDataManager {
     }
     return message + " Please resync project.";
   }
-
-  private static File getCacheFile(Project project, BlazeImportSettings importSettings) {
-    return new File(BlazeDataStorage.getProjectCacheDir(project, importSettings), "cache.dat.gz");
-  }
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.data;
+
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.settings.BuildSystem;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import javax.annotation.Nullable;
+
+/**
+ * The on-disk project data cache, stored either as a single gzipped proto or in the segmented
+ * format (see {@link SegmentedProjectDataFile}).
+ *
+ * <p>Only the most recently written format is kept on disk: the other file is deleted before each
+ * write, so switching between formats never leaves behind a stale file to be loaded later.
+ *
+ * <p>Not thread-safe; callers are expected to synchronize access.
+ */
+final class ProjectDataCacheFiles {
+
+  private final File cacheDir;
+  private final File file;
+  private final File segmentedFile;
+
+  // the project data most recently written to (or read from) the segmented file, against which
+  // the next delta is computed
+  @Nullable private BlazeProjectData persistedSegmentedData;
+
+  ProjectDataCacheFiles(File cacheDir) {
+    this.cacheDir = cacheDir;
+    this.file = new File(cacheDir, "cache.dat.gz");
+    this.segmentedFile = new File(cacheDir, "cache.dat.seg");
+  }
+
+  File getCacheDir() {
+    return cacheDir;
+  }
+
+  /**
+   * Reads the cached project data. The segmented file is read if it's the only one present, even
+   * if the segmented format is no longer enabled, so that switching formats doesn't require a
+   * resync.
+   *
+   * @throws java.io.FileNotFoundException if there's no cached project data
+   */
+  BlazeProjectData read(BuildSystem buildSystem, boolean segmentedFormat) throws IOException {
+    persistedSegmentedData = null;
+    if (segmentedFile.exists() && (segmentedFormat || !file.exists())) {
+      BlazeProjectData projectData = SegmentedProjectDataFile.read(buildSystem, segmentedFile);
+      persistedSegmentedData = projectData;
+      return projectData;
+    }
+    return BlazeProjectData.loadFromDisk(buildSystem, file);
+  }
+
+  /**
+   * Writes the project data in the given format, returning the file written.
+   *
+   * <p>In the segmented format, changes since the previously persisted data are appended as a
+   * delta, until the deltas exceed the given percentage of the base file size, at which point the
+   * base file is rewritten.
+   */
+  File write(
+      BlazeProjectData projectData, boolean segmentedFormat, int compactionThresholdPercent)
+      throws IOException {
+    BlazeProjectData previous = persistedSegmentedData;
+    persistedSegmentedData = null;
+    if (!segmentedFormat) {
+      SegmentedProjectDataFile.delete(segmentedFile);
+      projectData.saveToDisk(file);
+      return file;
+    }
+    Files.deleteIfExists(file.toPath());
+    if (previous != null
+        && segmentedFile.exists()
+        && !shouldCompact(segmentedFile, compactionThresholdPercent)) {
+      SegmentedProjectDataFile.appendDelta(previous, projectData, segmentedFile);
+    } else {
+      SegmentedProjectDataFile.write(projectData, segmentedFile);
+    }
+    persistedSegmentedData = projectData;
+    return segmentedFile;
+  }
+
+  private static boolean shouldCompact(File segmentedFile, int compactionThresholdPercent) {
+    long deltaSize = SegmentedProjectDataFile.getDeltaSize(segmentedFile);
+    return deltaSize * 100 > segmentedFile.length() * compactionThresholdPercent;
+  }
+}
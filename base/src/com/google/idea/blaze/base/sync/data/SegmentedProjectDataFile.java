@@ -0,0 +1,574 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.data;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.CountingOutputStream;
+import com.google.devtools.intellij.ideinfo.IntellijIdeInfo;
+import com.google.devtools.intellij.model.ProjectData;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.model.ProjectTargetData;
+import com.google.idea.blaze.base.settings.BuildSystem;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.SystemInfo;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Reads and writes {@link BlazeProjectData} in a segmented, indexed on-disk format.
+ *
+ * <p>Unlike the monolithic gzipped proto, each part of the project data is written to its own
+ * section, and every target is serialized separately and indexed by its {@link TargetKey}. The file
+ * is read via a memory mapping, and targets are only decoded on first access (see {@link
+ * TargetMap#lazy}).
+ *
+ * <p>Layout: a header (magic number, version, generation), the sections, a section table and
+ * finally the offset of the section table as the last 8 bytes of the file.
+ *
+ * <p>Incremental changes can be appended to a sibling delta file (see {@link #appendDelta}). Each
+ * delta record holds the project metadata plus the targets added, changed or removed relative to
+ * the previously persisted data, and records are applied in order on top of the base file when
+ * reading. Delta files are tied to the generation of the base file they were written against, and
+ * are discarded when the base file is rewritten.
+ */
+public final class SegmentedProjectDataFile {
+
+  private static final Logger logger = Logger.getInstance(SegmentedProjectDataFile.class);
+
+  private static final int MAGIC = 0x424c5a53; // "BLZS"
+  private static final int DELTA_MAGIC = 0x424c5a44; // "BLZD"
+  private static final int VERSION = 2;
+  private static final int HEADER_SIZE = 16;
+
+  // section ids
+  private static final int PROJECT_SECTION = 1;
+  private static final int SYNC_STATE_SECTION = 2;
+  private static final int TARGET_DATA_SECTION = 3;
+  private static final int TARGET_INDEX_SECTION = 4;
+  private static final int TARGETS_SECTION = 5;
+
+  private SegmentedProjectDataFile() {}
+
+  /**
+   * Writes the given project data to the file, replacing any existing contents.
+   *
+   * <p>The data is written to a temporary file which then replaces the target, so existing
+   * memory mappings of the previous file remain valid.
+   */
+  public static void write(BlazeProjectData projectData, File file) throws IOException {
+    File tempFile = new File(file.getPath() + ".tmp");
+    writeSections(projectData, tempFile, new Random().nextLong());
+    Files.move(
+        tempFile.toPath(),
+        file.toPath(),
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    // any deltas were written against the previous generation, and are now obsolete
+    Files.deleteIfExists(getDeltaFile(file).toPath());
+  }
+
+  /** Deletes the given file and any deltas appended to it. */
+  public static void delete(File file) throws IOException {
+    Files.deleteIfExists(getDeltaFile(file).toPath());
+    Files.deleteIfExists(file.toPath());
+  }
+
+  /** Returns the size in bytes of the deltas appended to the given file. */
+  public static long getDeltaSize(File file) {
+    return getDeltaFile(file).length();
+  }
+
+  /**
+   * Appends the difference between the previously persisted project data and the current project
+   * data to the delta file for the given base file. Targets are compared by identity, so targets
+   * carried over unchanged from the previous sync aren't rewritten, and only changed targets are
+   * decoded.
+   *
+   * <p>If the base file can't be read, or the existing deltas weren't written against it or end in
+   * a partially written record, the base file is rewritten instead.
+   */
+  public static void appendDelta(BlazeProjectData previous, BlazeProjectData current, File file)
+      throws IOException {
+    Long generation = readGeneration(file);
+    File deltaFile = getDeltaFile(file);
+    boolean newFile = !deltaFile.exists() || deltaFile.length() == 0;
+    if (generation == null || (!newFile && !isValidDeltaFile(deltaFile, generation))) {
+      logger.warn("Rewriting project data file, deltas don't apply to " + file);
+      write(current, file);
+      return;
+    }
+
+    TargetMap previousTargets = previous.getTargetMap();
+    TargetMap currentTargets = current.getTargetMap();
+    ByteArrayOutputStream record = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(record)) {
+      writeLengthDelimited(out, metadataProto(current).toByteArray());
+
+      List<TargetIdeInfo> changed = new ArrayList<>();
+      List<TargetKey> removed = new ArrayList<>();
+      if (currentTargets != previousTargets) {
+        ImmutableSet<TargetKey> currentKeys = currentTargets.declaredKeys();
+        for (TargetKey key : currentKeys) {
+          // a target which was never decoded from the previous map can't have been carried over
+          TargetIdeInfo previousTarget = previousTargets.getIfDecoded(key);
+          if (previousTarget != null && previousTarget == currentTargets.getIfDecoded(key)) {
+            continue;
+          }
+          TargetIdeInfo target = currentTargets.peek(key);
+          if (target != null) {
+            changed.add(target);
+          }
+        }
+        previousTargets.declaredKeys().stream()
+            .filter(key -> !currentKeys.contains(key))
+            .forEach(removed::add);
+      }
+      out.writeInt(changed.size());
+      for (TargetIdeInfo target : changed) {
+        writeLengthDelimited(out, target.toProto().toByteArray());
+      }
+      out.writeInt(removed.size());
+      for (TargetKey key : removed) {
+        writeLengthDelimited(out, key.toProto().toByteArray());
+      }
+    }
+
+    try (DataOutputStream out =
+        new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(deltaFile, /* append= */ true)))) {
+      if (newFile) {
+        out.writeInt(DELTA_MAGIC);
+        out.writeLong(generation);
+      }
+      writeLengthDelimited(out, record.toByteArray());
+    }
+  }
+
+  /** Returns the generation of the given base file, or null if it isn't a valid base file. */
+  @Nullable
+  private static Long readGeneration(File file) throws IOException {
+    try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+      if (file.length() < HEADER_SIZE || in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return null;
+      }
+      return in.readLong();
+    }
+  }
+
+  /**
+   * Returns true if the given delta file was written against the given base file generation, and
+   * ends with a complete record, so that further records can be appended to it.
+   */
+  private static boolean isValidDeltaFile(File deltaFile, long generation) throws IOException {
+    try (FileChannel channel = FileChannel.open(deltaFile.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      ByteBuffer header = ByteBuffer.allocate(12);
+      if (size < 12 || !readFully(channel, header, 0)) {
+        return false;
+      }
+      if (header.getInt(0) != DELTA_MAGIC || header.getLong(4) != generation) {
+        return false;
+      }
+      // skip from one record length to the next, without reading the records themselves
+      ByteBuffer length = ByteBuffer.allocate(4);
+      long position = 12;
+      while (position < size) {
+        length.clear();
+        if (size - position < 4 || !readFully(channel, length, position)) {
+          return false;
+        }
+        position += 4 + Integer.toUnsignedLong(length.getInt(0));
+      }
+      return position == size;
+    }
+  }
+
+  private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void writeLengthDelimited(DataOutputStream out, byte[] bytes)
+      throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /** Returns the project data proto, without any targets. */
+  private static ProjectData.BlazeProjectData metadataProto(BlazeProjectData projectData) {
+    ProjectTargetData targetData = projectData.getTargetData();
+    return new BlazeProjectData(
+            new ProjectTargetData(
+                new TargetMap(ImmutableMap.of()),
+                targetData.ideInterfaceState,
+                targetData.remoteOutputs),
+            projectData.getBlazeInfo(),
+            projectData.getBlazeVersionData(),
+            projectData.getWorkspacePathResolver(),
+            projectData.getArtifactLocationDecoder(),
+            projectData.getWorkspaceLanguageSettings(),
+            projectData.getSyncState())
+        .toProto();
+  }
+
+  private static File getDeltaFile(File file) {
+    return new File(file.getPath() + ".delta");
+  }
+
+  private static void writeSections(BlazeProjectData projectData, File file, long generation)
+      throws IOException {
+    // targets are written individually below, so avoid serializing them as part of the proto
+    ProjectData.BlazeProjectData proto = metadataProto(projectData);
+    Map<Integer, long[]> sections = new HashMap<>();
+    try (CountingOutputStream counter =
+            new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        DataOutputStream out = new DataOutputStream(counter)) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(generation);
+
+      long start = counter.getCount();
+      proto.toBuilder().clearTargetData().clearSyncState().build().writeTo(out);
+      out.flush();
+      sections.put(PROJECT_SECTION, new long[] {start, counter.getCount() - start});
+
+      start = counter.getCount();
+      proto.getSyncState().writeTo(out);
+      out.flush();
+      sections.put(SYNC_STATE_SECTION, new long[] {start, counter.getCount() - start});
+
+      start = counter.getCount();
+      proto.getTargetData().toBuilder().clearTargetMap().build().writeTo(out);
+      out.flush();
+      sections.put(TARGET_DATA_SECTION, new long[] {start, counter.getCount() - start});
+
+      // write the targets first, so the index can record their offsets
+      ImmutableMap<TargetKey, TargetIdeInfo> targets = projectData.getTargetMap().map();
+      long[] offsets = new long[targets.size()];
+      int[] lengths = new int[targets.size()];
+      long targetsStart = counter.getCount();
+      int i = 0;
+      for (TargetIdeInfo target : targets.values()) {
+        long targetStart = counter.getCount();
+        target.toProto().writeTo(out);
+        out.flush();
+        offsets[i] = targetStart - targetsStart;
+        lengths[i] = (int) (counter.getCount() - targetStart);
+        i++;
+      }
+      sections.put(TARGETS_SECTION, new long[] {targetsStart, counter.getCount() - targetsStart});
+
+      start = counter.getCount();
+      out.writeInt(targets.size());
+      i = 0;
+      for (TargetKey key : targets.keySet()) {
+        byte[] keyBytes = key.toProto().toByteArray();
+        out.writeInt(keyBytes.length);
+        out.write(keyBytes);
+        out.writeLong(offsets[i]);
+        out.writeInt(lengths[i]);
+        i++;
+      }
+      out.flush();
+      sections.put(TARGET_INDEX_SECTION, new long[] {start, counter.getCount() - start});
+
+      long tableOffset = counter.getCount();
+      out.writeInt(sections.size());
+      for (Map.Entry<Integer, long[]> section : sections.entrySet()) {
+        out.writeInt(section.getKey());
+        out.writeLong(section.getValue()[0]);
+        out.writeLong(section.getValue()[1]);
+      }
+      out.writeLong(tableOffset);
+    }
+  }
+
+  /**
+   * Reads project data from the given file, applying any deltas appended to it. Targets in the
+   * base file are decoded lazily from a memory mapping of the file.
+   */
+  public static BlazeProjectData read(BuildSystem buildSystem, File file) throws IOException {
+    try {
+      return readUnchecked(buildSystem, file);
+    } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+      // offsets and lengths read from a truncated or corrupt file can be out of range
+      throw new IOException("Corrupt project data file: " + file, e);
+    }
+  }
+
+  private static BlazeProjectData readUnchecked(BuildSystem buildSystem, File file)
+      throws IOException {
+    ByteBuffer buffer = mapFile(file);
+    if (buffer.limit() < HEADER_SIZE + 8 || buffer.getInt(0) != MAGIC) {
+      throw new IOException("Not a segmented project data file: " + file);
+    }
+    int version = buffer.getInt(4);
+    if (version != VERSION) {
+      throw new IOException("Unsupported project data file version: " + version);
+    }
+    long generation = buffer.getLong(8);
+    Map<Integer, ByteBuffer> sections = readSectionTable(buffer);
+
+    ProjectData.BlazeProjectData proto =
+        ProjectData.BlazeProjectData.parseFrom(getSection(sections, PROJECT_SECTION))
+            .toBuilder()
+            .setSyncState(
+                ProjectData.SyncState.parseFrom(getSection(sections, SYNC_STATE_SECTION)))
+            .setTargetData(
+                ProjectData.TargetData.parseFrom(getSection(sections, TARGET_DATA_SECTION)))
+            .build();
+    TargetMap.LazyTargetSource targets =
+        new MappedTargetSource(
+            getSection(sections, TARGET_INDEX_SECTION), getSection(sections, TARGETS_SECTION));
+
+    DeltaTargetSource deltas = new DeltaTargetSource(targets);
+    ProjectData.BlazeProjectData deltaMetadata = readDeltas(file, generation, deltas);
+    if (deltaMetadata != null) {
+      proto = deltaMetadata;
+      targets = deltas;
+    }
+    return BlazeProjectData.fromProto(
+        buildSystem,
+        proto,
+        ProjectTargetData.fromProto(proto.getTargetData(), TargetMap.lazy(targets)));
+  }
+
+  /**
+   * Applies the deltas for the given base file to the given target source, returning the project
+   * metadata from the most recent delta, or null if there are no applicable deltas.
+   */
+  @Nullable
+  private static ProjectData.BlazeProjectData readDeltas(
+      File file, long generation, DeltaTargetSource targets) throws IOException {
+    File deltaFile = getDeltaFile(file);
+    if (!deltaFile.exists()) {
+      return null;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(deltaFile.toPath()));
+    if (buffer.remaining() < 12
+        || buffer.getInt() != DELTA_MAGIC
+        || buffer.getLong() != generation) {
+      // written against a different base file
+      return null;
+    }
+    ProjectData.BlazeProjectData metadata = null;
+    while (buffer.remaining() >= 4) {
+      int length = buffer.getInt();
+      if (length > buffer.remaining()) {
+        // a partially written record, ignore it
+        logger.warn("Ignoring truncated project data delta in " + deltaFile);
+        break;
+      }
+      ByteBuffer record = slice(buffer, buffer.position(), length);
+      buffer.position(buffer.position() + length);
+
+      metadata = ProjectData.BlazeProjectData.parseFrom(readLengthDelimited(record));
+      int changedCount = record.getInt();
+      for (int i = 0; i < changedCount; i++) {
+        TargetIdeInfo target =
+            TargetIdeInfo.fromProto(
+                IntellijIdeInfo.TargetIdeInfo.parseFrom(readLengthDelimited(record)));
+        if (target != null) {
+          targets.put(target);
+        }
+      }
+      int removedCount = record.getInt();
+      for (int i = 0; i < removedCount; i++) {
+        targets.remove(
+            TargetKey.fromProto(IntellijIdeInfo.TargetKey.parseFrom(readLengthDelimited(record))));
+      }
+    }
+    return metadata;
+  }
+
+  private static ByteBuffer readLengthDelimited(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    ByteBuffer bytes = slice(buffer, buffer.position(), length);
+    buffer.position(buffer.position() + length);
+    return bytes;
+  }
+
+  private static ByteBuffer mapFile(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      // a live mapping prevents the file from being replaced on Windows, so read it onto the heap
+      if (SystemInfo.isWindows) {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {}
+        buffer.flip();
+        return buffer;
+      }
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  private static Map<Integer, ByteBuffer> readSectionTable(ByteBuffer buffer) throws IOException {
+    long tableOffset = buffer.getLong(buffer.limit() - 8);
+    if (tableOffset < HEADER_SIZE || tableOffset > buffer.limit() - 8) {
+      throw new IOException("Corrupt project data file: invalid section table offset");
+    }
+    ByteBuffer table = buffer.duplicate();
+    table.position((int) tableOffset);
+    int count = table.getInt();
+    Map<Integer, ByteBuffer> sections = new HashMap<>();
+    for (int i = 0; i < count; i++) {
+      int id = table.getInt();
+      long offset = table.getLong();
+      long length = table.getLong();
+      if (offset < HEADER_SIZE || length < 0 || offset + length > tableOffset) {
+        throw new IOException("Corrupt project data file: invalid bounds for section " + id);
+      }
+      sections.put(id, slice(buffer, offset, length));
+    }
+    return sections;
+  }
+
+  private static ByteBuffer getSection(Map<Integer, ByteBuffer> sections, int id)
+      throws IOException {
+    ByteBuffer section = sections.get(id);
+    if (section == null) {
+      throw new IOException("Corrupt project data file: missing section " + id);
+    }
+    return section.duplicate();
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, long offset, long length) {
+    ByteBuffer copy = buffer.duplicate();
+    copy.position((int) offset);
+    copy.limit((int) (offset + length));
+    return copy.slice();
+  }
+
+  /** Decodes individual targets from the memory-mapped targets section. */
+  private static final class MappedTargetSource implements TargetMap.LazyTargetSource {
+    private final ImmutableMap<TargetKey, Integer> index;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final ByteBuffer targets;
+
+    MappedTargetSource(ByteBuffer indexSection, ByteBuffer targets) throws IOException {
+      this.targets = targets;
+      int count = indexSection.getInt();
+      ImmutableMap.Builder<TargetKey, Integer> index = ImmutableMap.builder();
+      offsets = new long[count];
+      lengths = new int[count];
+      for (int i = 0; i < count; i++) {
+        ByteBuffer key = indexSection.slice();
+        int keyLength = key.getInt();
+        key.limit(4 + keyLength);
+        index.put(TargetKey.fromProto(IntellijIdeInfo.TargetKey.parseFrom(key)), i);
+        indexSection.position(indexSection.position() + 4 + keyLength);
+        offsets[i] = indexSection.getLong();
+        lengths[i] = indexSection.getInt();
+      }
+      this.index = index.build();
+    }
+
+    @Override
+    public ImmutableSet<TargetKey> keys() {
+      return index.keySet();
+    }
+
+    @Nullable
+    @Override
+    public TargetIdeInfo load(TargetKey key) {
+      Integer i = index.get(key);
+      if (i == null) {
+        return null;
+      }
+      try {
+        return TargetIdeInfo.fromProto(
+            IntellijIdeInfo.TargetIdeInfo.parseFrom(slice(targets, offsets[i], lengths[i])));
+      } catch (IOException | IndexOutOfBoundsException | IllegalArgumentException e) {
+        logger.warn("Couldn't decode target " + key, e);
+        return null;
+      }
+    }
+  }
+
+  /** Overlays the targets changed or removed by delta records on top of a base target source. */
+  private static final class DeltaTargetSource implements TargetMap.LazyTargetSource {
+    private final TargetMap.LazyTargetSource base;
+    private final Map<TargetKey, TargetIdeInfo> changed = new HashMap<>();
+    private final Set<TargetKey> removed = new HashSet<>();
+    @Nullable private volatile ImmutableSet<TargetKey> keys;
+
+    DeltaTargetSource(TargetMap.LazyTargetSource base) {
+      this.base = base;
+    }
+
+    void put(TargetIdeInfo target) {
+      changed.put(target.getKey(), target);
+      removed.remove(target.getKey());
+    }
+
+    void remove(TargetKey key) {
+      changed.remove(key);
+      removed.add(key);
+    }
+
+    @Override
+    public ImmutableSet<TargetKey> keys() {
+      ImmutableSet<TargetKey> keys = this.keys;
+      if (keys == null) {
+        ImmutableSet.Builder<TargetKey> builder = ImmutableSet.builder();
+        base.keys().stream().filter(key -> !removed.contains(key)).forEach(builder::add);
+        builder.addAll(changed.keySet());
+        keys = builder.build();
+        this.keys = keys;
+      }
+      return keys;
+    }
+
+    @Nullable
+    @Override
+    public TargetIdeInfo load(TargetKey key) {
+      TargetIdeInfo target = changed.get(key);
+      if (target != null) {
+        return target;
+      }
+      return removed.contains(key) ? null : base.load(key);
+    }
+  }
+}
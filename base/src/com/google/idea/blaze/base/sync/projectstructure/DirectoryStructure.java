@@ -15,13 +15,10 @@
  */
 package com.google.idea.blaze.base.sync.projectstructure;
 
-import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableMap.Builder;
-import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.idea.blaze.base.io.FileOperationProvider;
 import com.google.idea.blaze.base.model.primitives.WorkspacePath;
@@ -29,14 +26,25 @@ import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
 import com.google.idea.blaze.base.prefetch.FetchExecutor;
 import com.google.idea.blaze.base.projectview.ProjectViewSet;
 import com.google.idea.blaze.base.settings.Blaze;
+import com.google.idea.blaze.base.settings.BlazeImportSettings;
+import com.google.idea.blaze.base.settings.BlazeImportSettingsManager;
+import com.google.idea.blaze.base.sync.data.BlazeDataStorage;
 import com.google.idea.blaze.base.sync.projectview.ImportRoots;
+import com.google.idea.common.experiments.BoolExperiment;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
 
 /**
  * Directory structure representation used by {@link ContentEntryEditor}.
@@ -46,6 +54,21 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public class DirectoryStructure {
 
+  private static final Logger logger = Logger.getInstance(DirectoryStructure.class);
+
+  /**
+   * Whether to persist the directory listings between syncs, and only re-list directories modified
+   * since the previous sync.
+   */
+  private static final BoolExperiment useSnapshot =
+      new BoolExperiment("blaze.directory.structure.snapshot", false);
+
+  private static final String SNAPSHOT_FILE_NAME = "directory_structure.dat";
+
+  // directory listing is IO-bound, so use more threads than there are processors
+  private static final ForkJoinPool WALKER_POOL =
+      new ForkJoinPool(Math.max(16, Runtime.getRuntime().availableProcessors()));
+
   final ImmutableMap<WorkspacePath, DirectoryStructure> directories;
 
   private DirectoryStructure(ImmutableMap<WorkspacePath, DirectoryStructure> directories) {
@@ -73,102 +96,194 @@ public class DirectoryStructure {
       Project project,
       WorkspaceRoot workspaceRoot,
       ProjectViewSet projectViewSet,
-      AtomicBoolean cancelled)
-      throws ExecutionException, InterruptedException {
-    FileOperationProvider fileOperationProvider = FileOperationProvider.getInstance();
+      AtomicBoolean cancelled) {
     ImportRoots importRoots =
         ImportRoots.builder(workspaceRoot, Blaze.getBuildSystem(project))
             .add(projectViewSet)
             .build();
-    Collection<WorkspacePath> rootDirectories = importRoots.rootDirectories();
-    Set<WorkspacePath> excludeDirectories = importRoots.excludeDirectories();
-    List<ListenableFuture<PathStructurePair>> futures =
-        Lists.newArrayListWithExpectedSize(rootDirectories.size());
-    for (WorkspacePath rootDirectory : rootDirectories) {
-      futures.add(
-          walkDirectoryStructure(
-              workspaceRoot,
-              excludeDirectories,
-              fileOperationProvider,
-              FetchExecutor.EXECUTOR,
-              rootDirectory,
-              cancelled));
+    File snapshotFile = useSnapshot.getValue() ? getSnapshotFile(project) : null;
+    DirectoryStructureSnapshot previous =
+        snapshotFile != null
+            ? DirectoryStructureSnapshot.read(snapshotFile)
+            : DirectoryStructureSnapshot.EMPTY;
+
+    Walker walker =
+        new Walker(
+            workspaceRoot,
+            importRoots.excludeDirectories(),
+            FileOperationProvider.getInstance(),
+            previous,
+            cancelled);
+    DirectoryStructure result =
+        WALKER_POOL.invoke(new RootsTask(walker, importRoots.rootDirectories()));
+    if (snapshotFile != null && !cancelled.get()) {
+      logger.info(
+          String.format(
+              "Listed %d of %d directories",
+              walker.listedDirectories.get(), walker.listings.size()));
+      walker.toSnapshot().write(snapshotFile);
     }
-    ImmutableMap.Builder<WorkspacePath, DirectoryStructure> result = ImmutableMap.builder();
-    for (PathStructurePair pair : Futures.allAsList(futures).get()) {
-      if (pair != null) {
-        result.put(pair.path, pair.directoryStructure);
+    return result;
+  }
+
+  @Nullable
+  private static File getSnapshotFile(Project project) {
+    BlazeImportSettings importSettings =
+        BlazeImportSettingsManager.getInstance(project).getImportSettings();
+    return importSettings != null
+        ? new File(BlazeDataStorage.getProjectDataDir(importSettings), SNAPSHOT_FILE_NAME)
+        : null;
+  }
+
+  /** The state shared by all tasks of a single directory walk. */
+  private static class Walker {
+    final WorkspaceRoot workspaceRoot;
+    final Set<WorkspacePath> excludeDirectories;
+    final FileOperationProvider fileOperationProvider;
+    final DirectoryStructureSnapshot previous;
+    final AtomicBoolean cancelled;
+    final long startTimeMillis = System.currentTimeMillis();
+    final Map<String, DirectoryStructureSnapshot.Entry> listings = new ConcurrentHashMap<>();
+    final AtomicInteger listedDirectories = new AtomicInteger();
+
+    Walker(
+        WorkspaceRoot workspaceRoot,
+        Set<WorkspacePath> excludeDirectories,
+        FileOperationProvider fileOperationProvider,
+        DirectoryStructureSnapshot previous,
+        AtomicBoolean cancelled) {
+      this.workspaceRoot = workspaceRoot;
+      this.excludeDirectories = excludeDirectories;
+      this.fileOperationProvider = fileOperationProvider;
+      this.previous = previous;
+      this.cancelled = cancelled;
+    }
+
+    /**
+     * Returns the names of the child directories of the given directory, or null if it isn't a
+     * directory. Directories unmodified since the previous snapshot aren't listed again.
+     */
+    @Nullable
+    ImmutableList<String> getChildDirectories(WorkspacePath workspacePath, File file) {
+      long modifiedTime = fileOperationProvider.getFileModifiedTime(file);
+      ImmutableList<String> children =
+          modifiedTime != 0
+              ? previous.getChildDirectories(workspacePath.relativePath(), modifiedTime)
+              : null;
+      if (children == null) {
+        if (!fileOperationProvider.isDirectory(file)) {
+          return null;
+        }
+        children = listChildDirectories(file);
+        listedDirectories.incrementAndGet();
       }
+      listings.put(
+          workspacePath.relativePath(),
+          new DirectoryStructureSnapshot.Entry(modifiedTime, children));
+      return children;
+    }
+
+    private ImmutableList<String> listChildDirectories(File file) {
+      File[] children = fileOperationProvider.listFiles(file);
+      if (children == null) {
+        return ImmutableList.of();
+      }
+      ImmutableList.Builder<String> result = ImmutableList.builder();
+      for (File child : children) {
+        if (fileOperationProvider.isDirectory(child)) {
+          result.add(child.getName());
+        }
+      }
+      return result.build();
+    }
+
+    DirectoryStructureSnapshot toSnapshot() {
+      return new DirectoryStructureSnapshot(startTimeMillis, listings);
     }
-    return new DirectoryStructure(result.build());
   }
 
-  private static ListenableFuture<PathStructurePair> walkDirectoryStructure(
-      WorkspaceRoot workspaceRoot,
-      Set<WorkspacePath> excludeDirectories,
-      FileOperationProvider fileOperationProvider,
-      ListeningExecutorService executorService,
-      WorkspacePath workspacePath,
-      AtomicBoolean cancelled) {
-    if (cancelled.get() || excludeDirectories.contains(workspacePath)) {
-      return Futures.immediateFuture(null);
+  /** Walks each of the project's root directories in parallel. */
+  private static class RootsTask extends RecursiveTask<DirectoryStructure> {
+    private final Walker walker;
+    private final Collection<WorkspacePath> rootDirectories;
+
+    RootsTask(Walker walker, Collection<WorkspacePath> rootDirectories) {
+      this.walker = walker;
+      this.rootDirectories = rootDirectories;
     }
-    File file = workspaceRoot.fileForPath(workspacePath);
-    if (!fileOperationProvider.isDirectory(file)) {
-      return Futures.immediateFuture(null);
+
+    @Override
+    protected DirectoryStructure compute() {
+      List<DirectoryTask> tasks = new ArrayList<>(rootDirectories.size());
+      for (WorkspacePath rootDirectory : rootDirectories) {
+        tasks.add(new DirectoryTask(walker, rootDirectory));
+      }
+      return new DirectoryStructure(joinAll(tasks));
     }
-    ListenableFuture<File[]> childrenFuture =
-        executorService.submit(() -> fileOperationProvider.listFiles(file));
-    return Futures.transformAsync(
-        childrenFuture,
-        children -> {
-          if (cancelled.get() || children == null) {
-            return Futures.immediateFuture(null);
-          }
-          List<ListenableFuture<PathStructurePair>> futures =
-              Lists.newArrayListWithExpectedSize(children.length);
-          for (File child : children) {
-            WorkspacePath childWorkspacePath;
-            try {
-              childWorkspacePath = workspaceRoot.workspacePathFor(child);
-            } catch (IllegalArgumentException e) {
-              // stop at directories with unhandled characters.
-              continue;
-            }
-            futures.add(
-                walkDirectoryStructure(
-                    workspaceRoot,
-                    excludeDirectories,
-                    fileOperationProvider,
-                    executorService,
-                    childWorkspacePath,
-                    cancelled));
-          }
-          return Futures.transform(
-              Futures.allAsList(futures),
-              (Function<List<PathStructurePair>, PathStructurePair>)
-                  pairs -> {
-                    Builder<WorkspacePath, DirectoryStructure> result = ImmutableMap.builder();
-                    for (PathStructurePair pair : pairs) {
-                      if (pair != null) {
-                        result.put(pair.path, pair.directoryStructure);
-                      }
-                    }
-                    return new PathStructurePair(
-                        workspacePath, new DirectoryStructure(result.build()));
-                  },
-              executorService);
-        },
-        executorService);
   }
 
-  private static class PathStructurePair {
-    final WorkspacePath path;
-    final DirectoryStructure directoryStructure;
+  /**
+   * Walks a single directory, forking a task for each child directory. Idle worker threads steal
+   * forked subtrees from busy ones, so no per-directory futures are created.
+   */
+  private static class DirectoryTask extends RecursiveTask<DirectoryStructure> {
+    private final Walker walker;
+    private final WorkspacePath workspacePath;
+
+    DirectoryTask(Walker walker, WorkspacePath workspacePath) {
+      this.walker = walker;
+      this.workspacePath = workspacePath;
+    }
 
-    PathStructurePair(WorkspacePath path, DirectoryStructure directoryStructure) {
-      this.path = path;
-      this.directoryStructure = directoryStructure;
+    @Nullable
+    @Override
+    protected DirectoryStructure compute() {
+      if (walker.cancelled.get() || walker.excludeDirectories.contains(workspacePath)) {
+        return null;
+      }
+      File file = walker.workspaceRoot.fileForPath(workspacePath);
+      ImmutableList<String> children = walker.getChildDirectories(workspacePath, file);
+      if (children == null || walker.cancelled.get()) {
+        return null;
+      }
+      List<DirectoryTask> tasks = new ArrayList<>(children.size());
+      for (String child : children) {
+        WorkspacePath childWorkspacePath;
+        try {
+          childWorkspacePath = new WorkspacePath(workspacePath, child);
+        } catch (IllegalArgumentException e) {
+          // stop at directories with unhandled characters.
+          continue;
+        }
+        tasks.add(new DirectoryTask(walker, childWorkspacePath));
+      }
+      return new DirectoryStructure(joinAll(tasks));
+    }
+  }
+
+  /**
+   * Runs the given tasks, forking all but the last and computing the last in the current thread.
+   * Returns the non-null results, in order.
+   */
+  private static ImmutableMap<WorkspacePath, DirectoryStructure> joinAll(
+      List<DirectoryTask> tasks) {
+    if (tasks.isEmpty()) {
+      return ImmutableMap.of();
+    }
+    for (int i = 0; i < tasks.size() - 1; i++) {
+      tasks.get(i).fork();
+    }
+    DirectoryStructure last = tasks.get(tasks.size() - 1).compute();
+    ImmutableMap.Builder<WorkspacePath, DirectoryStructure> result = ImmutableMap.builder();
+    for (int i = 0; i < tasks.size() - 1; i++) {
+      DirectoryStructure structure = tasks.get(i).join();
+      if (structure != null) {
+        result.put(tasks.get(i).workspacePath, structure);
+      }
+    }
+    if (last != null) {
+      result.put(tasks.get(tasks.size() - 1).workspacePath, last);
     }
+    return result.build();
   }
 }
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.projectstructure;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * The directory listings from a previous walk of the project's directory structure, keyed by
+ * workspace-relative path.
+ *
+ * <p>A directory's modification time changes whenever entries are added to, removed from or renamed
+ * within it, so a directory whose modification time is unchanged since the snapshot was taken has
+ * the same child directories, and needn't be listed again.
+ */
+final class DirectoryStructureSnapshot {
+
+  private static final Logger logger = Logger.getInstance(DirectoryStructureSnapshot.class);
+
+  private static final int MAGIC = 0x424c5a44; // "BLZD"
+  private static final int VERSION = 1;
+
+  /**
+   * File systems with coarse timestamps can modify a directory without changing its modification
+   * time, if that happens soon after it's listed. Listings of directories modified this close to
+   * the snapshot time aren't trusted.
+   */
+  private static final long TIMESTAMP_GRANULARITY_MILLIS = 2000;
+
+  static final DirectoryStructureSnapshot EMPTY =
+      new DirectoryStructureSnapshot(0, ImmutableMap.of());
+
+  /** The listing of a single directory. */
+  static final class Entry {
+    final long modifiedTime;
+    final ImmutableList<String> childDirectories;
+
+    Entry(long modifiedTime, ImmutableList<String> childDirectories) {
+      this.modifiedTime = modifiedTime;
+      this.childDirectories = childDirectories;
+    }
+  }
+
+  /** The time the walk producing this snapshot started. */
+  final long snapshotTimeMillis;
+
+  final ImmutableMap<String, Entry> entries;
+
+  DirectoryStructureSnapshot(long snapshotTimeMillis, Map<String, Entry> entries) {
+    this.snapshotTimeMillis = snapshotTimeMillis;
+    this.entries = ImmutableMap.copyOf(entries);
+  }
+
+  /**
+   * Returns the child directories of the given directory from this snapshot, or null if the
+   * directory has been modified since the snapshot was taken.
+   */
+  @Nullable
+  ImmutableList<String> getChildDirectories(String relativePath, long modifiedTime) {
+    Entry entry = entries.get(relativePath);
+    if (entry == null
+        || entry.modifiedTime != modifiedTime
+        || modifiedTime >= snapshotTimeMillis - TIMESTAMP_GRANULARITY_MILLIS) {
+      return null;
+    }
+    return entry.childDirectories;
+  }
+
+  /** Reads a snapshot from disk, returning an empty snapshot if it's missing or unreadable. */
+  static DirectoryStructureSnapshot read(File file) {
+    if (!file.exists()) {
+      return EMPTY;
+    }
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return EMPTY;
+      }
+      long snapshotTimeMillis = in.readLong();
+      int count = in.readInt();
+      ImmutableMap.Builder<String, Entry> entries = ImmutableMap.builder();
+      for (int i = 0; i < count; i++) {
+        String path = in.readUTF();
+        long modifiedTime = in.readLong();
+        int childCount = in.readInt();
+        ImmutableList.Builder<String> children = ImmutableList.builder();
+        for (int j = 0; j < childCount; j++) {
+          children.add(in.readUTF());
+        }
+        entries.put(path, new Entry(modifiedTime, children.build()));
+      }
+      return new DirectoryStructureSnapshot(snapshotTimeMillis, entries.build());
+    } catch (IOException | IllegalArgumentException e) {
+      logger.warn("Failed to read directory structure snapshot", e);
+      return EMPTY;
+    }
+  }
+
+  /** Writes this snapshot to disk, replacing any previous snapshot. */
+  void write(File file) {
+    File tmp = new File(file.getPath() + ".tmp");
+    try {
+      Files.createDirectories(file.getParentFile().toPath());
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(snapshotTimeMillis);
+        out.writeInt(entries.size());
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+          out.writeUTF(entry.getKey());
+          out.writeLong(entry.getValue().modifiedTime);
+          out.writeInt(entry.getValue().childDirectories.size());
+          for (String child : entry.getValue().childDirectories) {
+            out.writeUTF(child);
+          }
+        }
+      }
+      Files.move(
+          tmp.toPath(),
+          file.toPath(),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      logger.warn("Failed to write directory structure snapshot", e);
+      tmp.delete();
+    }
+  }
+}
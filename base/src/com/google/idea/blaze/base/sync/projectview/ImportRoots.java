@@ -16,6 +16,7 @@
 package com.google.idea.blaze.base.sync.projectview;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -36,8 +37,7 @@ import com.google.idea.blaze.base.sync.data.BlazeDataStorage;
 import com.google.idea.blaze.base.util.WorkspacePathUtil;
 import com.google.idea.common.experiments.BoolExperiment;
 import com.intellij.openapi.project.Project;
-import java.nio.file.FileSystems;
-import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Set;
 import javax.annotation.Nullable;
@@ -45,6 +45,8 @@ import javax.annotation.Nullable;
 /** The roots to import. Derived from project view. */
 public final class ImportRoots {
 
+  private static final Splitter PATH_SPLITTER = Splitter.on('/').omitEmptyStrings();
+
   private final BoolExperiment treatProjectTargetsAsSource =
       new BoolExperiment("blaze.treat.project.targets.as.source", true);
 
@@ -199,33 +201,130 @@ public final class ImportRoots {
   static class ProjectDirectoriesHelper {
     private final ImmutableSet<WorkspacePath> rootDirectories;
     private final ImmutableSet<WorkspacePath> excludeDirectories;
+    private final PathTrie trie;
 
     @VisibleForTesting
     ProjectDirectoriesHelper(
         Collection<WorkspacePath> rootDirectories, Collection<WorkspacePath> excludeDirectories) {
       this.rootDirectories = ImmutableSet.copyOf(rootDirectories);
       this.excludeDirectories = ImmutableSet.copyOf(excludeDirectories);
+      this.trie = new PathTrie(this.rootDirectories, this.excludeDirectories);
     }
 
     boolean containsWorkspacePath(WorkspacePath workspacePath) {
-      boolean included = false;
-      boolean excluded = false;
-      for (WorkspacePath rootDirectory : rootDirectories) {
-        included = included || isSubdirectory(rootDirectory, workspacePath);
+      return trie.contains(workspacePath.relativePath());
+    }
+  }
+
+  /**
+   * A trie of workspace path segments, marking the root and excluded directories.
+   *
+   * <p>A path is contained if it's under any root directory and not under any excluded directory.
+   * Lookups walk the segments of the path once, comparing them in place without allocating.
+   */
+  private static final class PathTrie {
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private static final class Node {
+      boolean isRoot;
+      boolean isExcluded;
+      // sorted by name, for binary search
+      String[] childNames = new String[0];
+      Node[] children = NO_CHILDREN;
+
+      Node getOrAddChild(String name) {
+        int index = Arrays.binarySearch(childNames, name);
+        if (index >= 0) {
+          return children[index];
+        }
+        int insertAt = -index - 1;
+        Node child = new Node();
+        childNames = insert(childNames, insertAt, name, new String[childNames.length + 1]);
+        children = insert(children, insertAt, child, new Node[children.length + 1]);
+        return child;
       }
-      for (WorkspacePath excludeDirectory : excludeDirectories) {
-        excluded = excluded || isSubdirectory(excludeDirectory, workspacePath);
+
+      @Nullable
+      Node getChild(String path, int start, int end) {
+        int low = 0;
+        int high = childNames.length - 1;
+        while (low <= high) {
+          int mid = (low + high) >>> 1;
+          int cmp = compare(childNames[mid], path, start, end);
+          if (cmp < 0) {
+            low = mid + 1;
+          } else if (cmp > 0) {
+            high = mid - 1;
+          } else {
+            return children[mid];
+          }
+        }
+        return null;
       }
-      return included && !excluded;
+
+      private static <T> T[] insert(T[] array, int index, T value, T[] result) {
+        System.arraycopy(array, 0, result, 0, index);
+        result[index] = value;
+        System.arraycopy(array, index, result, index + 1, array.length - index);
+        return result;
+      }
+
+      /** Compares {@code name} to {@code path.substring(start, end)}, as per String#compareTo. */
+      private static int compare(String name, String path, int start, int end) {
+        int length = Math.min(name.length(), end - start);
+        for (int i = 0; i < length; i++) {
+          int diff = name.charAt(i) - path.charAt(start + i);
+          if (diff != 0) {
+            return diff;
+          }
+        }
+        return name.length() - (end - start);
+      }
+    }
+
+    private final Node root = new Node();
+
+    PathTrie(Collection<WorkspacePath> rootDirectories, Collection<WorkspacePath> excludes) {
+      rootDirectories.forEach(path -> add(path).isRoot = true);
+      excludes.forEach(path -> add(path).isExcluded = true);
     }
 
-    private static boolean isSubdirectory(WorkspacePath ancestor, WorkspacePath descendant) {
-      if (ancestor.isWorkspaceRoot()) {
-        return true;
+    private Node add(WorkspacePath path) {
+      Node node = root;
+      if (path.isWorkspaceRoot()) {
+        return node;
+      }
+      for (String segment : PATH_SPLITTER.split(path.relativePath())) {
+        node = node.getOrAddChild(segment);
+      }
+      return node;
+    }
+
+    boolean contains(String relativePath) {
+      Node node = root;
+      boolean included = false;
+      int start = 0;
+      int length = relativePath.length();
+      while (true) {
+        if (node.isExcluded) {
+          return false;
+        }
+        included = included || node.isRoot;
+        if (start >= length) {
+          return included;
+        }
+        int end = relativePath.indexOf('/', start);
+        if (end == -1) {
+          end = length;
+        }
+        if (end > start) {
+          node = node.getChild(relativePath, start, end);
+          if (node == null) {
+            return included;
+          }
+        }
+        start = end + 1;
       }
-      Path ancestorPath = FileSystems.getDefault().getPath(ancestor.relativePath());
-      Path descendantPath = FileSystems.getDefault().getPath(descendant.relativePath());
-      return descendantPath.startsWith(ancestorPath);
     }
   }
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.targetmaps;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Lists;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import java.util.Collection;
+import java.util.function.BiConsumer;
+
+/**
+ * Builds a multimap derived from a collection of targets, processing partitions of the targets in
+ * parallel on the fork-join pool and merging the partial results.
+ *
+ * <p>Partial results are merged in partition order, so the result is identical to processing the
+ * targets sequentially.
+ */
+final class PartitionedMultimapBuilder {
+
+  private static final int MIN_PARTITION_SIZE = 1000;
+
+  private PartitionedMultimapBuilder() {}
+
+  static <K, V> ImmutableMultimap<K, V> build(
+      Collection<TargetIdeInfo> targets,
+      BiConsumer<TargetIdeInfo, ImmutableMultimap.Builder<K, V>> processor) {
+    int parallelism = Runtime.getRuntime().availableProcessors();
+    int partitionSize =
+        Math.max(MIN_PARTITION_SIZE, (targets.size() + parallelism - 1) / parallelism);
+    return build(targets, processor, partitionSize);
+  }
+
+  @VisibleForTesting
+  static <K, V> ImmutableMultimap<K, V> build(
+      Collection<TargetIdeInfo> targets,
+      BiConsumer<TargetIdeInfo, ImmutableMultimap.Builder<K, V>> processor,
+      int partitionSize) {
+    ImmutableList<TargetIdeInfo> list = ImmutableList.copyOf(targets);
+    ImmutableList<ImmutableMultimap<K, V>> partials =
+        Lists.partition(list, partitionSize).parallelStream()
+            .map(
+                partition -> {
+                  ImmutableMultimap.Builder<K, V> builder = ImmutableMultimap.builder();
+                  partition.forEach(target -> processor.accept(target, builder));
+                  return builder.build();
+                })
+            .collect(toImmutableList());
+    if (partials.size() == 1) {
+      return partials.get(0);
+    }
+    ImmutableMultimap.Builder<K, V> merged = ImmutableMultimap.builder();
+    partials.forEach(merged::putAll);
+    return merged.build();
+  }
+}
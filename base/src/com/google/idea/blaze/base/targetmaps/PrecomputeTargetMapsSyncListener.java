@@ -0,0 +1,57 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.targetmaps;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.sync.SyncListener;
+import com.google.idea.blaze.base.sync.SyncMode;
+import com.google.idea.blaze.base.sync.SyncResult;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+
+/**
+ * Builds the reverse dependency and source to target maps in the background after sync, so the
+ * first editor action after sync doesn't have to wait for them.
+ */
+public class PrecomputeTargetMapsSyncListener implements SyncListener {
+
+  @Override
+  public void afterSync(
+      Project project,
+      BlazeContext context,
+      SyncMode syncMode,
+      SyncResult syncResult,
+      ImmutableSet<Integer> buildIds) {
+    if (!syncResult.successful() || ApplicationManager.getApplication().isUnitTestMode()) {
+      return;
+    }
+    ApplicationManager.getApplication()
+        .executeOnPooledThread(
+            () -> {
+              if (!project.isDisposed()) {
+                ReverseDependencyMap.get(project);
+              }
+            });
+    ApplicationManager.getApplication()
+        .executeOnPooledThread(
+            () -> {
+              if (!project.isDisposed()) {
+                SourceToTargetMapImpl.getSourceToTargetMap(project);
+              }
+            });
+  }
+}
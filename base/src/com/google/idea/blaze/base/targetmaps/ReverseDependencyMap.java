@@ -16,16 +16,21 @@
 package com.google.idea.blaze.base.targetmaps;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMultimap;
-import com.google.idea.blaze.base.ideinfo.Dependency;
-import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetGraph;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
-import com.google.idea.blaze.base.ideinfo.TargetMap;
 import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.sync.SyncCache;
 import com.intellij.openapi.project.Project;
 
-/** Handy class to create an reverse dep map of all targets */
+/**
+ * Handy class to create an reverse dep map of all targets.
+ *
+ * <p>Callers looking up a single target can instead query {@link
+ * TargetGraph#getReverseDependencies} on the project's target map, which reads the graph's reverse
+ * adjacency arrays directly.
+ */
 public class ReverseDependencyMap {
   public static ImmutableMultimap<TargetKey, TargetKey> get(Project project) {
     ImmutableMultimap<TargetKey, TargetKey> map =
@@ -37,15 +42,16 @@ public class ReverseDependencyMap {
   @VisibleForTesting
   static ImmutableMultimap<TargetKey, TargetKey> createRdepsMap(
       Project project, BlazeProjectData projectData) {
-    TargetMap targetMap = projectData.getTargetMap();
-    ImmutableMultimap.Builder<TargetKey, TargetKey> builder = ImmutableMultimap.builder();
-    for (TargetIdeInfo target : targetMap.targets()) {
-      TargetKey key = target.getKey();
-      for (Dependency dep : target.getDependencies()) {
-        TargetKey depKey = dep.getTargetKey();
-        if (targetMap.contains(depKey)) {
-          builder.put(depKey, key);
-        }
+    TargetGraph graph = projectData.getTargetMap().graph();
+    ImmutableListMultimap.Builder<TargetKey, TargetKey> builder = ImmutableListMultimap.builder();
+    for (int id = 0; id < graph.getTargetCount(); id++) {
+      int rdepCount = graph.getReverseDependencyCount(id);
+      if (rdepCount == 0) {
+        continue;
+      }
+      TargetKey key = graph.getKey(id);
+      for (int r = 0; r < rdepCount; r++) {
+        builder.put(key, graph.getKey(graph.getReverseDependency(id, r)));
       }
     }
     return builder.build();
@@ -17,6 +17,7 @@ package com.google.idea.blaze.base.targetmaps;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultimap;
@@ -69,25 +70,30 @@ public class SourceToTargetMapImpl implements SourceToTargetMap {
   }
 
   @Nullable
-  private synchronized ImmutableMultimap<File, TargetKey> getSourceToTargetMap() {
+  private ImmutableMultimap<File, TargetKey> getSourceToTargetMap() {
+    return getSourceToTargetMap(project);
+  }
+
+  @Nullable
+  static ImmutableMultimap<File, TargetKey> getSourceToTargetMap(Project project) {
     return SyncCache.getInstance(project)
         .get(SourceToTargetMapImpl.class, SourceToTargetMapImpl::computeSourceToTargetMap);
   }
 
-  @SuppressWarnings("unused")
-  private static ImmutableMultimap<File, TargetKey> computeSourceToTargetMap(
+  @VisibleForTesting
+  static ImmutableMultimap<File, TargetKey> computeSourceToTargetMap(
       Project project, BlazeProjectData blazeProjectData) {
     ArtifactLocationDecoder decoder = blazeProjectData.getArtifactLocationDecoder();
-    ImmutableMultimap.Builder<File, TargetKey> sourceToTargetMap = ImmutableMultimap.builder();
-    for (TargetIdeInfo target : blazeProjectData.getTargetMap().targets()) {
-      TargetKey key = target.getKey();
-      for (ArtifactLocation sourceArtifact : target.getSources()) {
-        File file = decoder.resolveSource(sourceArtifact);
-        if (file != null) {
-          sourceToTargetMap.put(file, key);
-        }
-      }
-    }
-    return sourceToTargetMap.build();
+    return PartitionedMultimapBuilder.build(
+        blazeProjectData.getTargetMap().targets(),
+        (TargetIdeInfo target, ImmutableMultimap.Builder<File, TargetKey> builder) -> {
+          TargetKey key = target.getKey();
+          for (ArtifactLocation sourceArtifact : target.getSources()) {
+            File file = decoder.resolveSource(sourceArtifact);
+            if (file != null) {
+              builder.put(file, key);
+            }
+          }
+        });
   }
 }
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.targetmaps;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.idea.blaze.base.ideinfo.TargetGraph;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A reachability index over the target graph, answering whether one target transitively depends
+ * on another without re-walking the graph for every query. Listing dependencies in traversal
+ * order is left to {@link TransitiveDependencyMap#getTransitiveDependenciesStream}.
+ *
+ * <p>The graph is condensed into its strongly connected components, and the set of components
+ * reachable from a component is computed on first use and memoized as a {@link BitSet}, so
+ * repeated reachability checks are a single bit lookup. Memoized closures are softly referenced,
+ * so they're recomputed rather than retained under memory pressure.
+ *
+ * <p>The index is built on the target map's {@link TargetGraph}, so as with {@link
+ * TransitiveDependencyMap}, dependencies are followed via the plain target key of their label, and
+ * dependencies missing from the target map are included as leaves.
+ */
+final class TransitiveClosureIndex {
+
+  private final TargetGraph graph;
+
+  // strongly connected components: component id per target, and whether each is a cycle
+  private final int[] component;
+  private final boolean[] cyclic;
+
+  // the condensed, acyclic graph of components
+  private final int[] componentDepOffsets;
+  private final int[] componentDeps;
+
+  private final Cache<Integer, BitSet> closures = CacheBuilder.newBuilder().softValues().build();
+
+  private TransitiveClosureIndex(
+      TargetGraph graph,
+      int[] component,
+      boolean[] cyclic,
+      int[] componentDepOffsets,
+      int[] componentDeps) {
+    this.graph = graph;
+    this.component = component;
+    this.cyclic = cyclic;
+    this.componentDepOffsets = componentDepOffsets;
+    this.componentDeps = componentDeps;
+  }
+
+  static TransitiveClosureIndex create(TargetMap targetMap) {
+    TargetGraph graph = targetMap.graph();
+    int size = graph.size();
+    int[] component = new int[size];
+    int componentCount = computeComponents(graph, component);
+
+    boolean[] cyclic = new boolean[componentCount];
+    int[] memberCounts = new int[componentCount];
+    int edgeTotal = 0;
+    for (int i = 0; i < size; i++) {
+      memberCounts[component[i]]++;
+      int depCount = graph.getDependencyCount(i);
+      edgeTotal += depCount;
+      for (int d = 0; d < depCount; d++) {
+        if (graph.getDependency(i, d) == i) {
+          cyclic[component[i]] = true;
+        }
+      }
+    }
+    int[] memberOffsets = new int[componentCount + 1];
+    for (int c = 0; c < componentCount; c++) {
+      memberOffsets[c + 1] = memberOffsets[c] + memberCounts[c];
+      if (memberCounts[c] > 1) {
+        cyclic[c] = true;
+      }
+    }
+    int[] members = new int[size];
+    int[] fill = new int[componentCount];
+    for (int i = 0; i < size; i++) {
+      int c = component[i];
+      members[memberOffsets[c] + fill[c]++] = i;
+    }
+
+    // condense the graph, dropping edges within a component and duplicate edges
+    int[] componentDepOffsets = new int[componentCount + 1];
+    int[] componentDeps = new int[edgeTotal];
+    int[] lastSeen = new int[componentCount];
+    Arrays.fill(lastSeen, -1);
+    int edgeCount = 0;
+    for (int c = 0; c < componentCount; c++) {
+      for (int m = memberOffsets[c]; m < memberOffsets[c + 1]; m++) {
+        int node = members[m];
+        int depCount = graph.getDependencyCount(node);
+        for (int d = 0; d < depCount; d++) {
+          int depComponent = component[graph.getDependency(node, d)];
+          if (depComponent != c && lastSeen[depComponent] != c) {
+            lastSeen[depComponent] = c;
+            componentDeps[edgeCount++] = depComponent;
+          }
+        }
+      }
+      componentDepOffsets[c + 1] = edgeCount;
+    }
+
+    return new TransitiveClosureIndex(
+        graph, component, cyclic, componentDepOffsets, Arrays.copyOf(componentDeps, edgeCount));
+  }
+
+  /**
+   * Computes the strongly connected components of the graph using an iterative version of
+   * Tarjan's algorithm, populating the component id of each node. Returns the number of
+   * components.
+   */
+  private static int computeComponents(TargetGraph graph, int[] component) {
+    int size = graph.size();
+    int[] index = new int[size];
+    int[] lowLink = new int[size];
+    Arrays.fill(index, -1);
+    boolean[] onStack = new boolean[size];
+    int[] stack = new int[size];
+    int stackSize = 0;
+    // the DFS call stack: the node, and the index of its next dependency to visit
+    int[] callNode = new int[size];
+    int[] callEdge = new int[size];
+    int nextIndex = 0;
+    int componentCount = 0;
+
+    for (int root = 0; root < size; root++) {
+      if (index[root] != -1) {
+        continue;
+      }
+      int depth = 0;
+      callNode[0] = root;
+      callEdge[0] = 0;
+      index[root] = lowLink[root] = nextIndex++;
+      stack[stackSize++] = root;
+      onStack[root] = true;
+
+      while (depth >= 0) {
+        int node = callNode[depth];
+        if (callEdge[depth] < graph.getDependencyCount(node)) {
+          int dep = graph.getDependency(node, callEdge[depth]++);
+          if (index[dep] == -1) {
+            index[dep] = lowLink[dep] = nextIndex++;
+            stack[stackSize++] = dep;
+            onStack[dep] = true;
+            depth++;
+            callNode[depth] = dep;
+            callEdge[depth] = 0;
+          } else if (onStack[dep]) {
+            lowLink[node] = Math.min(lowLink[node], index[dep]);
+          }
+          continue;
+        }
+        if (lowLink[node] == index[node]) {
+          int member;
+          do {
+            member = stack[--stackSize];
+            onStack[member] = false;
+            component[member] = componentCount;
+          } while (member != node);
+          componentCount++;
+        }
+        depth--;
+        if (depth >= 0) {
+          int parent = callNode[depth];
+          lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+        }
+      }
+    }
+    return componentCount;
+  }
+
+  /**
+   * Returns true if {@code possibleDependent} transitively depends on {@code possibleDependency}.
+   */
+  boolean hasTransitiveDependency(TargetKey possibleDependent, TargetKey possibleDependency) {
+    int from = graph.getId(possibleDependent);
+    int to = graph.getId(possibleDependency);
+    if (!graph.isTarget(from) || to == TargetGraph.NO_ID) {
+      return false;
+    }
+    int fromComponent = component[from];
+    int toComponent = component[to];
+    if (fromComponent == toComponent) {
+      return cyclic[fromComponent];
+    }
+    return getClosure(fromComponent).get(toComponent);
+  }
+
+  /** Returns the components reachable from the given component, excluding itself. */
+  private BitSet getClosure(int c) {
+    BitSet closure = closures.getIfPresent(c);
+    if (closure != null) {
+      return closure;
+    }
+    int componentCount = cyclic.length;
+    closure = new BitSet(componentCount);
+    int[] queue = new int[componentCount];
+    int head = 0;
+    int tail = 0;
+    queue[tail++] = c;
+    while (head < tail) {
+      int current = queue[head++];
+      for (int e = componentDepOffsets[current]; e < componentDepOffsets[current + 1]; e++) {
+        int dep = componentDeps[e];
+        if (!closure.get(dep)) {
+          closure.set(dep);
+          queue[tail++] = dep;
+        }
+      }
+    }
+    closures.put(c, closure);
+    return closure;
+  }
+}
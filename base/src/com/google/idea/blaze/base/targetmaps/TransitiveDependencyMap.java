@@ -20,13 +20,16 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Streams;
 import com.google.idea.blaze.base.ideinfo.Dependency;
+import com.google.idea.blaze.base.ideinfo.TargetGraph;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
 import com.google.idea.blaze.base.ideinfo.TargetMap;
 import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.sync.SyncCache;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
 import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.project.Project;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -34,6 +37,7 @@ import java.util.LinkedHashSet;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.stream.Stream;
+import javax.annotation.Nullable;
 
 /** Handy class to find all transitive dependencies of a given target */
 public class TransitiveDependencyMap {
@@ -53,15 +57,8 @@ public class TransitiveDependencyMap {
    */
   public boolean hasTransitiveDependency(
       TargetKey possibleDependent, TargetKey possibleDependency) {
-
-    BlazeProjectData blazeProjectData =
-        BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
-    if (blazeProjectData == null) {
-      return false;
-    }
-
-    return getTransitiveDependenciesStream(possibleDependent, blazeProjectData.getTargetMap())
-        .anyMatch(possibleDependency::equals);
+    TransitiveClosureIndex index = getIndex();
+    return index != null && index.hasTransitiveDependency(possibleDependent, possibleDependency);
   }
 
   /**
@@ -69,42 +66,84 @@ public class TransitiveDependencyMap {
    * depends on.
    *
    * <p>The returned set will not include {@code possibleDependent} even if it is included in {@code
-   * possibleDependencies}.
+   * possibleDependencies}, unless {@code possibleDependent} is part of a dependency cycle.
    */
   public ImmutableSet<TargetKey> filterPossibleTransitiveDeps(
       TargetKey possibleDependent, Collection<TargetKey> possibleDependencies) {
-    BlazeProjectData blazeProjectData =
-        BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
-    if (blazeProjectData == null) {
+    TransitiveClosureIndex index = getIndex();
+    if (index == null) {
       return ImmutableSet.of();
     }
-    ImmutableSet<TargetKey> possibleDepsSet = ImmutableSet.copyOf(possibleDependencies);
-    return getTransitiveDependenciesStream(possibleDependent, blazeProjectData.getTargetMap())
-        .filter(possibleDepsSet::contains)
-        .distinct()
-        .limit(possibleDepsSet.size())
+    return possibleDependencies.stream()
+        .filter(dep -> index.hasTransitiveDependency(possibleDependent, dep))
         .collect(ImmutableSet.toImmutableSet());
   }
 
+  /**
+   * Returns the transitive dependencies of the given target, in breadth-first order, so nearer
+   * dependencies come first.
+   */
   public ImmutableCollection<TargetKey> getTransitiveDependencies(TargetKey targetKey) {
     BlazeProjectData blazeProjectData =
         BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
     if (blazeProjectData == null) {
       return ImmutableSet.of();
     }
-    // TODO: see if we need caching.
     return getTransitiveDependencies(targetKey, blazeProjectData.getTargetMap());
   }
 
+  /** Returns the reachability index for the current project data, computed once per sync. */
+  @Nullable
+  private TransitiveClosureIndex getIndex() {
+    return SyncCache.getInstance(project)
+        .get(
+            TransitiveClosureIndex.class,
+            (unused, projectData) -> TransitiveClosureIndex.create(projectData.getTargetMap()));
+  }
+
   public static ImmutableCollection<TargetKey> getTransitiveDependencies(
       TargetKey targetKey, TargetMap targetMap) {
     return getTransitiveDependencies(ImmutableList.of(targetKey), targetMap);
   }
 
+  /**
+   * Returns the transitive dependencies of the given targets, in the same breadth-first order as
+   * {@link #getTransitiveDependenciesStream}, walking the target map's {@link TargetGraph}.
+   */
   public static ImmutableCollection<TargetKey> getTransitiveDependencies(
       Collection<TargetKey> targetKeys, TargetMap targetMap) {
-    return getTransitiveDependenciesStream(targetKeys, targetMap)
-        .collect(ImmutableSet.toImmutableSet());
+    TargetGraph graph = targetMap.graph();
+    // ids are marked when queued, so each is queued at most once
+    BitSet queued = new BitSet(graph.size());
+    int[] queue = new int[graph.size()];
+    int tail = 0;
+    for (TargetKey key : targetKeys) {
+      int id = graph.getId(key);
+      if (id != TargetGraph.NO_ID) {
+        tail = enqueueDependencies(graph, id, queued, queue, tail);
+      }
+    }
+    for (int head = 0; head < tail; head++) {
+      tail = enqueueDependencies(graph, queue[head], queued, queue, tail);
+    }
+    ImmutableSet.Builder<TargetKey> builder = ImmutableSet.builderWithExpectedSize(tail);
+    for (int i = 0; i < tail; i++) {
+      builder.add(graph.getKey(queue[i]));
+    }
+    return builder.build();
+  }
+
+  private static int enqueueDependencies(
+      TargetGraph graph, int id, BitSet queued, int[] queue, int tail) {
+    int depCount = graph.getDependencyCount(id);
+    for (int d = 0; d < depCount; d++) {
+      int dep = graph.getDependency(id, d);
+      if (!queued.get(dep)) {
+        queued.set(dep);
+        queue[tail++] = dep;
+      }
+    }
+    return tail;
   }
 
   public static Stream<TargetKey> getTransitiveDependenciesStream(
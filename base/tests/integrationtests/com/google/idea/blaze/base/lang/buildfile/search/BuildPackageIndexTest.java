@@ -0,0 +1,142 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.search;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.idea.blaze.base.lang.buildfile.BuildFileIntegrationTestCase;
+import com.google.idea.blaze.base.model.primitives.WorkspacePath;
+import com.google.idea.common.experiments.ExperimentService;
+import com.google.idea.common.experiments.MockExperimentService;
+import com.intellij.openapi.application.WriteAction;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests that {@link BuildPackageIndex} is kept up to date by VFS events. */
+@RunWith(JUnit4.class)
+public class BuildPackageIndexTest extends BuildFileIntegrationTestCase {
+
+  private BuildPackageIndex index;
+
+  @Before
+  public final void before() {
+    MockExperimentService experiments = new MockExperimentService();
+    experiments.setExperimentRaw("build.file.package.index", true);
+    registerApplicationService(ExperimentService.class, experiments);
+    index = new BuildPackageIndex(getProject());
+    registerProjectService(BuildPackageIndex.class, index);
+  }
+
+  @Test
+  public void testPopulatedFromExistingBuildFiles() {
+    VirtualFile buildFile = workspace.createFile(new WorkspacePath("java/BUILD"));
+    workspace.createFile(new WorkspacePath("java/com/foo/BUILD"));
+    workspace.createFile(new WorkspacePath("java/com/bar/Bar.java"));
+
+    assertThat(index.populate()).isTrue();
+
+    assertThat(index.findBuildFile(dir("java"))).isEqualTo(buildFile);
+    assertThat(index.findBuildFile(dir("java/com/bar"))).isNull();
+    assertThat(index.getPackagePathChildren(dir("java"))).containsExactly(dir("java/com"));
+    assertThat(index.getPackagePathChildren(dir("java/com"))).containsExactly(dir("java/com/foo"));
+    assertThat(index.getPackagePathChildren(dir("java/com/bar"))).isEmpty();
+  }
+
+  @Test
+  public void testCreatedBuildFileIndexed() {
+    workspace.createDirectory(new WorkspacePath("java/com/foo"));
+    assertThat(index.populate()).isTrue();
+
+    VirtualFile buildFile = workspace.createFile(new WorkspacePath("java/com/foo/BUILD"));
+
+    assertThat(index.findBuildFile(dir("java/com/foo"))).isEqualTo(buildFile);
+    assertThat(index.getPackagePathChildren(dir("java"))).containsExactly(dir("java/com"));
+  }
+
+  @Test
+  public void testDeletedBuildFileRemoved() throws Exception {
+    VirtualFile buildFile = workspace.createFile(new WorkspacePath("java/com/foo/BUILD"));
+    assertThat(index.populate()).isTrue();
+
+    WriteAction.run(() -> buildFile.delete(this));
+
+    assertThat(index.findBuildFile(dir("java/com/foo"))).isNull();
+    assertThat(index.getPackagePathChildren(dir("java"))).isEmpty();
+  }
+
+  @Test
+  public void testRenamedBuildFileUpdated() throws Exception {
+    VirtualFile buildFile = workspace.createFile(new WorkspacePath("java/com/foo/BUILD"));
+    assertThat(index.populate()).isTrue();
+
+    WriteAction.run(() -> buildFile.rename(this, "BUILD.old"));
+    assertThat(index.findBuildFile(dir("java/com/foo"))).isNull();
+    assertThat(index.getPackagePathChildren(dir("java/com"))).isEmpty();
+
+    WriteAction.run(() -> buildFile.rename(this, "BUILD"));
+    assertThat(index.findBuildFile(dir("java/com/foo"))).isEqualTo(buildFile);
+    assertThat(index.getPackagePathChildren(dir("java/com"))).containsExactly(dir("java/com/foo"));
+  }
+
+  @Test
+  public void testMovedBuildFileUpdated() throws Exception {
+    VirtualFile buildFile = workspace.createFile(new WorkspacePath("java/com/foo/BUILD"));
+    VirtualFile bar = workspace.createDirectory(new WorkspacePath("java/com/bar"));
+    assertThat(index.populate()).isTrue();
+
+    WriteAction.run(() -> buildFile.move(this, bar));
+
+    assertThat(index.findBuildFile(dir("java/com/foo"))).isNull();
+    assertThat(index.findBuildFile(bar)).isEqualTo(buildFile);
+    assertThat(index.getPackagePathChildren(dir("java/com"))).containsExactly(bar);
+  }
+
+  @Test
+  public void testDeletedDirectoryRemoved() throws Exception {
+    workspace.createFile(new WorkspacePath("java/com/foo/BUILD"));
+    workspace.createFile(new WorkspacePath("java/com/foo/bar/BUILD"));
+    VirtualFile baz = workspace.createFile(new WorkspacePath("java/com/baz/BUILD"));
+    assertThat(index.populate()).isTrue();
+
+    VirtualFile foo = dir("java/com/foo");
+    WriteAction.run(() -> foo.delete(this));
+
+    assertThat(index.getPackagePathChildren(dir("java/com"))).containsExactly(baz.getParent());
+  }
+
+  @Test
+  public void testCreatedDirectoryInvalidatesIndex() {
+    workspace.createFile(new WorkspacePath("java/BUILD"));
+    assertThat(index.populate()).isTrue();
+
+    // a new directory may contain packages the VFS hasn't reported, so the index is repopulated
+    workspace.createDirectory(new WorkspacePath("java/com"));
+    assertThat(index.getPackagePathChildren(dir("java"))).isNull();
+
+    assertThat(index.populate()).isTrue();
+    assertThat(index.getPackagePathChildren(dir("java"))).isEmpty();
+  }
+
+  private VirtualFile dir(String relativePath) {
+    VirtualFile dir =
+        fileSystem.findFile(workspaceRoot.fileForPath(new WorkspacePath(relativePath)).getPath());
+    assertThat(dir).isNotNull();
+    return dir;
+  }
+}
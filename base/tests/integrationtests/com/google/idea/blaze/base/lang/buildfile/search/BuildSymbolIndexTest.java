@@ -0,0 +1,202 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.search;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.idea.blaze.base.lang.buildfile.BuildFileIntegrationTestCase;
+import com.google.idea.blaze.base.lang.buildfile.psi.BuildFile;
+import com.google.idea.blaze.base.lang.buildfile.psi.FuncallExpression;
+import com.google.idea.blaze.base.lang.buildfile.psi.FunctionStatement;
+import com.google.idea.blaze.base.lang.buildfile.psi.StringLiteral;
+import com.google.idea.blaze.base.model.primitives.WorkspacePath;
+import com.google.idea.common.experiments.ExperimentService;
+import com.google.idea.common.experiments.MockExperimentService;
+import com.intellij.openapi.project.DumbServiceImpl;
+import com.intellij.psi.PsiReference;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.SearchScope;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests that {@link BuildSymbolIndex} limits lookups and searches to the relevant files. */
+@RunWith(JUnit4.class)
+public class BuildSymbolIndexTest extends BuildFileIntegrationTestCase {
+
+  @Before
+  public final void before() {
+    MockExperimentService experiments = new MockExperimentService();
+    experiments.setExperimentRaw("build.file.symbol.index", true);
+    registerApplicationService(ExperimentService.class, experiments);
+  }
+
+  @Test
+  public void testUseScopeLimitedToLoadingFiles() {
+    BuildFile extFile =
+        createBuildFile(new WorkspacePath("java/com/google/build_defs.bzl"), "def function():");
+    BuildFile loading =
+        createBuildFile(
+            new WorkspacePath("java/com/google/BUILD"),
+            "load('//java/com/google:build_defs.bzl', 'function')",
+            "function()");
+    BuildFile other =
+        createBuildFile(new WorkspacePath("java/com/other/BUILD"), "x = 'function'");
+
+    SearchScope scope = extFile.findDeclaredFunction("function").getUseScope();
+
+    assertThat(scope.contains(extFile.getVirtualFile())).isTrue();
+    assertThat(scope.contains(loading.getVirtualFile())).isTrue();
+    assertThat(scope.contains(other.getVirtualFile())).isFalse();
+  }
+
+  @Test
+  public void testAliasedLoadFound() {
+    BuildFile extFile =
+        createBuildFile(new WorkspacePath("java/com/google/build_defs.bzl"), "def function():");
+    BuildFile buildFile =
+        createBuildFile(
+            new WorkspacePath("java/com/google/BUILD"),
+            "load('//java/com/google:build_defs.bzl', newName = 'function')",
+            "newName(name = 'name')");
+    FunctionStatement function = extFile.findDeclaredFunction("function");
+
+    PsiReference[] references = FindUsages.findAllReferences(function);
+
+    assertThat(function.getUseScope().contains(buildFile.getVirtualFile())).isTrue();
+    assertThat(references).hasLength(1);
+    assertThat(references[0].getElement()).isInstanceOf(StringLiteral.class);
+    assertThat(references[0].getElement().getContainingFile()).isEqualTo(buildFile);
+  }
+
+  @Test
+  public void testPrivateFunctionOnlyUsedInOwnFile() {
+    BuildFile extFile =
+        createBuildFile(
+            new WorkspacePath("java/com/google/build_defs.bzl"),
+            "def _helper():",
+            "  pass",
+            "def function():",
+            "  _helper()");
+    BuildFile buildFile =
+        createBuildFile(new WorkspacePath("java/com/google/BUILD"), "x = '_helper'");
+    FunctionStatement helper = extFile.findDeclaredFunction("_helper");
+
+    SearchScope scope = helper.getUseScope();
+
+    assertThat(scope.contains(extFile.getVirtualFile())).isTrue();
+    assertThat(scope.contains(buildFile.getVirtualFile())).isFalse();
+    assertThat(FindUsages.findAllReferences(helper)).hasLength(1);
+  }
+
+  @Test
+  public void testPreludeFunctionScopeNotLimited() {
+    BuildFile prelude =
+        createBuildFile(new WorkspacePath("tools/build_rules/prelude_bazel"), "def helper():");
+    BuildFile buildFile =
+        createBuildFile(new WorkspacePath("java/com/google/BUILD"), "helper()");
+
+    // prelude functions are visible without a load statement
+    SearchScope scope = prelude.findDeclaredFunction("helper").getUseScope();
+
+    assertThat(scope.contains(buildFile.getVirtualFile())).isTrue();
+  }
+
+  @Test
+  public void testDumbModeFallsBackToFullScope() {
+    BuildFile extFile =
+        createBuildFile(new WorkspacePath("java/com/google/build_defs.bzl"), "def function():");
+    BuildFile other =
+        createBuildFile(new WorkspacePath("java/com/other/BUILD"), "x = 'function'");
+    FunctionStatement function = extFile.findDeclaredFunction("function");
+
+    DumbServiceImpl.getInstance(getProject()).setDumb(true);
+    try {
+      assertThat(
+              BuildSymbolIndex.getFilesLoadingSymbol(
+                  getProject(), "function", GlobalSearchScope.projectScope(getProject())))
+          .isNull();
+      assertThat(function.getUseScope().contains(other.getVirtualFile())).isTrue();
+      assertThat(BuildSymbolIndex.mayDeclareRule(other, "missing")).isTrue();
+    } finally {
+      DumbServiceImpl.getInstance(getProject()).setDumb(false);
+    }
+  }
+
+  @Test
+  public void testRuleDeclarations() {
+    BuildFile buildFile =
+        createBuildFile(
+            new WorkspacePath("java/com/google/BUILD"),
+            "java_library(name = 'target')",
+            "def function():",
+            "  pass");
+
+    assertThat(BuildSymbolIndex.mayDeclareRule(buildFile, "target")).isTrue();
+    assertThat(BuildSymbolIndex.mayDeclareRule(buildFile, "missing")).isFalse();
+    assertThat(BuildSymbolIndex.mayDeclareFunction(buildFile, "function")).isTrue();
+    assertThat(BuildSymbolIndex.mayDeclareFunction(buildFile, "target")).isFalse();
+    assertThat(buildFile.findRule("target")).isNotNull();
+    assertThat(buildFile.findRule("missing")).isNull();
+  }
+
+  @Test
+  public void testRuleLabelSearchLimitedToReferencingFiles() {
+    BuildFile buildFile =
+        createBuildFile(
+            new WorkspacePath("java/com/google/BUILD"), "java_library(name = 'google')");
+    BuildFile referencing =
+        createBuildFile(
+            new WorkspacePath("java/com/other/BUILD"),
+            "java_library(name = 'a', deps = ['//java/com/google:google'])",
+            "java_library(name = 'b', deps = ['//java/com/google'])");
+    BuildFile unrelated =
+        createBuildFile(
+            new WorkspacePath("java/com/unrelated/BUILD"),
+            "java_library(name = 'c', deps = ['//java/com/google:google_other'])");
+    FuncallExpression target = buildFile.findRule("google");
+
+    assertThat(
+            BuildSymbolIndex.getFilesReferencingLabel(
+                getProject(),
+                "//java/com/google:google",
+                GlobalSearchScope.projectScope(getProject())))
+        .containsExactly(referencing.getVirtualFile());
+
+    PsiReference[] references = FindUsages.findAllReferences(target);
+
+    assertThat(references).hasLength(2);
+    assertThat(
+            Arrays.stream(references)
+                .allMatch(ref -> ref.getElement().getContainingFile().equals(referencing)))
+        .isTrue();
+    assertThat(unrelated.findRule("c")).isNotNull();
+  }
+
+  @Test
+  public void testNormalizeAbsoluteLabel() {
+    assertThat(BuildSymbolIndex.normalizeAbsoluteLabel("//java/com:foo"))
+        .isEqualTo("//java/com:foo");
+    assertThat(BuildSymbolIndex.normalizeAbsoluteLabel("//java/com")).isEqualTo("//java/com:com");
+    assertThat(BuildSymbolIndex.normalizeAbsoluteLabel("@//java/com")).isEqualTo("//java/com:com");
+    assertThat(BuildSymbolIndex.normalizeAbsoluteLabel("@repo//pkg")).isEqualTo("@repo//pkg:pkg");
+    assertThat(BuildSymbolIndex.normalizeAbsoluteLabel("@repo")).isNull();
+    assertThat(BuildSymbolIndex.normalizeAbsoluteLabel(":foo")).isNull();
+    assertThat(BuildSymbolIndex.normalizeAbsoluteLabel("http://foo")).isNull();
+  }
+}
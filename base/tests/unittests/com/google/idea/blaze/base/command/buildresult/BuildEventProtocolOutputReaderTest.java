@@ -30,13 +30,16 @@ import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.Bui
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildEventId.TargetCompletedId;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildEventId.TargetConfiguredId;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildEventId.TestResultId;
+import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildEventId.TestSummaryId;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.Configuration;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.NamedSetOfFiles;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.OutputGroup;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.TargetComplete;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.TargetConfigured;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.TestResult;
+import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.TestSummary;
 import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.command.buildresult.BuildEventProtocolOutputReader.TestResultsParser;
 import com.google.idea.blaze.base.model.primitives.GenericBlazeRules;
 import com.google.idea.blaze.base.model.primitives.GenericBlazeRules.RuleTypes;
 import com.google.idea.blaze.base.model.primitives.Kind;
@@ -456,6 +459,173 @@ public class BuildEventProtocolOutputReaderTest extends BlazeTestCase {
     assertThat(BlazeArtifact.getLocalFiles(outputs)).containsExactlyElementsIn(allOutputs);
   }
 
+  @Test
+  public void getOutputGroupArtifacts_fileSetsReportedAfterTarget_returnsTransitiveOutputs()
+      throws Exception {
+    ImmutableList<String> fileSet1 = ImmutableList.of("/usr/out/genfiles/foo.pb.h");
+    ImmutableList<String> fileSet2 = ImmutableList.of("/usr/local/lib/File.py");
+
+    List<BuildEvent.Builder> events =
+        ImmutableList.of(
+            targetComplete(
+                "//some:target",
+                "config-id",
+                ImmutableList.of(outputGroup("group-1", ImmutableList.of("set-1")))),
+            setOfFiles(fileSet1, "set-1", ImmutableList.of("set-2")),
+            setOfFiles(fileSet2, "set-2"),
+            configuration("config-id", "k8-opt"));
+
+    ImmutableList<OutputArtifact> parsedFilenames =
+        ParsedBepOutput.parseBepArtifacts(asInputStream(events))
+            .getOutputGroupArtifacts("group-1", path -> true);
+
+    assertThat(BlazeArtifact.getLocalFiles(parsedFilenames))
+        .containsExactly(new File("/usr/out/genfiles/foo.pb.h"), new File("/usr/local/lib/File.py"))
+        .inOrder();
+  }
+
+  @Test
+  public void getOutputGroupArtifacts_fileSetSharedByTwoOutputGroups_returnsTransitiveOutputs()
+      throws Exception {
+    ImmutableList<String> fileSet1 = ImmutableList.of("/usr/out/genfiles/foo.pb.h");
+    ImmutableList<String> fileSet2 = ImmutableList.of("/usr/local/lib/File.py");
+
+    List<BuildEvent.Builder> events =
+        ImmutableList.of(
+            configuration("config-id", "k8-opt"),
+            setOfFiles(fileSet2, "set-2"),
+            setOfFiles(fileSet1, "set-1", ImmutableList.of("set-2")),
+            targetComplete(
+                "//some:target",
+                "config-id",
+                ImmutableList.of(
+                    outputGroup("group-1", ImmutableList.of("set-1")),
+                    outputGroup("group-2", ImmutableList.of("set-1")))));
+
+    ParsedBepOutput output = ParsedBepOutput.parseBepArtifacts(asInputStream(events));
+
+    ImmutableList<File> allOutputs =
+        Streams.concat(fileSet1.stream(), fileSet2.stream())
+            .map(File::new)
+            .collect(toImmutableList());
+    assertThat(BlazeArtifact.getLocalFiles(output.getOutputGroupArtifacts("group-1", p -> true)))
+        .containsExactlyElementsIn(allOutputs);
+    assertThat(BlazeArtifact.getLocalFiles(output.getOutputGroupArtifacts("group-2", p -> true)))
+        .containsExactlyElementsIn(allOutputs);
+  }
+
+  @Test
+  public void getFullArtifactData_fileSetSharedByTwoTargets_associatedWithBothTargets()
+      throws Exception {
+    ImmutableList<String> fileSet1 = ImmutableList.of("/usr/out/genfiles/foo.pb.h");
+    ImmutableList<String> fileSet2 = ImmutableList.of("/usr/local/lib/File.py");
+
+    List<BuildEvent.Builder> events =
+        ImmutableList.of(
+            configuration("config-id", "k8-opt"),
+            setOfFiles(fileSet2, "set-2"),
+            setOfFiles(fileSet1, "set-1", ImmutableList.of("set-2")),
+            targetComplete(
+                "//some:alias",
+                "config-id",
+                ImmutableList.of(outputGroup("group-1", ImmutableList.of("set-1")))),
+            targetComplete(
+                "//some:target",
+                "config-id",
+                ImmutableList.of(outputGroup("group-1", ImmutableList.of("set-1")))));
+
+    ImmutableMap<String, BepArtifactData> outputData =
+        ParsedBepOutput.parseBepArtifacts(asInputStream(events)).getFullArtifactData();
+
+    assertThat(outputData).hasSize(2);
+    for (BepArtifactData data : outputData.values()) {
+      assertThat(data.topLevelTargets).containsExactly("//some:alias", "//some:target");
+    }
+  }
+
+  @Test
+  public void getOutputGroupArtifacts_fileSetWithTwoParents_receivesDataFromBoth()
+      throws Exception {
+    ImmutableList<String> fileSet1 = ImmutableList.of("/usr/out/genfiles/foo.pb.h");
+    ImmutableList<String> fileSet2 = ImmutableList.of("/usr/out/genfiles/bar.pb.h");
+    ImmutableList<String> sharedFileSet = ImmutableList.of("/usr/local/lib/File.py");
+
+    // the shared file set is reported after both of its parents
+    List<BuildEvent.Builder> events =
+        ImmutableList.of(
+            configuration("config-id", "k8-opt"),
+            setOfFiles(fileSet1, "set-1", ImmutableList.of("shared")),
+            setOfFiles(fileSet2, "set-2", ImmutableList.of("shared")),
+            targetComplete(
+                "//some:target",
+                "config-id",
+                ImmutableList.of(
+                    outputGroup("group-1", ImmutableList.of("set-1")),
+                    outputGroup("group-2", ImmutableList.of("set-2")))),
+            setOfFiles(sharedFileSet, "shared"));
+
+    ParsedBepOutput output = ParsedBepOutput.parseBepArtifacts(asInputStream(events));
+
+    assertThat(BlazeArtifact.getLocalFiles(output.getOutputGroupArtifacts("group-1", p -> true)))
+        .containsExactly(
+            new File("/usr/out/genfiles/foo.pb.h"), new File("/usr/local/lib/File.py"));
+    assertThat(BlazeArtifact.getLocalFiles(output.getOutputGroupArtifacts("group-2", p -> true)))
+        .containsExactly(
+            new File("/usr/out/genfiles/bar.pb.h"), new File("/usr/local/lib/File.py"));
+  }
+
+  @Test
+  public void getFullArtifactData_fileSetReportedByOwnTargetFirst_keepsOwnConfiguration()
+      throws Exception {
+    // blaze reports a target after the targets it depends on
+    List<BuildEvent.Builder> events =
+        ImmutableList.of(
+            configuration("config-1", "k8-opt"),
+            configuration("config-2", "arm-opt"),
+            setOfFiles(ImmutableList.of("/usr/out/lib.so"), "set-2"),
+            targetComplete(
+                "//some:lib",
+                "config-2",
+                ImmutableList.of(outputGroup("group-1", ImmutableList.of("set-2")))),
+            setOfFiles(ImmutableList.of("/usr/out/app"), "set-1", ImmutableList.of("set-2")),
+            targetComplete(
+                "//some:app",
+                "config-1",
+                ImmutableList.of(outputGroup("group-1", ImmutableList.of("set-1")))));
+
+    ImmutableMap<String, String> mnemonics =
+        getConfigurationMnemonics(
+            ParsedBepOutput.parseBepArtifacts(asInputStream(events)).getFullArtifactData());
+
+    assertThat(mnemonics).containsExactly("/usr/out/app", "k8-opt", "/usr/out/lib.so", "arm-opt");
+  }
+
+  @Test
+  public void getFullArtifactData_fileSetReachedBeforeItsArtifacts_usesOwnConfiguration()
+      throws Exception {
+    // set-2 is reached from set-1, then reported by its own target, before its artifacts arrive
+    List<BuildEvent.Builder> events =
+        ImmutableList.of(
+            configuration("config-1", "k8-opt"),
+            configuration("config-2", "arm-opt"),
+            setOfFiles(ImmutableList.of("/usr/out/app"), "set-1", ImmutableList.of("set-2")),
+            targetComplete(
+                "//some:app",
+                "config-1",
+                ImmutableList.of(outputGroup("group-1", ImmutableList.of("set-1")))),
+            targetComplete(
+                "//some:lib",
+                "config-2",
+                ImmutableList.of(outputGroup("group-1", ImmutableList.of("set-2")))),
+            setOfFiles(ImmutableList.of("/usr/out/lib.so"), "set-2"));
+
+    ImmutableMap<String, String> mnemonics =
+        getConfigurationMnemonics(
+            ParsedBepOutput.parseBepArtifacts(asInputStream(events)).getFullArtifactData());
+
+    assertThat(mnemonics).containsExactly("/usr/out/app", "k8-opt", "/usr/out/lib.so", "arm-opt");
+  }
+
   @Test
   public void testStatusEnum_handlesAllProtoEnumValues() {
     Set<String> protoValues =
@@ -641,6 +811,67 @@ public class BuildEventProtocolOutputReaderTest extends BlazeTestCase {
         .containsExactly(new File("/usr/local/tmp/_cache/second_result.xml"));
   }
 
+  @Test
+  public void testResultsParser_targetFinishedByTestSummary() throws Exception {
+    Label label = Label.create("//java/com/google:unit_tests");
+    TestResultsParser parser = new TestResultsParser();
+
+    BlazeTestResults afterShard1 =
+        parser.processEvent(
+            testResultEvent(
+                    label.toString(),
+                    BuildEventStreamProtos.TestStatus.PASSED,
+                    ImmutableList.of("/usr/local/tmp/_cache/shard1_of_2.xml"))
+                .build());
+    BlazeTestResults afterShard2 =
+        parser.processEvent(
+            testResultEvent(
+                    label.toString(),
+                    BuildEventStreamProtos.TestStatus.FAILED,
+                    ImmutableList.of("/usr/local/tmp/_cache/shard2_of_2.xml"))
+                .build());
+    BlazeTestResults afterSummary = parser.processEvent(testSummaryEvent(label.toString()).build());
+
+    assertThat(afterShard1.perTargetResults).isEmpty();
+    assertThat(afterShard2.perTargetResults).isEmpty();
+    assertThat(afterSummary.perTargetResults.get(label)).hasSize(2);
+    assertThat(parser.finishAll().perTargetResults).isEmpty();
+    assertThat(parser.getAllResults().perTargetResults.get(label)).hasSize(2);
+  }
+
+  @Test
+  public void testResultsParser_finishAllReturnsTargetsWithoutSummary() throws Exception {
+    TestResultsParser parser = new TestResultsParser();
+    parser.processEvent(
+        testResultEvent(
+                "//java/com/google:Test1",
+                BuildEventStreamProtos.TestStatus.PASSED,
+                ImmutableList.of("/usr/local/tmp/_cache/test_result.xml"))
+            .build());
+    parser.processEvent(testSummaryEvent("//java/com/google:Test1").build());
+    parser.processEvent(
+        testResultEvent(
+                "//java/com/google:Test2",
+                BuildEventStreamProtos.TestStatus.INCOMPLETE,
+                ImmutableList.of("/usr/local/tmp/_cache/second_result.xml"))
+            .build());
+
+    BlazeTestResults unfinished = parser.finishAll();
+
+    assertThat(unfinished.perTargetResults.keySet())
+        .containsExactly(Label.create("//java/com/google:Test2"));
+    assertThat(parser.getAllResults().perTargetResults).hasSize(2);
+  }
+
+  private static ImmutableMap<String, String> getConfigurationMnemonics(
+      ImmutableMap<String, BepArtifactData> outputData) {
+    return outputData.values().stream()
+        .collect(
+            ImmutableMap.toImmutableMap(
+                d -> ((LocalFileOutputArtifact) d.artifact).getFile().getPath(),
+                d -> d.artifact.getConfigurationMnemonic()));
+  }
+
   private static ImmutableList<File> getOutputXmlFiles(BlazeTestResult result) {
     return BlazeArtifact.getLocalFiles(result.getOutputXmlFiles());
   }
@@ -684,6 +915,12 @@ public class BuildEventProtocolOutputReaderTest extends BlazeTestCase {
                     filePaths.stream().map(this::toFileEvent).collect(toImmutableList())));
   }
 
+  private static BuildEvent.Builder testSummaryEvent(String label) {
+    return BuildEvent.newBuilder()
+        .setId(BuildEventId.newBuilder().setTestSummary(TestSummaryId.newBuilder().setLabel(label)))
+        .setTestSummary(TestSummary.getDefaultInstance());
+  }
+
   private BuildEvent.Builder targetComplete(
       String label, String configId, List<OutputGroup> outputGroups) {
     return BuildEvent.newBuilder()
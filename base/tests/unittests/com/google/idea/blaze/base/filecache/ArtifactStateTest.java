@@ -42,4 +42,20 @@ public class ArtifactStateTest {
     String key = "/abs/path/to/bazel-out/then/file.java";
     assertThat(ArtifactState.migrateOldKeyFormat(key)).isEqualTo("then/file.java");
   }
+
+  @Test
+  public void localFileState_comparesDigestsWhenPresent() {
+    ArtifactState old = new ArtifactState.LocalFileState("out/file.jar", 1L, "abc");
+    assertThat(old.isMoreRecent(new ArtifactState.LocalFileState("out/file.jar", 2L, "abc")))
+        .isFalse();
+    assertThat(old.isMoreRecent(new ArtifactState.LocalFileState("out/file.jar", 1L, "def")))
+        .isTrue();
+  }
+
+  @Test
+  public void localFileState_fallsBackToTimestampWithoutDigest() {
+    ArtifactState old = new ArtifactState.LocalFileState("out/file.jar", 1L, "abc");
+    assertThat(old.isMoreRecent(new ArtifactState.LocalFileState("out/file.jar", 2L))).isTrue();
+    assertThat(old.isMoreRecent(new ArtifactState.LocalFileState("out/file.jar", 1L))).isFalse();
+  }
 }
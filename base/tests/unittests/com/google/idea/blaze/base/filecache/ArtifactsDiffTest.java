@@ -0,0 +1,167 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.filecache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.command.buildresult.LocalFileOutputArtifact;
+import com.google.idea.blaze.base.command.buildresult.OutputArtifact;
+import com.google.idea.blaze.base.filecache.ArtifactState.LocalFileState;
+import com.google.idea.blaze.base.io.FileOperationProvider;
+import com.google.idea.common.experiments.ExperimentService;
+import com.google.idea.common.experiments.MockExperimentService;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link ArtifactsDiff}. */
+@RunWith(JUnit4.class)
+public class ArtifactsDiffTest extends BlazeTestCase {
+
+  private static final String LOCAL_DIGESTS_EXPERIMENT = "blaze.artifact.diff.local.digests";
+
+  @Rule public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  private MockExperimentService experiments;
+
+  @Override
+  protected void initTest(
+      @NotNull Container applicationServices, @NotNull Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+    experiments = new MockExperimentService();
+    applicationServices.register(ExperimentService.class, experiments);
+    applicationServices.register(FileOperationProvider.class, new FileOperationProvider());
+  }
+
+  @Test
+  public void testRewrittenFileWithSameDigestIsSkipped() throws Exception {
+    experiments.setExperimentRaw(LOCAL_DIGESTS_EXPERIMENT, true);
+    OutputArtifact artifact = createArtifact("lib.jar", "contents", 2000);
+    ImmutableMap<String, ArtifactState> oldState =
+        ImmutableMap.of(
+            artifact.getKey(), new LocalFileState(artifact.getKey(), 1000, digest("contents")));
+
+    ArtifactsDiff diff = ArtifactsDiff.diffArtifacts(oldState, ImmutableList.of(artifact));
+
+    assertThat(diff.getUpdatedOutputs()).isEmpty();
+    assertThat(diff.getRemovedOutputs()).isEmpty();
+    assertThat(diff.getUpdatedBytes()).isEqualTo(0);
+    assertThat(diff.getSkippedBytes()).isEqualTo("contents".length());
+    assertThat(getDigest(diff, artifact)).isEqualTo(digest("contents"));
+  }
+
+  @Test
+  public void testRewrittenFileWithChangedDigestIsUpdated() throws Exception {
+    experiments.setExperimentRaw(LOCAL_DIGESTS_EXPERIMENT, true);
+    OutputArtifact artifact = createArtifact("lib.jar", "new contents", 2000);
+    ImmutableMap<String, ArtifactState> oldState =
+        ImmutableMap.of(
+            artifact.getKey(), new LocalFileState(artifact.getKey(), 1000, digest("contents")));
+
+    ArtifactsDiff diff = ArtifactsDiff.diffArtifacts(oldState, ImmutableList.of(artifact));
+
+    assertThat(diff.getUpdatedOutputs()).containsExactly(artifact);
+    assertThat(diff.getUpdatedBytes()).isEqualTo("new contents".length());
+    assertThat(diff.getSkippedBytes()).isEqualTo(0);
+    assertThat(getDigest(diff, artifact)).isEqualTo(digest("new contents"));
+  }
+
+  @Test
+  public void testDigestCarriedOverForUnchangedTimestamp() throws Exception {
+    experiments.setExperimentRaw(LOCAL_DIGESTS_EXPERIMENT, true);
+    OutputArtifact artifact = createArtifact("lib.jar", "contents", 1000);
+    // doesn't match the file contents, so would be replaced if the file were digested again
+    ImmutableMap<String, ArtifactState> oldState =
+        ImmutableMap.of(
+            artifact.getKey(), new LocalFileState(artifact.getKey(), 1000, "cached-digest"));
+
+    ArtifactsDiff diff = ArtifactsDiff.diffArtifacts(oldState, ImmutableList.of(artifact));
+
+    assertThat(diff.getUpdatedOutputs()).isEmpty();
+    assertThat(diff.getUpdatedBytes()).isEqualTo(0);
+    assertThat(diff.getSkippedBytes()).isEqualTo(0);
+    assertThat(getDigest(diff, artifact)).isEqualTo("cached-digest");
+  }
+
+  @Test
+  public void testNoDigestsComputedWithExperimentDisabled() throws Exception {
+    experiments.setExperimentRaw(LOCAL_DIGESTS_EXPERIMENT, false);
+    OutputArtifact artifact = createArtifact("lib.jar", "contents", 2000);
+    ImmutableMap<String, ArtifactState> oldState =
+        ImmutableMap.of(
+            artifact.getKey(), new LocalFileState(artifact.getKey(), 1000, digest("contents")));
+
+    ArtifactsDiff diff = ArtifactsDiff.diffArtifacts(oldState, ImmutableList.of(artifact));
+
+    // without a digest for the new version, the timestamps are compared
+    assertThat(getDigest(diff, artifact)).isNull();
+    assertThat(diff.getUpdatedOutputs()).containsExactly(artifact);
+    assertThat(diff.getUpdatedBytes()).isEqualTo("contents".length());
+    assertThat(diff.getSkippedBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void testUpdatedAndSkippedBytesSummedOverArtifacts() throws Exception {
+    experiments.setExperimentRaw(LOCAL_DIGESTS_EXPERIMENT, true);
+    OutputArtifact added = createArtifact("added.jar", "added", 2000);
+    OutputArtifact changed = createArtifact("changed.jar", "changed contents", 2000);
+    OutputArtifact rewritten = createArtifact("rewritten.jar", "same", 2000);
+    OutputArtifact untouched = createArtifact("untouched.jar", "untouched", 1000);
+    ImmutableMap<String, ArtifactState> oldState =
+        ImmutableMap.of(
+            changed.getKey(), new LocalFileState(changed.getKey(), 1000, digest("changed")),
+            rewritten.getKey(), new LocalFileState(rewritten.getKey(), 1000, digest("same")),
+            untouched.getKey(), new LocalFileState(untouched.getKey(), 1000, digest("untouched")),
+            "removed.jar", new LocalFileState("removed.jar", 1000, digest("removed")));
+
+    ArtifactsDiff diff =
+        ArtifactsDiff.diffArtifacts(
+            oldState, ImmutableList.of(added, changed, rewritten, untouched));
+
+    assertThat(diff.getUpdatedOutputs()).containsExactly(added, changed);
+    assertThat(diff.getRemovedOutputs()).containsExactly(oldState.get("removed.jar"));
+    assertThat(diff.getUpdatedBytes())
+        .isEqualTo("added".length() + "changed contents".length());
+    assertThat(diff.getSkippedBytes()).isEqualTo("same".length());
+  }
+
+  private OutputArtifact createArtifact(String name, String contents, long timestamp)
+      throws IOException {
+    File file = tmpFolder.newFile(name);
+    Files.write(file.toPath(), contents.getBytes(UTF_8));
+    file.setLastModified(timestamp);
+    return new LocalFileOutputArtifact(file, "k8-opt/bin/" + name, "k8-opt");
+  }
+
+  private static String getDigest(ArtifactsDiff diff, OutputArtifact artifact) {
+    return ((LocalFileState) diff.getNewState().get(artifact.getKey())).getDigest();
+  }
+
+  private static String digest(String contents) {
+    return Hashing.sha256().hashString(contents, UTF_8).toString();
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.ideinfo;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.model.primitives.GenericBlazeRules;
+import com.google.idea.blaze.base.model.primitives.Kind;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.intellij.openapi.extensions.impl.ExtensionPointImpl;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link TargetGraph}. */
+@RunWith(JUnit4.class)
+public class TargetGraphTest extends BlazeTestCase {
+
+  @Override
+  protected void initTest(Container applicationServices, Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+    ExtensionPointImpl<Kind.Provider> ep =
+        registerExtensionPoint(Kind.Provider.EP_NAME, Kind.Provider.class);
+    ep.registerExtension(new GenericBlazeRules());
+    applicationServices.register(Kind.ApplicationState.class, new Kind.ApplicationState());
+  }
+
+  @Test
+  public void testDependencyEdges() {
+    TargetGraph graph = buildTargetMap().graph();
+    int a = graph.getId(key("//l:a"));
+    int b = graph.getId(key("//l:b"));
+    int c = graph.getId(key("//l:c"));
+
+    assertThat(graph.getTargetCount()).isEqualTo(4);
+    assertThat(graph.getDependencyCount(a)).isEqualTo(2);
+    assertThat(graph.getKey(graph.getDependency(a, 0))).isEqualTo(key("//l:b"));
+    assertThat(graph.getKey(graph.getDependency(a, 1))).isEqualTo(key("//l:c"));
+    assertThat(graph.getDependencyCount(b)).isEqualTo(1);
+    assertThat(graph.getReverseDependencyCount(c)).isEqualTo(2);
+    assertThat(graph.getReverseDependencies(key("//l:c")))
+        .containsExactly(key("//l:a"), key("//l:b"))
+        .inOrder();
+  }
+
+  @Test
+  public void testMissingDependenciesAreLeaves() {
+    TargetGraph graph = buildTargetMap().graph();
+    int d = graph.getId(key("//l:d"));
+    int missing = graph.getId(key("//l:missing"));
+
+    assertThat(graph.size()).isEqualTo(5);
+    assertThat(graph.isTarget(d)).isTrue();
+    assertThat(graph.isTarget(missing)).isFalse();
+    assertThat(graph.getDependencyCount(d)).isEqualTo(1);
+    assertThat(graph.getDependency(d, 0)).isEqualTo(missing);
+    assertThat(graph.getDependencyCount(missing)).isEqualTo(0);
+    // reverse edges only connect targets in the target map
+    assertThat(graph.getReverseDependencyCount(missing)).isEqualTo(0);
+    assertThat(graph.getReverseDependencies(key("//l:missing"))).isEmpty();
+  }
+
+  @Test
+  public void testUnknownKey() {
+    TargetGraph graph = buildTargetMap().graph();
+
+    assertThat(graph.getId(key("//l:unknown"))).isEqualTo(TargetGraph.NO_ID);
+    assertThat(graph.isTarget(TargetGraph.NO_ID)).isFalse();
+    assertThat(graph.getReverseDependencies(key("//l:unknown"))).isEmpty();
+  }
+
+  @Test
+  public void testGraphIsBuiltOnce() {
+    TargetMap targetMap = buildTargetMap();
+    assertThat(targetMap.graph()).isSameInstanceAs(targetMap.graph());
+  }
+
+  private static TargetKey key(String label) {
+    return TargetKey.forPlainTarget(Label.create(label));
+  }
+
+  private static TargetMap buildTargetMap() {
+    return TargetMapBuilder.builder()
+        .addTarget(
+            TargetIdeInfo.builder()
+                .setLabel("//l:a")
+                .setKind("proto_library")
+                .addDependency("//l:b")
+                .addDependency("//l:c"))
+        .addTarget(
+            TargetIdeInfo.builder()
+                .setLabel("//l:b")
+                .setKind("proto_library")
+                .addDependency("//l:c"))
+        .addTarget(TargetIdeInfo.builder().setLabel("//l:c").setKind("proto_library"))
+        .addTarget(
+            TargetIdeInfo.builder()
+                .setLabel("//l:d")
+                .setKind("proto_library")
+                .addDependency("//l:missing"))
+        .build();
+  }
+}
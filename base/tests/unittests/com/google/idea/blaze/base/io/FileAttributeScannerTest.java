@@ -0,0 +1,120 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.io;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link FileAttributeScanner}. */
+@RunWith(JUnit4.class)
+public class FileAttributeScannerTest {
+
+  @Rule public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  private final ListeningExecutorService executor = MoreExecutors.newDirectExecutorService();
+
+  @Test
+  public void testReadAttributesByDirectoryMatchesPerFile() throws Exception {
+    checkReadAttributesByDirectoryMatchesPerFile(/* useDirectoryListing= */ false);
+  }
+
+  @Test
+  public void testReadAttributesByDirectoryListingMatchesPerFile() throws Exception {
+    checkReadAttributesByDirectoryMatchesPerFile(/* useDirectoryListing= */ true);
+  }
+
+  private void checkReadAttributesByDirectoryMatchesPerFile(boolean useDirectoryListing)
+      throws Exception {
+    ImmutableList.Builder<File> files = ImmutableList.builder();
+    ImmutableMap.Builder<File, Long> expected = ImmutableMap.builder();
+    // enough files in one directory for it to be listed
+    for (int i = 1; i <= 10; i++) {
+      File file = tmpFolder.newFile(i + ".jar");
+      file.setLastModified(i * 1000L);
+      files.add(file);
+      expected.put(file, i * 1000L);
+    }
+    tmpFolder.newFolder("sub");
+    File c = tmpFolder.newFile("sub/c.jar");
+    c.setLastModified(3000);
+    files.add(c).add(new File(tmpFolder.getRoot(), "missing.jar"));
+    expected.put(c, 3000L);
+    tmpFolder.newFile("unrequested.jar");
+
+    ImmutableMap<File, Long> perFile =
+        FileAttributeScanner.readAttributes(files.build(), new FileTimestampReader(), executor);
+    ImmutableMap<File, Long> byDirectory =
+        FileAttributeScanner.readAttributesByDirectory(
+            files.build(), new AttributesTimestampReader(), executor, useDirectoryListing);
+
+    assertThat(byDirectory).containsExactlyEntriesIn(expected.build());
+    assertThat(byDirectory).isEqualTo(perFile);
+  }
+
+  @Test
+  public void testReadAttributesByDirectoryMissingDirectory() throws Exception {
+    ImmutableList.Builder<File> files = ImmutableList.builder();
+    for (int i = 0; i < 10; i++) {
+      files.add(new File(tmpFolder.getRoot(), "missing/" + i + ".jar"));
+    }
+
+    assertThat(
+            FileAttributeScanner.readAttributesByDirectory(
+                files.build(), new AttributesTimestampReader(), executor, false))
+        .isEmpty();
+    assertThat(
+            FileAttributeScanner.readAttributesByDirectory(
+                files.build(), new AttributesTimestampReader(), executor, true))
+        .isEmpty();
+  }
+
+  private static class FileTimestampReader
+      implements FileAttributeScanner.AttributeReader<File, Long> {
+    @Override
+    public Long getAttribute(File file) {
+      return file.lastModified();
+    }
+
+    @Override
+    public boolean isValid(Long timestamp) {
+      return timestamp != 0;
+    }
+  }
+
+  private static class AttributesTimestampReader
+      implements FileAttributeScanner.AttributeReader<BasicFileAttributes, Long> {
+    @Override
+    public Long getAttribute(BasicFileAttributes attributes) {
+      return attributes.lastModifiedTime().toMillis();
+    }
+
+    @Override
+    public boolean isValid(Long timestamp) {
+      return timestamp != 0;
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.globbing;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link GlobMatcher}. */
+@RunWith(JUnit4.class)
+public class GlobMatcherTest {
+
+  @Test
+  public void testWildcardsDontCrossSegments() {
+    assertThat(matches("*.java", "Foo.java")).isTrue();
+    assertThat(matches("*.java", "sub/Foo.java")).isFalse();
+    assertThat(matches("*", "sub/Foo.java")).isFalse();
+    assertThat(matches("sub/*.java", "sub/Foo.java")).isTrue();
+    assertThat(matches("T*t.java", "Test.java")).isTrue();
+    assertThat(matches("T?st.java", "Test.java")).isTrue();
+    assertThat(matches("T?st.java", "Tst.java")).isFalse();
+    assertThat(matches("Foo*", "FooBar.java")).isTrue();
+    assertThat(matches("*a*b*c", "xaybzbc")).isTrue();
+    assertThat(matches("*a*b*c", "xaybzbcd")).isFalse();
+  }
+
+  @Test
+  public void testRecursiveWildcard() {
+    assertThat(matches("**", "a/b/Foo.java")).isTrue();
+    assertThat(matches("**/*.java", "Foo.java")).isTrue();
+    assertThat(matches("**/*.java", "a/b/Foo.java")).isTrue();
+    assertThat(matches("**/*.java", "a/b/Foo.txt")).isFalse();
+    assertThat(matches("a/**", "a")).isTrue();
+    assertThat(matches("a/**", "a/b/c")).isTrue();
+    assertThat(matches("a/**", "ab")).isFalse();
+    assertThat(matches("a/**/b/*.java", "a/b/Foo.java")).isTrue();
+    assertThat(matches("a/**/b/*.java", "a/x/b/y/b/Foo.java")).isTrue();
+    assertThat(matches("a/**/b/*.java", "a/x/b/y/Foo.java")).isFalse();
+  }
+
+  @Test
+  public void testHiddenFilesMustBeMatchedExplicitly() {
+    assertThat(matches("*.java", ".Foo.java")).isFalse();
+    assertThat(matches("**/*.java", "sub/.Foo.java")).isFalse();
+    assertThat(matches(".*.java", ".Foo.java")).isTrue();
+    assertThat(matches("?foo", ".foo")).isFalse();
+  }
+
+  @Test
+  public void testSpecialCharactersMatchLiterally() {
+    assertThat(matches("foo+bar$.java", "foo+bar$.java")).isTrue();
+    assertThat(matches("*.java", "Foo.javax")).isFalse();
+    assertThat(matches("a.b", "axb")).isFalse();
+  }
+
+  @Test
+  public void testEmptyPatternsAndPathsNeverMatch() {
+    assertThat(matches("", "foo")).isFalse();
+    assertThat(matches("*", "")).isFalse();
+  }
+
+  @Test
+  public void testCompiledPatternsAreShared() {
+    assertThat(GlobMatcher.forPattern("**/*.java"))
+        .isSameInstanceAs(GlobMatcher.forPattern("**/*.java"));
+  }
+
+  private static boolean matches(String pattern, String path) {
+    return GlobMatcher.forPattern(pattern).matches(path);
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.globbing;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.io.FileOperationProvider;
+import com.google.idea.common.experiments.ExperimentService;
+import com.google.idea.common.experiments.MockExperimentService;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link GlobResultCache}. Files are changed directly on disk, without any VFS
+ * events, to check that entries are invalidated via directory modification times.
+ */
+@RunWith(JUnit4.class)
+public class GlobResultCacheTest extends BlazeTestCase {
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private final AtomicInteger evaluations = new AtomicInteger();
+  private GlobResultCache cache;
+  private File packageDir;
+
+  @Override
+  protected void initTest(Container applicationServices, Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+    MockExperimentService experiments = new MockExperimentService();
+    experiments.setExperimentRaw("build.file.glob.result.cache", true);
+    applicationServices.register(ExperimentService.class, experiments);
+    applicationServices.register(FileOperationProvider.class, new FileOperationProvider());
+    cache = new GlobResultCache(project);
+  }
+
+  @Test
+  public void testUnchangedDirectories_reuseResult() throws Exception {
+    createPackage("Foo.java", "sub/Bar.java");
+
+    List<File> first = glob();
+    List<File> second = glob();
+
+    assertThat(second).containsExactlyElementsIn(first);
+    assertThat(evaluations.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void testContentChange_doesNotInvalidate() throws Exception {
+    createPackage("Foo.java", "sub/Bar.java");
+    glob();
+
+    Files.write(new File(packageDir, "sub/Bar.java").toPath(), new byte[] {1, 2, 3});
+
+    assertThat(glob()).hasSize(2);
+    assertThat(evaluations.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void testCreate_invalidates() throws Exception {
+    createPackage("Foo.java", "sub/Bar.java");
+    glob();
+
+    assertThat(new File(packageDir, "sub/Baz.java").createNewFile()).isTrue();
+
+    assertThat(relativePaths(glob())).containsExactly("Foo.java", "sub/Bar.java", "sub/Baz.java");
+    assertThat(evaluations.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testDelete_invalidates() throws Exception {
+    createPackage("Foo.java", "sub/Bar.java");
+    glob();
+
+    assertThat(new File(packageDir, "sub/Bar.java").delete()).isTrue();
+
+    assertThat(relativePaths(glob())).containsExactly("Foo.java");
+  }
+
+  @Test
+  public void testRename_invalidates() throws Exception {
+    createPackage("Foo.java", "sub/Bar.java");
+    glob();
+
+    assertThat(new File(packageDir, "sub/Bar.java").renameTo(new File(packageDir, "sub/Baz.java")))
+        .isTrue();
+
+    assertThat(relativePaths(glob())).containsExactly("Foo.java", "sub/Baz.java");
+  }
+
+  @Test
+  public void testMove_invalidates() throws Exception {
+    createPackage("Foo.java", "a/Bar.java", "b/Baz.java");
+    glob();
+
+    assertThat(new File(packageDir, "a/Bar.java").renameTo(new File(packageDir, "b/Bar.java")))
+        .isTrue();
+
+    assertThat(relativePaths(glob())).containsExactly("Foo.java", "b/Bar.java", "b/Baz.java");
+  }
+
+  @Test
+  public void testSubpackageCreated_invalidates() throws Exception {
+    createPackage("Foo.java", "sub/Bar.java");
+    glob();
+
+    // the directory filter stops traversal at subpackages
+    assertThat(new File(packageDir, "sub/BUILD").createNewFile()).isTrue();
+
+    assertThat(relativePaths(glob())).containsExactly("Foo.java");
+  }
+
+  @Test
+  public void testRecentlyModifiedDirectories_notCached() throws Exception {
+    packageDir = tempFolder.newFolder("pkg");
+    assertThat(new File(packageDir, "Foo.java").createNewFile()).isTrue();
+
+    glob();
+    glob();
+
+    assertThat(evaluations.get()).isEqualTo(2);
+  }
+
+  /**
+   * Creates a package with the given files, and moves the modification times of its directories
+   * into the past, so glob results are cached.
+   */
+  private void createPackage(String... relativePaths) throws IOException {
+    packageDir = tempFolder.newFolder("pkg");
+    for (String path : relativePaths) {
+      File file = new File(packageDir, path);
+      assertThat(file.getParentFile().mkdirs() || file.getParentFile().isDirectory()).isTrue();
+      assertThat(file.createNewFile()).isTrue();
+    }
+    long past = System.currentTimeMillis() - 60_000;
+    try (Stream<Path> paths = Files.walk(packageDir.toPath())) {
+      for (Path dir : paths.filter(Files::isDirectory).collect(Collectors.toList())) {
+        assertThat(dir.toFile().setLastModified(past)).isTrue();
+      }
+    }
+  }
+
+  /** Globs all files under the package, excluding subpackages. */
+  private List<File> glob() throws Exception {
+    Predicate<File> notSubpackage =
+        dir -> dir.equals(packageDir) || !new File(dir, "BUILD").exists();
+    return cache.glob(
+        packageDir,
+        ImmutableList.of("**"),
+        ImmutableList.of(),
+        /* excludeDirectories= */ true,
+        notSubpackage,
+        filter -> {
+          evaluations.incrementAndGet();
+          return filter.test(packageDir)
+              ? listRecursively(packageDir, filter)
+              : ImmutableList.of();
+        });
+  }
+
+  private static List<File> listRecursively(File dir, Predicate<File> directoryFilter) {
+    List<File> result = new ArrayList<>();
+    File[] children = dir.listFiles();
+    if (children == null) {
+      return result;
+    }
+    for (File child : children) {
+      if (!child.isDirectory()) {
+        result.add(child);
+      } else if (directoryFilter.test(child)) {
+        result.addAll(listRecursively(child, directoryFilter));
+      }
+    }
+    return result;
+  }
+
+  private List<String> relativePaths(List<File> files) {
+    List<String> paths = new ArrayList<>();
+    for (File file : files) {
+      paths.add(packageDir.toPath().relativize(file.toPath()).toString());
+    }
+    return paths;
+  }
+}
@@ -18,6 +18,7 @@ package com.google.idea.blaze.base.run.smrunner;
 import static com.google.common.truth.Truth.assertThat;
 
 import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.idea.blaze.base.run.smrunner.BlazeXmlSchema.ErrorOrFailureOrSkipped;
@@ -212,6 +213,44 @@ public class BlazeXmlSchemaTest {
     assertThat(BlazeXmlSchema.getErrorContent(testCase.errors.get(0))).isNull();
   }
 
+  @Test
+  public void testLongSystemOutIsTruncated() {
+    String output = Strings.repeat("x", BlazeXmlParser.MAX_TEXT_LENGTH + 10);
+    TestSuite parsed =
+        parseXml(
+            "<testsuite name='com.google.ConfigTest'>",
+            "  <testcase name='testCase1'>",
+            "    <system-out>" + output + "</system-out>",
+            "  </testcase>",
+            "</testsuite>");
+
+    String sysOut = parsed.testCases.get(0).sysOut;
+    assertThat(sysOut).startsWith(output.substring(0, BlazeXmlParser.MAX_TEXT_LENGTH));
+    assertThat(sysOut)
+        .endsWith("(10 more characters truncated, see the test log for the full output)");
+  }
+
+  @Test
+  public void testUnknownElementsAreSkipped() {
+    TestSuite parsed =
+        parseXml(
+            "<?xml version='1.0' encoding='UTF-8'?>",
+            "<testsuites>",
+            "  <testsuite name='com.google.ConfigTest' tests='1'>",
+            "    <properties><property name='foo' value='bar'/></properties>",
+            "    <testcase name='testCase1' status='run'>",
+            "      <rerunFailure><stackTrace>trace</stackTrace></rerunFailure>",
+            "    </testcase>",
+            "  </testsuite>",
+            "</testsuites>");
+
+    TestSuite testSuite = Iterables.getOnlyElement(parsed.testSuites);
+    TestCase testCase = Iterables.getOnlyElement(testSuite.testCases);
+    assertThat(testCase.name).isEqualTo("testCase1");
+    assertThat(testCase.failures).isEmpty();
+    assertThat(testCase.sysOut).isNull();
+  }
+
   private static TestSuite parseXml(String... lines) {
     InputStream stream =
         new ByteArrayInputStream(Joiner.on('\n').join(lines).getBytes(StandardCharsets.UTF_8));
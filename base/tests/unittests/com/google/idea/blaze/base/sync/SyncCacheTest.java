@@ -0,0 +1,74 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.model.MockBlazeProjectDataBuilder;
+import com.google.idea.blaze.base.model.MockBlazeProjectDataManager;
+import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link SyncCache}. */
+@RunWith(JUnit4.class)
+public class SyncCacheTest extends BlazeTestCase {
+  private SyncCache syncCache;
+
+  @Override
+  protected void initTest(Container applicationServices, Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+    projectServices.register(
+        BlazeProjectDataManager.class,
+        new MockBlazeProjectDataManager(MockBlazeProjectDataBuilder.builder().build()));
+    syncCache = new SyncCache(project);
+  }
+
+  @Test
+  public void testValueCachedUntilCleared() {
+    AtomicInteger computations = new AtomicInteger();
+    SyncCache.SyncCacheComputable<Integer> computable =
+        (project, projectData) -> computations.incrementAndGet();
+
+    assertThat(syncCache.get("key", computable)).isEqualTo(1);
+    assertThat(syncCache.get("key", computable)).isEqualTo(1);
+
+    syncCache.clear();
+
+    assertThat(syncCache.get("key", computable)).isEqualTo(2);
+    assertThat(computations.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testValueComputedDuringClearNotCached() {
+    AtomicInteger computations = new AtomicInteger();
+    SyncCache.SyncCacheComputable<String> staleComputable =
+        (project, projectData) -> {
+          computations.incrementAndGet();
+          // the cache is cleared after this value's project data was read
+          syncCache.clear();
+          return "stale";
+        };
+
+    assertThat(syncCache.get("key", staleComputable)).isEqualTo("stale");
+
+    assertThat(syncCache.get("key", (project, projectData) -> "fresh")).isEqualTo("fresh");
+    assertThat(computations.get()).isEqualTo(1);
+  }
+}
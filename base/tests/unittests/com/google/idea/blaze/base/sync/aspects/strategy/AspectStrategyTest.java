@@ -16,21 +16,34 @@
 package com.google.idea.blaze.base.sync.aspects.strategy;
 
 import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.fail;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.devtools.intellij.ideinfo.IntellijIdeInfo;
 import com.google.idea.blaze.base.BlazeTestCase;
 import com.google.idea.blaze.base.command.BlazeCommand;
 import com.google.idea.blaze.base.command.BlazeCommandName;
+import com.google.idea.blaze.base.command.buildresult.LocalFileOutputArtifact;
+import com.google.idea.blaze.base.command.buildresult.OutputArtifact;
 import com.google.idea.blaze.base.model.primitives.LanguageClass;
 import com.google.idea.blaze.base.sync.aspects.strategy.AspectStrategy.OutputGroup;
 import com.google.idea.common.experiments.ExperimentService;
 import com.google.idea.common.experiments.MockExperimentService;
+import com.google.repackaged.bazel.protobuf.TextFormat;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
@@ -39,6 +52,14 @@ import org.junit.runners.JUnit4;
 public class AspectStrategyTest extends BlazeTestCase {
 
   private static final MockAspectStrategy strategy = new MockAspectStrategy();
+  private static final IntellijIdeInfo.TargetIdeInfo TARGET =
+      IntellijIdeInfo.TargetIdeInfo.newBuilder()
+          .setKindString("java_library")
+          .setKey(IntellijIdeInfo.TargetKey.newBuilder().setLabel("//foo:foo"))
+          .addTags("manual")
+          .build();
+
+  @Rule public TemporaryFolder tmpFolder = new TemporaryFolder();
   private MockExperimentService experiments;
 
   @Override
@@ -185,6 +206,71 @@ public class AspectStrategyTest extends BlazeTestCase {
         .containsExactly("intellij-info-generic", "intellij-info-java", "intellij-resolve-java");
   }
 
+  @Test
+  public void testReadAspectFile() throws IOException {
+    File file = tmpFolder.newFile("foo-123.intellij-info.txt");
+    Files.write(file.toPath(), TextFormat.printToString(TARGET).getBytes(UTF_8));
+
+    assertThat(strategy.readAspectFile(outputArtifact(file))).isEqualTo(TARGET);
+  }
+
+  @Test
+  public void testReadBinaryAspectFile() throws IOException {
+    File file = tmpFolder.newFile("foo-123.intellij-info.pb");
+    try (OutputStream out = new FileOutputStream(file)) {
+      TARGET.writeDelimitedTo(out);
+    }
+
+    assertThat(strategy.readAspectFile(outputArtifact(file))).isEqualTo(TARGET);
+  }
+
+  @Test
+  public void testReadEmptyBinaryAspectFile_fails() throws IOException {
+    File file = tmpFolder.newFile("foo-123.intellij-info.pb");
+
+    try {
+      strategy.readAspectFile(outputArtifact(file));
+      fail("Expected reading an empty binary aspect file to fail");
+    } catch (IOException expected) {
+    }
+  }
+
+  @Test
+  public void testAspectOutputFilePredicate() {
+    assertThat(AspectStrategy.ASPECT_OUTPUT_FILE_PREDICATE.test("foo/foo-123.intellij-info.txt"))
+        .isTrue();
+    assertThat(AspectStrategy.ASPECT_OUTPUT_FILE_PREDICATE.test("foo/foo-123.intellij-info.pb"))
+        .isTrue();
+    assertThat(
+            AspectStrategy.ASPECT_OUTPUT_FILE_PREDICATE.test(
+                "foo/foo-123.intellij-info.textproto"))
+        .isFalse();
+  }
+
+  @Test
+  public void testBinaryOutputFilesExperimentAddsDefine() {
+    experiments.setExperimentRaw("blaze.aspect.binary.ide.info", true);
+    BlazeCommand.Builder builder = emptyBuilder();
+
+    strategy.addAspectAndOutputGroups(
+        builder,
+        ImmutableList.of(OutputGroup.INFO),
+        ImmutableSet.of(),
+        /* directDepsOnly= */ false);
+
+    assertThat(getBlazeFlags(builder))
+        .containsExactly(
+            AspectStrategy.BINARY_OUTPUT_FILES_FLAG, "--output_groups=intellij-info-generic")
+        .inOrder();
+  }
+
+  private static OutputArtifact outputArtifact(File file) {
+    return new LocalFileOutputArtifact(
+        file,
+        "k8-fastbuild/bin/foo/" + file.getName(),
+        /* configurationMnemonic= */ "k8-fastbuild");
+  }
+
   private static BlazeCommand.Builder emptyBuilder() {
     return BlazeCommand.builder("/usr/bin/blaze", BlazeCommandName.BUILD);
   }
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.data;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.idea.blaze.base.sync.data.SegmentedProjectDataFileTest.projectData;
+import static com.google.idea.blaze.base.sync.data.SegmentedProjectDataFileTest.target;
+
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.model.primitives.GenericBlazeRules;
+import com.google.idea.blaze.base.model.primitives.Kind;
+import com.google.idea.blaze.base.settings.BuildSystem;
+import com.intellij.openapi.extensions.impl.ExtensionPointImpl;
+import java.io.File;
+import java.io.IOException;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link ProjectDataCacheFiles}. */
+@RunWith(JUnit4.class)
+public class ProjectDataCacheFilesTest extends BlazeTestCase {
+
+  private static final int COMPACTION_THRESHOLD = 1000;
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private File gzFile;
+  private File segmentedFile;
+  private File deltaFile;
+
+  private TargetIdeInfo foo;
+  private TargetIdeInfo bar;
+  private TargetIdeInfo baz;
+
+  @Override
+  protected void initTest(
+      @NotNull Container applicationServices, @NotNull Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+    ExtensionPointImpl<Kind.Provider> kindProvider =
+        registerExtensionPoint(Kind.Provider.EP_NAME, Kind.Provider.class);
+    kindProvider.registerExtension(new GenericBlazeRules());
+    applicationServices.register(Kind.ApplicationState.class, new Kind.ApplicationState());
+
+    foo = target("//pkg:foo", "proto_library");
+    bar = target("//pkg:bar", "sh_library");
+    baz = target("//pkg:baz", "sh_binary");
+  }
+
+  private ProjectDataCacheFiles createCacheFiles() {
+    File cacheDir = tempFolder.getRoot();
+    gzFile = new File(cacheDir, "cache.dat.gz");
+    segmentedFile = new File(cacheDir, "cache.dat.seg");
+    deltaFile = new File(cacheDir, "cache.dat.seg.delta");
+    return new ProjectDataCacheFiles(cacheDir);
+  }
+
+  @Test
+  public void testSegmentedFormat_appendsDeltas() throws IOException {
+    ProjectDataCacheFiles files = createCacheFiles();
+    BlazeProjectData first = projectData(foo);
+    BlazeProjectData second = projectData(foo, bar);
+
+    files.write(first, /* segmentedFormat= */ true, COMPACTION_THRESHOLD);
+    long baseSize = segmentedFile.length();
+    files.write(second, /* segmentedFormat= */ true, COMPACTION_THRESHOLD);
+
+    assertThat(segmentedFile.length()).isEqualTo(baseSize);
+    assertThat(deltaFile.length()).isGreaterThan(0L);
+    assertThat(createCacheFiles().read(BuildSystem.Bazel, true).getTargetMap())
+        .isEqualTo(second.getTargetMap());
+  }
+
+  @Test
+  public void testSegmentedFormat_appendsDeltasAfterRead() throws IOException {
+    BlazeProjectData first = projectData(foo);
+    createCacheFiles().write(first, /* segmentedFormat= */ true, COMPACTION_THRESHOLD);
+
+    // the data read from disk is used as the basis for the next delta
+    ProjectDataCacheFiles files = createCacheFiles();
+    BlazeProjectData read = files.read(BuildSystem.Bazel, /* segmentedFormat= */ true);
+    BlazeProjectData second = projectData(read.getTargetMap().get(foo.getKey()), bar);
+    files.write(second, /* segmentedFormat= */ true, COMPACTION_THRESHOLD);
+
+    assertThat(deltaFile.length()).isGreaterThan(0L);
+    assertThat(createCacheFiles().read(BuildSystem.Bazel, true).getTargetMap())
+        .isEqualTo(second.getTargetMap());
+  }
+
+  @Test
+  public void testSegmentedFormat_compactsOnceDeltasExceedThreshold() throws IOException {
+    ProjectDataCacheFiles files = createCacheFiles();
+    BlazeProjectData first = projectData(foo);
+    BlazeProjectData second = projectData(foo, bar);
+    BlazeProjectData third = projectData(foo, bar, baz);
+
+    files.write(first, /* segmentedFormat= */ true, /* compactionThresholdPercent= */ 0);
+    files.write(second, /* segmentedFormat= */ true, /* compactionThresholdPercent= */ 0);
+    assertThat(deltaFile.length()).isGreaterThan(0L);
+
+    // any existing deltas exceed a threshold of 0%, so this rewrites the base file
+    files.write(third, /* segmentedFormat= */ true, /* compactionThresholdPercent= */ 0);
+
+    assertThat(deltaFile.exists()).isFalse();
+    assertThat(createCacheFiles().read(BuildSystem.Bazel, true).getTargetMap())
+        .isEqualTo(third.getTargetMap());
+  }
+
+  @Test
+  public void testSegmentedFormat_deletesGzippedFile() throws IOException {
+    ProjectDataCacheFiles files = createCacheFiles();
+    files.write(projectData(foo), /* segmentedFormat= */ false, COMPACTION_THRESHOLD);
+    assertThat(gzFile.exists()).isTrue();
+
+    files.write(projectData(foo, bar), /* segmentedFormat= */ true, COMPACTION_THRESHOLD);
+
+    assertThat(gzFile.exists()).isFalse();
+    assertThat(segmentedFile.exists()).isTrue();
+  }
+
+  @Test
+  public void testGzippedFormat_deletesSegmentedFileAndDeltas() throws IOException {
+    ProjectDataCacheFiles files = createCacheFiles();
+    files.write(projectData(foo), /* segmentedFormat= */ true, COMPACTION_THRESHOLD);
+    files.write(projectData(foo, bar), /* segmentedFormat= */ true, COMPACTION_THRESHOLD);
+    assertThat(deltaFile.exists()).isTrue();
+
+    files.write(projectData(baz), /* segmentedFormat= */ false, COMPACTION_THRESHOLD);
+
+    assertThat(segmentedFile.exists()).isFalse();
+    assertThat(deltaFile.exists()).isFalse();
+    assertThat(gzFile.exists()).isTrue();
+  }
+
+  @Test
+  public void testFormatDisabledAfterDeltas_readsLatestData() throws IOException {
+    ProjectDataCacheFiles files = createCacheFiles();
+    BlazeProjectData latest = projectData(foo, bar);
+    files.write(projectData(foo), /* segmentedFormat= */ true, COMPACTION_THRESHOLD);
+    files.write(latest, /* segmentedFormat= */ true, COMPACTION_THRESHOLD);
+
+    // the segmented file is the only cache file, so it's read even with the format disabled
+    BlazeProjectData read = createCacheFiles().read(BuildSystem.Bazel, false);
+
+    assertThat(read.getTargetMap()).isEqualTo(latest.getTargetMap());
+  }
+
+  @Test
+  public void testFormatToggledBetweenSaves_readsLatestData() throws IOException {
+    ProjectDataCacheFiles files = createCacheFiles();
+    files.write(projectData(foo), /* segmentedFormat= */ true, COMPACTION_THRESHOLD);
+    files.write(projectData(foo, bar), /* segmentedFormat= */ true, COMPACTION_THRESHOLD);
+    files.write(projectData(bar), /* segmentedFormat= */ false, COMPACTION_THRESHOLD);
+    BlazeProjectData latest = projectData(bar, baz);
+
+    files.write(latest, /* segmentedFormat= */ true, COMPACTION_THRESHOLD);
+
+    // re-enabling the format writes a fresh base file, rather than a delta against stale data
+    assertThat(deltaFile.exists()).isFalse();
+    assertThat(gzFile.exists()).isFalse();
+    assertThat(createCacheFiles().read(BuildSystem.Bazel, true).getTargetMap())
+        .isEqualTo(latest.getTargetMap());
+    assertThat(createCacheFiles().read(BuildSystem.Bazel, false).getTargetMap())
+        .isEqualTo(latest.getTargetMap());
+  }
+}
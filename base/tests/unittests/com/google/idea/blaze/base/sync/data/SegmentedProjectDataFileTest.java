@@ -0,0 +1,323 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.data;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
+import com.google.idea.blaze.base.ideinfo.TargetMapBuilder;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.model.MockBlazeProjectDataBuilder;
+import com.google.idea.blaze.base.model.primitives.GenericBlazeRules;
+import com.google.idea.blaze.base.model.primitives.Kind;
+import com.google.idea.blaze.base.settings.BuildSystem;
+import com.intellij.openapi.extensions.impl.ExtensionPointImpl;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link SegmentedProjectDataFile}. */
+@RunWith(JUnit4.class)
+public class SegmentedProjectDataFileTest extends BlazeTestCase {
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private TargetIdeInfo foo;
+  private TargetIdeInfo bar;
+  private TargetIdeInfo baz;
+
+  @Override
+  protected void initTest(
+      @NotNull Container applicationServices, @NotNull Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+    ExtensionPointImpl<Kind.Provider> kindProvider =
+        registerExtensionPoint(Kind.Provider.EP_NAME, Kind.Provider.class);
+    kindProvider.registerExtension(new GenericBlazeRules());
+    applicationServices.register(Kind.ApplicationState.class, new Kind.ApplicationState());
+
+    foo = target("//pkg:foo", "proto_library");
+    bar = target("//pkg:bar", "sh_library");
+    baz = target("//pkg:baz", "sh_binary");
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    File file = new File(tempFolder.getRoot(), "cache.dat.seg");
+    BlazeProjectData projectData = projectData(foo, bar);
+
+    SegmentedProjectDataFile.write(projectData, file);
+    BlazeProjectData read = SegmentedProjectDataFile.read(BuildSystem.Bazel, file);
+
+    assertThat(read.getTargetMap().map()).isEqualTo(projectData.getTargetMap().map());
+    assertThat(read.getSyncState()).isEqualTo(projectData.getSyncState());
+    assertThat(read.getBlazeInfo().getExecutionRoot())
+        .isEqualTo(projectData.getBlazeInfo().getExecutionRoot());
+  }
+
+  @Test
+  public void testTargetsDecodedIndividually() throws IOException {
+    File file = new File(tempFolder.getRoot(), "cache.dat.seg");
+    SegmentedProjectDataFile.write(projectData(foo, bar), file);
+
+    TargetMap targetMap = SegmentedProjectDataFile.read(BuildSystem.Bazel, file).getTargetMap();
+
+    assertThat(targetMap.get(foo.getKey())).isEqualTo(foo);
+    assertThat(targetMap.contains(bar.getKey())).isTrue();
+    assertThat(targetMap.contains(baz.getKey())).isFalse();
+    assertThat(targetMap.get(baz.getKey())).isNull();
+  }
+
+  @Test
+  public void testLazyTargetMapEqualsEagerTargetMap() throws IOException {
+    File file = new File(tempFolder.getRoot(), "cache.dat.seg");
+    BlazeProjectData projectData = projectData(foo, bar);
+    SegmentedProjectDataFile.write(projectData, file);
+
+    TargetMap targetMap = SegmentedProjectDataFile.read(BuildSystem.Bazel, file).getTargetMap();
+
+    assertThat(targetMap).isEqualTo(projectData.getTargetMap());
+    assertThat(targetMap.hashCode()).isEqualTo(projectData.getTargetMap().hashCode());
+    assertThat(targetMap).isNotEqualTo(projectData(foo).getTargetMap());
+  }
+
+  @Test
+  public void testWrongMagicNumber_throwsIOException() throws IOException {
+    File file = tempFolder.newFile("cache.dat.seg");
+    Files.write(file.toPath(), new byte[64]);
+
+    assertReadFails(file);
+  }
+
+  @Test
+  public void testTruncatedFile_throwsIOException() throws IOException {
+    File file = new File(tempFolder.getRoot(), "cache.dat.seg");
+    SegmentedProjectDataFile.write(projectData(foo, bar, baz), file);
+    truncate(file, file.length() / 2);
+
+    assertReadFails(file);
+  }
+
+  @Test
+  public void testCorruptSectionTable_throwsIOException() throws IOException {
+    File file = new File(tempFolder.getRoot(), "cache.dat.seg");
+    SegmentedProjectDataFile.write(projectData(foo, bar), file);
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      // point the section table offset past the end of the file
+      raf.seek(file.length() - 8);
+      raf.writeLong(file.length() * 2);
+    }
+
+    assertReadFails(file);
+  }
+
+  @Test
+  public void testDeltasAppliedOnRead() throws IOException {
+    File file = new File(tempFolder.getRoot(), "cache.dat.seg");
+    BlazeProjectData first = projectData(foo, bar);
+    TargetIdeInfo changedBar = target("//pkg:bar", "sh_binary");
+    BlazeProjectData second = projectData(foo, changedBar, baz);
+    BlazeProjectData third = projectData(changedBar, baz);
+
+    SegmentedProjectDataFile.write(first, file);
+    SegmentedProjectDataFile.appendDelta(first, second, file);
+    SegmentedProjectDataFile.appendDelta(second, third, file);
+    BlazeProjectData read = SegmentedProjectDataFile.read(BuildSystem.Bazel, file);
+
+    assertThat(SegmentedProjectDataFile.getDeltaSize(file)).isGreaterThan(0L);
+    assertThat(read.getTargetMap().map()).isEqualTo(third.getTargetMap().map());
+  }
+
+  @Test
+  public void testUnchangedTargetsNotWrittenToDelta() throws IOException {
+    BlazeProjectData first = projectData(foo, bar);
+
+    File unchangedFile = new File(tempFolder.getRoot(), "unchanged.seg");
+    SegmentedProjectDataFile.write(first, unchangedFile);
+    SegmentedProjectDataFile.appendDelta(first, projectData(foo, bar), unchangedFile);
+
+    // equal, but not identical targets
+    File rewrittenFile = new File(tempFolder.getRoot(), "rewritten.seg");
+    SegmentedProjectDataFile.write(first, rewrittenFile);
+    SegmentedProjectDataFile.appendDelta(
+        first,
+        projectData(target("//pkg:foo", "proto_library"), target("//pkg:bar", "sh_library")),
+        rewrittenFile);
+
+    assertThat(SegmentedProjectDataFile.getDeltaSize(unchangedFile))
+        .isLessThan(SegmentedProjectDataFile.getDeltaSize(rewrittenFile));
+    assertThat(SegmentedProjectDataFile.read(BuildSystem.Bazel, unchangedFile).getTargetMap())
+        .isEqualTo(first.getTargetMap());
+  }
+
+  @Test
+  public void testTruncatedDeltaRecord_ignored() throws IOException {
+    File file = new File(tempFolder.getRoot(), "cache.dat.seg");
+    File deltaFile = new File(file.getPath() + ".delta");
+    BlazeProjectData first = projectData(foo);
+    BlazeProjectData second = projectData(foo, bar);
+    SegmentedProjectDataFile.write(first, file);
+    SegmentedProjectDataFile.appendDelta(first, second, file);
+    long firstDeltaEnd = deltaFile.length();
+    SegmentedProjectDataFile.appendDelta(second, projectData(foo, bar, baz), file);
+
+    truncate(deltaFile, firstDeltaEnd + 6);
+
+    assertThat(SegmentedProjectDataFile.read(BuildSystem.Bazel, file).getTargetMap().map())
+        .isEqualTo(second.getTargetMap().map());
+  }
+
+  @Test
+  public void testAppendAfterTruncatedDeltaRecord_rewritesBase() throws IOException {
+    File file = new File(tempFolder.getRoot(), "cache.dat.seg");
+    File deltaFile = new File(file.getPath() + ".delta");
+    BlazeProjectData first = projectData(foo);
+    BlazeProjectData second = projectData(foo, bar);
+    SegmentedProjectDataFile.write(first, file);
+    SegmentedProjectDataFile.appendDelta(first, second, file);
+    truncate(deltaFile, deltaFile.length() - 1);
+
+    BlazeProjectData third = projectData(foo, bar, baz);
+    SegmentedProjectDataFile.appendDelta(second, third, file);
+
+    assertThat(SegmentedProjectDataFile.getDeltaSize(file)).isEqualTo(0L);
+    assertThat(SegmentedProjectDataFile.read(BuildSystem.Bazel, file).getTargetMap().map())
+        .isEqualTo(third.getTargetMap().map());
+  }
+
+  @Test
+  public void testAppendToDeltaFromPreviousGeneration_rewritesBase() throws IOException {
+    File file = new File(tempFolder.getRoot(), "cache.dat.seg");
+    File deltaFile = new File(file.getPath() + ".delta");
+    BlazeProjectData first = projectData(foo);
+    SegmentedProjectDataFile.write(first, file);
+    SegmentedProjectDataFile.appendDelta(first, projectData(foo, bar), file);
+    byte[] staleDelta = Files.readAllBytes(deltaFile.toPath());
+    BlazeProjectData second = projectData(baz);
+    SegmentedProjectDataFile.write(second, file);
+    Files.write(deltaFile.toPath(), staleDelta);
+
+    BlazeProjectData third = projectData(foo, baz);
+    SegmentedProjectDataFile.appendDelta(second, third, file);
+
+    assertThat(SegmentedProjectDataFile.getDeltaSize(file)).isEqualTo(0L);
+    assertThat(SegmentedProjectDataFile.read(BuildSystem.Bazel, file).getTargetMap().map())
+        .isEqualTo(third.getTargetMap().map());
+  }
+
+  @Test
+  public void testAppendDelta_onlyDecodesChangedTargets() throws IOException {
+    File file = new File(tempFolder.getRoot(), "cache.dat.seg");
+    SegmentedProjectDataFile.write(projectData(foo, bar, baz), file);
+    BlazeProjectData previous = SegmentedProjectDataFile.read(BuildSystem.Bazel, file);
+    TargetMap previousTargets = previous.getTargetMap();
+    // carry over foo, change bar and drop baz, without decoding the rest of the previous targets
+    TargetIdeInfo carriedOver = previousTargets.get(foo.getKey());
+    TargetIdeInfo changedBar = target("//pkg:bar", "sh_binary");
+    BlazeProjectData current = projectData(carriedOver, changedBar);
+
+    SegmentedProjectDataFile.appendDelta(previous, current, file);
+
+    assertThat(previousTargets.getIfDecoded(bar.getKey())).isNull();
+    assertThat(previousTargets.getIfDecoded(baz.getKey())).isNull();
+    assertThat(SegmentedProjectDataFile.read(BuildSystem.Bazel, file).getTargetMap().map())
+        .containsExactly(foo.getKey(), foo, bar.getKey(), changedBar);
+  }
+
+  @Test
+  public void testRewrite_discardsDeltas() throws IOException {
+    File file = new File(tempFolder.getRoot(), "cache.dat.seg");
+    BlazeProjectData first = projectData(foo);
+    SegmentedProjectDataFile.write(first, file);
+    SegmentedProjectDataFile.appendDelta(first, projectData(foo, bar), file);
+
+    SegmentedProjectDataFile.write(projectData(baz), file);
+
+    assertThat(SegmentedProjectDataFile.getDeltaSize(file)).isEqualTo(0L);
+    assertThat(SegmentedProjectDataFile.read(BuildSystem.Bazel, file).getTargetMap().map())
+        .containsExactly(baz.getKey(), baz);
+  }
+
+  @Test
+  public void testDeltaFromPreviousGeneration_ignored() throws IOException {
+    File file = new File(tempFolder.getRoot(), "cache.dat.seg");
+    File deltaFile = new File(file.getPath() + ".delta");
+    BlazeProjectData first = projectData(foo);
+    SegmentedProjectDataFile.write(first, file);
+    SegmentedProjectDataFile.appendDelta(first, projectData(foo, bar), file);
+    byte[] staleDelta = Files.readAllBytes(deltaFile.toPath());
+
+    SegmentedProjectDataFile.write(projectData(baz), file);
+    Files.write(deltaFile.toPath(), staleDelta);
+
+    assertThat(SegmentedProjectDataFile.read(BuildSystem.Bazel, file).getTargetMap().map())
+        .containsExactly(baz.getKey(), baz);
+  }
+
+  @Test
+  public void testDelete_removesFileAndDeltas() throws IOException {
+    File file = new File(tempFolder.getRoot(), "cache.dat.seg");
+    BlazeProjectData first = projectData(foo);
+    SegmentedProjectDataFile.write(first, file);
+    SegmentedProjectDataFile.appendDelta(first, projectData(foo, bar), file);
+
+    SegmentedProjectDataFile.delete(file);
+
+    assertThat(file.exists()).isFalse();
+    assertThat(new File(file.getPath() + ".delta").exists()).isFalse();
+  }
+
+  private static void assertReadFails(File file) {
+    try {
+      SegmentedProjectDataFile.read(BuildSystem.Bazel, file);
+      fail("Expected reading a corrupt file to fail");
+    } catch (IOException expected) {
+    }
+  }
+
+  private static void truncate(File file, long length) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(length);
+    }
+  }
+
+  static BlazeProjectData projectData(TargetIdeInfo... targets) {
+    TargetMapBuilder targetMap = TargetMapBuilder.builder();
+    for (TargetIdeInfo target : targets) {
+      targetMap.addTarget(target);
+    }
+    return MockBlazeProjectDataBuilder.builder().setTargetMap(targetMap.build()).build();
+  }
+
+  static TargetIdeInfo target(String label, String kind) {
+    return TargetIdeInfo.builder()
+        .setBuildFile(
+            ArtifactLocation.builder().setRelativePath("pkg/BUILD").setIsSource(true).build())
+        .setLabel(label)
+        .setKind(kind)
+        .build();
+  }
+}
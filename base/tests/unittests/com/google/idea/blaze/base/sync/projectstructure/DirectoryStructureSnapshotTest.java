@@ -0,0 +1,81 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.projectstructure;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.File;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link DirectoryStructureSnapshot}. */
+@RunWith(JUnit4.class)
+public class DirectoryStructureSnapshotTest {
+
+  @Rule public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  private static final long SNAPSHOT_TIME = 100_000L;
+
+  @Test
+  public void testRoundTrip() {
+    DirectoryStructureSnapshot snapshot =
+        new DirectoryStructureSnapshot(
+            SNAPSHOT_TIME,
+            ImmutableMap.of(
+                "java",
+                new DirectoryStructureSnapshot.Entry(1000L, ImmutableList.of("com", "org")),
+                "java/com",
+                new DirectoryStructureSnapshot.Entry(2000L, ImmutableList.of())));
+    File file = new File(tmpFolder.getRoot(), "snapshot/directory_structure.dat");
+
+    snapshot.write(file);
+    DirectoryStructureSnapshot read = DirectoryStructureSnapshot.read(file);
+
+    assertThat(read.snapshotTimeMillis).isEqualTo(SNAPSHOT_TIME);
+    assertThat(read.getChildDirectories("java", 1000L)).containsExactly("com", "org").inOrder();
+    assertThat(read.getChildDirectories("java/com", 2000L)).isEmpty();
+  }
+
+  @Test
+  public void testModifiedDirectoriesAreNotReused() {
+    DirectoryStructureSnapshot snapshot =
+        new DirectoryStructureSnapshot(
+            SNAPSHOT_TIME,
+            ImmutableMap.of(
+                "java",
+                new DirectoryStructureSnapshot.Entry(1000L, ImmutableList.of("com")),
+                "javatests",
+                new DirectoryStructureSnapshot.Entry(
+                    SNAPSHOT_TIME - 500, ImmutableList.of("com"))));
+
+    assertThat(snapshot.getChildDirectories("java", 1001L)).isNull();
+    assertThat(snapshot.getChildDirectories("missing", 1000L)).isNull();
+    // modified too close to the snapshot time to be trusted
+    assertThat(snapshot.getChildDirectories("javatests", SNAPSHOT_TIME - 500)).isNull();
+  }
+
+  @Test
+  public void testMissingFileReturnsEmptySnapshot() {
+    File file = new File(tmpFolder.getRoot(), "missing.dat");
+
+    assertThat(DirectoryStructureSnapshot.read(file).entries).isEmpty();
+  }
+}
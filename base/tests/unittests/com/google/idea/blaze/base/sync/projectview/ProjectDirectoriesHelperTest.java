@@ -0,0 +1,90 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.projectview;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.idea.blaze.base.model.primitives.WorkspacePath;
+import com.google.idea.blaze.base.sync.projectview.ImportRoots.ProjectDirectoriesHelper;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link ProjectDirectoriesHelper}. */
+@RunWith(JUnit4.class)
+public class ProjectDirectoriesHelperTest {
+
+  @Test
+  public void testIncludedUnderRootDirectory() {
+    ProjectDirectoriesHelper directories =
+        helper(ImmutableList.of("java/com/foo"), ImmutableList.of());
+
+    assertThat(directories.containsWorkspacePath(new WorkspacePath("java/com/foo"))).isTrue();
+    assertThat(directories.containsWorkspacePath(new WorkspacePath("java/com/foo/bar"))).isTrue();
+    assertThat(directories.containsWorkspacePath(new WorkspacePath("java/com"))).isFalse();
+    assertThat(directories.containsWorkspacePath(new WorkspacePath("java/com/foobar"))).isFalse();
+    assertThat(directories.containsWorkspacePath(new WorkspacePath("javascript"))).isFalse();
+  }
+
+  @Test
+  public void testExcludedDirectoriesTakePrecedence() {
+    ProjectDirectoriesHelper directories =
+        helper(
+            ImmutableList.of("java/com/foo", "java/com/foo/excluded/included"),
+            ImmutableList.of("java/com/foo/excluded"));
+
+    assertThat(directories.containsWorkspacePath(new WorkspacePath("java/com/foo/bar"))).isTrue();
+    assertThat(directories.containsWorkspacePath(new WorkspacePath("java/com/foo/excluded")))
+        .isFalse();
+    assertThat(
+            directories.containsWorkspacePath(
+                new WorkspacePath("java/com/foo/excluded/included/baz")))
+        .isFalse();
+    assertThat(directories.containsWorkspacePath(new WorkspacePath("java/com/foo/excludedbar")))
+        .isTrue();
+  }
+
+  @Test
+  public void testWorkspaceRootDirectory() {
+    ProjectDirectoriesHelper directories =
+        helper(ImmutableList.of(""), ImmutableList.of("blaze-out", "third_party/foo"));
+
+    assertThat(directories.containsWorkspacePath(new WorkspacePath(""))).isTrue();
+    assertThat(directories.containsWorkspacePath(new WorkspacePath("java/com"))).isTrue();
+    assertThat(directories.containsWorkspacePath(new WorkspacePath("third_party"))).isTrue();
+    assertThat(directories.containsWorkspacePath(new WorkspacePath("third_party/foo/bar")))
+        .isFalse();
+    assertThat(directories.containsWorkspacePath(new WorkspacePath("blaze-out/k8"))).isFalse();
+  }
+
+  @Test
+  public void testNoRootDirectories() {
+    ProjectDirectoriesHelper directories = helper(ImmutableList.of(), ImmutableList.of());
+
+    assertThat(directories.containsWorkspacePath(new WorkspacePath(""))).isFalse();
+    assertThat(directories.containsWorkspacePath(new WorkspacePath("java"))).isFalse();
+  }
+
+  private static ProjectDirectoriesHelper helper(
+      ImmutableList<String> rootDirectories, ImmutableList<String> excludeDirectories) {
+    return new ProjectDirectoriesHelper(
+        rootDirectories.stream().map(WorkspacePath::new).collect(ImmutableList.toImmutableList()),
+        excludeDirectories.stream()
+            .map(WorkspacePath::new)
+            .collect(ImmutableList.toImmutableList()));
+  }
+}
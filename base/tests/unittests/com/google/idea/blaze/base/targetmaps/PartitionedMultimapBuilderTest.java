@@ -0,0 +1,112 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.targetmaps;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.Dependency;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.model.primitives.GenericBlazeRules;
+import com.google.idea.blaze.base.model.primitives.Kind;
+import com.intellij.openapi.extensions.impl.ExtensionPointImpl;
+import java.util.function.BiConsumer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link PartitionedMultimapBuilder}. */
+@RunWith(JUnit4.class)
+public class PartitionedMultimapBuilderTest extends BlazeTestCase {
+
+  private static final BiConsumer<TargetIdeInfo, ImmutableMultimap.Builder<TargetKey, TargetKey>>
+      RDEPS =
+          (target, builder) -> {
+            for (Dependency dep : target.getDependencies()) {
+              builder.put(dep.getTargetKey(), target.getKey());
+            }
+          };
+
+  @Override
+  protected void initTest(Container applicationServices, Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+    ExtensionPointImpl<Kind.Provider> ep =
+        registerExtensionPoint(Kind.Provider.EP_NAME, Kind.Provider.class);
+    ep.registerExtension(new GenericBlazeRules());
+    applicationServices.register(Kind.ApplicationState.class, new Kind.ApplicationState());
+  }
+
+  @Test
+  public void testPartitionedResultMatchesSequentialResult() {
+    ImmutableList<TargetIdeInfo> targets = createTargets(10);
+
+    ImmutableMultimap<TargetKey, TargetKey> partitioned =
+        PartitionedMultimapBuilder.build(targets, RDEPS, /* partitionSize= */ 3);
+
+    ImmutableMultimap.Builder<TargetKey, TargetKey> sequential = ImmutableMultimap.builder();
+    targets.forEach(target -> RDEPS.accept(target, sequential));
+    // the entries are merged in partition order, so iteration order matches as well
+    assertThat(ImmutableList.copyOf(partitioned.entries()))
+        .containsExactlyElementsIn(sequential.build().entries())
+        .inOrder();
+  }
+
+  @Test
+  public void testSinglePartition() {
+    ImmutableList<TargetIdeInfo> targets = createTargets(10);
+
+    ImmutableMultimap<TargetKey, TargetKey> result =
+        PartitionedMultimapBuilder.build(targets, RDEPS, /* partitionSize= */ 100);
+
+    assertThat(result).hasSize(17);
+    assertThat(result).containsEntry(targets.get(9).getKey(), targets.get(0).getKey());
+  }
+
+  @Test
+  public void testEmptyInput() {
+    assertThat(PartitionedMultimapBuilder.build(ImmutableList.of(), RDEPS, /* partitionSize= */ 3))
+        .isEmpty();
+    assertThat(PartitionedMultimapBuilder.build(ImmutableList.of(), RDEPS)).isEmpty();
+  }
+
+  /** Target i depends on targets i + 1 and the last target. */
+  private static ImmutableList<TargetIdeInfo> createTargets(int count) {
+    ImmutableList.Builder<TargetIdeInfo> targets = ImmutableList.builder();
+    for (int i = 0; i < count; i++) {
+      TargetIdeInfo.Builder target =
+          TargetIdeInfo.builder()
+              .setBuildFile(sourceRoot("test/BUILD"))
+              .setLabel("//l:l" + i)
+              .setKind("proto_library");
+      if (i + 1 < count) {
+        target.addDependency("//l:l" + (i + 1));
+      }
+      if (i + 2 < count) {
+        target.addDependency("//l:l" + (count - 1));
+      }
+      targets.add(target.build());
+    }
+    return targets.build();
+  }
+
+  private static ArtifactLocation sourceRoot(String relativePath) {
+    return ArtifactLocation.builder().setRelativePath(relativePath).setIsSource(true).build();
+  }
+}
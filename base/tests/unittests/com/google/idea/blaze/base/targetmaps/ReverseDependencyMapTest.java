@@ -206,6 +206,34 @@ public class ReverseDependencyMapTest extends BlazeTestCase {
             TargetKey.forPlainTarget(Label.create("//l:l5")));
   }
 
+  @Test
+  public void testLongDependencyChain() {
+    int count = 5000;
+    TargetMapBuilder builder = TargetMapBuilder.builder();
+    for (int i = 0; i < count; i++) {
+      TargetIdeInfo.Builder target =
+          TargetIdeInfo.builder()
+              .setBuildFile(sourceRoot("test/BUILD"))
+              .setLabel("//l:l" + i)
+              .setKind("proto_library");
+      if (i > 0) {
+        target.addDependency("//l:l" + (i - 1));
+      }
+      builder.addTarget(target);
+    }
+    TargetMap targetMap = builder.build();
+
+    ImmutableMultimap<TargetKey, TargetKey> reverseDependencies =
+        ReverseDependencyMap.createRdepsMap(
+            getProject(), MockBlazeProjectDataBuilder.builder().setTargetMap(targetMap).build());
+
+    assertThat(reverseDependencies).hasSize(count - 1);
+    for (int i = 0; i < count - 1; i++) {
+      assertThat(reverseDependencies.get(TargetKey.forPlainTarget(Label.create("//l:l" + i))))
+          .containsExactly(TargetKey.forPlainTarget(Label.create("//l:l" + (i + 1))));
+    }
+  }
+
   private static ArtifactLocation sourceRoot(String relativePath) {
     return ArtifactLocation.builder().setRelativePath(relativePath).setIsSource(true).build();
   }
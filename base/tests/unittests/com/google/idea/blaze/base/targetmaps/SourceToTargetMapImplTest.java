@@ -0,0 +1,134 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.targetmaps;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableMultimap;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
+import com.google.idea.blaze.base.ideinfo.TargetMapBuilder;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.model.MockBlazeProjectDataBuilder;
+import com.google.idea.blaze.base.model.primitives.GenericBlazeRules;
+import com.google.idea.blaze.base.model.primitives.Kind;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
+import com.intellij.openapi.extensions.impl.ExtensionPointImpl;
+import java.io.File;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link SourceToTargetMapImpl}. */
+@RunWith(JUnit4.class)
+public class SourceToTargetMapImplTest extends BlazeTestCase {
+  private final WorkspaceRoot workspaceRoot = new WorkspaceRoot(new File("/workspace"));
+
+  @Override
+  protected void initTest(Container applicationServices, Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+    ExtensionPointImpl<Kind.Provider> ep =
+        registerExtensionPoint(Kind.Provider.EP_NAME, Kind.Provider.class);
+    ep.registerExtension(new GenericBlazeRules());
+    applicationServices.register(Kind.ApplicationState.class, new Kind.ApplicationState());
+  }
+
+  @Test
+  public void testSourcesMappedToTargets() {
+    TargetMap targetMap =
+        TargetMapBuilder.builder()
+            .addTarget(
+                TargetIdeInfo.builder()
+                    .setBuildFile(sourceRoot("pkg/BUILD"))
+                    .setLabel("//pkg:foo")
+                    .setKind("sh_library")
+                    .addSource(sourceRoot("pkg/foo.sh"))
+                    .addSource(sourceRoot("pkg/shared.sh")))
+            .addTarget(
+                TargetIdeInfo.builder()
+                    .setBuildFile(sourceRoot("pkg/BUILD"))
+                    .setLabel("//pkg:bar")
+                    .setKind("sh_library")
+                    .addSource(sourceRoot("pkg/shared.sh")))
+            .addTarget(
+                TargetIdeInfo.builder()
+                    .setBuildFile(sourceRoot("pkg/BUILD"))
+                    .setLabel("//pkg:generated")
+                    .setKind("sh_library")
+                    .addSource(
+                        ArtifactLocation.builder()
+                            .setRootExecutionPathFragment("bazel-out/k8-fastbuild/bin")
+                            .setRelativePath("pkg/generated.sh")
+                            .setIsSource(false)))
+            .build();
+
+    ImmutableMultimap<File, TargetKey> sourceToTargetMap =
+        SourceToTargetMapImpl.computeSourceToTargetMap(getProject(), projectData(targetMap));
+
+    // generated sources aren't mapped
+    assertThat(sourceToTargetMap.keySet())
+        .containsExactly(workspaceFile("pkg/foo.sh"), workspaceFile("pkg/shared.sh"));
+    assertThat(sourceToTargetMap.get(workspaceFile("pkg/foo.sh")))
+        .containsExactly(key("//pkg:foo"));
+    assertThat(sourceToTargetMap.get(workspaceFile("pkg/shared.sh")))
+        .containsExactly(key("//pkg:foo"), key("//pkg:bar"));
+  }
+
+  @Test
+  public void testLargeTargetMapSpanningSeveralPartitions() {
+    int count = 5000;
+    TargetMapBuilder builder = TargetMapBuilder.builder();
+    for (int i = 0; i < count; i++) {
+      builder.addTarget(
+          TargetIdeInfo.builder()
+              .setBuildFile(sourceRoot("pkg/BUILD"))
+              .setLabel("//pkg:t" + i)
+              .setKind("sh_library")
+              .addSource(sourceRoot("pkg/t" + i + ".sh"))
+              .addSource(sourceRoot("pkg/common.sh")));
+    }
+
+    ImmutableMultimap<File, TargetKey> sourceToTargetMap =
+        SourceToTargetMapImpl.computeSourceToTargetMap(getProject(), projectData(builder.build()));
+
+    assertThat(sourceToTargetMap).hasSize(2 * count);
+    assertThat(sourceToTargetMap.get(workspaceFile("pkg/common.sh"))).hasSize(count);
+    for (int i = 0; i < count; i++) {
+      assertThat(sourceToTargetMap.get(workspaceFile("pkg/t" + i + ".sh")))
+          .containsExactly(key("//pkg:t" + i));
+    }
+  }
+
+  private BlazeProjectData projectData(TargetMap targetMap) {
+    return MockBlazeProjectDataBuilder.builder(workspaceRoot).setTargetMap(targetMap).build();
+  }
+
+  private File workspaceFile(String relativePath) {
+    return new File(workspaceRoot.directory(), relativePath);
+  }
+
+  private static TargetKey key(String label) {
+    return TargetKey.forPlainTarget(Label.create(label));
+  }
+
+  private static ArtifactLocation sourceRoot(String relativePath) {
+    return ArtifactLocation.builder().setRelativePath(relativePath).setIsSource(true).build();
+  }
+}
@@ -17,6 +17,7 @@ package com.google.idea.blaze.base.targetmaps;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.idea.blaze.base.BlazeTestCase;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
@@ -29,6 +30,7 @@ import com.google.idea.blaze.base.model.primitives.GenericBlazeRules;
 import com.google.idea.blaze.base.model.primitives.Kind;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
+import com.google.idea.blaze.base.sync.SyncCache;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
 import com.intellij.openapi.extensions.impl.ExtensionPointImpl;
 import java.io.File;
@@ -60,6 +62,7 @@ public class TransitiveDependencyMapTest extends BlazeTestCase {
         BlazeProjectDataManager.class,
         new MockBlazeProjectDataManager(
             MockBlazeProjectDataBuilder.builder(workspaceRoot).setTargetMap(targetMap).build()));
+    projectServices.register(SyncCache.class, new SyncCache(project));
     projectServices.register(TransitiveDependencyMap.class, new TransitiveDependencyMap(project));
     transitiveDependencyMap = TransitiveDependencyMap.getInstance(project);
   }
@@ -86,6 +89,19 @@ public class TransitiveDependencyMapTest extends BlazeTestCase {
         .inOrder();
   }
 
+  @Test
+  public void testGetTransitiveDependenciesMatchesStreamOrder() {
+    TargetKey missing = TargetKey.forPlainTarget(Label.create("//com/google/fake:target"));
+    for (TargetKey key : targetMap.map().keySet()) {
+      Collection<TargetKey> topLevelTargets = ImmutableList.of(key, missing);
+      assertThat(TransitiveDependencyMap.getTransitiveDependencies(topLevelTargets, targetMap))
+          .containsExactlyElementsIn(
+              TransitiveDependencyMap.getTransitiveDependenciesStream(topLevelTargets, targetMap)
+                  .collect(Collectors.toList()))
+          .inOrder();
+    }
+  }
+
   @Test
   public void testHasDependencyMatchesGetTransitiveDependencies() {
     Set<TargetKey> keys = targetMap.map().keySet();
@@ -99,6 +115,63 @@ public class TransitiveDependencyMapTest extends BlazeTestCase {
     }
   }
 
+  @Test
+  public void testIndexMatchesTraversal() {
+    Set<TargetKey> keys = targetMap.map().keySet();
+    for (TargetKey key : keys) {
+      Set<TargetKey> traversal =
+          TransitiveDependencyMap.getTransitiveDependenciesStream(key, targetMap)
+              .collect(Collectors.toSet());
+      for (TargetKey other : keys) {
+        assertThat(transitiveDependencyMap.hasTransitiveDependency(key, other))
+            .isEqualTo(traversal.contains(other));
+      }
+    }
+  }
+
+  @Test
+  public void testGetTransitiveDependenciesIsBreadthFirst() {
+    TargetKey diamondA = TargetKey.forPlainTarget(Label.create("//com/google/example/diamond:a"));
+
+    assertThat(transitiveDependencyMap.getTransitiveDependencies(diamondA))
+        .containsExactlyElementsIn(
+            TransitiveDependencyMap.getTransitiveDependenciesStream(diamondA, targetMap)
+                .collect(Collectors.toList()))
+        .inOrder();
+  }
+
+  @Test
+  public void testGetCycleDependencies() {
+    TargetKey cycleA = TargetKey.forPlainTarget(Label.create("//com/google/example/cycle:a"));
+    TargetKey cycleB = TargetKey.forPlainTarget(Label.create("//com/google/example/cycle:b"));
+    TargetKey cycleC = TargetKey.forPlainTarget(Label.create("//com/google/example/cycle:c"));
+
+    assertThat(transitiveDependencyMap.getTransitiveDependencies(cycleA))
+        .containsExactly(cycleB, cycleC, cycleA)
+        .inOrder();
+    assertThat(transitiveDependencyMap.hasTransitiveDependency(cycleA, cycleA)).isTrue();
+    assertThat(transitiveDependencyMap.hasTransitiveDependency(cycleC, cycleA)).isFalse();
+  }
+
+  @Test
+  public void testFilterPossibleTransitiveDeps() {
+    TargetKey chainA = TargetKey.forPlainTarget(Label.create("//com/google/example/chain:a"));
+    TargetKey chainC = TargetKey.forPlainTarget(Label.create("//com/google/example/chain:c"));
+    TargetKey simpleB = TargetKey.forPlainTarget(Label.create("//com/google/example/simple:b"));
+    TargetKey cycleA = TargetKey.forPlainTarget(Label.create("//com/google/example/cycle:a"));
+    TargetKey cycleC = TargetKey.forPlainTarget(Label.create("//com/google/example/cycle:c"));
+
+    assertThat(
+            transitiveDependencyMap.filterPossibleTransitiveDeps(
+                chainA, ImmutableList.of(chainA, chainC, simpleB)))
+        .containsExactly(chainC);
+    // a target on a dependency cycle depends on itself
+    assertThat(
+            transitiveDependencyMap.filterPossibleTransitiveDeps(
+                cycleA, ImmutableList.of(cycleA, cycleC, simpleB)))
+        .containsExactly(cycleA, cycleC);
+  }
+
   @Test
   public void testGetSimpleDependency() {
     TargetKey simpleA = TargetKey.forPlainTarget(Label.create("//com/google/example/simple:a"));
@@ -168,6 +241,9 @@ public class TransitiveDependencyMapTest extends BlazeTestCase {
     Label diamondC = Label.create("//com/google/example/diamond:c");
     Label diamondCC = Label.create("//com/google/example/diamond:cc");
     Label diamondCCC = Label.create("//com/google/example/diamond:ccc");
+    Label cycleA = Label.create("//com/google/example/cycle:a");
+    Label cycleB = Label.create("//com/google/example/cycle:b");
+    Label cycleC = Label.create("//com/google/example/cycle:c");
     return TargetMapBuilder.builder()
         .addTarget(mockTargetIdeInfoBuilder().setLabel(simpleA).addDependency(simpleB))
         .addTarget(mockTargetIdeInfoBuilder().setLabel(simpleB))
@@ -197,6 +273,13 @@ public class TransitiveDependencyMapTest extends BlazeTestCase {
         .addTarget(mockTargetIdeInfoBuilder().setLabel(diamondC))
         .addTarget(mockTargetIdeInfoBuilder().setLabel(diamondCC))
         .addTarget(mockTargetIdeInfoBuilder().setLabel(diamondCCC))
+        .addTarget(
+            mockTargetIdeInfoBuilder()
+                .setLabel(cycleA)
+                .addDependency(cycleB)
+                .addDependency(cycleC))
+        .addTarget(mockTargetIdeInfoBuilder().setLabel(cycleB).addDependency(cycleA))
+        .addTarget(mockTargetIdeInfoBuilder().setLabel(cycleC))
         .build();
   }
 
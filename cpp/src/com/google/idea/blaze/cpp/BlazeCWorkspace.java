@@ -20,6 +20,8 @@ import static com.google.common.collect.ImmutableList.toImmutableList;
 
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
@@ -32,6 +34,7 @@ import com.google.idea.blaze.base.scope.output.IssueOutput;
 import com.google.idea.blaze.base.settings.Blaze;
 import com.google.idea.blaze.base.sync.SyncMode;
 import com.google.idea.blaze.base.sync.workspace.ExecutionRootPathResolver;
+import com.google.idea.common.experiments.BoolExperiment;
 import com.intellij.ide.actions.ShowFilePathAction;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.PathManager;
@@ -69,11 +72,14 @@ import java.io.File;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Stream;
+import javax.annotation.Nullable;
 
 /** Main entry point for C/CPP configuration data. */
 public final class BlazeCWorkspace implements ProjectComponent {
@@ -82,6 +88,13 @@ public final class BlazeCWorkspace implements ProjectComponent {
   private static final int SERIALIZATION_VERSION = 1;
   private static final Logger logger = Logger.getInstance(BlazeCWorkspace.class);
 
+  /**
+   * Reuse the compiler switches and compiler probe results of resolve configurations which are
+   * unchanged since the previous sync, rather than recalculating them for every configuration.
+   */
+  private static final BoolExperiment incrementalUpdate =
+      new BoolExperiment("blaze.cpp.incremental.workspace.update", false);
+
   private final BlazeConfigurationResolver configurationResolver;
   private BlazeConfigurationResolverResult resolverResult;
   private final ImmutableList<OCLanguageKind> supportedLanguages =
@@ -90,6 +103,18 @@ public final class BlazeCWorkspace implements ProjectComponent {
   private final Project project;
   private final CidrToolEnvironment toolEnvironment = new CidrToolEnvironment();
 
+  /** Compiler options from the previous update, for configurations in {@link #resolverResult}. */
+  private ImmutableMap<BlazeResolveConfigurationData, ConfigurationOptions> configurationOptions =
+      ImmutableMap.of();
+  /** The execution root {@link #configurationOptions} were resolved against. */
+  @Nullable private File configurationOptionsExecutionRoot;
+  /**
+   * Compiler probe results, shared between updates so unchanged compiler and switch combinations
+   * aren't probed again. Discarded on full syncs and whenever a compiler changes.
+   */
+  private final CompilerInfoCacheHolder<CompilerInfoCache> compilerInfoCache =
+      new CompilerInfoCacheHolder<>(CompilerInfoCache::new);
+
   private BlazeCWorkspace(Project project) {
     this.configurationResolver = new BlazeConfigurationResolver(project);
     this.resolverResult = BlazeConfigurationResolverResult.empty();
@@ -129,19 +154,43 @@ public final class BlazeCWorkspace implements ProjectComponent {
             new Task.Backgroundable(project, "Configuration Sync", false) {
               @Override
               public void run(ProgressIndicator indicator) {
+                boolean incremental = incrementalUpdate.getValue();
+                File executionRoot = blazeProjectData.getBlazeInfo().getExecutionRoot();
+                ImmutableSet<BlazeResolveConfigurationData> unchangedConfigurations =
+                    incremental && executionRoot.equals(configurationOptionsExecutionRoot)
+                        ? newResult.getUnchangedConfigurations(oldResult)
+                        : ImmutableSet.of();
                 if (!syncMode.equals(SyncMode.FULL)
                     && oldResult.isEquivalentConfigurations(newResult)) {
                   logger.info("Skipping update configurations -- no changes");
+                } else if (isUnchanged(newResult, unchangedConfigurations)) {
+                  // committing the same configurations would only trigger a re-index
+                  logger.info("Skipping update configurations -- switches and compilers unchanged");
                 } else {
                   Stopwatch s = Stopwatch.createStarted();
                   indicator.setIndeterminate(false);
                   indicator.setText("Updating Configurations...");
                   indicator.setFraction(0.0);
+                  Map<BlazeResolveConfigurationData, ConfigurationOptions> newOptions =
+                      new HashMap<>();
                   OCWorkspaceImpl.ModifiableModel model =
                       calculateConfigurations(
-                          blazeProjectData, workspaceRoot, newResult, indicator);
+                          blazeProjectData,
+                          workspaceRoot,
+                          newResult,
+                          unchangedConfigurations,
+                          newOptions,
+                          indicator);
                   ImmutableList<String> issues =
-                      commit(model, SERIALIZATION_VERSION, toolEnvironment);
+                      commit(
+                          model,
+                          SERIALIZATION_VERSION,
+                          toolEnvironment,
+                          getCompilerInfoCache(
+                              newResult, incremental, syncMode.equals(SyncMode.FULL)));
+                  configurationOptions =
+                      incremental ? ImmutableMap.copyOf(newOptions) : ImmutableMap.of();
+                  configurationOptionsExecutionRoot = incremental ? executionRoot : null;
                   logger.info(
                       String.format(
                           "Update configurations took %dms", s.elapsed(TimeUnit.MILLISECONDS)));
@@ -155,10 +204,46 @@ public final class BlazeCWorkspace implements ProjectComponent {
             });
   }
 
+  /**
+   * Returns whether the workspace already has exactly the given configurations, with the same
+   * compiler switches and compilers, so there's nothing to commit.
+   */
+  private boolean isUnchanged(
+      BlazeConfigurationResolverResult configResolveData,
+      ImmutableSet<BlazeResolveConfigurationData> unchangedConfigurations) {
+    return unchangedConfigurations.size() == configResolveData.getAllConfigurations().size()
+        && unchangedConfigurations.equals(configurationOptions.keySet())
+        && compilerInfoCache.hasSameCompilers(getCompilers(configResolveData));
+  }
+
+  private CompilerInfoCache getCompilerInfoCache(
+      BlazeConfigurationResolverResult configResolveData, boolean incremental, boolean fullSync) {
+    if (!incremental) {
+      compilerInfoCache.clear();
+      return new CompilerInfoCache();
+    }
+    return compilerInfoCache.get(getCompilers(configResolveData), fullSync);
+  }
+
+  private Set<File> getCompilers(BlazeConfigurationResolverResult configResolveData) {
+    Set<File> compilers = new HashSet<>();
+    for (BlazeResolveConfiguration configuration : configResolveData.getAllConfigurations()) {
+      for (OCLanguageKind language : supportedLanguages) {
+        File compiler = configuration.getCompilerSettings().getCompilerExecutable(language);
+        if (compiler != null) {
+          compilers.add(compiler);
+        }
+      }
+    }
+    return compilers;
+  }
+
   private OCWorkspaceImpl.ModifiableModel calculateConfigurations(
       BlazeProjectData blazeProjectData,
       WorkspaceRoot workspaceRoot,
       BlazeConfigurationResolverResult configResolveData,
+      ImmutableSet<BlazeResolveConfigurationData> unchangedConfigurations,
+      Map<BlazeResolveConfigurationData, ConfigurationOptions> optionsByConfiguration,
       ProgressIndicator indicator) {
 
     OCWorkspaceImpl.ModifiableModel workspaceModifiable =
@@ -173,111 +258,28 @@ public final class BlazeCWorkspace implements ProjectComponent {
             blazeProjectData.getWorkspacePathResolver());
 
     int progress = 0;
+    int reused = 0;
 
     for (BlazeResolveConfiguration resolveConfiguration : configurations) {
       indicator.setText2(resolveConfiguration.getDisplayName());
       indicator.setFraction(((double) progress) / configurations.size());
-      BlazeCompilerSettings compilerSettings = resolveConfiguration.getCompilerSettings();
-      Map<OCLanguageKind, PerLanguageCompilerOpts> configLanguages = new HashMap<>();
-      Map<VirtualFile, PerFileCompilerOpts> configSourceFiles = new HashMap<>();
-      for (TargetKey targetKey : resolveConfiguration.getTargets()) {
-        TargetIdeInfo targetIdeInfo = blazeProjectData.getTargetMap().get(targetKey);
-        if (targetIdeInfo == null || targetIdeInfo.getcIdeInfo() == null) {
-          continue;
-        }
-
-        // defines and include directories are the same for all sources in a given target, so lets
-        // collect them once and reuse for each source file's options
-
-        UnfilteredCompilerOptions coptsExtractor =
-            UnfilteredCompilerOptions.builder()
-                .registerSingleOrSplitOption("-I")
-                .build(targetIdeInfo.getcIdeInfo().getLocalCopts());
-        ImmutableList<String> plainLocalCopts =
-            filterIncompatibleFlags(coptsExtractor.getUninterpretedOptions());
-        ImmutableList<ExecutionRootPath> localIncludes =
-            coptsExtractor.getExtractedOptionValues("-I").stream()
-                .map(ExecutionRootPath::new)
-                .collect(toImmutableList());
-
-        // transitiveDefines are sourced from a target's (and transitive deps) "defines" attribute
-        ImmutableList<String> transitiveDefineOptions =
-            targetIdeInfo.getcIdeInfo().getTransitiveDefines().stream()
-                .map(s -> "-D" + s)
-                .collect(toImmutableList());
-
-        Function<ExecutionRootPath, Stream<File>> resolver =
-            executionRootPath ->
-                executionRootPathResolver.resolveToIncludeDirectories(executionRootPath).stream();
-        // localIncludes are sourced from -I options in a target's "copts" attribute. They  can be
-        // arbitrarily declared and may not exist in configResolveData.
-        // transitiveIncludeDirectories are sourced from CcSkylarkApiProvider.include_directories
-
-        ImmutableList<String> iOptionIncludeDirectories =
-            Stream.concat(
-                    localIncludes.stream().flatMap(resolver),
-                    targetIdeInfo.getcIdeInfo().getTransitiveIncludeDirectories().stream()
-                        .flatMap(resolver)
-                        .filter(configResolveData::isValidHeaderRoot))
-                .map(file -> "-I" + file.getAbsolutePath())
-                .collect(toImmutableList());
-
-        // transitiveQuoteIncludeDirectories are sourced from
-        // CcSkylarkApiProvider.quote_include_directories
-        ImmutableList<String> iquoteOptionIncludeDirectories =
-            targetIdeInfo.getcIdeInfo().getTransitiveQuoteIncludeDirectories().stream()
-                .flatMap(resolver)
-                .filter(configResolveData::isValidHeaderRoot)
-                .map(file -> "-iquote" + file.getAbsolutePath())
-                .collect(toImmutableList());
-        // transitiveSystemIncludeDirectories are sourced from
-        // CcSkylarkApiProvider.system_include_directories
-        // Note: We would ideally use -isystem here, but it interacts badly with the switches
-        // that get built by ClangUtils::addIncludeDirectories (it uses -I for system libraries).
-        ImmutableList<String> isystemOptionIncludeDirectories =
-            targetIdeInfo.getcIdeInfo().getTransitiveSystemIncludeDirectories().stream()
-                .flatMap(resolver)
-                .filter(configResolveData::isValidHeaderRoot)
-                .map(file -> "-I" + file.getAbsolutePath())
-                .collect(toImmutableList());
-
-        for (VirtualFile vf : resolveConfiguration.getSources(targetKey)) {
-          OCLanguageKind kind = resolveConfiguration.getDeclaredLanguageKind(vf);
-          if (kind == null) {
-            kind = CLanguageKind.CPP;
-          }
-
-          CidrSwitchBuilder fileSpecificSwitchBuilder = new CidrSwitchBuilder();
-
-          ImmutableList<String> baseSwitches = compilerSettings.getCompilerSwitches(kind, vf);
-          fileSpecificSwitchBuilder.addAllRaw(baseSwitches);
-          fileSpecificSwitchBuilder.addAllRaw(transitiveDefineOptions);
-          fileSpecificSwitchBuilder.addAllRaw(iquoteOptionIncludeDirectories);
-          fileSpecificSwitchBuilder.addAllRaw(iOptionIncludeDirectories);
-          fileSpecificSwitchBuilder.addAllRaw(isystemOptionIncludeDirectories);
-          fileSpecificSwitchBuilder.addAllRaw(plainLocalCopts);
-
-          PerFileCompilerOpts perFileCompilerOpts =
-              new PerFileCompilerOpts(kind, fileSpecificSwitchBuilder.build());
-          configSourceFiles.put(vf, perFileCompilerOpts);
-          if (!configLanguages.containsKey(kind)) {
-            addConfigLanguageSwitches(
-                configLanguages, compilerSettings,
-                // If a file isn't found in configSourceFiles (newly created files), CLion uses the
-                // configLanguages switches. We want some basic header search roots (genfiles),
-                // which are part of every target's iquote directories. See:
-                // https://github.com/bazelbuild/bazel/blob/2c493e8a2132d54f4b2fb8046f6bcef11e92cd22/src/main/java/com/google/devtools/build/lib/rules/cpp/CcCompilationHelper.java#L911
-                iquoteOptionIncludeDirectories, kind);
-          }
-        }
-      }
-
-      for (OCLanguageKind language : supportedLanguages) {
-        if (!configLanguages.containsKey(language)) {
-          addConfigLanguageSwitches(
-              configLanguages, compilerSettings, ImmutableList.of(), language);
-        }
+      BlazeResolveConfigurationData configurationData =
+          resolveConfiguration.getConfigurationData();
+      ConfigurationOptions options =
+          unchangedConfigurations.contains(configurationData)
+              ? configurationOptions.get(configurationData)
+              : null;
+      if (options != null) {
+        reused++;
+      } else {
+        options =
+            calculateConfigurationOptions(
+                blazeProjectData,
+                configResolveData,
+                executionRootPathResolver,
+                resolveConfiguration);
       }
+      optionsByConfiguration.put(configurationData, options);
 
       String id = resolveConfiguration.getDisplayName();
 
@@ -286,13 +288,127 @@ public final class BlazeCWorkspace implements ProjectComponent {
           id,
           id,
           workspaceRoot.directory(),
-          configLanguages,
-          configSourceFiles);
+          options.configLanguages,
+          options.configSourceFiles);
       progress++;
     }
+    if (reused > 0) {
+      logger.info(
+          String.format(
+              "Reused compiler switches for %d of %d configurations",
+              reused, configurations.size()));
+    }
     return workspaceModifiable;
   }
 
+  private ConfigurationOptions calculateConfigurationOptions(
+      BlazeProjectData blazeProjectData,
+      BlazeConfigurationResolverResult configResolveData,
+      ExecutionRootPathResolver executionRootPathResolver,
+      BlazeResolveConfiguration resolveConfiguration) {
+    BlazeCompilerSettings compilerSettings = resolveConfiguration.getCompilerSettings();
+    Map<OCLanguageKind, PerLanguageCompilerOpts> configLanguages = new HashMap<>();
+    Map<VirtualFile, PerFileCompilerOpts> configSourceFiles = new HashMap<>();
+    for (TargetKey targetKey : resolveConfiguration.getTargets()) {
+      TargetIdeInfo targetIdeInfo = blazeProjectData.getTargetMap().get(targetKey);
+      if (targetIdeInfo == null || targetIdeInfo.getcIdeInfo() == null) {
+        continue;
+      }
+
+      // defines and include directories are the same for all sources in a given target, so lets
+      // collect them once and reuse for each source file's options
+
+      UnfilteredCompilerOptions coptsExtractor =
+          UnfilteredCompilerOptions.builder()
+              .registerSingleOrSplitOption("-I")
+              .build(targetIdeInfo.getcIdeInfo().getLocalCopts());
+      ImmutableList<String> plainLocalCopts =
+          filterIncompatibleFlags(coptsExtractor.getUninterpretedOptions());
+      ImmutableList<ExecutionRootPath> localIncludes =
+          coptsExtractor.getExtractedOptionValues("-I").stream()
+              .map(ExecutionRootPath::new)
+              .collect(toImmutableList());
+
+      // transitiveDefines are sourced from a target's (and transitive deps) "defines" attribute
+      ImmutableList<String> transitiveDefineOptions =
+          targetIdeInfo.getcIdeInfo().getTransitiveDefines().stream()
+              .map(s -> "-D" + s)
+              .collect(toImmutableList());
+
+      Function<ExecutionRootPath, Stream<File>> resolver =
+          executionRootPath ->
+              executionRootPathResolver.resolveToIncludeDirectories(executionRootPath).stream();
+      // localIncludes are sourced from -I options in a target's "copts" attribute. They  can be
+      // arbitrarily declared and may not exist in configResolveData.
+      // transitiveIncludeDirectories are sourced from CcSkylarkApiProvider.include_directories
+
+      ImmutableList<String> iOptionIncludeDirectories =
+          Stream.concat(
+                  localIncludes.stream().flatMap(resolver),
+                  targetIdeInfo.getcIdeInfo().getTransitiveIncludeDirectories().stream()
+                      .flatMap(resolver)
+                      .filter(configResolveData::isValidHeaderRoot))
+              .map(file -> "-I" + file.getAbsolutePath())
+              .collect(toImmutableList());
+
+      // transitiveQuoteIncludeDirectories are sourced from
+      // CcSkylarkApiProvider.quote_include_directories
+      ImmutableList<String> iquoteOptionIncludeDirectories =
+          targetIdeInfo.getcIdeInfo().getTransitiveQuoteIncludeDirectories().stream()
+              .flatMap(resolver)
+              .filter(configResolveData::isValidHeaderRoot)
+              .map(file -> "-iquote" + file.getAbsolutePath())
+              .collect(toImmutableList());
+      // transitiveSystemIncludeDirectories are sourced from
+      // CcSkylarkApiProvider.system_include_directories
+      // Note: We would ideally use -isystem here, but it interacts badly with the switches
+      // that get built by ClangUtils::addIncludeDirectories (it uses -I for system libraries).
+      ImmutableList<String> isystemOptionIncludeDirectories =
+          targetIdeInfo.getcIdeInfo().getTransitiveSystemIncludeDirectories().stream()
+              .flatMap(resolver)
+              .filter(configResolveData::isValidHeaderRoot)
+              .map(file -> "-I" + file.getAbsolutePath())
+              .collect(toImmutableList());
+
+      for (VirtualFile vf : resolveConfiguration.getSources(targetKey)) {
+        OCLanguageKind kind = resolveConfiguration.getDeclaredLanguageKind(vf);
+        if (kind == null) {
+          kind = CLanguageKind.CPP;
+        }
+
+        CidrSwitchBuilder fileSpecificSwitchBuilder = new CidrSwitchBuilder();
+
+        ImmutableList<String> baseSwitches = compilerSettings.getCompilerSwitches(kind, vf);
+        fileSpecificSwitchBuilder.addAllRaw(baseSwitches);
+        fileSpecificSwitchBuilder.addAllRaw(transitiveDefineOptions);
+        fileSpecificSwitchBuilder.addAllRaw(iquoteOptionIncludeDirectories);
+        fileSpecificSwitchBuilder.addAllRaw(iOptionIncludeDirectories);
+        fileSpecificSwitchBuilder.addAllRaw(isystemOptionIncludeDirectories);
+        fileSpecificSwitchBuilder.addAllRaw(plainLocalCopts);
+
+        PerFileCompilerOpts perFileCompilerOpts =
+            new PerFileCompilerOpts(kind, fileSpecificSwitchBuilder.build());
+        configSourceFiles.put(vf, perFileCompilerOpts);
+        if (!configLanguages.containsKey(kind)) {
+          addConfigLanguageSwitches(
+              configLanguages, compilerSettings,
+              // If a file isn't found in configSourceFiles (newly created files), CLion uses the
+              // configLanguages switches. We want some basic header search roots (genfiles),
+              // which are part of every target's iquote directories. See:
+              // https://github.com/bazelbuild/bazel/blob/2c493e8a2132d54f4b2fb8046f6bcef11e92cd22/src/main/java/com/google/devtools/build/lib/rules/cpp/CcCompilationHelper.java#L911
+              iquoteOptionIncludeDirectories, kind);
+        }
+      }
+    }
+
+    for (OCLanguageKind language : supportedLanguages) {
+      if (!configLanguages.containsKey(language)) {
+        addConfigLanguageSwitches(configLanguages, compilerSettings, ImmutableList.of(), language);
+      }
+    }
+    return new ConfigurationOptions(configLanguages, configSourceFiles);
+  }
+
   private static void addConfiguration(
       OCWorkspaceImpl.ModifiableModel workspaceModifiable,
       String id,
@@ -320,6 +436,19 @@ public final class BlazeCWorkspace implements ProjectComponent {
     }
   }
 
+  /** The compiler options computed for a single resolve configuration. */
+  private static class ConfigurationOptions {
+    final ImmutableMap<OCLanguageKind, PerLanguageCompilerOpts> configLanguages;
+    final ImmutableMap<VirtualFile, PerFileCompilerOpts> configSourceFiles;
+
+    private ConfigurationOptions(
+        Map<OCLanguageKind, PerLanguageCompilerOpts> configLanguages,
+        Map<VirtualFile, PerFileCompilerOpts> configSourceFiles) {
+      this.configLanguages = ImmutableMap.copyOf(configLanguages);
+      this.configSourceFiles = ImmutableMap.copyOf(configSourceFiles);
+    }
+  }
+
   /** Group compiler options for a specific file. */
   private static class PerFileCompilerOpts {
     final OCLanguageKind kind;
@@ -427,7 +556,16 @@ public final class BlazeCWorkspace implements ProjectComponent {
       OCWorkspaceImpl.ModifiableModel model,
       int serialVersion,
       CidrToolEnvironment toolEnvironment) {
-    ImmutableList<String> issues = collectCompilerSettingsInParallel(model, toolEnvironment);
+    return commit(model, serialVersion, toolEnvironment, new CompilerInfoCache());
+  }
+
+  private static ImmutableList<String> commit(
+      OCWorkspaceImpl.ModifiableModel model,
+      int serialVersion,
+      CidrToolEnvironment toolEnvironment,
+      CompilerInfoCache compilerInfoCache) {
+    ImmutableList<String> issues =
+        collectCompilerSettingsInParallel(model, toolEnvironment, compilerInfoCache);
     model.setClientVersion(serialVersion);
     model.preCommit();
     TransactionGuard.getInstance()
@@ -439,8 +577,9 @@ public final class BlazeCWorkspace implements ProjectComponent {
   }
 
   private static ImmutableList<String> collectCompilerSettingsInParallel(
-      OCWorkspaceImpl.ModifiableModel model, CidrToolEnvironment toolEnvironment) {
-    CompilerInfoCache compilerInfoCache = new CompilerInfoCache();
+      OCWorkspaceImpl.ModifiableModel model,
+      CidrToolEnvironment toolEnvironment,
+      CompilerInfoCache compilerInfoCache) {
     TempFilesPool tempFilesPool = new CachedTempFilesPool();
     Session<Integer> session = compilerInfoCache.createSession(new EmptyProgressIndicator());
     ImmutableList.Builder<String> issues = ImmutableList.builder();
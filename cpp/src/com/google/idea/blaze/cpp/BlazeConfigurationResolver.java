@@ -15,11 +15,10 @@
  */
 package com.google.idea.blaze.cpp;
 
-import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Multimap;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.idea.blaze.base.async.executor.BlazeExecutor;
@@ -48,7 +47,9 @@ import java.io.File;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.function.Predicate;
@@ -135,7 +136,8 @@ final class BlazeConfigurationResolver {
             context -> {
               context.push(new TimingScope("Build C configuration map", EventType.Other));
 
-              ConcurrentMap<TargetKey, BlazeResolveConfigurationData> targetToData =
+              // targets are grouped by equivalent configuration as the configurations are built
+              ConcurrentMap<BlazeResolveConfigurationData, Queue<TargetKey>> dataToTargets =
                   Maps.newConcurrentMap();
               List<ListenableFuture<?>> targetToDataFutures =
                   blazeProjectData.getTargetMap().targets().stream()
@@ -148,55 +150,64 @@ final class BlazeConfigurationResolver {
                                         createResolveConfiguration(
                                             target, toolchainLookupMap, compilerSettings);
                                     if (data != null) {
-                                      targetToData.put(target.getKey(), data);
+                                      dataToTargets
+                                          .computeIfAbsent(
+                                              data, d -> new ConcurrentLinkedQueue<>())
+                                          .add(target.getKey());
                                     }
                                     return null;
                                   }))
                       .collect(Collectors.toList());
               try {
                 Futures.allAsList(targetToDataFutures).get();
+                createConfigurations(context, project, blazeProjectData, dataToTargets, builder);
               } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 context.setCancelled();
-                return;
               } catch (ExecutionException e) {
                 IssueOutput.error("Could not build C resolve configurations: " + e).submit(context);
                 logger.error("Could not build C resolve configurations", e);
-                return;
               }
-              findEquivalenceClasses(context, project, blazeProjectData, targetToData, builder);
             });
   }
 
-  private static void findEquivalenceClasses(
+  private static void createConfigurations(
       BlazeContext context,
       Project project,
       BlazeProjectData blazeProjectData,
-      Map<TargetKey, BlazeResolveConfigurationData> targetToData,
-      BlazeConfigurationResolverResult.Builder builder) {
-    Multimap<BlazeResolveConfigurationData, TargetKey> dataEquivalenceClasses =
-        ArrayListMultimap.create();
-    for (Map.Entry<TargetKey, BlazeResolveConfigurationData> entry : targetToData.entrySet()) {
-      TargetKey target = entry.getKey();
-      BlazeResolveConfigurationData data = entry.getValue();
-      dataEquivalenceClasses.put(data, target);
-    }
+      Map<BlazeResolveConfigurationData, ? extends Collection<TargetKey>> dataToTargets,
+      BlazeConfigurationResolverResult.Builder builder)
+      throws InterruptedException, ExecutionException {
+    List<BlazeResolveConfigurationData> uniqueData = ImmutableList.copyOf(dataToTargets.keySet());
+    List<ListenableFuture<BlazeResolveConfiguration>> configurationFutures =
+        uniqueData.stream()
+            .map(
+                data ->
+                    submit(
+                        () -> {
+                          // sort the targets, so the configuration is stable between syncs
+                          ImmutableList<TargetKey> targets =
+                              dataToTargets.get(data).stream()
+                                  .sorted()
+                                  .collect(ImmutableList.toImmutableList());
+                          return BlazeResolveConfiguration.createForTargets(
+                              project, blazeProjectData, data, targets);
+                        }))
+            .collect(Collectors.toList());
+    List<BlazeResolveConfiguration> configurations =
+        Futures.allAsList(configurationFutures).get();
 
     ImmutableMap.Builder<BlazeResolveConfigurationData, BlazeResolveConfiguration>
         dataToConfiguration = ImmutableMap.builder();
-    for (Map.Entry<BlazeResolveConfigurationData, Collection<TargetKey>> entry :
-        dataEquivalenceClasses.asMap().entrySet()) {
-      BlazeResolveConfigurationData data = entry.getKey();
-      Collection<TargetKey> targets = entry.getValue();
-      dataToConfiguration.put(
-          data,
-          BlazeResolveConfiguration.createForTargets(project, blazeProjectData, data, targets));
+    int targetCount = 0;
+    for (int i = 0; i < uniqueData.size(); i++) {
+      dataToConfiguration.put(uniqueData.get(i), configurations.get(i));
+      targetCount += dataToTargets.get(uniqueData.get(i)).size();
     }
     context.output(
         PrintOutput.log(
             String.format(
-                "%s unique C configurations, %s C targets",
-                dataEquivalenceClasses.keySet().size(), dataEquivalenceClasses.size())));
+                "%s unique C configurations, %s C targets", uniqueData.size(), targetCount)));
     builder.setUniqueConfigurations(dataToConfiguration.build());
   }
 
@@ -76,6 +76,28 @@ final class BlazeConfigurationResolverResult {
     return validHeaderRoots.equals(other.validHeaderRoots);
   }
 
+  /**
+   * Returns the configurations which are equivalent to a configuration in {@code oldResult}, and
+   * whose compiler switches can therefore be reused. Switches are filtered by the valid header
+   * roots, so nothing is reused if these have changed.
+   */
+  ImmutableSet<BlazeResolveConfigurationData> getUnchangedConfigurations(
+      BlazeConfigurationResolverResult oldResult) {
+    if (!validHeaderRoots.equals(oldResult.validHeaderRoots)) {
+      return ImmutableSet.of();
+    }
+    ImmutableSet.Builder<BlazeResolveConfigurationData> unchanged = ImmutableSet.builder();
+    for (Map.Entry<BlazeResolveConfigurationData, BlazeResolveConfiguration> mapEntry :
+        uniqueResolveConfigurations.entrySet()) {
+      BlazeResolveConfiguration oldConfig =
+          oldResult.uniqueResolveConfigurations.get(mapEntry.getKey());
+      if (oldConfig != null && mapEntry.getValue().isEquivalentConfigurations(oldConfig)) {
+        unchanged.add(mapEntry.getKey());
+      }
+    }
+    return unchanged.build();
+  }
+
   static class Builder {
     ImmutableMap<BlazeResolveConfigurationData, BlazeResolveConfiguration> uniqueConfigurations =
         ImmutableMap.of();
@@ -33,6 +33,7 @@ import com.google.idea.blaze.base.model.primitives.TargetExpression;
 import com.google.idea.blaze.base.scope.BlazeContext;
 import com.google.idea.blaze.base.scope.Scope;
 import com.google.idea.blaze.base.scope.output.IssueOutput;
+import com.google.idea.blaze.base.scope.output.PrintOutput;
 import com.google.idea.blaze.base.scope.scopes.TimingScope;
 import com.google.idea.blaze.base.scope.scopes.TimingScope.EventType;
 import com.google.idea.blaze.base.sync.BlazeSyncManager;
@@ -50,6 +51,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
@@ -153,6 +155,10 @@ public final class BlazeConfigurationToolchainResolver {
       ExecutionRootPathResolver executionRootPathResolver,
       ImmutableMap<CToolchainIdeInfo, BlazeCompilerSettings> oldCompilerSettings) {
     Set<CToolchainIdeInfo> toolchains = new HashSet<>(toolchainLookupMap.values());
+    CompilerProbeCache probeCache = CompilerProbeCache.getInstance();
+    int initialProbeHits = probeCache.getHits();
+    int initialProbeMisses = probeCache.getMisses();
+    long initialProbeMissNanos = probeCache.getMissNanos();
     List<ListenableFuture<Map.Entry<CToolchainIdeInfo, BlazeCompilerSettings>>>
         compilerSettingsFutures = new ArrayList<>();
     for (CToolchainIdeInfo toolchain : toolchains) {
@@ -209,6 +215,19 @@ public final class BlazeConfigurationToolchainResolver {
     } catch (ExecutionException e) {
       IssueOutput.error("Could not build C compiler settings map: " + e).submit(context);
     }
+    int probeHits = probeCache.getHits() - initialProbeHits;
+    int probeMisses = probeCache.getMisses() - initialProbeMisses;
+    if (probeHits + probeMisses > 0) {
+      context.output(
+          PrintOutput.log(
+              String.format(
+                  "Compiler probes: %d cached, %d run (%d ms)",
+                  probeHits,
+                  probeMisses,
+                  TimeUnit.NANOSECONDS.toMillis(
+                      probeCache.getMissNanos() - initialProbeMissNanos))));
+      probeCache.saveIfModified();
+    }
     return compilerSettingsMap.build();
   }
 
@@ -152,6 +152,10 @@ final class BlazeResolveConfiguration {
     return configurationData.localCopts;
   }
 
+  BlazeResolveConfigurationData getConfigurationData() {
+    return configurationData;
+  }
+
   BlazeCompilerSettings getCompilerSettings() {
     return configurationData.compilerSettings;
   }
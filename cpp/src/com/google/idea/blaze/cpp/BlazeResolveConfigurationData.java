@@ -36,6 +36,8 @@ final class BlazeResolveConfigurationData {
   final ImmutableList<ExecutionRootPath> transitiveQuoteIncludeDirectories;
   private final ImmutableList<String> transitiveDefines;
   final ImmutableList<ExecutionRootPath> transitiveSystemIncludeDirectories;
+  // configurations are hashed repeatedly while grouping targets, and the lists are long
+  private final int hashCode;
 
   static BlazeResolveConfigurationData create(
       CIdeInfo cIdeInfo,
@@ -56,6 +58,15 @@ final class BlazeResolveConfigurationData {
     this.transitiveQuoteIncludeDirectories = cIdeInfo.getTransitiveQuoteIncludeDirectories();
     this.transitiveDefines = cIdeInfo.getTransitiveDefines();
     this.localCopts = cIdeInfo.getLocalCopts();
+    this.hashCode =
+        Objects.hash(
+            transitiveIncludeDirectories,
+            transitiveSystemIncludeDirectories,
+            transitiveQuoteIncludeDirectories,
+            localCopts,
+            transitiveDefines,
+            toolchainIdeInfo,
+            compilerSettings.getCompilerVersion());
   }
 
   @Override
@@ -67,7 +78,9 @@ final class BlazeResolveConfigurationData {
       return false;
     }
     BlazeResolveConfigurationData otherData = (BlazeResolveConfigurationData) other;
-    return this.transitiveIncludeDirectories.equals(otherData.transitiveIncludeDirectories)
+    // compare the cached hash codes first; equal lists are usually the same interned instance
+    return this.hashCode == otherData.hashCode
+        && this.transitiveIncludeDirectories.equals(otherData.transitiveIncludeDirectories)
         && this.transitiveSystemIncludeDirectories.equals(
             otherData.transitiveSystemIncludeDirectories)
         && this.transitiveQuoteIncludeDirectories.equals(
@@ -82,13 +95,6 @@ final class BlazeResolveConfigurationData {
 
   @Override
   public int hashCode() {
-    return Objects.hash(
-        transitiveIncludeDirectories,
-        transitiveSystemIncludeDirectories,
-        transitiveQuoteIncludeDirectories,
-        localCopts,
-        transitiveDefines,
-        toolchainIdeInfo,
-        compilerSettings.getCompilerVersion());
+    return hashCode;
   }
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.cpp;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * The identity of a compiler executable: its resolved path, modification time and size.
+ *
+ * <p>Compilers are often wrapper scripts or symlinks, so the state is read from the file they
+ * resolve to. Repointing a symlink at a different compiler then changes the state, even if the
+ * link itself is untouched.
+ */
+final class CompilerFileState {
+  final String resolvedPath;
+  final long modifiedTime;
+  final long size;
+
+  CompilerFileState(String resolvedPath, long modifiedTime, long size) {
+    this.resolvedPath = resolvedPath;
+    this.modifiedTime = modifiedTime;
+    this.size = size;
+  }
+
+  static CompilerFileState of(File compiler) {
+    File resolved = resolve(compiler);
+    return new CompilerFileState(resolved.getPath(), resolved.lastModified(), resolved.length());
+  }
+
+  private static File resolve(File compiler) {
+    try {
+      return compiler.toPath().toRealPath().toFile();
+    } catch (IOException e) {
+      // the compiler doesn't exist, so there's nothing to resolve
+      return compiler;
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof CompilerFileState)) {
+      return false;
+    }
+    CompilerFileState other = (CompilerFileState) o;
+    return resolvedPath.equals(other.resolvedPath)
+        && modifiedTime == other.modifiedTime
+        && size == other.size;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(resolvedPath, modifiedTime, size);
+  }
+}
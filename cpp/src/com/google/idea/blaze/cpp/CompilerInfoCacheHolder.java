@@ -0,0 +1,77 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.cpp;
+
+import com.google.common.collect.ImmutableMap;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * Holds the compiler probe results shared between C workspace updates.
+ *
+ * <p>The probe results are discarded on a full sync, or when the set of compilers or the state of
+ * any of them changes, so they're never reused for a changed compiler, and don't accumulate
+ * entries indefinitely over a long session.
+ */
+final class CompilerInfoCacheHolder<T> {
+
+  private final Supplier<T> cacheFactory;
+
+  @Nullable private T cache;
+  private ImmutableMap<File, CompilerFileState> compilers = ImmutableMap.of();
+
+  CompilerInfoCacheHolder(Supplier<T> cacheFactory) {
+    this.cacheFactory = cacheFactory;
+  }
+
+  /**
+   * Returns the cache to use for probing the given compilers, reusing the previous one if the
+   * compilers are unchanged since it was created.
+   */
+  synchronized T get(Iterable<File> compilerExecutables, boolean fullSync) {
+    ImmutableMap<File, CompilerFileState> newCompilers = getStates(compilerExecutables);
+    if (cache == null || fullSync || !newCompilers.equals(compilers)) {
+      cache = cacheFactory.get();
+    }
+    compilers = newCompilers;
+    return cache;
+  }
+
+  /**
+   * Returns whether the given compilers are exactly those the current cache was created for, and
+   * none of them has changed since.
+   */
+  synchronized boolean hasSameCompilers(Iterable<File> compilerExecutables) {
+    return cache != null && getStates(compilerExecutables).equals(compilers);
+  }
+
+  private static ImmutableMap<File, CompilerFileState> getStates(Iterable<File> compilers) {
+    Map<File, CompilerFileState> states = new HashMap<>();
+    for (File compiler : compilers) {
+      states.computeIfAbsent(compiler, CompilerFileState::of);
+    }
+    return ImmutableMap.copyOf(states);
+  }
+
+  /** Discards the cached probe results. */
+  synchronized void clear() {
+    cache = null;
+    compilers = ImmutableMap.of();
+  }
+}
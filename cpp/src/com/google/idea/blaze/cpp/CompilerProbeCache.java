@@ -0,0 +1,279 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.cpp;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * Caches the output of running a compiler with a given set of flags, across IDE restarts.
+ *
+ * <p>Entries are keyed by the compiler path, flags and execution root, and are only used while the
+ * compiler is unchanged: the file it resolves to (following symlinks, so a repointed wrapper
+ * invalidates its entries) must have the same path, modification time and size. The cache file is
+ * read the first time it's needed, and entries are validated as they're looked up.
+ */
+final class CompilerProbeCache {
+
+  private static final Logger logger = Logger.getInstance(CompilerProbeCache.class);
+
+  private static final int MAGIC = 0x424c5a50; // "BLZP"
+  private static final int VERSION = 2;
+  private static final int MAX_ENTRIES = 256;
+
+  private static final CompilerProbeCache INSTANCE =
+      new CompilerProbeCache(
+          Suppliers.memoize(
+              () -> new File(PathManager.getSystemPath(), "blaze/compiler_probes.dat")));
+
+  static CompilerProbeCache getInstance() {
+    return INSTANCE;
+  }
+
+  /** Identifies a single compiler invocation. */
+  private static final class Key {
+    final String compiler;
+    final ImmutableList<String> flags;
+    final String executionRoot;
+
+    Key(String compiler, ImmutableList<String> flags, String executionRoot) {
+      this.compiler = compiler;
+      this.flags = flags;
+      this.executionRoot = executionRoot;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return compiler.equals(other.compiler)
+          && flags.equals(other.flags)
+          && executionRoot.equals(other.executionRoot);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(compiler, flags, executionRoot);
+    }
+  }
+
+  /** The output of a compiler invocation, and the state of the compiler at the time. */
+  private static final class Entry {
+    final CompilerFileState compilerState;
+    final String output;
+
+    Entry(CompilerFileState compilerState, String output) {
+      this.compilerState = compilerState;
+      this.output = output;
+    }
+  }
+
+  private final Supplier<File> cacheFile;
+  private final AtomicInteger hits = new AtomicInteger();
+  private final AtomicInteger misses = new AtomicInteger();
+  private final AtomicLong missNanos = new AtomicLong();
+
+  /** Least recently used entries first. Null until the cache file has been read. */
+  @Nullable private LinkedHashMap<Key, Entry> entries;
+
+  private boolean modified;
+
+  @VisibleForTesting
+  CompilerProbeCache(Supplier<File> cacheFile) {
+    this.cacheFile = cacheFile;
+  }
+
+  /**
+   * Returns the cached output of running {@code compiler} with the given flags, or null if there's
+   * no cached output or the compiler has changed since it was cached.
+   */
+  @Nullable
+  synchronized String get(File executionRoot, File compiler, ImmutableList<String> flags) {
+    Key key = new Key(compiler.getPath(), flags, executionRoot.getPath());
+    Entry entry = getEntries().get(key);
+    if (entry != null && !entry.compilerState.equals(CompilerFileState.of(compiler))) {
+      getEntries().remove(key);
+      modified = true;
+      entry = null;
+    }
+    if (entry == null) {
+      return null;
+    }
+    hits.incrementAndGet();
+    return entry.output;
+  }
+
+  /** Records the output of running {@code compiler}, which took {@code elapsedNanos}. */
+  synchronized void put(
+      File executionRoot,
+      File compiler,
+      ImmutableList<String> flags,
+      String output,
+      long elapsedNanos) {
+    misses.incrementAndGet();
+    missNanos.addAndGet(elapsedNanos);
+    getEntries()
+        .put(
+            new Key(compiler.getPath(), flags, executionRoot.getPath()),
+            new Entry(CompilerFileState.of(compiler), output));
+    modified = true;
+  }
+
+  int getHits() {
+    return hits.get();
+  }
+
+  int getMisses() {
+    return misses.get();
+  }
+
+  long getMissNanos() {
+    return missNanos.get();
+  }
+
+  private LinkedHashMap<Key, Entry> getEntries() {
+    if (entries == null) {
+      entries =
+          new LinkedHashMap<Key, Entry>(16, 0.75f, /* accessOrder= */ true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+              return size() > MAX_ENTRIES;
+            }
+          };
+      read(entries);
+    }
+    return entries;
+  }
+
+  private void read(Map<Key, Entry> entries) {
+    File cacheFile = this.cacheFile.get();
+    if (!cacheFile.exists()) {
+      return;
+    }
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return;
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String compiler = readString(in);
+        int flagCount = in.readInt();
+        ImmutableList.Builder<String> flags = ImmutableList.builder();
+        for (int j = 0; j < flagCount; j++) {
+          flags.add(readString(in));
+        }
+        String executionRoot = readString(in);
+        CompilerFileState compilerState =
+            new CompilerFileState(readString(in), in.readLong(), in.readLong());
+        String output = readString(in);
+        entries.put(
+            new Key(compiler, flags.build(), executionRoot), new Entry(compilerState, output));
+      }
+    } catch (IOException | IllegalArgumentException e) {
+      logger.warn("Failed to read compiler probe cache", e);
+      entries.clear();
+    }
+  }
+
+  /** Writes the cache to disk, if it has changed since it was read. */
+  synchronized void saveIfModified() {
+    if (!modified || entries == null) {
+      return;
+    }
+    File cacheFile = this.cacheFile.get();
+    File tmp = new File(cacheFile.getPath() + ".tmp");
+    try {
+      Files.createDirectories(cacheFile.getParentFile().toPath());
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(entries.size());
+        for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+          Key key = entry.getKey();
+          writeString(out, key.compiler);
+          out.writeInt(key.flags.size());
+          for (String flag : key.flags) {
+            writeString(out, flag);
+          }
+          writeString(out, key.executionRoot);
+          CompilerFileState compilerState = entry.getValue().compilerState;
+          writeString(out, compilerState.resolvedPath);
+          out.writeLong(compilerState.modifiedTime);
+          out.writeLong(compilerState.size);
+          writeString(out, entry.getValue().output);
+        }
+      }
+      Files.move(
+          tmp.toPath(),
+          cacheFile.toPath(),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      modified = false;
+    } catch (IOException e) {
+      logger.warn("Failed to write compiler probe cache", e);
+      tmp.delete();
+    }
+  }
+
+  /**
+   * Writes a length-prefixed UTF-8 string. Unlike {@link DataOutputStream#writeUTF}, this isn't
+   * limited to 64KB, which compiler output can exceed.
+   */
+  private static void writeString(DataOutputStream out, String string) throws IOException {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    // the cache file is local, so all remaining bytes are available without blocking
+    if (length < 0 || length > in.available()) {
+      throw new IOException("Invalid string length: " + length);
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -15,14 +15,22 @@
  */
 package com.google.idea.blaze.cpp;
 
+import com.google.common.collect.ImmutableList;
 import com.google.idea.blaze.base.async.process.ExternalTask;
 import com.google.idea.blaze.cpp.CompilerVersionChecker.VersionCheckException.IssueKind;
+import com.google.idea.common.experiments.BoolExperiment;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 
 /** Runs a compiler to check its version. */
 public class CompilerVersionCheckerImpl implements CompilerVersionChecker {
 
+  private static final BoolExperiment usePersistentCache =
+      new BoolExperiment("blaze.cpp.persistent.compiler.probe.cache", false);
+
+  // NOTE: this won't work with MSVC if we ever support that (check CToolchainIdeInfo?)
+  private static final ImmutableList<String> VERSION_FLAGS = ImmutableList.of("--version");
+
   @Override
   public String checkCompilerVersion(File executionRoot, File cppExecutable)
       throws VersionCheckException {
@@ -32,13 +40,21 @@ public class CompilerVersionCheckerImpl implements CompilerVersionChecker {
     if (!cppExecutable.exists()) {
       throw new VersionCheckException(IssueKind.MISSING_COMPILER, "");
     }
+    CompilerProbeCache cache =
+        usePersistentCache.getValue() ? CompilerProbeCache.getInstance() : null;
+    if (cache != null) {
+      String version = cache.get(executionRoot, cppExecutable, VERSION_FLAGS);
+      if (version != null) {
+        return version;
+      }
+    }
+    long start = System.nanoTime();
     ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
     ByteArrayOutputStream errStream = new ByteArrayOutputStream();
     int result =
         ExternalTask.builder(executionRoot)
             .args(cppExecutable.toString())
-            // NOTE: this won't work with MSVC if we ever support that (check CToolchainIdeInfo?)
-            .args("--version")
+            .args(VERSION_FLAGS)
             .stdout(outputStream)
             .stderr(errStream)
             .build()
@@ -48,6 +64,10 @@ public class CompilerVersionCheckerImpl implements CompilerVersionChecker {
           IssueKind.GENERIC_FAILURE,
           String.format("stderr: \"%s\"\nstdout: \"%s\"", errStream, outputStream));
     }
-    return outputStream.toString();
+    String version = outputStream.toString();
+    if (cache != null) {
+      cache.put(executionRoot, cppExecutable, VERSION_FLAGS, version, System.nanoTime() - start);
+    }
+    return version;
   }
 }
@@ -395,6 +395,7 @@ public class BlazeConfigurationResolverTest extends BlazeTestCase {
 
     assertThatResolving(projectView, targetMap).reusedConfigurations(initialConfigurations);
     assertThat(resolverResult.isEquivalentConfigurations(oldResult)).isTrue();
+    assertThat(resolverResult.getUnchangedConfigurations(oldResult)).hasSize(1);
   }
 
   @Test
@@ -427,6 +428,7 @@ public class BlazeConfigurationResolverTest extends BlazeTestCase {
     assertThatResolving(projectView, targetMap.build())
         .reusedConfigurations(ImmutableList.of(), "//foo/bar:binary");
     assertThat(resolverResult.isEquivalentConfigurations(oldResult)).isFalse();
+    assertThat(resolverResult.getUnchangedConfigurations(oldResult)).isEmpty();
   }
 
   @Test
@@ -456,6 +458,7 @@ public class BlazeConfigurationResolverTest extends BlazeTestCase {
     assertThatResolving(projectView, targetMapBuilder.build())
         .reusedConfigurations(initialConfigurations, "//foo/bar:library");
     assertThat(resolverResult.isEquivalentConfigurations(oldResult)).isFalse();
+    assertThat(resolverResult.getUnchangedConfigurations(oldResult)).hasSize(1);
   }
 
   @Test
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.cpp;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link CompilerInfoCacheHolder}. */
+@RunWith(JUnit4.class)
+public class CompilerInfoCacheHolderTest {
+
+  @Rule public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  private final CompilerInfoCacheHolder<Object> holder = new CompilerInfoCacheHolder<>(Object::new);
+
+  private File gcc;
+  private File clang;
+
+  @Before
+  public void setUp() throws IOException {
+    gcc = tmpFolder.newFile("gcc");
+    clang = tmpFolder.newFile("clang");
+    Files.write(gcc.toPath(), new byte[] {1, 2, 3});
+    Files.write(clang.toPath(), new byte[] {4, 5});
+  }
+
+  @Test
+  public void testUnchangedCompilersReuseProbeResults() {
+    Object cache = holder.get(ImmutableList.of(gcc, clang), /* fullSync= */ false);
+
+    assertThat(holder.get(ImmutableList.of(clang, gcc), /* fullSync= */ false)).isSameAs(cache);
+  }
+
+  @Test
+  public void testFullSyncDiscardsProbeResults() {
+    Object cache = holder.get(ImmutableList.of(gcc), /* fullSync= */ false);
+
+    assertThat(holder.get(ImmutableList.of(gcc), /* fullSync= */ true)).isNotSameAs(cache);
+  }
+
+  @Test
+  public void testModifiedCompilerDiscardsProbeResults() throws IOException {
+    Object cache = holder.get(ImmutableList.of(gcc, clang), /* fullSync= */ false);
+
+    Files.write(gcc.toPath(), new byte[] {1, 2, 3, 4});
+
+    assertThat(holder.get(ImmutableList.of(gcc, clang), /* fullSync= */ false))
+        .isNotSameAs(cache);
+  }
+
+  @Test
+  public void testAddedCompilerDiscardsProbeResults() {
+    Object cache = holder.get(ImmutableList.of(gcc), /* fullSync= */ false);
+
+    assertThat(holder.get(ImmutableList.of(gcc, clang), /* fullSync= */ false))
+        .isNotSameAs(cache);
+  }
+
+  @Test
+  public void testRepointedCompilerSymlinkDiscardsProbeResults() throws IOException {
+    File wrapper = new File(tmpFolder.getRoot(), "cc");
+    Files.createSymbolicLink(wrapper.toPath(), gcc.toPath());
+    Object cache = holder.get(ImmutableList.of(wrapper), /* fullSync= */ false);
+
+    Files.delete(wrapper.toPath());
+    Files.createSymbolicLink(wrapper.toPath(), clang.toPath());
+
+    assertThat(holder.get(ImmutableList.of(wrapper), /* fullSync= */ false)).isNotSameAs(cache);
+  }
+
+  @Test
+  public void testClearDiscardsProbeResults() {
+    Object cache = holder.get(ImmutableList.of(gcc), /* fullSync= */ false);
+
+    holder.clear();
+
+    assertThat(holder.get(ImmutableList.of(gcc), /* fullSync= */ false)).isNotSameAs(cache);
+  }
+
+  @Test
+  public void testHasSameCompilers() throws IOException {
+    assertThat(holder.hasSameCompilers(ImmutableList.of(gcc))).isFalse();
+
+    holder.get(ImmutableList.of(gcc, clang), /* fullSync= */ false);
+
+    assertThat(holder.hasSameCompilers(ImmutableList.of(clang, gcc))).isTrue();
+    assertThat(holder.hasSameCompilers(ImmutableList.of(gcc))).isFalse();
+
+    Files.write(gcc.toPath(), new byte[] {1, 2, 3, 4});
+
+    assertThat(holder.hasSameCompilers(ImmutableList.of(gcc, clang))).isFalse();
+  }
+}
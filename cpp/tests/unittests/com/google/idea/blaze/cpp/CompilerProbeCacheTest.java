@@ -0,0 +1,116 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.cpp;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link CompilerProbeCache}. */
+@RunWith(JUnit4.class)
+public class CompilerProbeCacheTest {
+
+  private static final ImmutableList<String> FLAGS = ImmutableList.of("--version");
+
+  @Rule public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  private File cacheFile;
+  private File executionRoot;
+  private File compiler;
+
+  @Before
+  public void setUp() throws IOException {
+    cacheFile = new File(tmpFolder.getRoot(), "cache/compiler_probes.dat");
+    executionRoot = tmpFolder.newFolder("execroot");
+    compiler = tmpFolder.newFile("gcc");
+    Files.write(compiler.toPath(), new byte[] {1, 2, 3});
+  }
+
+  @Test
+  public void testCachedAcrossInstances() {
+    CompilerProbeCache cache = new CompilerProbeCache(() -> cacheFile);
+    assertThat(cache.get(executionRoot, compiler, FLAGS)).isNull();
+    cache.put(executionRoot, compiler, FLAGS, "gcc 9.0", 1000);
+    cache.saveIfModified();
+
+    CompilerProbeCache reloaded = new CompilerProbeCache(() -> cacheFile);
+
+    assertThat(reloaded.get(executionRoot, compiler, FLAGS)).isEqualTo("gcc 9.0");
+    assertThat(reloaded.get(executionRoot, compiler, ImmutableList.of("-v"))).isNull();
+    assertThat(reloaded.getHits()).isEqualTo(1);
+  }
+
+  @Test
+  public void testChangedCompilerIsProbedAgain() throws IOException {
+    CompilerProbeCache cache = new CompilerProbeCache(() -> cacheFile);
+    cache.put(executionRoot, compiler, FLAGS, "gcc 9.0", 1000);
+
+    Files.write(compiler.toPath(), new byte[] {1, 2, 3, 4});
+
+    assertThat(cache.get(executionRoot, compiler, FLAGS)).isNull();
+    assertThat(cache.getMisses()).isEqualTo(1);
+  }
+
+  @Test
+  public void testRepointedCompilerSymlinkIsProbedAgain() throws IOException {
+    File wrapper = new File(tmpFolder.getRoot(), "cc");
+    Files.createSymbolicLink(wrapper.toPath(), compiler.toPath());
+    CompilerProbeCache cache = new CompilerProbeCache(() -> cacheFile);
+    cache.put(executionRoot, wrapper, FLAGS, "gcc 9.0", 1000);
+
+    File clang = tmpFolder.newFile("clang");
+    Files.write(clang.toPath(), new byte[] {1, 2, 3});
+    clang.setLastModified(compiler.lastModified());
+    Files.delete(wrapper.toPath());
+    Files.createSymbolicLink(wrapper.toPath(), clang.toPath());
+
+    assertThat(cache.get(executionRoot, wrapper, FLAGS)).isNull();
+  }
+
+  @Test
+  public void testLargeOutputCachedAcrossInstances() {
+    StringBuilder output = new StringBuilder();
+    while (output.length() < 100_000) {
+      output.append("#define \u00e9 1\n");
+    }
+    CompilerProbeCache cache = new CompilerProbeCache(() -> cacheFile);
+    cache.put(executionRoot, compiler, FLAGS, output.toString(), 1000);
+    cache.saveIfModified();
+
+    CompilerProbeCache reloaded = new CompilerProbeCache(() -> cacheFile);
+
+    assertThat(reloaded.get(executionRoot, compiler, FLAGS)).isEqualTo(output.toString());
+  }
+
+  @Test
+  public void testUnreadableCacheFileIsIgnored() throws IOException {
+    Files.createDirectories(cacheFile.getParentFile().toPath());
+    Files.write(cacheFile.toPath(), new byte[] {0, 1});
+
+    CompilerProbeCache cache = new CompilerProbeCache(() -> cacheFile);
+
+    assertThat(cache.get(executionRoot, compiler, FLAGS)).isNull();
+  }
+}
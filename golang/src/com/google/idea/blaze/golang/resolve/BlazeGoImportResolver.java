@@ -20,7 +20,6 @@ import com.goide.psi.impl.imports.GoImportReference;
 import com.goide.psi.impl.imports.GoImportResolver;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
 import com.google.idea.blaze.base.ideinfo.TargetMap;
@@ -29,6 +28,7 @@ import com.google.idea.blaze.base.lang.buildfile.psi.FuncallExpression;
 import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.sync.SyncCache;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
+import com.google.idea.blaze.golang.sync.BlazeGoSyncData;
 import com.intellij.codeInsight.navigation.CtrlMouseHandler;
 import com.intellij.lang.documentation.DocumentationProviderEx;
 import com.intellij.openapi.module.Module;
@@ -104,22 +104,7 @@ class BlazeGoImportResolver implements GoImportResolver {
     return SyncCache.getInstance(project)
         .get(
             GO_TARGET_MAP_KEY,
-            (p, projectData) -> {
-              TargetMap targetMap = projectData.getTargetMap();
-              return targetMap.targets().stream()
-                  .filter(t -> t.getGoIdeInfo() != null && t.getGoIdeInfo().getImportPath() != null)
-                  .collect(
-                      ImmutableMap.toImmutableMap(
-                          t -> t.getGoIdeInfo().getImportPath(),
-                          TargetIdeInfo::getKey,
-                          // duplicates are possible (e.g., same target with different aspects)
-                          // choose the one with the most sources (though they're probably the same)
-                          (first, second) ->
-                              targetMap.get(first).getGoIdeInfo().getSources().size()
-                                      >= targetMap.get(second).getGoIdeInfo().getSources().size()
-                                  ? first
-                                  : second));
-            });
+            (p, projectData) -> BlazeGoSyncData.get(projectData).getImportPathToTarget());
   }
 
   @Nullable
@@ -43,7 +43,6 @@ import com.google.idea.blaze.base.model.primitives.LanguageClass;
 import com.google.idea.blaze.base.model.primitives.RuleType;
 import com.google.idea.blaze.base.sync.SyncCache;
 import com.google.idea.blaze.base.sync.workspace.WorkspaceHelper;
-import com.google.idea.blaze.base.targetmaps.ReverseDependencyMap;
 import com.google.idea.blaze.golang.GoBlazeRules.RuleTypes;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.Module;
@@ -128,7 +127,7 @@ public class BlazeGoPackage extends GoPackage {
     if (target == null || target.getKind() != GenericBlazeRules.RuleTypes.PROTO_LIBRARY.getKind()) {
       return targetKey;
     }
-    return ReverseDependencyMap.get(project).get(targetKey).stream()
+    return targetMap.graph().getReverseDependencies(targetKey).stream()
         .map(targetMap::get)
         .filter(Objects::nonNull)
         .filter(t -> t.getKind() == RuleTypes.GO_PROTO_LIBRARY.getKind())
@@ -18,22 +18,27 @@ package com.google.idea.blaze.golang.resolve;
 import com.goide.project.GoPackageFactory;
 import com.goide.psi.GoFile;
 import com.goide.psi.impl.GoPackage;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
-import com.google.idea.blaze.base.ideinfo.GoIdeInfo;
-import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
-import com.google.idea.blaze.base.ideinfo.TargetKey;
-import com.google.idea.blaze.base.ideinfo.TargetMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.model.primitives.LanguageClass;
+import com.google.idea.blaze.base.scope.BlazeContext;
 import com.google.idea.blaze.base.sync.SyncCache;
+import com.google.idea.blaze.base.sync.SyncListener;
+import com.google.idea.blaze.base.sync.SyncMode;
+import com.google.idea.blaze.base.sync.SyncResult;
+import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
+import com.google.idea.blaze.golang.sync.BlazeGoSyncData;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VfsUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiDirectory;
 import java.io.File;
-import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import javax.annotation.Nullable;
 
 class BlazeGoPackageFactory implements GoPackageFactory {
@@ -45,7 +50,7 @@ class BlazeGoPackageFactory implements GoPackageFactory {
       return null;
     }
     Project project = goFile.getProject();
-    ConcurrentMap<File, String> fileToImportPathMap = getFileToImportPathMap(project);
+    Map<File, String> fileToImportPathMap = getFileToImportPathMap(project);
     if (fileToImportPathMap == null) {
       return null;
     }
@@ -54,40 +59,25 @@ class BlazeGoPackageFactory implements GoPackageFactory {
   }
 
   @Nullable
-  static ConcurrentMap<File, String> getFileToImportPathMap(Project project) {
+  static ImmutableMap<File, String> getFileToImportPathMap(Project project) {
     return SyncCache.getInstance(project)
         .get(BlazeGoPackageFactory.class, BlazeGoPackageFactory::buildFileToImportPathMap);
   }
 
-  private static ConcurrentMap<File, String> buildFileToImportPathMap(
+  private static ImmutableMap<File, String> buildFileToImportPathMap(
       Project project, BlazeProjectData projectData) {
-    TargetMap targetMap = projectData.getTargetMap();
-    ConcurrentMap<File, String> map = new ConcurrentHashMap<>();
+    Map<File, String> map = new LinkedHashMap<>();
     ImmutableMultimap<Label, File> targetToFile =
         BlazeGoPackage.getTargetToFileMap(project, projectData);
-    for (TargetIdeInfo target : targetMap.targets()) {
-      if (target.getGoIdeInfo() == null) {
-        continue;
-      }
-      String importPath =
-          target.getGoIdeInfo().getLibraryLabels().stream()
-              .map(TargetKey::forPlainTarget)
-              .map(targetMap::get)
-              .filter(Objects::nonNull)
-              .map(TargetIdeInfo::getGoIdeInfo)
-              .filter(Objects::nonNull)
-              .map(GoIdeInfo::getImportPath)
-              .filter(Objects::nonNull)
-              .findFirst()
-              .orElse(target.getGoIdeInfo().getImportPath());
-      if (importPath == null) {
-        continue;
-      }
-      for (File file : targetToFile.get(target.getKey().getLabel())) {
-        map.putIfAbsent(file, importPath);
-      }
-    }
-    return map;
+    BlazeGoSyncData.get(projectData)
+        .getTargetToImportPath()
+        .forEach(
+            (label, importPath) -> {
+              for (File file : targetToFile.get(label)) {
+                map.putIfAbsent(file, importPath);
+              }
+            });
+    return ImmutableMap.copyOf(map);
   }
 
   @Nullable
@@ -95,4 +85,38 @@ class BlazeGoPackageFactory implements GoPackageFactory {
   public GoPackage createPackage(String packageName, PsiDirectory... directories) {
     return null;
   }
+
+  /**
+   * Builds the file to import path map in the background after sync, so the first go file opened
+   * after sync doesn't have to resolve the sources of every go target on the editor thread.
+   *
+   * <p>This can't be done while syncing, as resolving remote sources needs the remote outputs
+   * cache, which is only updated at the end of sync.
+   */
+  static class PrecomputeFileToImportPathMap implements SyncListener {
+    @Override
+    public void afterSync(
+        Project project,
+        BlazeContext context,
+        SyncMode syncMode,
+        SyncResult syncResult,
+        ImmutableSet<Integer> buildIds) {
+      if (!syncResult.successful() || ApplicationManager.getApplication().isUnitTestMode()) {
+        return;
+      }
+      BlazeProjectData projectData =
+          BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
+      if (projectData == null
+          || !projectData.getWorkspaceLanguageSettings().isLanguageActive(LanguageClass.GO)) {
+        return;
+      }
+      ApplicationManager.getApplication()
+          .executeOnPooledThread(
+              () -> {
+                if (!project.isDisposed()) {
+                  getFileToImportPathMap(project);
+                }
+              });
+    }
+  }
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.golang.sync;
+
+import com.google.common.base.Functions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.devtools.intellij.model.ProjectData;
+import com.google.idea.blaze.base.ideinfo.GoIdeInfo;
+import com.google.idea.blaze.base.ideinfo.ProtoWrapper;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.model.SyncData;
+import com.google.idea.blaze.base.model.primitives.Label;
+import java.util.Map;
+import java.util.Objects;
+import javax.annotation.Nullable;
+
+/**
+ * The go import path index, computed from the target map during sync and persisted with the
+ * project data.
+ */
+public final class BlazeGoSyncData implements SyncData<ProjectData.BlazeGoSyncData> {
+
+  private final ImmutableMap<String, TargetKey> importPathToTarget;
+  private final ImmutableMap<Label, String> targetToImportPath;
+
+  private BlazeGoSyncData(
+      ImmutableMap<String, TargetKey> importPathToTarget,
+      ImmutableMap<Label, String> targetToImportPath) {
+    this.importPathToTarget = importPathToTarget;
+    this.targetToImportPath = targetToImportPath;
+  }
+
+  /** Returns the go target providing each import path. */
+  public ImmutableMap<String, TargetKey> getImportPathToTarget() {
+    return importPathToTarget;
+  }
+
+  /**
+   * Returns the import path of the package each go target's sources belong to. For tests, this is
+   * the import path of the library under test.
+   */
+  public ImmutableMap<Label, String> getTargetToImportPath() {
+    return targetToImportPath;
+  }
+
+  /**
+   * Returns the index persisted with the given project data, or computes it if the project data
+   * predates it.
+   */
+  public static BlazeGoSyncData get(BlazeProjectData projectData) {
+    BlazeGoSyncData syncData = projectData.getSyncState().get(BlazeGoSyncData.class);
+    return syncData != null ? syncData : fromTargetMap(projectData.getTargetMap());
+  }
+
+  static BlazeGoSyncData fromTargetMap(TargetMap targetMap) {
+    ImmutableMap<String, TargetKey> importPathToTarget =
+        targetMap.targets().parallelStream()
+            .filter(t -> t.getGoIdeInfo() != null && t.getGoIdeInfo().getImportPath() != null)
+            .collect(
+                ImmutableMap.toImmutableMap(
+                    t -> t.getGoIdeInfo().getImportPath(),
+                    TargetIdeInfo::getKey,
+                    // duplicates are possible (e.g., same target with different aspects)
+                    // choose the one with the most sources (though they're probably the same)
+                    (first, second) ->
+                        targetMap.get(first).getGoIdeInfo().getSources().size()
+                                >= targetMap.get(second).getGoIdeInfo().getSources().size()
+                            ? first
+                            : second));
+    ImmutableMap<Label, String> targetToImportPath =
+        targetMap.targets().parallelStream()
+            .filter(t -> t.getGoIdeInfo() != null)
+            .map(
+                t -> Maps.immutableEntry(t.getKey().getLabel(), getPackageImportPath(targetMap, t)))
+            .filter(e -> e.getValue() != null)
+            .collect(
+                ImmutableMap.toImmutableMap(
+                    Map.Entry::getKey,
+                    Map.Entry::getValue,
+                    // the same label can appear with different aspects; the first one wins
+                    (first, second) -> first));
+    return new BlazeGoSyncData(importPathToTarget, targetToImportPath);
+  }
+
+  @Nullable
+  private static String getPackageImportPath(TargetMap targetMap, TargetIdeInfo target) {
+    return target.getGoIdeInfo().getLibraryLabels().stream()
+        .map(TargetKey::forPlainTarget)
+        .map(targetMap::get)
+        .filter(Objects::nonNull)
+        .map(TargetIdeInfo::getGoIdeInfo)
+        .filter(Objects::nonNull)
+        .map(GoIdeInfo::getImportPath)
+        .filter(Objects::nonNull)
+        .findFirst()
+        .orElse(target.getGoIdeInfo().getImportPath());
+  }
+
+  private static BlazeGoSyncData fromProto(ProjectData.BlazeGoSyncData proto) {
+    return new BlazeGoSyncData(
+        ProtoWrapper.map(
+            proto.getImportPathToTargetMap(), Functions.identity(), TargetKey::fromProto),
+        ProtoWrapper.map(
+            proto.getTargetToImportPathMap(), Label::create, Functions.identity()));
+  }
+
+  @Override
+  public ProjectData.BlazeGoSyncData toProto() {
+    return ProjectData.BlazeGoSyncData.newBuilder()
+        .putAllImportPathToTarget(
+            ProtoWrapper.map(importPathToTarget, Functions.identity(), TargetKey::toProto))
+        .putAllTargetToImportPath(
+            ProtoWrapper.map(targetToImportPath, Label::toString, Functions.identity()))
+        .build();
+  }
+
+  @Override
+  public void insert(ProjectData.SyncState.Builder builder) {
+    builder.setBlazeGoSyncData(toProto());
+  }
+
+  static class Extractor implements SyncData.Extractor<BlazeGoSyncData> {
+    @Nullable
+    @Override
+    public BlazeGoSyncData extract(ProjectData.SyncState syncState) {
+      return syncState.hasBlazeGoSyncData()
+          ? BlazeGoSyncData.fromProto(syncState.getBlazeGoSyncData())
+          : null;
+    }
+  }
+}
@@ -18,16 +18,26 @@ package com.google.idea.blaze.golang.sync;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
 import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.model.BlazeVersionData;
+import com.google.idea.blaze.base.model.SyncState;
 import com.google.idea.blaze.base.model.primitives.LanguageClass;
 import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
 import com.google.idea.blaze.base.model.primitives.WorkspaceType;
 import com.google.idea.blaze.base.projectview.ProjectViewSet;
 import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.scope.Scope;
+import com.google.idea.blaze.base.scope.scopes.TimingScope;
+import com.google.idea.blaze.base.scope.scopes.TimingScope.EventType;
 import com.google.idea.blaze.base.sync.BlazeSyncPlugin;
 import com.google.idea.blaze.base.sync.GenericSourceFolderProvider;
 import com.google.idea.blaze.base.sync.SourceFolderProvider;
+import com.google.idea.blaze.base.sync.SyncMode;
 import com.google.idea.blaze.base.sync.libraries.LibrarySource;
+import com.google.idea.blaze.base.sync.projectview.WorkspaceLanguageSettings;
+import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
+import com.google.idea.blaze.base.sync.workspace.WorkingSet;
 import com.intellij.ide.util.PropertiesComponent;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleType;
@@ -105,6 +115,33 @@ public class BlazeGoSyncPlugin implements BlazeSyncPlugin {
     PropertiesComponent.getInstance().setValue(DO_NOT_SHOW_NOTIFICATION_ABOUT_EMPTY_GOPATH, true);
   }
 
+  @Override
+  public void updateSyncState(
+      Project project,
+      BlazeContext context,
+      WorkspaceRoot workspaceRoot,
+      ProjectViewSet projectViewSet,
+      WorkspaceLanguageSettings workspaceLanguageSettings,
+      BlazeVersionData blazeVersionData,
+      @Nullable WorkingSet workingSet,
+      ArtifactLocationDecoder artifactLocationDecoder,
+      TargetMap targetMap,
+      SyncState.Builder syncStateBuilder,
+      @Nullable SyncState previousSyncState,
+      SyncMode syncMode) {
+    if (!workspaceLanguageSettings.isLanguageActive(LanguageClass.GO)) {
+      return;
+    }
+    BlazeGoSyncData syncData =
+        Scope.push(
+            context,
+            childContext -> {
+              childContext.push(new TimingScope("GoImportPathIndex", EventType.Other));
+              return BlazeGoSyncData.fromTargetMap(targetMap);
+            });
+    syncStateBuilder.put(syncData);
+  }
+
   private static List<Library> getGoLibraries(Project project) {
     List<Library> libraries = Lists.newArrayList();
     LibraryTablesRegistrar registrar = LibraryTablesRegistrar.getInstance();
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.golang.sync;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.devtools.intellij.model.ProjectData;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.GoIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
+import com.google.idea.blaze.base.ideinfo.TargetMapBuilder;
+import com.google.idea.blaze.base.model.primitives.Kind;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.golang.GoBlazeRules;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link BlazeGoSyncData}. */
+@RunWith(JUnit4.class)
+public class BlazeGoSyncDataTest extends BlazeTestCase {
+
+  @Override
+  protected void initTest(
+      @NotNull Container applicationServices, @NotNull Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+    registerExtensionPoint(Kind.Provider.EP_NAME, Kind.Provider.class)
+        .registerExtension(new GoBlazeRules());
+    applicationServices.register(Kind.ApplicationState.class, new Kind.ApplicationState());
+  }
+
+  @Test
+  public void testTestsUseLibraryImportPath() {
+    BlazeGoSyncData syncData = BlazeGoSyncData.fromTargetMap(buildTargetMap());
+
+    assertThat(syncData.getImportPathToTarget())
+        .containsExactly(
+            "github.com/user/library/foo",
+            TargetKey.forPlainTarget(Label.create("//library:foo")),
+            "github.com/user/library/foo_test",
+            TargetKey.forPlainTarget(Label.create("//library:foo_test")));
+    assertThat(syncData.getTargetToImportPath())
+        .containsExactly(
+            Label.create("//library:foo"),
+            "github.com/user/library/foo",
+            Label.create("//library:foo_test"),
+            "github.com/user/library/foo");
+  }
+
+  @Test
+  public void testProtoRoundTrip() {
+    BlazeGoSyncData syncData = BlazeGoSyncData.fromTargetMap(buildTargetMap());
+    ProjectData.SyncState.Builder builder = ProjectData.SyncState.newBuilder();
+    syncData.insert(builder);
+
+    BlazeGoSyncData extracted = new BlazeGoSyncData.Extractor().extract(builder.build());
+
+    assertThat(extracted.getImportPathToTarget()).isEqualTo(syncData.getImportPathToTarget());
+    assertThat(extracted.getTargetToImportPath()).isEqualTo(syncData.getTargetToImportPath());
+  }
+
+  private static TargetMap buildTargetMap() {
+    return TargetMapBuilder.builder()
+        .addTarget(
+            TargetIdeInfo.builder()
+                .setLabel("//library:foo")
+                .setKind("go_library")
+                .setGoInfo(
+                    GoIdeInfo.builder()
+                        .addSource(src("library/foo.go"))
+                        .setImportPath("github.com/user/library/foo")))
+        .addTarget(
+            TargetIdeInfo.builder()
+                .setLabel("//library:foo_test")
+                .setKind("go_test")
+                .setGoInfo(
+                    GoIdeInfo.builder()
+                        .addSource(src("library/foo_test.go"))
+                        .setImportPath("github.com/user/library/foo_test")
+                        .addLibraryLabel("//library:foo")))
+        .build();
+  }
+
+  private static ArtifactLocation src(String relativePath) {
+    return ArtifactLocation.builder().setRelativePath(relativePath).setIsSource(true).build();
+  }
+}
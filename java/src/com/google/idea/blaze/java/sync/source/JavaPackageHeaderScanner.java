@@ -0,0 +1,188 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.java.sync.source;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import javax.annotation.Nullable;
+
+/**
+ * Finds the package declaration of a java-like source file by scanning the raw bytes at the start
+ * of the file, without decoding lines or using regular expressions.
+ *
+ * <p>Only the first {@link #BUFFER_SIZE} bytes are read, into a per-thread buffer. Comments, string
+ * and character literals are skipped. If the header doesn't fit in the buffer, the result is {@link
+ * Result#UNKNOWN} and callers should fall back to reading the entire file.
+ */
+final class JavaPackageHeaderScanner {
+
+  static final int BUFFER_SIZE = 8 * 1024;
+
+  private static final ThreadLocal<byte[]> buffers =
+      ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+  private static final byte[] PACKAGE = "package".getBytes(UTF_8);
+  private static final byte[] IMPORT = "import".getBytes(UTF_8);
+
+  /** The result of scanning a file header. */
+  static final class Result {
+    static final Result NO_PACKAGE = new Result(null);
+    static final Result UNKNOWN = new Result(null);
+
+    @Nullable final String packageName;
+
+    private Result(@Nullable String packageName) {
+      this.packageName = packageName;
+    }
+  }
+
+  private JavaPackageHeaderScanner() {}
+
+  /** Reads the start of the given stream, and returns the declared package if found. */
+  static Result scan(InputStream inputStream) throws IOException {
+    byte[] buffer = buffers.get();
+    int length = 0;
+    int read;
+    while (length < buffer.length
+        && (read = inputStream.read(buffer, length, buffer.length - length)) != -1) {
+      length += read;
+    }
+    boolean complete = length < buffer.length || inputStream.read() == -1;
+    return scan(buffer, length, complete);
+  }
+
+  /**
+   * Scans the first {@code length} bytes of {@code bytes}. {@code complete} indicates whether
+   * these are all the bytes in the file.
+   */
+  static Result scan(byte[] bytes, int length, boolean complete) {
+    int i = hasByteOrderMark(bytes, length) ? 3 : 0;
+    while (i < length) {
+      byte b = bytes[i];
+      if (b == '/' && i + 1 < length && bytes[i + 1] == '/') {
+        i = skipPast(bytes, length, i + 2, (byte) '\n');
+      } else if (b == '/' && i + 1 < length && bytes[i + 1] == '*') {
+        i = skipBlockComment(bytes, length, i + 2);
+      } else if (b == '"' || b == '\'') {
+        i = skipLiteral(bytes, length, i + 1, b);
+      } else if (isIdentifierPart(b)) {
+        int end = identifierEnd(bytes, length, i);
+        if (matches(bytes, i, end, IMPORT)) {
+          // the package declaration must come before any imports
+          return Result.NO_PACKAGE;
+        }
+        if (matches(bytes, i, end, PACKAGE)) {
+          String packageName = readPackageName(bytes, length, end, complete);
+          if (packageName != null) {
+            return new Result(packageName);
+          }
+        }
+        i = end;
+      } else {
+        i++;
+      }
+    }
+    return complete ? Result.NO_PACKAGE : Result.UNKNOWN;
+  }
+
+  /** Reads a qualified name following the 'package' keyword, or returns null if there is none. */
+  @Nullable
+  private static String readPackageName(byte[] bytes, int length, int start, boolean complete) {
+    int i = start;
+    while (i < length && isWhitespace(bytes[i])) {
+      i++;
+    }
+    if (i == start) {
+      return null;
+    }
+    int nameStart = i;
+    while (i < length && (isWordByte(bytes[i]) || bytes[i] == '.')) {
+      i++;
+    }
+    // a name which runs to the end of the buffer may be truncated
+    if (i == nameStart || (i == length && !complete)) {
+      return null;
+    }
+    return new String(bytes, nameStart, i - nameStart, UTF_8);
+  }
+
+  private static boolean hasByteOrderMark(byte[] bytes, int length) {
+    return length >= 3
+        && bytes[0] == (byte) 0xEF
+        && bytes[1] == (byte) 0xBB
+        && bytes[2] == (byte) 0xBF;
+  }
+
+  private static int skipPast(byte[] bytes, int length, int start, byte terminator) {
+    int i = start;
+    while (i < length && bytes[i] != terminator) {
+      i++;
+    }
+    return i + 1;
+  }
+
+  private static int skipBlockComment(byte[] bytes, int length, int start) {
+    for (int i = start; i + 1 < length; i++) {
+      if (bytes[i] == '*' && bytes[i + 1] == '/') {
+        return i + 2;
+      }
+    }
+    return length;
+  }
+
+  private static int skipLiteral(byte[] bytes, int length, int start, byte quote) {
+    int i = start;
+    while (i < length && bytes[i] != quote && bytes[i] != '\n') {
+      i += bytes[i] == '\\' ? 2 : 1;
+    }
+    return i + 1;
+  }
+
+  private static int identifierEnd(byte[] bytes, int length, int start) {
+    int i = start;
+    while (i < length && isIdentifierPart(bytes[i])) {
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean matches(byte[] bytes, int start, int end, byte[] keyword) {
+    if (end - start != keyword.length) {
+      return false;
+    }
+    for (int i = 0; i < keyword.length; i++) {
+      if (bytes[start + i] != keyword[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isWordByte(byte b) {
+    return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '_';
+  }
+
+  /** Treats all non-ASCII bytes as identifier characters. */
+  private static boolean isIdentifierPart(byte b) {
+    return isWordByte(b) || b == '$' || b < 0;
+  }
+
+  private static boolean isWhitespace(byte b) {
+    return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+  }
+}
@@ -59,15 +59,10 @@ public class JavaSourcePackageReader extends JavaPackageReader {
     if (sourceFile == null) {
       return null;
     }
-    try (InputStream javaInputStream = inputStreamProvider.forFile(sourceFile)) {
-      BufferedReader javaReader = new BufferedReader(new InputStreamReader(javaInputStream, UTF_8));
-      String javaLine;
-
-      while ((javaLine = javaReader.readLine()) != null) {
-        Matcher packageMatch = PACKAGE_PATTERN.matcher(javaLine);
-        if (packageMatch.find()) {
-          return packageMatch.group(1);
-        }
+    try {
+      String packageName = readPackage(inputStreamProvider, sourceFile);
+      if (packageName != null) {
+        return packageName;
       }
       IssueOutput.warn("No package name string found in java source file: " + sourceFile)
           .inFile(sourceFile)
@@ -81,4 +76,28 @@ public class JavaSourcePackageReader extends JavaPackageReader {
       return null;
     }
   }
+
+  @Nullable
+  private static String readPackage(InputStreamProvider inputStreamProvider, File sourceFile)
+      throws IOException {
+    try (InputStream javaInputStream = inputStreamProvider.forFile(sourceFile)) {
+      JavaPackageHeaderScanner.Result result = JavaPackageHeaderScanner.scan(javaInputStream);
+      if (result != JavaPackageHeaderScanner.Result.UNKNOWN) {
+        return result.packageName;
+      }
+    }
+    // the file header didn't fit in the scanner's buffer, so fall back to reading the whole file
+    try (InputStream javaInputStream = inputStreamProvider.forFile(sourceFile)) {
+      BufferedReader javaReader = new BufferedReader(new InputStreamReader(javaInputStream, UTF_8));
+      String javaLine;
+
+      while ((javaLine = javaReader.readLine()) != null) {
+        Matcher packageMatch = PACKAGE_PATTERN.matcher(javaLine);
+        if (packageMatch.find()) {
+          return packageMatch.group(1);
+        }
+      }
+      return null;
+    }
+  }
 }
@@ -30,7 +30,7 @@ import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
-import com.google.common.util.concurrent.MoreExecutors;
+import com.google.idea.blaze.base.async.executor.BlazeExecutor;
 import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
 import com.google.idea.blaze.base.model.primitives.WorkspacePath;
@@ -48,6 +48,7 @@ import com.google.idea.blaze.java.sync.model.BlazeContentEntry;
 import com.google.idea.blaze.java.sync.model.BlazeSourceDirectory;
 import com.intellij.openapi.project.Project;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -72,7 +73,8 @@ public final class SourceDirectoryCalculator {
 
   private static final JavaPackageReader generatedFileJavaPackageReader =
       new FilePathJavaPackageReader();
-  private final ListeningExecutorService executorService = MoreExecutors.newDirectExecutorService();
+  // the number of source files read per task when inferring packages
+  private static final int SOURCE_BATCH_SIZE = 64;
 
   public ImmutableList<BlazeContentEntry> calculateContentEntries(
       Project project,
@@ -225,19 +227,29 @@ public final class SourceDirectoryCalculator {
     List<SourceRoot> sourceRootsPerFile = Lists.newArrayList();
 
     // Get java sources
-    List<ListenableFuture<SourceRoot>> sourceRootFutures = Lists.newArrayList();
-    for (final SourceArtifact sourceArtifact : javaArtifacts) {
-      ListenableFuture<SourceRoot> future =
+    ListeningExecutorService executorService = BlazeExecutor.getInstance().getExecutor();
+    List<ListenableFuture<List<SourceRoot>>> sourceRootFutures = Lists.newArrayList();
+    for (List<SourceArtifact> batch :
+        Lists.partition(ImmutableList.copyOf(javaArtifacts), SOURCE_BATCH_SIZE)) {
+      ListenableFuture<List<SourceRoot>> future =
           executorService.submit(
-              () ->
-                  sourceRootForJavaSource(
-                      context, artifactLocationDecoder, sourceArtifact, javaPackageReaders));
+              () -> {
+                List<SourceRoot> sourceRoots = new ArrayList<>(batch.size());
+                for (SourceArtifact sourceArtifact : batch) {
+                  sourceRoots.add(
+                      sourceRootForJavaSource(
+                          context, artifactLocationDecoder, sourceArtifact, javaPackageReaders));
+                }
+                return sourceRoots;
+              });
       sourceRootFutures.add(future);
     }
     try {
-      for (SourceRoot sourceRoot : Futures.allAsList(sourceRootFutures).get()) {
-        if (sourceRoot != null) {
-          sourceRootsPerFile.add(sourceRoot);
+      for (List<SourceRoot> sourceRoots : Futures.allAsList(sourceRootFutures).get()) {
+        for (SourceRoot sourceRoot : sourceRoots) {
+          if (sourceRoot != null) {
+            sourceRootsPerFile.add(sourceRoot);
+          }
         }
       }
     } catch (InterruptedException e) {
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.java.sync.source;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Strings;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link JavaPackageHeaderScanner}. */
+@RunWith(JUnit4.class)
+public class JavaPackageHeaderScannerTest {
+
+  @Test
+  public void testSimplePackage() throws IOException {
+    assertThat(scan("package com.google.foo;\n\nclass Foo {}").packageName)
+        .isEqualTo("com.google.foo");
+  }
+
+  @Test
+  public void testSkipsComments() throws IOException {
+    String source =
+        "/*\n * package com.wrong;\n */\n// package com.wrong2;\npackage com.google.foo;\n";
+    assertThat(scan(source).packageName).isEqualTo("com.google.foo");
+  }
+
+  @Test
+  public void testKotlinFileAnnotation() throws IOException {
+    String source = "@file:JvmName(\"package wrong\")\n\npackage com.google.foo\n\nfun foo() {}";
+    assertThat(scan(source).packageName).isEqualTo("com.google.foo");
+  }
+
+  @Test
+  public void testNoPackageBeforeImports() throws IOException {
+    assertThat(scan("import com.google.Foo;\npackage com.wrong;\n"))
+        .isSameInstanceAs(JavaPackageHeaderScanner.Result.NO_PACKAGE);
+  }
+
+  @Test
+  public void testNoPackageInShortFile() throws IOException {
+    assertThat(scan("class Foo {}"))
+        .isSameInstanceAs(JavaPackageHeaderScanner.Result.NO_PACKAGE);
+  }
+
+  @Test
+  public void testLongHeaderIsUnknown() throws IOException {
+    String source =
+        "/*" + Strings.repeat("x", JavaPackageHeaderScanner.BUFFER_SIZE) + "*/\npackage com.foo;";
+    assertThat(scan(source)).isSameInstanceAs(JavaPackageHeaderScanner.Result.UNKNOWN);
+  }
+
+  private static JavaPackageHeaderScanner.Result scan(String source) throws IOException {
+    return JavaPackageHeaderScanner.scan(new ByteArrayInputStream(source.getBytes(UTF_8)));
+  }
+}
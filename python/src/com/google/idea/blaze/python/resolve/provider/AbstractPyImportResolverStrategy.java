@@ -15,9 +15,12 @@
  */
 package com.google.idea.blaze.python.resolve.provider;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Lists;
 import com.google.idea.blaze.base.command.buildresult.OutputArtifactResolver;
 import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
@@ -38,8 +41,10 @@ import com.jetbrains.python.codeInsight.imports.AutoImportQuickFix;
 import com.jetbrains.python.psi.PyUtil;
 import com.jetbrains.python.psi.resolve.PyQualifiedNameResolveContext;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import javax.annotation.Nullable;
 
@@ -49,6 +54,8 @@ import javax.annotation.Nullable;
  */
 public abstract class AbstractPyImportResolverStrategy implements PyImportResolverStrategy {
 
+  private static final int MIN_PARTITION_SIZE = 1000;
+
   @Nullable
   @Override
   public final PsiElement resolveFromSyncData(
@@ -93,19 +100,29 @@ public abstract class AbstractPyImportResolverStrategy implements PyImportResolv
 
   @SuppressWarnings("unused")
   private PySourcesIndex buildSourcesIndex(Project project, BlazeProjectData projectData) {
+    ImmutableList<TargetIdeInfo> targets =
+        ImmutableList.copyOf(projectData.getTargetMap().targets());
+    int parallelism = Runtime.getRuntime().availableProcessors();
+    int partitionSize =
+        Math.max(MIN_PARTITION_SIZE, (targets.size() + parallelism - 1) / parallelism);
+    // import strings are computed in parallel, then added to the index in target order
+    ImmutableList<ImmutableList<PySource>> partitions =
+        Lists.partition(targets, partitionSize).parallelStream()
+            .map(this::collectPySources)
+            .collect(toImmutableList());
+
     ImmutableSetMultimap.Builder<String, QualifiedName> shortNames = ImmutableSetMultimap.builder();
     Map<QualifiedName, PsiElementProvider> map = new HashMap<>();
+    // modules in the same package share the package's name components
+    Map<String, String> components = new HashMap<>();
     ArtifactLocationDecoder decoder = projectData.getArtifactLocationDecoder();
-    for (TargetIdeInfo target : projectData.getTargetMap().targets()) {
-      for (ArtifactLocation source : getPySources(target)) {
-        QualifiedName name = toImportString(source);
-        if (name == null || name.getLastComponent() == null) {
-          continue;
-        }
+    for (ImmutableList<PySource> partition : partitions) {
+      for (PySource source : partition) {
+        QualifiedName name = intern(source.name, components);
         shortNames.put(name.getLastComponent(), name);
-        PsiElementProvider psiProvider = psiProviderFromArtifact(project, decoder, source);
+        PsiElementProvider psiProvider = psiProviderFromArtifact(project, decoder, source.source);
         map.put(name, psiProvider);
-        if (includeParentDirectory(source)) {
+        if (includeParentDirectory(source.source)) {
           map.put(name.removeTail(1), PsiElementProvider.getParent(psiProvider));
         }
       }
@@ -113,6 +130,38 @@ public abstract class AbstractPyImportResolverStrategy implements PyImportResolv
     return new PySourcesIndex(shortNames.build(), ImmutableMap.copyOf(map));
   }
 
+  private static QualifiedName intern(QualifiedName name, Map<String, String> components) {
+    List<String> interned = new ArrayList<>(name.getComponentCount());
+    for (String component : name.getComponents()) {
+      interned.add(components.computeIfAbsent(component, c -> c));
+    }
+    return QualifiedName.fromComponents(interned);
+  }
+
+  /** A python source and its import string. */
+  private static class PySource {
+    final QualifiedName name;
+    final ArtifactLocation source;
+
+    PySource(QualifiedName name, ArtifactLocation source) {
+      this.name = name;
+      this.source = source;
+    }
+  }
+
+  private ImmutableList<PySource> collectPySources(List<TargetIdeInfo> targets) {
+    ImmutableList.Builder<PySource> sources = ImmutableList.builder();
+    for (TargetIdeInfo target : targets) {
+      for (ArtifactLocation source : getPySources(target)) {
+        QualifiedName name = toImportString(source);
+        if (name != null && name.getLastComponent() != null) {
+          sources.add(new PySource(name, source));
+        }
+      }
+    }
+    return sources.build();
+  }
+
   private static PsiElementProvider psiProviderFromArtifact(
       Project project, ArtifactLocationDecoder decoder, ArtifactLocation source) {
     return (manager) -> {
@@ -137,7 +186,9 @@ public abstract class AbstractPyImportResolverStrategy implements PyImportResolv
     return ImmutableList.of();
   }
 
-  /** Maps a blaze artifact to the import string used to reference it. */
+  /**
+   * Maps a blaze artifact to the import string used to reference it. May be called concurrently.
+   */
   @Nullable
   abstract QualifiedName toImportString(ArtifactLocation source);
 